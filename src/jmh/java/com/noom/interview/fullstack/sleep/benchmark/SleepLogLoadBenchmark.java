@@ -0,0 +1,201 @@
+package com.noom.interview.fullstack.sleep.benchmark;
+
+import com.noom.interview.fullstack.sleep.SleepApplication;
+import com.noom.interview.fullstack.sleep.service.SleepLogRollupService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import java.net.URI;
+import java.net.http.*;
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Drives the running application over HTTP with bursts of concurrent requests, one in ten creating a sleep log and
+ * the rest reading the latest sleep log or the statistics of a seeded user. Each operation is one burst, so the
+ * score is the time until its slowest request is answered. Responses rejected with 503 because no database
+ * connection freed up in time are counted separately from other failures. Compares three stacks with the same
+ * database pool size: Spring MVC on Tomcat's platform thread pool, Spring MVC on virtual threads, and the reactive
+ * profile's WebFlux handlers on Netty with R2DBC.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class SleepLogLoadBenchmark {
+
+    private static final int USERS = 1000;
+    private static final int DAYS_PER_USER = 90;
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(60);
+
+    private static final String SEED_USER = "INSERT INTO sleep_logs (id, user_id, sleep_date, bed_time, wake_time, "
+            + "total_time_in_bed_minutes, bed_time_of_day_seconds, wake_time_of_day_seconds, feeling, created_at) "
+            + "SELECT nextval('sleep_logs_seq'), ?, CURRENT_DATE - d, "
+            + "(CURRENT_DATE - d - 1) + TIME '22:30', (CURRENT_DATE - d) + TIME '06:30', "
+            + "480, 81000, 23400, (ARRAY['BAD', 'OK', 'GOOD'])[1 + d % 3], now() "
+            + "FROM generate_series(0, ?) AS d";
+
+    @Param({"100", "1000"})
+    private int concurrency;
+
+    // Servlet request threads from a fixed platform thread pool or virtual threads, or the reactive profile
+    @Param({"platform", "virtual", "reactive"})
+    private String stack;
+
+    private PostgreSQLContainer<?> postgres;
+    private ConfigurableApplicationContext context;
+    private HttpClient httpClient;
+    private URI baseUri;
+    private UUID[] userIds;
+
+    /**
+     * Counts the responses of the measured bursts by outcome.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Outcomes {
+
+        private long rejected;
+        private long failed;
+
+        /**
+         * Resets the counts before each iteration.
+         */
+        @Setup(Level.Iteration)
+        public void reset() {
+            rejected = 0;
+            failed = 0;
+        }
+
+        /**
+         * Gets the number of requests rejected with 503.
+         *
+         * @return the count
+         */
+        public long rejected() {
+            return rejected;
+        }
+
+        /**
+         * Gets the number of requests answered with another error.
+         *
+         * @return the count
+         */
+        public long failed() {
+            return failed;
+        }
+    }
+
+    /**
+     * Starts PostgreSQL and the application on a random port and seeds the users.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        postgres = new PostgreSQLContainer<>(DockerImageName.parse("postgres:13-alpine"));
+        postgres.start();
+
+        boolean reactive = "reactive".equals(stack);
+        SpringApplicationBuilder application = new SpringApplicationBuilder(SleepApplication.class)
+                .web(reactive ? WebApplicationType.REACTIVE : WebApplicationType.SERVLET)
+                .properties(
+                        "server.port=0",
+                        "spring.threads.virtual.enabled=" + "virtual".equals(stack),
+                        "spring.datasource.url=" + postgres.getJdbcUrl(),
+                        "spring.datasource.username=" + postgres.getUsername(),
+                        "spring.datasource.password=" + postgres.getPassword(),
+                        "sleep.r2dbc.url=" + String.format("r2dbc:postgresql://%s:%d/%s", postgres.getHost(),
+                                postgres.getMappedPort(PostgreSQLContainer.POSTGRESQL_PORT),
+                                postgres.getDatabaseName()),
+                        // R2DBC is on the benchmark classpath for the reactive stack; the servlet stacks run without
+                        // its auto-configuration, like the servlet application, which does not ship it
+                        "spring.autoconfigure.exclude=" + R2dbcAutoConfiguration.class.getName(),
+                        "logging.level.root=WARN");
+        if (reactive) {
+            application.profiles("reactive");
+        }
+        context = application.run();
+
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        userIds = new UUID[USERS];
+        for (int i = 0; i < USERS; i++) {
+            userIds[i] = UUID.randomUUID();
+            jdbcTemplate.update(SEED_USER, userIds[i], DAYS_PER_USER - 1);
+        }
+        // The seed bypasses the service, so the statistics rollups are rebuilt from it
+        context.getBean(SleepLogRollupService.class).rebuildAll();
+        jdbcTemplate.execute("ANALYZE sleep_logs");
+
+        baseUri = URI.create("http://localhost:" + context.getEnvironment().getProperty("local.server.port")
+                + "/api/sleep-logs");
+        httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(REQUEST_TIMEOUT)
+                .build();
+    }
+
+    /**
+     * Stops the application context and PostgreSQL.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+        postgres.stop();
+    }
+
+    /**
+     * Sends one burst of concurrent requests and waits for all of them to be answered.
+     *
+     * @param outcomes the counts of rejected and failed requests
+     * @return the number of successful responses
+     */
+    @Benchmark
+    public int burst(Outcomes outcomes) {
+        List<CompletableFuture<HttpResponse<Void>>> responses = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            responses.add(httpClient.sendAsync(request(i), HttpResponse.BodyHandlers.discarding()));
+        }
+
+        int succeeded = 0;
+        for (CompletableFuture<HttpResponse<Void>> response : responses) {
+            int status = response.join().statusCode();
+            if (status < 300) {
+                succeeded++;
+            } else if (status == 503) {
+                outcomes.rejected++;
+            } else {
+                outcomes.failed++;
+            }
+        }
+        return succeeded;
+    }
+
+    private HttpRequest request(int i) {
+        if (i % 10 == 0) {
+            // A new user each time, so the sleep date never conflicts
+            String body = String.format("{\"sleepDate\":\"%s\",\"bedTime\":\"%s\",\"wakeTime\":\"%s\","
+                            + "\"feeling\":\"GOOD\"}", LocalDate.now(ZoneOffset.UTC),
+                    Instant.now().minus(Duration.ofHours(8)), Instant.now());
+            return HttpRequest.newBuilder(baseUri)
+                    .timeout(REQUEST_TIMEOUT)
+                    .header("X-User-ID", UUID.randomUUID().toString())
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body))
+                    .build();
+        }
+        String path = i % 2 == 0 ? "/latest" : "/statistics";
+        return HttpRequest.newBuilder(URI.create(baseUri + path))
+                .timeout(REQUEST_TIMEOUT)
+                .header("X-User-ID", userIds[ThreadLocalRandom.current().nextInt(USERS)].toString())
+                .GET()
+                .build();
+    }
+}
@@ -0,0 +1,143 @@
+package com.noom.interview.fullstack.sleep.benchmark;
+
+import com.fasterxml.jackson.databind.*;
+import com.noom.interview.fullstack.sleep.domain.dto.*;
+import com.noom.interview.fullstack.sleep.domain.entity.*;
+import com.noom.interview.fullstack.sleep.mapper.*;
+import com.noom.interview.fullstack.sleep.service.impl.SleepLogRules;
+import org.mapstruct.factory.Mappers;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per-request work of the write path before the database: reading a batch of sleep log requests from
+ * JSON, validating them, mapping them to entities with their derived values, and mapping entities back to
+ * responses and statistics with the MapStruct mappers. Batches of 1, 100 and 1000 cover a single create, a typical
+ * sync and the largest batch accepted. Needs no database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SleepLogMappingBenchmark {
+
+    private static final LocalDate START_DATE = LocalDate.of(2024, 1, 1);
+
+    @Param({"1", "100", "1000"})
+    private int batchSize;
+
+    private SleepLogMapper sleepLogMapper;
+    private SleepStatisticsMapper sleepStatisticsMapper;
+    private ObjectMapper jsonMapper;
+    private JavaType requestListType;
+    private List<SleepLogRequest> requests;
+    private List<SleepLog> sleepLogs;
+    private Map<Feeling, Integer> feelingCounts;
+    private DateRange dateRange;
+    private byte[] requestsJson;
+
+    /**
+     * Builds the mappers, the batch of requests, its entities and its JSON payload.
+     *
+     * @throws IOException if the requests cannot be serialized
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        sleepLogMapper = Mappers.getMapper(SleepLogMapper.class);
+        sleepStatisticsMapper = Mappers.getMapper(SleepStatisticsMapper.class);
+        jsonMapper = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+        requestListType = jsonMapper.getTypeFactory().constructCollectionType(List.class, SleepLogRequest.class);
+
+        Feeling[] feelings = Feeling.values();
+        UUID userId = UUID.randomUUID();
+        requests = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            LocalDate sleepDate = START_DATE.minusDays(i);
+            requests.add(SleepLogRequest.builder()
+                    .userId(userId)
+                    .sleepDate(sleepDate)
+                    .bedTime(sleepDate.minusDays(1).atTime(22, i % 60).toInstant(ZoneOffset.UTC))
+                    .wakeTime(sleepDate.atTime(6, i % 60).toInstant(ZoneOffset.UTC))
+                    .feeling(feelings[i % feelings.length])
+                    .build());
+        }
+        sleepLogs = toEntities();
+        feelingCounts = new EnumMap<>(Feeling.class);
+        sleepLogs.forEach(sleepLog -> feelingCounts.merge(sleepLog.getFeeling(), 1, Integer::sum));
+        dateRange = new DateRange(START_DATE.minusDays(batchSize - 1L), START_DATE);
+        requestsJson = jsonMapper.writeValueAsBytes(requests);
+    }
+
+    /**
+     * Reads the batch of requests from JSON, as the batch endpoint's message converter does.
+     *
+     * @return the requests
+     * @throws IOException if the payload cannot be read
+     */
+    @Benchmark
+    public List<SleepLogRequest> readRequestsJson() throws IOException {
+        return jsonMapper.readValue(requestsJson, requestListType);
+    }
+
+    /**
+     * Validates every request of the batch.
+     *
+     * @return the number of requests validated
+     */
+    @Benchmark
+    public int validateRequests() {
+        for (SleepLogRequest request : requests) {
+            SleepLogRules.validateRequest(request);
+        }
+        return requests.size();
+    }
+
+    /**
+     * Maps every request of the batch to an entity and derives its time in bed and times of day.
+     *
+     * @return the entities
+     */
+    @Benchmark
+    public List<SleepLog> toEntities() {
+        List<SleepLog> entities = new ArrayList<>(requests.size());
+        for (SleepLogRequest request : requests) {
+            SleepLog sleepLog = sleepLogMapper.toEntity(request);
+            SleepLogRules.applyDerivedValues(sleepLog);
+            entities.add(sleepLog);
+        }
+        return entities;
+    }
+
+    /**
+     * Maps every entity of the batch to a response.
+     *
+     * @return the responses
+     */
+    @Benchmark
+    public List<SleepLogResponse> toResponses() {
+        List<SleepLogResponse> responses = new ArrayList<>(sleepLogs.size());
+        for (SleepLog sleepLog : sleepLogs) {
+            responses.add(sleepLogMapper.toResponse(sleepLog));
+        }
+        return responses;
+    }
+
+    /**
+     * Maps the entities of the batch to a statistics response, parsing the average times from their strings.
+     *
+     * @return the statistics
+     */
+    @Benchmark
+    public SleepStatisticsResponse toStatisticsResponse() {
+        return sleepStatisticsMapper.toResponse(sleepLogs, dateRange, "22:30:00", "06:30:00", feelingCounts);
+    }
+}
@@ -0,0 +1,178 @@
+package com.noom.interview.fullstack.sleep.benchmark;
+
+import com.noom.interview.fullstack.sleep.SleepApplication;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Compares sleep_logs partitioned by month with the same rows in a single table, at 100 million rows by default:
+ * ten years of daily sleep logs for about 27,000 users. The statistics window read prunes to at most two monthly
+ * partitions, the latest read has to probe every partition, and vacuuming after a day of writes only has to scan
+ * the current month's partition and its index instead of the whole table and its index.
+ * <p>
+ * Seeding takes a long time and needs tens of gigabytes of disk in Docker; pass a smaller row count, e.g.
+ * {@code -PjmhRows=1000000}, for a quick run.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SleepLogPartitionBenchmark {
+
+    private static final int DAYS_PER_USER = 3650;
+    private static final int WINDOW_DAYS = 30;
+    private static final int UPDATED_USERS = 1000;
+    private static final String UNPARTITIONED_TABLE = "sleep_logs_unpartitioned";
+
+    private static final String SEED = "INSERT INTO %s (id, user_id, sleep_date, bed_time, wake_time, "
+            + "total_time_in_bed_minutes, bed_time_of_day_seconds, wake_time_of_day_seconds, feeling, created_at) "
+            + "SELECT nextval('sleep_logs_seq'), u.user_id, CURRENT_DATE - d, "
+            + "(CURRENT_DATE - d - 1) + TIME '22:30', (CURRENT_DATE - d) + TIME '06:30', "
+            + "480, 81000, 23400, (ARRAY['BAD', 'OK', 'GOOD'])[1 + d %% 3], now() "
+            + "FROM unnest(?::uuid[]) AS u(user_id) CROSS JOIN generate_series(0, %d) AS d";
+
+    private static final String WINDOW_QUERY = "SELECT sleep_date, bed_time, wake_time, total_time_in_bed_minutes, "
+            + "feeling FROM %s WHERE user_id = ? AND sleep_date BETWEEN ? AND ? ORDER BY sleep_date";
+
+    private static final String LATEST_QUERY = "SELECT sleep_date, bed_time, wake_time, total_time_in_bed_minutes, "
+            + "feeling FROM %s WHERE user_id = ? ORDER BY sleep_date DESC LIMIT 1";
+
+    // A day of writes: one sleep log of each of a thousand users is replaced, leaving dead rows to vacuum
+    private static final String UPDATE_TODAY = "UPDATE %s SET created_at = now() "
+            + "WHERE user_id = ANY(?::uuid[]) AND sleep_date = CURRENT_DATE";
+
+    @Param({"100000000"})
+    private long rows;
+
+    // Rows in the monthly partitions of sleep_logs, or in a single table
+    @Param({"partitioned", "unpartitioned"})
+    private String layout;
+
+    private PostgreSQLContainer<?> postgres;
+    private ConfigurableApplicationContext context;
+    private JdbcTemplate jdbcTemplate;
+    private String[] userIds;
+    private String table;
+    private String vacuumedTable;
+    private LocalDate windowStart;
+    private LocalDate windowEnd;
+
+    /**
+     * Starts PostgreSQL and the application context, which migrates the schema, and seeds the rows into the
+     * layout under test.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        postgres = new PostgreSQLContainer<>(DockerImageName.parse("postgres:13-alpine"))
+                // Seeding speed only; the benchmarks themselves do not write WAL-heavy work
+                .withCommand("postgres", "-c", "fsync=off", "-c", "synchronous_commit=off",
+                        "-c", "full_page_writes=off", "-c", "max_wal_size=8GB", "-c", "shared_buffers=1GB",
+                        "-c", "autovacuum=off");
+        postgres.start();
+
+        context = new SpringApplicationBuilder(SleepApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=" + postgres.getJdbcUrl(),
+                        "spring.datasource.username=" + postgres.getUsername(),
+                        "spring.datasource.password=" + postgres.getPassword(),
+                        // The benchmark classpath carries R2DBC for SleepLogLoadBenchmark; keep the JDBC data source
+                        "spring.autoconfigure.exclude=" + R2dbcAutoConfiguration.class.getName(),
+                        "logging.level.root=WARN")
+                .run();
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+
+        windowEnd = LocalDate.now();
+        windowStart = windowEnd.minusDays(WINDOW_DAYS - 1L);
+        userIds = new String[(int) Math.max(1, rows / DAYS_PER_USER)];
+        for (int i = 0; i < userIds.length; i++) {
+            userIds[i] = UUID.randomUUID().toString();
+        }
+
+        if ("partitioned".equals(layout)) {
+            table = "sleep_logs";
+            vacuumedTable = "sleep_logs_" + windowEnd.format(DateTimeFormatter.ofPattern("'y'yyyy'm'MM"));
+            jdbcTemplate.queryForObject("SELECT create_sleep_log_partitions(?, ?)", Integer.class,
+                    windowEnd.minusDays(DAYS_PER_USER), windowEnd);
+            seed();
+        } else {
+            table = UNPARTITIONED_TABLE;
+            vacuumedTable = UNPARTITIONED_TABLE;
+            jdbcTemplate.execute("CREATE TABLE " + UNPARTITIONED_TABLE
+                    + " (LIKE sleep_logs INCLUDING DEFAULTS INCLUDING CONSTRAINTS)");
+            seed();
+            // Indexed after loading, like the single table was before partitioning
+            jdbcTemplate.execute("ALTER TABLE " + UNPARTITIONED_TABLE + " ADD PRIMARY KEY (id)");
+            jdbcTemplate.execute("CREATE UNIQUE INDEX ON " + UNPARTITIONED_TABLE + " (user_id, sleep_date DESC) "
+                    + "INCLUDE (bed_time, wake_time, total_time_in_bed_minutes, feeling)");
+        }
+        jdbcTemplate.execute("VACUUM ANALYZE " + table);
+    }
+
+    private void seed() {
+        int batch = 100;
+        for (int from = 0; from < userIds.length; from += batch) {
+            String[] users = Arrays.copyOfRange(userIds, from, Math.min(from + batch, userIds.length));
+            jdbcTemplate.update(String.format(SEED, table, DAYS_PER_USER - 1), (Object) users);
+        }
+    }
+
+    /**
+     * Stops the application context and PostgreSQL.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+        postgres.stop();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public List<Map<String, Object>> statisticsWindow() {
+        return jdbcTemplate.queryForList(String.format(WINDOW_QUERY, table), nextUserId(), windowStart, windowEnd);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public List<Map<String, Object>> latest() {
+        return jdbcTemplate.queryForList(String.format(LATEST_QUERY, table), nextUserId());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 5)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void vacuumAfterDayOfWrites(DayOfWrites dayOfWrites) {
+        jdbcTemplate.execute("VACUUM " + vacuumedTable);
+    }
+
+    private UUID nextUserId() {
+        return UUID.fromString(userIds[ThreadLocalRandom.current().nextInt(userIds.length)]);
+    }
+
+    /**
+     * Leaves a day of dead rows for each vacuum to clean up, outside of the measured time.
+     */
+    @State(Scope.Thread)
+    public static class DayOfWrites {
+
+        @Setup(Level.Invocation)
+        public void writeDay(SleepLogPartitionBenchmark benchmark) {
+            String[] users = Arrays.copyOf(benchmark.userIds, Math.min(UPDATED_USERS, benchmark.userIds.length));
+            benchmark.jdbcTemplate.update(String.format(UPDATE_TODAY, benchmark.table), (Object) users);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.noom.interview.fullstack.sleep.benchmark;
+
+import com.fasterxml.jackson.databind.*;
+import com.noom.interview.fullstack.sleep.domain.dto.*;
+import com.noom.interview.fullstack.sleep.domain.entity.Feeling;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares writing and reading a page of sleep logs as JSON and as CBOR, with mappers configured like the
+ * application's message converters. Needs no database. The payload size of each format is printed once per
+ * fork; the gc profiler reports the allocation per operation next to the latency.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SleepLogPayloadBenchmark {
+
+    private static final LocalDate START_DATE = LocalDate.of(2024, 1, 1);
+
+    @Param({"20", "100"})
+    private int pageSize;
+
+    private ObjectMapper jsonMapper;
+    private ObjectMapper cborMapper;
+    private SleepLogPageResponse page;
+    private byte[] json;
+    private byte[] cbor;
+
+    /**
+     * Builds the mappers and the page, and serializes it once in each format for the read benchmarks.
+     *
+     * @throws IOException if the page cannot be serialized
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        // Spring Boot writes dates as ISO strings in both formats
+        jsonMapper = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+        cborMapper = Jackson2ObjectMapperBuilder.cbor()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+
+        Feeling[] feelings = Feeling.values();
+        List<SleepLogResponse> items = new ArrayList<>(pageSize);
+        for (int i = 0; i < pageSize; i++) {
+            LocalDate sleepDate = START_DATE.minusDays(i);
+            items.add(SleepLogResponse.builder()
+                    .sleepDate(sleepDate)
+                    .bedTime(sleepDate.minusDays(1).atTime(22, i % 60).toInstant(ZoneOffset.UTC))
+                    .wakeTime(sleepDate.atTime(6, i % 60).toInstant(ZoneOffset.UTC))
+                    .totalTimeInBedMinutes(480)
+                    .feeling(feelings[i % feelings.length])
+                    .build());
+        }
+        page = new SleepLogPageResponse(items, "MToyMDIzLTEyLTEy");
+
+        json = jsonMapper.writeValueAsBytes(page);
+        cbor = cborMapper.writeValueAsBytes(page);
+        System.out.printf("Page of %d sleep logs: JSON %d bytes, CBOR %d bytes%n", pageSize, json.length, cbor.length);
+    }
+
+    /**
+     * Serializes the page as JSON.
+     *
+     * @return the payload
+     * @throws IOException if the page cannot be serialized
+     */
+    @Benchmark
+    public byte[] writeJson() throws IOException {
+        return jsonMapper.writeValueAsBytes(page);
+    }
+
+    /**
+     * Serializes the page as CBOR.
+     *
+     * @return the payload
+     * @throws IOException if the page cannot be serialized
+     */
+    @Benchmark
+    public byte[] writeCbor() throws IOException {
+        return cborMapper.writeValueAsBytes(page);
+    }
+
+    /**
+     * Deserializes the page from JSON.
+     *
+     * @return the page
+     * @throws IOException if the payload cannot be read
+     */
+    @Benchmark
+    public SleepLogPageResponse readJson() throws IOException {
+        return jsonMapper.readValue(json, SleepLogPageResponse.class);
+    }
+
+    /**
+     * Deserializes the page from CBOR.
+     *
+     * @return the page
+     * @throws IOException if the payload cannot be read
+     */
+    @Benchmark
+    public SleepLogPageResponse readCbor() throws IOException {
+        return cborMapper.readValue(cbor, SleepLogPageResponse.class);
+    }
+}
@@ -0,0 +1,132 @@
+package com.noom.interview.fullstack.sleep.benchmark;
+
+import com.noom.interview.fullstack.sleep.SleepApplication;
+import com.noom.interview.fullstack.sleep.domain.dto.SleepLogResponse;
+import com.noom.interview.fullstack.sleep.mapper.SleepLogMapper;
+import com.noom.interview.fullstack.sleep.repository.SleepLogRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Compares reading sleep logs as managed entities mapped to responses with reading them through constructor
+ * projections straight into responses. Run with {@code ./gradlew jmh}; the gc profiler reports the allocation
+ * rate per operation ({@code gc.alloc.rate.norm}) next to the latency.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SleepLogReadBenchmark {
+
+    private static final int USERS = 200;
+    private static final int DAYS_PER_USER = 365;
+    private static final int RANGE_DAYS = 30;
+
+    private static final String SEED_USER = "INSERT INTO sleep_logs (id, user_id, sleep_date, bed_time, wake_time, "
+            + "total_time_in_bed_minutes, bed_time_of_day_seconds, wake_time_of_day_seconds, feeling, created_at) "
+            + "SELECT nextval('sleep_logs_seq'), ?, CURRENT_DATE - d, "
+            + "(CURRENT_DATE - d - 1) + TIME '22:30', (CURRENT_DATE - d) + TIME '06:30', "
+            + "480, 81000, 23400, (ARRAY['BAD', 'OK', 'GOOD'])[1 + d % 3], now() "
+            + "FROM generate_series(0, ?) AS d";
+
+    private PostgreSQLContainer<?> postgres;
+    private ConfigurableApplicationContext context;
+    private SleepLogRepository sleepLogRepository;
+    private SleepLogMapper sleepLogMapper;
+    private TransactionTemplate readOnlyTransaction;
+    private UUID[] userIds;
+    private LocalDate rangeStart;
+    private LocalDate rangeEnd;
+
+    /**
+     * Starts PostgreSQL and the application context and seeds a year of sleep logs per user.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        postgres = new PostgreSQLContainer<>(DockerImageName.parse("postgres:13-alpine"));
+        postgres.start();
+
+        context = new SpringApplicationBuilder(SleepApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=" + postgres.getJdbcUrl(),
+                        "spring.datasource.username=" + postgres.getUsername(),
+                        "spring.datasource.password=" + postgres.getPassword(),
+                        // Only JDBC is measured here, though R2DBC is on the benchmark classpath
+                        "spring.autoconfigure.exclude=" + R2dbcAutoConfiguration.class.getName(),
+                        "logging.level.root=WARN")
+                .run();
+
+        sleepLogRepository = context.getBean(SleepLogRepository.class);
+        sleepLogMapper = context.getBean(SleepLogMapper.class);
+        readOnlyTransaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        readOnlyTransaction.setReadOnly(true);
+
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        userIds = new UUID[USERS];
+        for (int i = 0; i < USERS; i++) {
+            userIds[i] = UUID.randomUUID();
+            jdbcTemplate.update(SEED_USER, userIds[i], DAYS_PER_USER - 1);
+        }
+        jdbcTemplate.execute("ANALYZE sleep_logs");
+
+        rangeEnd = LocalDate.now();
+        rangeStart = rangeEnd.minusDays(RANGE_DAYS);
+    }
+
+    /**
+     * Stops the application context and PostgreSQL.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+        postgres.stop();
+    }
+
+    @Benchmark
+    public Optional<SleepLogResponse> latestViaEntity() {
+        UUID userId = nextUserId();
+        return readOnlyTransaction.execute(status ->
+                sleepLogRepository.findFirstByUserIdOrderBySleepDateDesc(userId).map(sleepLogMapper::toResponse));
+    }
+
+    @Benchmark
+    public Optional<SleepLogResponse> latestViaProjection() {
+        UUID userId = nextUserId();
+        return readOnlyTransaction.execute(status -> sleepLogRepository.findLatestResponseByUserId(userId));
+    }
+
+    @Benchmark
+    public List<SleepLogResponse> rangeViaEntity() {
+        UUID userId = nextUserId();
+        return readOnlyTransaction.execute(status ->
+                sleepLogRepository.findByUserIdAndSleepDateBetween(userId, rangeStart, rangeEnd).stream()
+                        .map(sleepLogMapper::toResponse)
+                        .toList());
+    }
+
+    @Benchmark
+    public List<SleepLogResponse> rangeViaProjection() {
+        UUID userId = nextUserId();
+        return readOnlyTransaction.execute(status ->
+                sleepLogRepository.findResponsesByUserIdAndSleepDateBetween(userId, rangeStart, rangeEnd));
+    }
+
+    private UUID nextUserId() {
+        return userIds[ThreadLocalRandom.current().nextInt(USERS)];
+    }
+}
@@ -0,0 +1,225 @@
+package com.noom.interview.fullstack.sleep.benchmark;
+
+import com.fasterxml.jackson.databind.*;
+import com.noom.interview.fullstack.sleep.config.ShardRouter;
+import com.noom.interview.fullstack.sleep.domain.dto.*;
+import com.noom.interview.fullstack.sleep.domain.entity.*;
+import com.noom.interview.fullstack.sleep.service.SleepLogRollupService;
+import com.noom.interview.fullstack.sleep.service.impl.*;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Measures {@link SleepLogServiceImpl#getSleepStatistics} without the cache, the transaction and the database: the
+ * rollups are held in memory as the running totals the database stores, so the score is the service's own work of
+ * subtracting two rollups and turning the sums and histograms into a response. Also measures serializing the
+ * response as JSON, as the controller does. Needs no database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SleepLogServiceBenchmark {
+
+    // Every rollup holds three histograms, so the stub keeps few users to stay within a default heap
+    private static final int USERS = 16;
+
+    @Param({"30", "365", "3650"})
+    private int historyDays;
+
+    private SleepLogServiceImpl sleepLogService;
+    private ObjectMapper jsonMapper;
+    private UUID[] userIds;
+    private LocalDate today;
+    private SleepStatisticsResponse statistics;
+    private int next;
+
+    /**
+     * Builds the rollups of every user's history, ending today, and the service reading them.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        today = LocalDate.now();
+        InMemorySleepLogRollupService rollups = new InMemorySleepLogRollupService();
+        Feeling[] feelings = Feeling.values();
+        Random random = new Random(42);
+        userIds = new UUID[USERS];
+        for (int user = 0; user < USERS; user++) {
+            userIds[user] = UUID.randomUUID();
+            for (int day = historyDays - 1; day >= 0; day--) {
+                LocalDate sleepDate = today.minusDays(day);
+                Instant wakeTime = sleepDate.atTime(6, random.nextInt(90)).toInstant(ZoneOffset.UTC);
+                SleepLog sleepLog = SleepLog.builder()
+                        .userId(userIds[user])
+                        .sleepDate(sleepDate)
+                        .bedTime(wakeTime.minus(Duration.ofMinutes(360 + random.nextInt(180))))
+                        .wakeTime(wakeTime)
+                        .feeling(feelings[random.nextInt(feelings.length)])
+                        .build();
+                SleepLogRules.applyDerivedValues(sleepLog);
+                rollups.add(sleepLog);
+            }
+        }
+
+        jsonMapper = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+        // Only the rollups and the shard router are used by the statistics reads
+        sleepLogService = new SleepLogServiceImpl(null, null, rollups, null, jsonMapper,
+                new ShardRouter(List.of(), 0, 256), null, null, null);
+        statistics = sleepLogService.getSleepStatistics(userIds[0]);
+    }
+
+    /**
+     * Reads the 30-day statistics of the next user, as a cache miss of {@code GET /api/sleep-logs/statistics} does.
+     *
+     * @return the statistics
+     */
+    @Benchmark
+    public SleepStatisticsResponse statistics30Days() {
+        return sleepLogService.getSleepStatistics(nextUserId());
+    }
+
+    /**
+     * Reads the statistics of the next user's whole history.
+     *
+     * @return the statistics
+     */
+    @Benchmark
+    public SleepStatisticsResponse statisticsWholeHistory() {
+        return sleepLogService.getSleepStatistics(nextUserId(), today.minusDays(historyDays - 1L), today);
+    }
+
+    /**
+     * Serializes a statistics response as JSON.
+     *
+     * @return the payload
+     * @throws IOException if the response cannot be serialized
+     */
+    @Benchmark
+    public byte[] writeStatisticsJson() throws IOException {
+        return jsonMapper.writeValueAsBytes(statistics);
+    }
+
+    private UUID nextUserId() {
+        next = next + 1 < USERS ? next + 1 : 0;
+        return userIds[next];
+    }
+
+    /**
+     * Rollups of the benchmark users held in memory: per user and date the running totals up to and including that
+     * date, as in sleep_log_daily_rollups, so a range is the difference of two entries.
+     */
+    private static final class InMemorySleepLogRollupService implements SleepLogRollupService {
+
+        private final Map<UUID, TreeMap<LocalDate, SleepStatisticsAggregate>> runningTotals = new HashMap<>();
+
+        /**
+         * Adds a sleep log, which must be newer than every earlier sleep log of the user.
+         */
+        private void add(SleepLog sleepLog) {
+            TreeMap<LocalDate, SleepStatisticsAggregate> totals =
+                    runningTotals.computeIfAbsent(sleepLog.getUserId(), userId -> new TreeMap<>());
+            Map.Entry<LocalDate, SleepStatisticsAggregate> last = totals.lastEntry();
+            SleepStatisticsAggregate total = last != null ? copy(last.getValue()) : empty(sleepLog.getUserId());
+
+            total.setLogCount(total.getLogCount() + 1);
+            total.setTotalTimeInBedMinutes(total.getTotalTimeInBedMinutes() + sleepLog.getTotalTimeInBedMinutes());
+            total.setBedTimeSeconds(total.getBedTimeSeconds() + sleepLog.getBedTimeOfDaySeconds());
+            total.setWakeTimeSeconds(total.getWakeTimeSeconds() + sleepLog.getWakeTimeOfDaySeconds());
+            switch (sleepLog.getFeeling()) {
+                case BAD -> total.setBadCount(total.getBadCount() + 1);
+                case OK -> total.setOkCount(total.getOkCount() + 1);
+                case GOOD -> total.setGoodCount(total.getGoodCount() + 1);
+                default -> throw new IllegalArgumentException("Unknown feeling " + sleepLog.getFeeling());
+            }
+            total.getTimeInBedHistogram()[SleepHistograms.timeInBedBucket(sleepLog.getTotalTimeInBedMinutes())]++;
+            total.getBedTimeHistogram()[SleepHistograms.timeOfDayBucket(sleepLog.getBedTimeOfDaySeconds())]++;
+            total.getWakeTimeHistogram()[SleepHistograms.timeOfDayBucket(sleepLog.getWakeTimeOfDaySeconds())]++;
+            totals.put(sleepLog.getSleepDate(), total);
+        }
+
+        @Override
+        public SleepStatisticsAggregate aggregate(UUID userId, LocalDate from, LocalDate to) {
+            TreeMap<LocalDate, SleepStatisticsAggregate> totals = runningTotals.getOrDefault(userId, new TreeMap<>());
+            Map.Entry<LocalDate, SleepStatisticsAggregate> upTo = totals.floorEntry(to);
+            Map.Entry<LocalDate, SleepStatisticsAggregate> before = totals.lowerEntry(from);
+            SleepStatisticsAggregate aggregate = upTo != null ? copy(upTo.getValue()) : empty(userId);
+            if (before != null) {
+                subtract(aggregate, before.getValue());
+            }
+            aggregate.setDateRange(new DateRange(from, to));
+            return aggregate;
+        }
+
+        @Override
+        public void recordSleepLogs(List<SleepLog> sleepLogs) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void aggregateEach(Collection<UUID> userIds, LocalDate from, LocalDate to,
+                                  Consumer<SleepStatisticsAggregate> consumer) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<SleepStatisticsAggregate> aggregateByBucket(UUID userId, TrendBucket bucket, LocalDate from,
+                                                                LocalDate to) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int rebuildAll() {
+            throw new UnsupportedOperationException();
+        }
+
+        private static SleepStatisticsAggregate empty(UUID userId) {
+            return SleepStatisticsAggregate.builder()
+                    .userId(userId)
+                    .timeInBedHistogram(new int[SleepHistograms.BUCKETS])
+                    .bedTimeHistogram(new int[SleepHistograms.BUCKETS])
+                    .wakeTimeHistogram(new int[SleepHistograms.BUCKETS])
+                    .build();
+        }
+
+        private static SleepStatisticsAggregate copy(SleepStatisticsAggregate aggregate) {
+            return SleepStatisticsAggregate.builder()
+                    .userId(aggregate.getUserId())
+                    .logCount(aggregate.getLogCount())
+                    .totalTimeInBedMinutes(aggregate.getTotalTimeInBedMinutes())
+                    .bedTimeSeconds(aggregate.getBedTimeSeconds())
+                    .wakeTimeSeconds(aggregate.getWakeTimeSeconds())
+                    .badCount(aggregate.getBadCount())
+                    .okCount(aggregate.getOkCount())
+                    .goodCount(aggregate.getGoodCount())
+                    .timeInBedHistogram(aggregate.getTimeInBedHistogram().clone())
+                    .bedTimeHistogram(aggregate.getBedTimeHistogram().clone())
+                    .wakeTimeHistogram(aggregate.getWakeTimeHistogram().clone())
+                    .build();
+        }
+
+        private static void subtract(SleepStatisticsAggregate target, SleepStatisticsAggregate source) {
+            target.setLogCount(target.getLogCount() - source.getLogCount());
+            target.setTotalTimeInBedMinutes(target.getTotalTimeInBedMinutes() - source.getTotalTimeInBedMinutes());
+            target.setBedTimeSeconds(target.getBedTimeSeconds() - source.getBedTimeSeconds());
+            target.setWakeTimeSeconds(target.getWakeTimeSeconds() - source.getWakeTimeSeconds());
+            target.setBadCount(target.getBadCount() - source.getBadCount());
+            target.setOkCount(target.getOkCount() - source.getOkCount());
+            target.setGoodCount(target.getGoodCount() - source.getGoodCount());
+            for (int i = 0; i < SleepHistograms.BUCKETS; i++) {
+                target.getTimeInBedHistogram()[i] -= source.getTimeInBedHistogram()[i];
+                target.getBedTimeHistogram()[i] -= source.getBedTimeHistogram()[i];
+                target.getWakeTimeHistogram()[i] -= source.getWakeTimeHistogram()[i];
+            }
+        }
+    }
+}
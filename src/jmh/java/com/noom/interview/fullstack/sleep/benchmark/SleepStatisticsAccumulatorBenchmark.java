@@ -0,0 +1,120 @@
+package com.noom.interview.fullstack.sleep.benchmark;
+
+import com.noom.interview.fullstack.sleep.domain.dto.*;
+import com.noom.interview.fullstack.sleep.domain.entity.*;
+import com.noom.interview.fullstack.sleep.service.impl.SleepStatisticsAccumulator;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Compares folding sleep logs into statistics with one stream per statistic, intermediate time lists and a boxed
+ * feeling map against a single pass over a {@link SleepStatisticsAccumulator}. Needs no database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SleepStatisticsAccumulatorBenchmark {
+
+    private static final LocalDate START_DATE = LocalDate.of(2024, 1, 1);
+
+    @Param({"30", "365", "3650"})
+    private int logCount;
+
+    private List<SleepLog> sleepLogs;
+    private DateRange dateRange;
+
+    /**
+     * Builds the sleep logs to fold.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        Feeling[] feelings = Feeling.values();
+        sleepLogs = new ArrayList<>(logCount);
+        for (int i = 0; i < logCount; i++) {
+            LocalDate sleepDate = START_DATE.plusDays(i);
+            LocalTime bedTime = LocalTime.of(22, i % 60);
+            LocalTime wakeTime = LocalTime.of(6, i % 60);
+            sleepLogs.add(SleepLog.builder()
+                    .userId(UUID.randomUUID())
+                    .sleepDate(sleepDate)
+                    .bedTime(sleepDate.minusDays(1).atTime(bedTime).toInstant(ZoneOffset.UTC))
+                    .wakeTime(sleepDate.atTime(wakeTime).toInstant(ZoneOffset.UTC))
+                    .totalTimeInBedMinutes(420 + i % 90)
+                    .bedTimeOfDaySeconds(bedTime.toSecondOfDay())
+                    .wakeTimeOfDaySeconds(wakeTime.toSecondOfDay())
+                    .feeling(feelings[i % feelings.length])
+                    .build());
+        }
+        dateRange = new DateRange(START_DATE, START_DATE.plusDays(logCount - 1L));
+    }
+
+    /**
+     * Walks the logs once per statistic, collecting the times into lists and the feelings into a boxed map.
+     *
+     * @return the statistics
+     */
+    @Benchmark
+    public SleepStatisticsResponse multiPassStreams() {
+        double averageMinutes = sleepLogs.stream()
+                .mapToInt(SleepLog::getTotalTimeInBedMinutes)
+                .average()
+                .orElse(0.0);
+        List<LocalTime> bedTimes = sleepLogs.stream()
+                .map(sleepLog -> LocalTime.ofSecondOfDay(sleepLog.getBedTimeOfDaySeconds()))
+                .collect(Collectors.toList());
+        List<LocalTime> wakeTimes = sleepLogs.stream()
+                .map(sleepLog -> LocalTime.ofSecondOfDay(sleepLog.getWakeTimeOfDaySeconds()))
+                .collect(Collectors.toList());
+        Map<Feeling, Integer> feelingCounts = sleepLogs.stream()
+                .collect(Collectors.groupingBy(SleepLog::getFeeling, Collectors.summingInt(sleepLog -> 1)));
+
+        SleepStatisticsResponse response = new SleepStatisticsResponse();
+        response.setDateRange(dateRange);
+        response.setAverageTotalTimeInBedMinutes(averageMinutes);
+        response.setAverageBedTime(averageTime(bedTimes));
+        response.setAverageWakeTime(averageTime(wakeTimes));
+        response.setFeelingCounts(feelingCounts);
+        return response;
+    }
+
+    /**
+     * Folds the logs once into a primitive accumulator.
+     *
+     * @return the statistics
+     */
+    @Benchmark
+    public SleepStatisticsResponse singlePassAccumulator() {
+        SleepStatisticsAccumulator accumulator = new SleepStatisticsAccumulator();
+        for (SleepLog sleepLog : sleepLogs) {
+            accumulator.add(sleepLog);
+        }
+        return accumulator.toResponse(dateRange);
+    }
+
+    /**
+     * Folds the logs with a parallel stream, merging the accumulators of the stream segments.
+     *
+     * @return the statistics
+     */
+    @Benchmark
+    public SleepStatisticsResponse parallelAccumulator() {
+        return sleepLogs.parallelStream()
+                .collect(SleepStatisticsAccumulator.collector())
+                .toResponse(dateRange);
+    }
+
+    private static LocalTime averageTime(List<LocalTime> times) {
+        long averageSeconds = (long) times.stream()
+                .mapToInt(LocalTime::toSecondOfDay)
+                .average()
+                .orElse(0.0);
+        return LocalTime.ofSecondOfDay(averageSeconds);
+    }
+}
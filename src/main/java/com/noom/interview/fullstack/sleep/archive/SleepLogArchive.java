@@ -0,0 +1,265 @@
+package com.noom.interview.fullstack.sleep.archive;
+
+import com.noom.interview.fullstack.sleep.domain.entity.SleepLog;
+import org.slf4j.*;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.*;
+import java.util.stream.Stream;
+
+/**
+ * Cold tier of the sleep logs: months moved out of sleep_logs live on in one {@link SleepLogSegment} file per
+ * month and shard, in a directory shared by every instance of the application. Reads look up a user in the segments
+ * of every shard, so users keep their archived history across resharding, and merge the months in date order.
+ * <p>
+ * The directory is rescanned at most once per refresh interval, and right after this instance archived a month.
+ * Another instance's archival can therefore take up to the refresh interval to become visible; until then, readers
+ * merging the archive with sleep_logs may briefly miss a month that was just moved. Only the first scan is waited
+ * for: while one thread rescans, the others keep reading the previous scan. A rescan maps replaced segment files
+ * again and drops the segments of replaced and removed files, whichever instance replaced them.
+ */
+@Component
+public class SleepLogArchive {
+
+    /**
+     * Constraint that marks the emptied partition of an archived month, so that no sleep log can be added to it.
+     */
+    public static final String ARCHIVED_PARTITION_CONSTRAINT = "ck_sleeplogs_archived";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SleepLogArchive.class);
+
+    private static final Pattern SEGMENT_FILE = Pattern.compile("sleep_logs_y(\\d{4})m(\\d{2})\\.shard(\\d+)\\.seg");
+    private static final DateTimeFormatter SEGMENT_MONTH = DateTimeFormatter.ofPattern("'y'yyyy'm'MM");
+
+    private final Path directory;
+    private final long refreshIntervalNanos;
+    // Guards the scans; a lock rather than a monitor, so that virtual threads waiting for the first scan unmount
+    private final ReentrantLock refreshLock = new ReentrantLock();
+
+    // The segments of the last scan by file, guarded by refreshLock
+    private Map<Path, SleepLogSegment> openSegments = Map.of();
+    private volatile NavigableMap<LocalDate, List<SleepLogSegment>> segmentsByMonth = new TreeMap<>();
+    private volatile long refreshedAt;
+    private volatile boolean refreshed;
+
+    /**
+     * Creates the archive.
+     *
+     * @param directory the directory of the segment files
+     * @param refreshInterval how long a scan of the directory is reused
+     */
+    public SleepLogArchive(@Value("${sleep.archive.directory:sleep-archive}") String directory,
+                           @Value("${sleep.archive.refresh-interval:1m}") Duration refreshInterval) {
+        this.directory = Path.of(directory);
+        this.refreshIntervalNanos = refreshInterval.toNanos();
+    }
+
+    /**
+     * Returns the file a shard's segment of a month is written to, creating the directory if needed.
+     *
+     * @param shard the shard the month is archived from
+     * @param month the first day of the month
+     * @return the segment file
+     * @throws IOException if the directory cannot be created
+     */
+    public Path segmentFile(int shard, LocalDate month) throws IOException {
+        Files.createDirectories(directory);
+        return directory.resolve("sleep_logs_" + month.format(SEGMENT_MONTH) + ".shard" + shard + ".seg");
+    }
+
+    /**
+     * Tells whether the sleep logs of a date's month are archived, on any shard.
+     *
+     * @param sleepDate the date
+     * @return true if the month has a segment
+     */
+    public boolean isArchived(LocalDate sleepDate) {
+        return segments().containsKey(sleepDate.withDayOfMonth(1));
+    }
+
+    /**
+     * Rejects a sleep log of an archived month. Archived months are read-only: their partitions of sleep_logs
+     * accept no rows, and a new sleep log there could not be told apart from an archived one of the same date.
+     *
+     * @param sleepDate the date of the sleep log
+     * @throws IllegalArgumentException if the month is archived
+     */
+    public void checkNotArchived(LocalDate sleepDate) {
+        if (isArchived(sleepDate)) {
+            throw new IllegalArgumentException(String.format(
+                    "Sleep logs of %s are archived and cannot be added", YearMonth.from(sleepDate)));
+        }
+    }
+
+    /**
+     * Finds a user's archived sleep logs within a date range.
+     *
+     * @param userId the ID of the user
+     * @param from the start date (inclusive)
+     * @param to the end date (inclusive)
+     * @return the sleep logs in date order
+     */
+    public List<SleepLog> findByUserIdAndSleepDateBetween(UUID userId, LocalDate from, LocalDate to) {
+        List<SleepLog> sleepLogs = new ArrayList<>();
+        segments().subMap(from.withDayOfMonth(1), true, to.withDayOfMonth(1), true).values()
+                .forEach(segments -> sleepLogs.addAll(readMonth(segments, userId, from, to)));
+        return sleepLogs;
+    }
+
+    /**
+     * Finds a user's newest archived sleep logs before a date, reading one month after the other until the limit
+     * is reached.
+     *
+     * @param userId the ID of the user
+     * @param before the date the sleep logs are before (exclusive), or null for the newest ones
+     * @param limit the maximum number of sleep logs
+     * @return the sleep logs, newest first
+     */
+    public List<SleepLog> findByUserIdAndSleepDateBefore(UUID userId, LocalDate before, int limit) {
+        NavigableMap<LocalDate, List<SleepLogSegment>> months = before == null
+                ? segments().descendingMap()
+                : segments().headMap(before.withDayOfMonth(1), true).descendingMap();
+        LocalDate to = before != null ? before.minusDays(1) : null;
+
+        List<SleepLog> sleepLogs = new ArrayList<>(limit);
+        for (List<SleepLogSegment> segments : months.values()) {
+            List<SleepLog> month = readMonth(segments, userId, null, to);
+            for (int i = month.size() - 1; i >= 0 && sleepLogs.size() < limit; i--) {
+                sleepLogs.add(month.get(i));
+            }
+            if (sleepLogs.size() == limit) {
+                break;
+            }
+        }
+        return sleepLogs;
+    }
+
+    /**
+     * Finds a user's newest archived sleep log.
+     *
+     * @param userId the ID of the user
+     * @return the sleep log, or empty if the user has none in the archive
+     */
+    public Optional<SleepLog> findLatestByUserId(UUID userId) {
+        return findByUserIdAndSleepDateBefore(userId, null, 1).stream().findFirst();
+    }
+
+    /**
+     * Streams a user's whole archived history in date order. Months are read lazily as the stream advances, so
+     * only one month of the user is held at a time.
+     *
+     * @param userId the ID of the user
+     * @return the sleep logs in date order
+     */
+    public Stream<SleepLog> streamByUserId(UUID userId) {
+        return segments().values().stream()
+                .flatMap(segments -> readMonth(segments, userId, null, null).stream());
+    }
+
+    /**
+     * Rescans the directory, mapping new and replaced segment files and dropping the segments of replaced and
+     * removed ones.
+     */
+    public void refresh() {
+        refreshLock.lock();
+        try {
+            scan();
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    private NavigableMap<LocalDate, List<SleepLogSegment>> segments() {
+        if (isStale()) {
+            if (refreshed) {
+                // Another thread is rescanning; its previous scan is good enough in the meantime
+                if (!refreshLock.tryLock()) {
+                    return segmentsByMonth;
+                }
+            } else {
+                refreshLock.lock();
+            }
+            try {
+                // Threads that waited for another thread's scan reuse it
+                if (isStale()) {
+                    scan();
+                }
+            } finally {
+                refreshLock.unlock();
+            }
+        }
+        return segmentsByMonth;
+    }
+
+    private void scan() {
+        NavigableMap<LocalDate, List<SleepLogSegment>> scanned = new TreeMap<>();
+        Map<Path, SleepLogSegment> mapped = new HashMap<>();
+        if (Files.isDirectory(directory)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.seg")) {
+                for (Path file : files) {
+                    Matcher matcher = SEGMENT_FILE.matcher(file.getFileName().toString());
+                    SleepLogSegment segment = matcher.matches() ? open(file) : null;
+                    if (segment != null) {
+                        LocalDate month = LocalDate.of(Integer.parseInt(matcher.group(1)),
+                                Integer.parseInt(matcher.group(2)), 1);
+                        scanned.computeIfAbsent(month, m -> new ArrayList<>()).add(segment);
+                        mapped.put(file, segment);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Sleep log archive cannot be read: " + directory, e);
+            }
+        }
+
+        // Segments of replaced and removed files are not carried over; their mappings go with the last reader
+        openSegments = mapped;
+        segmentsByMonth = scanned;
+        refreshedAt = System.nanoTime();
+        refreshed = true;
+    }
+
+    private boolean isStale() {
+        return !refreshed || System.nanoTime() - refreshedAt > refreshIntervalNanos;
+    }
+
+    /**
+     * Reuses the segment of the last scan if it still maps the file at its path, and maps the file otherwise.
+     */
+    private SleepLogSegment open(Path file) {
+        try {
+            SleepLogSegment segment = openSegments.get(file);
+            if (segment != null && segment.isMappingOf(Files.readAttributes(file, BasicFileAttributes.class))) {
+                return segment;
+            }
+            return SleepLogSegment.open(file);
+        } catch (IOException e) {
+            LOGGER.error("Skipping unreadable sleep log segment {}", file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Reads a user's sleep logs of one month from the segments of every shard. A user can have rows in the segments
+     * of two shards after resharding; each date is then taken once.
+     */
+    private static List<SleepLog> readMonth(List<SleepLogSegment> segments, UUID userId, LocalDate from,
+                                            LocalDate to) {
+        if (segments.size() == 1) {
+            return segments.get(0).read(userId, from, to);
+        }
+
+        NavigableMap<LocalDate, SleepLog> byDate = new TreeMap<>();
+        for (SleepLogSegment segment : segments) {
+            segment.read(userId, from, to).forEach(sleepLog -> byDate.putIfAbsent(sleepLog.getSleepDate(), sleepLog));
+        }
+        return new ArrayList<>(byDate.values());
+    }
+}
@@ -0,0 +1,285 @@
+package com.noom.interview.fullstack.sleep.archive;
+
+import com.noom.interview.fullstack.sleep.domain.entity.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.time.*;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+ * Read-only, memory-mapped segment file of archived sleep logs, written by {@link SleepLogSegmentWriter}.
+ * <p>
+ * A segment holds one row group per user. Each row group stores its rows column by column, every column delta and
+ * variable-length encoded and then deflated on its own. The index at the end of the file has one fixed-size entry
+ * per user, sorted by user ID, with the first and last sleep date of the user's rows and the position of the row
+ * group; it is binary-searched in place in the mapped file, so a lookup reads only the index entries it compares
+ * and the one row group it needs, and the operating system's page cache is the only cache.
+ * <pre>
+ * magic                                 8 bytes
+ * row group *                           per column: compressed length, raw length, deflated bytes
+ * index entry *                         user ID (16), first date (4), last date (4), rows (4), offset (8), length (4)
+ * index offset, magic                   16 bytes
+ * </pre>
+ */
+public final class SleepLogSegment {
+
+    static final long MAGIC = 0x534C_5345_4730_3031L;  // "SLSEG001"
+    static final int INDEX_ENTRY_SIZE = 40;
+    static final int TRAILER_SIZE = 16;
+
+    // Columns in their order within a row group
+    static final int ID = 0;
+    static final int SLEEP_DATE = 1;
+    static final int BED_TIME = 2;
+    static final int WAKE_TIME = 3;
+    static final int TOTAL_TIME_IN_BED = 4;
+    static final int BED_TIME_OF_DAY = 5;
+    static final int WAKE_TIME_OF_DAY = 6;
+    static final int FEELING = 7;
+    static final int CREATED_AT = 8;
+    static final int COLUMN_COUNT = 9;
+
+    // Stands in for a missing time of day
+    static final int NO_VALUE = -1;
+
+    private static final Feeling[] FEELINGS = Feeling.values();
+
+    private final Path file;
+    private final BasicFileAttributes attributes;
+    private final ByteBuffer buffer;
+    private final int indexOffset;
+    private final int userCount;
+
+    private SleepLogSegment(Path file, BasicFileAttributes attributes, ByteBuffer buffer) throws IOException {
+        this.file = file;
+        this.attributes = attributes;
+        this.buffer = buffer;
+
+        int size = buffer.capacity();
+        if (size < Long.BYTES + TRAILER_SIZE || buffer.getLong(0) != MAGIC
+                || buffer.getLong(size - Long.BYTES) != MAGIC) {
+            throw new IOException("Not a sleep log segment: " + file);
+        }
+        long offset = buffer.getLong(size - TRAILER_SIZE);
+        if (offset < Long.BYTES || (size - TRAILER_SIZE - offset) % INDEX_ENTRY_SIZE != 0) {
+            throw new IOException("Corrupt sleep log segment index: " + file);
+        }
+        this.indexOffset = (int) offset;
+        this.userCount = (int) ((size - TRAILER_SIZE - offset) / INDEX_ENTRY_SIZE);
+    }
+
+    /**
+     * Maps a segment file into memory. The mapping stays valid after the file is replaced or deleted and is
+     * released when the segment is garbage collected.
+     *
+     * @param file the segment file
+     * @return the segment
+     * @throws IOException if the file cannot be read or is not a segment
+     */
+    public static SleepLogSegment open(Path file) throws IOException {
+        // Read before the file is opened: if it is replaced in between, the segment looks outdated, never current
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Sleep log segment larger than 2 GB: " + file);
+            }
+            return new SleepLogSegment(file, attributes, channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    /**
+     * Tells whether the segment maps the file that is now at its path. Segment files are replaced by moving a new
+     * file into place, which changes the file key, or at least the modification time.
+     *
+     * @param current the attributes of the file now at the segment's path
+     * @return true if the segment maps that file
+     */
+    public boolean isMappingOf(BasicFileAttributes current) {
+        return Objects.equals(attributes.fileKey(), current.fileKey())
+                && attributes.lastModifiedTime().equals(current.lastModifiedTime())
+                && attributes.size() == current.size();
+    }
+
+    /**
+     * Returns the segment file.
+     *
+     * @return the path of the segment file
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the number of users with rows in the segment.
+     *
+     * @return the number of row groups
+     */
+    public int getUserCount() {
+        return userCount;
+    }
+
+    /**
+     * Reads a user's sleep logs within a date range. Only the index entries compared by the binary search and the
+     * user's row group are read, and the row group only if its dates overlap the range.
+     *
+     * @param userId the ID of the user
+     * @param from the first date (inclusive), or null for no lower bound
+     * @param to the last date (inclusive), or null for no upper bound
+     * @return the sleep logs in date order
+     */
+    public List<SleepLog> read(UUID userId, LocalDate from, LocalDate to) {
+        int entry = find(userId);
+        if (entry < 0) {
+            return List.of();
+        }
+
+        int entryOffset = indexOffset + entry * INDEX_ENTRY_SIZE;
+        long firstDay = buffer.getInt(entryOffset + 16);
+        long lastDay = buffer.getInt(entryOffset + 20);
+        if ((from != null && lastDay < from.toEpochDay()) || (to != null && firstDay > to.toEpochDay())) {
+            return List.of();
+        }
+
+        int rows = buffer.getInt(entryOffset + 24);
+        int offset = (int) buffer.getLong(entryOffset + 28);
+        ColumnReader[] columns = inflateColumns(offset);
+
+        List<SleepLog> sleepLogs = new ArrayList<>(rows);
+        for (int row = 0; row < rows; row++) {
+            SleepLog sleepLog = SleepLog.builder()
+                    .id(columns[ID].nextDelta())
+                    .userId(userId)
+                    .sleepDate(LocalDate.ofEpochDay(columns[SLEEP_DATE].nextDelta()))
+                    .bedTime(ofEpochMicros(columns[BED_TIME].nextDelta()))
+                    .wakeTime(ofEpochMicros(columns[WAKE_TIME].nextDelta()))
+                    .totalTimeInBedMinutes((int) columns[TOTAL_TIME_IN_BED].next())
+                    .bedTimeOfDaySeconds(orNull((int) columns[BED_TIME_OF_DAY].next()))
+                    .wakeTimeOfDaySeconds(orNull((int) columns[WAKE_TIME_OF_DAY].next()))
+                    .feeling(FEELINGS[(int) columns[FEELING].next()])
+                    .createdAt(ofEpochMicros(columns[CREATED_AT].nextDelta()))
+                    .build();
+            // Every column is decoded to keep the cursors aligned; rows outside the range are dropped afterwards
+            if ((from == null || !sleepLog.getSleepDate().isBefore(from))
+                    && (to == null || !sleepLog.getSleepDate().isAfter(to))) {
+                sleepLogs.add(sleepLog);
+            }
+        }
+        return sleepLogs;
+    }
+
+    /**
+     * Binary-searches the index for a user.
+     *
+     * @param userId the ID of the user
+     * @return the position of the user's index entry, or -1 if the user has no rows in the segment
+     */
+    private int find(UUID userId) {
+        int low = 0;
+        int high = userCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int entryOffset = indexOffset + middle * INDEX_ENTRY_SIZE;
+            UUID entryUserId = new UUID(buffer.getLong(entryOffset), buffer.getLong(entryOffset + 8));
+            int comparison = entryUserId.compareTo(userId);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Inflates the columns of a row group.
+     *
+     * @param offset the position of the row group in the file
+     * @return a reader over each column, in column order
+     */
+    private ColumnReader[] inflateColumns(int offset) {
+        ColumnReader[] columns = new ColumnReader[COLUMN_COUNT];
+        Inflater inflater = new Inflater();
+        try {
+            int position = offset;
+            for (int column = 0; column < COLUMN_COUNT; column++) {
+                int compressedLength = buffer.getInt(position);
+                byte[] raw = new byte[buffer.getInt(position + 4)];
+                inflater.reset();
+                inflater.setInput(buffer.slice(position + 8, compressedLength));
+                int inflated = 0;
+                while (inflated < raw.length && !inflater.finished()) {
+                    int count = inflater.inflate(raw, inflated, raw.length - inflated);
+                    // A cut-off stream needs more input than the column holds, and no segment is written with a
+                    // preset dictionary, so neither can make progress
+                    if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    inflated += count;
+                }
+                if (inflated != raw.length) {
+                    throw new IllegalStateException("Truncated column in sleep log segment " + file);
+                }
+                columns[column] = new ColumnReader(raw);
+                position += 8 + compressedLength;
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt column in sleep log segment " + file, e);
+        } finally {
+            inflater.end();
+        }
+        return columns;
+    }
+
+    private static Instant ofEpochMicros(long micros) {
+        return Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000L), Math.floorMod(micros, 1_000_000L) * 1000L);
+    }
+
+    private static Integer orNull(int value) {
+        return value == NO_VALUE ? null : value;
+    }
+
+    /**
+     * Decodes the zigzag variable-length values of an inflated column.
+     */
+    private static final class ColumnReader {
+
+        private final byte[] bytes;
+        private int position;
+        private long previous;
+
+        private ColumnReader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        /**
+         * Reads the next value of a delta-encoded column.
+         */
+        private long nextDelta() {
+            previous += next();
+            return previous;
+        }
+
+        /**
+         * Reads the next value.
+         */
+        private long next() {
+            long zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[position++];
+                zigzag |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.noom.interview.fullstack.sleep.archive;
+
+import com.noom.interview.fullstack.sleep.domain.entity.SleepLog;
+
+import java.io.*;
+import java.nio.file.*;
+import java.time.Instant;
+import java.util.*;
+import java.util.zip.Deflater;
+
+import static com.noom.interview.fullstack.sleep.archive.SleepLogSegment.*;
+
+/**
+ * Writes a {@link SleepLogSegment} file. Sleep logs are written grouped by user and in date order within each user;
+ * the groups may come in any user order. The segment is written to a temporary file next to the target and only
+ * moved into place by {@link #finish()}, so readers never see a partly written segment.
+ */
+public final class SleepLogSegmentWriter implements Closeable {
+
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final Path file;
+    private final Path temporaryFile;
+    private final FileOutputStream fileOutput;
+    private final DataOutputStream output;
+    private final Deflater deflater = new Deflater();
+    private final byte[] deflateBuffer = new byte[WRITE_BUFFER_SIZE];
+    private final ByteArrayOutputStream[] columns = new ByteArrayOutputStream[COLUMN_COUNT];
+    private final long[] previous = new long[COLUMN_COUNT];
+    private final List<IndexEntry> index = new ArrayList<>();
+    private final Set<UUID> writtenUserIds = new HashSet<>();
+
+    private long position;
+    private long rowCount;
+    private UUID userId;
+    private int groupRows;
+    private long firstDay;
+    private long lastDay;
+    private boolean finished;
+
+    /**
+     * Starts a segment.
+     *
+     * @param file the segment file to create or replace
+     * @throws IOException if the temporary file cannot be created
+     */
+    public SleepLogSegmentWriter(Path file) throws IOException {
+        this.file = file;
+        this.temporaryFile = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName() + ".", ".tmp");
+        this.fileOutput = new FileOutputStream(temporaryFile.toFile());
+        this.output = new DataOutputStream(new BufferedOutputStream(fileOutput, WRITE_BUFFER_SIZE));
+        for (int column = 0; column < COLUMN_COUNT; column++) {
+            columns[column] = new ByteArrayOutputStream();
+        }
+
+        output.writeLong(MAGIC);
+        position = Long.BYTES;
+    }
+
+    /**
+     * Appends a sleep log to the row group of its user.
+     *
+     * @param sleepLog the sleep log
+     * @throws IOException if the previous row group cannot be written
+     * @throws IllegalArgumentException if the sleep logs are not grouped by user or not in date order
+     */
+    public void write(SleepLog sleepLog) throws IOException {
+        if (!sleepLog.getUserId().equals(userId)) {
+            writeGroup();
+            if (!writtenUserIds.add(sleepLog.getUserId())) {
+                throw new IllegalArgumentException("Sleep logs must be grouped by user: " + sleepLog.getUserId());
+            }
+            userId = sleepLog.getUserId();
+            firstDay = sleepLog.getSleepDate().toEpochDay();
+        } else if (sleepLog.getSleepDate().toEpochDay() <= lastDay) {
+            throw new IllegalArgumentException("Sleep logs of a user must be in date order: " + userId);
+        }
+        lastDay = sleepLog.getSleepDate().toEpochDay();
+
+        writeDelta(ID, sleepLog.getId());
+        writeDelta(SLEEP_DATE, lastDay);
+        writeDelta(BED_TIME, toEpochMicros(sleepLog.getBedTime()));
+        writeDelta(WAKE_TIME, toEpochMicros(sleepLog.getWakeTime()));
+        writeValue(TOTAL_TIME_IN_BED, sleepLog.getTotalTimeInBedMinutes());
+        writeValue(BED_TIME_OF_DAY, orNoValue(sleepLog.getBedTimeOfDaySeconds()));
+        writeValue(WAKE_TIME_OF_DAY, orNoValue(sleepLog.getWakeTimeOfDaySeconds()));
+        writeValue(FEELING, sleepLog.getFeeling().ordinal());
+        writeDelta(CREATED_AT, toEpochMicros(sleepLog.getCreatedAt()));
+        groupRows++;
+        rowCount++;
+    }
+
+    /**
+     * Returns the number of sleep logs written so far.
+     *
+     * @return the number of rows
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Writes the last row group and the index, forces the file to disk and moves it into place, replacing any
+     * previous segment of the same name.
+     *
+     * @throws IOException if the segment cannot be written or moved
+     */
+    public void finish() throws IOException {
+        writeGroup();
+
+        long indexOffset = position;
+        index.sort(Comparator.comparing(entry -> entry.userId));
+        for (IndexEntry entry : index) {
+            output.writeLong(entry.userId.getMostSignificantBits());
+            output.writeLong(entry.userId.getLeastSignificantBits());
+            output.writeInt((int) entry.firstDay);
+            output.writeInt((int) entry.lastDay);
+            output.writeInt(entry.rows);
+            output.writeLong(entry.offset);
+            output.writeInt(entry.length);
+        }
+        output.writeLong(indexOffset);
+        output.writeLong(MAGIC);
+        output.flush();
+        fileOutput.getFD().sync();
+        output.close();
+
+        Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        finished = true;
+    }
+
+    /**
+     * Releases the writer, deleting the temporary file unless the segment was finished.
+     *
+     * @throws IOException if the temporary file cannot be deleted
+     */
+    @Override
+    public void close() throws IOException {
+        deflater.end();
+        if (!finished) {
+            output.close();
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    /**
+     * Deflates the columns of the current user's rows, each on its own, and records the row group in the index.
+     */
+    private void writeGroup() throws IOException {
+        if (groupRows == 0) {
+            return;
+        }
+
+        long offset = position;
+        for (ByteArrayOutputStream column : columns) {
+            byte[] raw = column.toByteArray();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 2 + 16);
+            deflater.reset();
+            deflater.setInput(raw);
+            deflater.finish();
+            while (!deflater.finished()) {
+                compressed.write(deflateBuffer, 0, deflater.deflate(deflateBuffer));
+            }
+
+            output.writeInt(compressed.size());
+            output.writeInt(raw.length);
+            compressed.writeTo(output);
+            position += 8 + compressed.size();
+            column.reset();
+        }
+        if (position > Integer.MAX_VALUE) {
+            throw new IOException("Sleep log segment larger than 2 GB: " + file);
+        }
+
+        index.add(new IndexEntry(userId, firstDay, lastDay, groupRows, offset, (int) (position - offset)));
+        Arrays.fill(previous, 0);
+        groupRows = 0;
+    }
+
+    private void writeDelta(int column, long value) {
+        writeValue(column, value - previous[column]);
+        previous[column] = value;
+    }
+
+    /**
+     * Writes a value zigzag encoded, so that small negative deltas stay short, in 7-bit groups.
+     */
+    private void writeValue(int column, long value) {
+        long zigzag = (value << 1) ^ (value >> 63);
+        ByteArrayOutputStream bytes = columns[column];
+        while ((zigzag & ~0x7FL) != 0) {
+            bytes.write((int) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+        }
+        bytes.write((int) zigzag);
+    }
+
+    private static long toEpochMicros(Instant instant) {
+        return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), 1_000_000L), instant.getNano() / 1000);
+    }
+
+    private static int orNoValue(Integer value) {
+        return value != null ? value : NO_VALUE;
+    }
+
+    /**
+     * Index entry of a written row group.
+     */
+    private static final class IndexEntry {
+
+        private final UUID userId;
+        private final long firstDay;
+        private final long lastDay;
+        private final int rows;
+        private final long offset;
+        private final int length;
+
+        private IndexEntry(UUID userId, long firstDay, long lastDay, int rows, long offset, int length) {
+            this.userId = userId;
+            this.firstDay = firstDay;
+            this.lastDay = lastDay;
+            this.rows = rows;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
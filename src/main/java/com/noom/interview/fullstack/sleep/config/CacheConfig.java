@@ -0,0 +1,127 @@
+package com.noom.interview.fullstack.sleep.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.noom.interview.fullstack.sleep.domain.dto.*;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheManagerProxy;
+import org.springframework.context.annotation.*;
+
+import java.time.*;
+
+/**
+ * Configuration of the in-process caches.
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+    /**
+     * Cache of 30-day sleep statistics keyed by user ID. Entries expire when the last day of their date range ends.
+     */
+    public static final String SLEEP_STATISTICS_CACHE = "sleepStatistics";
+
+    /**
+     * Cache of the serialized JSON and gzipped JSON of the 30-day sleep statistics keyed by user ID. Evicted
+     * and expired like {@link #SLEEP_STATISTICS_CACHE}.
+     */
+    public static final String SLEEP_STATISTICS_JSON_CACHE = "sleepStatisticsJson";
+
+    // Rough heap footprint of a statistics response: object headers, date range, times and the feeling map
+    private static final int STATISTICS_BASE_WEIGHT = 320;
+    private static final int STATISTICS_FEELING_WEIGHT = 48;
+    // Three percentile objects, each with three boxed values
+    private static final int STATISTICS_PERCENTILES_WEIGHT = 3 * 96;
+    // Holder object and the headers of its two arrays
+    private static final int SERIALIZED_JSON_BASE_WEIGHT = 64;
+
+    /**
+     * Configures the cache manager. Caches are transaction aware, so evictions issued by a write are applied
+     * only after its transaction commits; otherwise a read between the eviction and the commit would cache
+     * data from before the write. Synchronized loads run outside of Caffeine's map locks, see
+     * {@link CoalescingCaffeineCache}.
+     *
+     * @param statisticsMaximumWeight the maximum total weight of the statistics cache, in estimated bytes
+     * @param statisticsJsonMaximumWeight the maximum total weight of the serialized statistics cache, in bytes
+     * @return the cache manager
+     */
+    @Bean
+    public CacheManager cacheManager(
+            @Value("${sleep.cache.statistics.maximum-weight:16777216}") long statisticsMaximumWeight,
+            @Value("${sleep.cache.statistics-json.maximum-weight:16777216}") long statisticsJsonMaximumWeight) {
+        Clock clock = Clock.systemDefaultZone();
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager() {
+            @Override
+            protected Cache adaptCaffeineCache(String name,
+                                               com.github.benmanes.caffeine.cache.Cache<Object, Object> cache) {
+                return new CoalescingCaffeineCache(name, cache, isAllowNullValues());
+            }
+        };
+        cacheManager.registerCustomCache(SLEEP_STATISTICS_CACHE, Caffeine.newBuilder()
+                .maximumWeight(statisticsMaximumWeight)
+                .weigher((Object userId, Object statistics) -> weigh(statistics))
+                .expireAfter(new MidnightExpiry<Object, Object>(clock, CacheConfig::lastDayOf))
+                .recordStats()
+                .build());
+        cacheManager.registerCustomCache(SLEEP_STATISTICS_JSON_CACHE, Caffeine.newBuilder()
+                .maximumWeight(statisticsJsonMaximumWeight)
+                .weigher((Object userId, Object serialized) -> weighSerialized(serialized))
+                .expireAfter(new MidnightExpiry<Object, Object>(clock, CacheConfig::lastDayOfSerialized))
+                .recordStats()
+                .build());
+        return new TransactionAwareCacheManagerProxy(cacheManager);
+    }
+
+    /**
+     * Estimates the weight of a cached statistics response.
+     *
+     * @param statistics the cached value
+     * @return the estimated weight
+     */
+    private static int weigh(Object statistics) {
+        if (statistics instanceof SleepStatisticsResponse response && response.getFeelingCounts() != null) {
+            int percentilesWeight = response.getBedTimePercentiles() != null ? STATISTICS_PERCENTILES_WEIGHT : 0;
+            return STATISTICS_BASE_WEIGHT + STATISTICS_FEELING_WEIGHT * response.getFeelingCounts().size()
+                    + percentilesWeight;
+        }
+        return STATISTICS_BASE_WEIGHT;
+    }
+
+    /**
+     * Returns the last day of the date range of a cached statistics response.
+     *
+     * @param statistics the cached value
+     * @return the last day, or null if the value has no date range
+     */
+    private static LocalDate lastDayOf(Object statistics) {
+        return statistics instanceof SleepStatisticsResponse response && response.getDateRange() != null
+                ? response.getDateRange().getTo()
+                : null;
+    }
+
+    /**
+     * Returns the last day of the data a cached serialized response covers.
+     *
+     * @param serialized the cached value
+     * @return the last day, or null if the value does not depend on the date
+     */
+    private static LocalDate lastDayOfSerialized(Object serialized) {
+        return serialized instanceof SerializedJson json ? json.getLastDay() : null;
+    }
+
+    /**
+     * Weighs a cached serialized response by the size of its byte arrays.
+     *
+     * @param serialized the cached value
+     * @return the weight in bytes
+     */
+    private static int weighSerialized(Object serialized) {
+        if (serialized instanceof SerializedJson json && json.getJson() != null && json.getGzippedJson() != null) {
+            return SERIALIZED_JSON_BASE_WEIGHT + json.getJson().length + json.getGzippedJson().length;
+        }
+        return SERIALIZED_JSON_BASE_WEIGHT;
+    }
+}
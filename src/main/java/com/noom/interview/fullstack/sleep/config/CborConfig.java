@@ -0,0 +1,31 @@
+package com.noom.interview.fullstack.sleep.config;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+/**
+ * Lets clients exchange request and response bodies, including error responses, as CBOR (application/cbor)
+ * instead of JSON. The CBOR mapper is built from the same Spring Boot Jackson settings as the JSON one, so both
+ * formats carry the same fields and values. The converter is added after the JSON converter, so JSON stays the
+ * default for clients that accept any media type.
+ */
+@Configuration
+@RequiredArgsConstructor
+public class CborConfig implements WebMvcConfigurer {
+
+    private final Jackson2ObjectMapperBuilder objectMapperBuilder;
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        // Spring Boot hands out a new builder per injection point, so setting the factory leaves others untouched
+        converters.add(new MappingJackson2CborHttpMessageConverter(
+                objectMapperBuilder.factory(new CBORFactory()).build()));
+    }
+}
@@ -0,0 +1,103 @@
+package com.noom.interview.fullstack.sleep.config;
+
+import org.springframework.cache.caffeine.CaffeineCache;
+
+import java.util.concurrent.*;
+
+/**
+ * Caffeine cache whose synchronized loads ({@code @Cacheable(sync = true)}) run outside of the cache's map
+ * locks. Caffeine computes a missing value inside {@link ConcurrentHashMap#compute}, which holds a monitor, so a
+ * load that waits on the database pins a virtual thread to its carrier. Here the first caller of a missing key
+ * loads it and concurrent callers wait for its result on a future, which parks a virtual thread without pinning.
+ * <p>
+ * An eviction during a load discards the loaded value, as the map lock used to make the eviction wait for the
+ * load: a load that started before a write committed may have read the data from before the write.
+ */
+final class CoalescingCaffeineCache extends CaffeineCache {
+
+    private final ConcurrentMap<Object, CompletableFuture<Object>> loads = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a cache around a Caffeine cache.
+     *
+     * @param name the name of the cache
+     * @param cache the Caffeine cache
+     * @param allowNullValues whether to accept and convert null values
+     */
+    CoalescingCaffeineCache(String name, com.github.benmanes.caffeine.cache.Cache<Object, Object> cache,
+                            boolean allowNullValues) {
+        super(name, cache, allowNullValues);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper cached = get(key);
+        if (cached != null) {
+            return (T) cached.get();
+        }
+
+        CompletableFuture<Object> load = new CompletableFuture<>();
+        CompletableFuture<Object> inFlight = loads.putIfAbsent(key, load);
+        if (inFlight != null) {
+            return (T) join(key, valueLoader, inFlight);
+        }
+        try {
+            T value = valueLoader.call();
+            // Only cache the value if no eviction removed this load in the meantime
+            loads.computeIfPresent(key, (k, current) -> {
+                if (current == load) {
+                    put(key, value);
+                }
+                return current;
+            });
+            load.complete(value);
+            return value;
+        } catch (Exception ex) {
+            load.completeExceptionally(ex);
+            throw new ValueRetrievalException(key, valueLoader, ex);
+        } finally {
+            loads.remove(key, load);
+        }
+    }
+
+    @Override
+    public void evict(Object key) {
+        loads.remove(key);
+        super.evict(key);
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        loads.remove(key);
+        return super.evictIfPresent(key);
+    }
+
+    @Override
+    public void clear() {
+        loads.clear();
+        super.clear();
+    }
+
+    @Override
+    public boolean invalidate() {
+        loads.clear();
+        return super.invalidate();
+    }
+
+    /**
+     * Waits for another caller's load of the same key.
+     *
+     * @param key the key
+     * @param valueLoader the loader of the waiting caller, for the exception
+     * @param load the load in flight
+     * @return the loaded value
+     */
+    private static Object join(Object key, Callable<?> valueLoader, CompletableFuture<Object> load) {
+        try {
+            return load.join();
+        } catch (CompletionException ex) {
+            throw new ValueRetrievalException(key, valueLoader, ex.getCause());
+        }
+    }
+}
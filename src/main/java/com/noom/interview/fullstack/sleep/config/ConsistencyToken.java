@@ -0,0 +1,87 @@
+package com.noom.interview.fullstack.sleep.config;
+
+/**
+ * Consistency tokens of read-your-writes reads. A token is a PostgreSQL WAL position ({@code pg_lsn}, e.g.
+ * {@code 16/B374D848}) issued after a write commits; a read carrying it is only served by a replica that has
+ * replayed the WAL up to that position. The token of the current request is held per thread while it is handled,
+ * and so is the token issued by the last write transaction the thread committed.
+ */
+final class ConsistencyToken {
+
+    /**
+     * Position of a token that cannot be parsed; reads carrying it are served by the primary.
+     */
+    static final long PRIMARY = Long.MAX_VALUE;
+
+    private static final ThreadLocal<Long> CURRENT = new ThreadLocal<>();
+    private static final ThreadLocal<String> ISSUED = new ThreadLocal<>();
+
+    private ConsistencyToken() {
+        // Utility class
+    }
+
+    /**
+     * Parses a WAL position in the text format of {@code pg_lsn}.
+     *
+     * @param lsn the WAL position, two hexadecimal numbers separated by a slash
+     * @return the WAL position as a number
+     * @throws IllegalArgumentException if the text is not a WAL position
+     */
+    static long parse(String lsn) {
+        int slash = lsn.indexOf('/');
+        if (slash < 1 || slash > 8 || lsn.length() - slash - 1 < 1 || lsn.length() - slash - 1 > 8) {
+            throw new IllegalArgumentException("Invalid consistency token");
+        }
+        try {
+            return Long.parseLong(lsn.substring(0, slash), 16) << 32 | Long.parseLong(lsn.substring(slash + 1), 16);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid consistency token", e);
+        }
+    }
+
+    /**
+     * Gets the WAL position the reads of the current thread must see.
+     *
+     * @return the WAL position, {@link #PRIMARY} if the token was invalid, or null if the request has no token
+     */
+    static Long current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Sets the WAL position the reads of the current thread must see.
+     *
+     * @param position the WAL position
+     */
+    static void set(long position) {
+        CURRENT.set(position);
+    }
+
+    /**
+     * Removes the token of the current thread.
+     */
+    static void clear() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Holds the WAL position after the commit of the current thread's last write transaction.
+     *
+     * @param lsn the WAL position in the text format of {@code pg_lsn}
+     */
+    static void issue(String lsn) {
+        ISSUED.set(lsn);
+    }
+
+    /**
+     * Takes the WAL position after the commit of the current thread's last write transaction.
+     *
+     * @return the WAL position in the text format of {@code pg_lsn}, or null if no write transaction committed
+     *         since the last call
+     */
+    static String takeIssued() {
+        String lsn = ISSUED.get();
+        ISSUED.remove();
+        return lsn;
+    }
+}
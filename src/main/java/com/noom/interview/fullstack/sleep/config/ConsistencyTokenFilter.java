@@ -0,0 +1,40 @@
+package com.noom.interview.fullstack.sleep.config;
+
+import jakarta.servlet.*;
+import jakarta.servlet.http.*;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Holds the consistency token of a request, from its {@value ReplicaRoutingDataSource#CONSISTENCY_TOKEN_HEADER}
+ * header, while the request is handled, so that {@link ReplicaRoutingDataSource} routes its read-only
+ * transactions to a replica that has caught up with it. A token that cannot be parsed sends the reads to the
+ * primary rather than rejecting the request.
+ */
+class ConsistencyTokenFilter extends OncePerRequestFilter {
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String token = request.getHeader(ReplicaRoutingDataSource.CONSISTENCY_TOKEN_HEADER);
+        try {
+            if (token != null && !token.isBlank()) {
+                ConsistencyToken.set(parse(token.trim()));
+            }
+            chain.doFilter(request, response);
+        } finally {
+            ConsistencyToken.clear();
+            // A token of a write that did not reach a response must not be handed to a later request on the thread
+            ConsistencyToken.takeIssued();
+        }
+    }
+
+    private static long parse(String token) {
+        try {
+            return ConsistencyToken.parse(token);
+        } catch (IllegalArgumentException e) {
+            return ConsistencyToken.PRIMARY;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.noom.interview.fullstack.sleep.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.*;
+import org.springframework.core.env.Environment;
+
+/**
+ * Connection pools of the databases beyond {@code spring.datasource.url}: read replicas and shards.
+ */
+final class DataSourcePools {
+
+    private DataSourcePools() {
+        // Utility class
+    }
+
+    /**
+     * Creates a connection pool with the credentials of {@code spring.datasource} and the pool settings of
+     * {@code spring.datasource.hikari}.
+     *
+     * @param properties the {@code spring.datasource} properties
+     * @param environment the environment, for the {@code spring.datasource.hikari} pool settings
+     * @param url the JDBC URL of the database
+     * @param name the name of the pool, prefixed with {@code sleep-}
+     * @return the connection pool
+     */
+    static HikariDataSource pool(DataSourceProperties properties, Environment environment, String url, String name) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .url(url)
+                .build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(dataSource));
+        dataSource.setPoolName("sleep-" + name);
+        return dataSource;
+    }
+}
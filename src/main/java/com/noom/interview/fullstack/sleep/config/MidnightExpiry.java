@@ -0,0 +1,60 @@
+package com.noom.interview.fullstack.sleep.config;
+
+import com.github.benmanes.caffeine.cache.Expiry;
+
+import java.time.*;
+import java.util.function.Function;
+
+/**
+ * Caffeine expiry that expires every entry at the local midnight ending the last day its value covers, when date
+ * ranges anchored at "today" move forward and any cached result computed for them becomes stale. A value whose
+ * last day has already ended, such as one loaded just before midnight and cached just after it, expires right
+ * away instead of being served for another day.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class MidnightExpiry<K, V> implements Expiry<K, V> {
+
+    private final Clock clock;
+    private final Function<? super V, LocalDate> lastDay;
+
+    /**
+     * Creates an expiry based on the given clock, whose zone defines local midnight.
+     *
+     * @param clock the clock
+     * @param lastDay the last day a value covers, or null for today
+     */
+    public MidnightExpiry(Clock clock, Function<? super V, LocalDate> lastDay) {
+        this.clock = clock;
+        this.lastDay = lastDay;
+    }
+
+    @Override
+    public long expireAfterCreate(K key, V value, long currentTime) {
+        return nanosUntilEndOf(lastDay.apply(value));
+    }
+
+    @Override
+    public long expireAfterUpdate(K key, V value, long currentTime, long currentDuration) {
+        return nanosUntilEndOf(lastDay.apply(value));
+    }
+
+    @Override
+    public long expireAfterRead(K key, V value, long currentTime, long currentDuration) {
+        return currentDuration;
+    }
+
+    /**
+     * Calculates the time left until the local midnight that ends a day.
+     *
+     * @param day the day, or null for today
+     * @return the time left in nanoseconds, 0 if the day has ended
+     */
+    long nanosUntilEndOf(LocalDate day) {
+        ZonedDateTime now = ZonedDateTime.now(clock);
+        LocalDate last = day != null ? day : now.toLocalDate();
+        ZonedDateTime midnight = last.plusDays(1).atStartOfDay(clock.getZone());
+        return Math.max(0L, Duration.between(now, midnight).toNanos());
+    }
+}
@@ -0,0 +1,72 @@
+package com.noom.interview.fullstack.sleep.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.*;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Configuration of read replicas. Active when {@code sleep.datasource.replica-urls} lists at least one replica;
+ * the application's data source then routes read-only transactions to the replicas, see
+ * {@link ReplicaRoutingDataSource}. Replicas are connected to with the primary's credentials and pool settings.
+ * Replicas are not used when the sleep logs are sharded, see {@link ShardRoutingConfig}.
+ */
+@Configuration
+@ConditionalOnExpression("!'${sleep.datasource.replica-urls:}'.isBlank() "
+        + "&& '${sleep.datasource.shard-urls:}'.isBlank()")
+public class ReplicaRoutingConfig {
+
+    /**
+     * Creates the connection pools of the primary and the replicas and routes between them.
+     *
+     * @param properties the {@code spring.datasource} properties of the primary
+     * @param environment the environment, for the {@code spring.datasource.hikari} pool settings
+     * @param replicaUrls the JDBC URLs of the replicas
+     * @param replicaMaxWait how long a read with a consistency token waits for a replica to catch up
+     * @return the routing data source
+     */
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(
+            DataSourceProperties properties,
+            Environment environment,
+            @Value("${sleep.datasource.replica-urls}") List<String> replicaUrls,
+            @Value("${sleep.datasource.replica-max-wait:100ms}") Duration replicaMaxWait) {
+        HikariDataSource primary = DataSourcePools.pool(properties, environment, properties.determineUrl(), "primary");
+        List<HikariDataSource> replicas = new ArrayList<>(replicaUrls.size());
+        for (String replicaUrl : replicaUrls) {
+            replicas.add(DataSourcePools.pool(properties, environment, replicaUrl.trim(),
+                    "replica-" + replicas.size()));
+        }
+        return new ReplicaRoutingDataSource(primary, replicas, replicaMaxWait);
+    }
+
+    /**
+     * Exposes the routing data source to JPA, JDBC and Flyway. Connections are only obtained from it when the
+     * first statement runs, by which time the transaction has been marked read-only or not.
+     *
+     * @param replicaRoutingDataSource the routing data source
+     * @return the application's data source
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+
+    /**
+     * Creates the filter that holds the consistency token of each request.
+     *
+     * @return the filter
+     */
+    @Bean
+    public ConsistencyTokenFilter consistencyTokenFilter() {
+        return new ConsistencyTokenFilter();
+    }
+}
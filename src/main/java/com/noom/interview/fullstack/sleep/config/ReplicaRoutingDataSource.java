@@ -0,0 +1,249 @@
+package com.noom.interview.fullstack.sleep.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.*;
+import org.springframework.core.Ordered;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.*;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.Supplier;
+
+/**
+ * Routes read-only transactions to streaming replicas of the primary and every other connection to the primary.
+ * <p>
+ * Reads without a consistency token are spread over the replicas round robin and may see data from before the
+ * latest writes. Reads with a token, the WAL position issued by {@link #issueToken()} after a write, go to a
+ * replica that has replayed the WAL up to that position. The replayed positions are remembered and refreshed only
+ * when no replica is known to have caught up; if none catches up within the maximum wait, the read goes to the
+ * primary. A replica that cannot be connected to is also replaced by the primary.
+ * <p>
+ * The WAL position of a write is read on the write transaction's own connection right after it commits, before
+ * the connection goes back to the pool. Reads whose results are cached until the next write evicts them run
+ * through {@link #readCommittedWrites(Supplier)}, which treats the position of the latest write committed through
+ * this data source as their token.
+ * <p>
+ * Transactions obtain their connection before they are marked read-only, so this data source must be used
+ * through a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+    /**
+     * Header carrying the consistency token, on write responses and read requests.
+     */
+    public static final String CONSISTENCY_TOKEN_HEADER = "X-Consistency-Token";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    private static final String PRIMARY = "primary";
+    private static final long POLL_INTERVAL_MILLIS = 5;
+
+    // Set while a read runs through readCommittedWrites
+    private static final ThreadLocal<Boolean> READING_COMMITTED_WRITES = new ThreadLocal<>();
+
+    private final HikariDataSource primary;
+    private final List<HikariDataSource> replicas;
+    private final Duration maxWait;
+    private final AtomicLongArray replayedPositions;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final AtomicLong committedPosition = new AtomicLong();
+
+    /**
+     * Creates the data source.
+     *
+     * @param primary the pool of the primary
+     * @param replicas the pools of the replicas
+     * @param maxWait how long a read with a consistency token waits for a replica to catch up
+     */
+    public ReplicaRoutingDataSource(HikariDataSource primary, List<HikariDataSource> replicas, Duration maxWait) {
+        this.primary = primary;
+        this.replicas = List.copyOf(replicas);
+        this.maxWait = maxWait;
+        this.replayedPositions = new AtomicLongArray(replicas.size());
+
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (int i = 0; i < replicas.size(); i++) {
+            targets.put(i, replicas.get(i));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        setLenientFallback(false);
+    }
+
+    /**
+     * Issues the consistency token of the current thread's last committed write transaction: the WAL position of
+     * the primary read on that transaction's connection right after the commit. Call it after the write's
+     * transaction has committed.
+     *
+     * @return the token, or null if no write transaction committed on this thread since the last token, or its
+     *         position could not be read
+     */
+    public String issueToken() {
+        return ConsistencyToken.takeIssued();
+    }
+
+    /**
+     * Runs a read whose result is cached until the next write evicts it. Without a consistency token, any replica
+     * could serve it, including one that has not replayed the write whose commit evicted the previous result, and
+     * the stale result would then stay cached. The read therefore goes to a replica that has replayed every write
+     * committed through this data source, or to the primary if none catches up within the maximum wait.
+     *
+     * @param read the read, which must start its read-only transaction or run in one that has not read yet
+     * @param <T> the type of the result
+     * @return the result
+     */
+    public static <T> T readCommittedWrites(Supplier<T> read) {
+        Boolean outer = READING_COMMITTED_WRITES.get();
+        READING_COMMITTED_WRITES.set(Boolean.TRUE);
+        try {
+            return read.get();
+        } finally {
+            if (outer == null) {
+                READING_COMMITTED_WRITES.remove();
+            }
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        DataSource target = determineTargetDataSource();
+        if (target == primary) {
+            Connection connection = primary.getConnection();
+            issueTokenAfterCommit(connection);
+            return connection;
+        }
+        try {
+            return target.getConnection();
+        } catch (SQLException e) {
+            LOGGER.warn("Cannot connect to replica, reading from the primary: {}", e.getMessage());
+            return primary.getConnection();
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return PRIMARY;
+        }
+
+        Long position = ConsistencyToken.current();
+        if (READING_COMMITTED_WRITES.get() != null) {
+            long committed = committedPosition.get();
+            position = position != null ? Math.max(position, committed) : committed;
+        }
+        if (position == null) {
+            return Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+        }
+        if (position == ConsistencyToken.PRIMARY) {
+            return PRIMARY;
+        }
+        Integer replica = awaitReplica(position);
+        return replica != null ? replica : PRIMARY;
+    }
+
+    @Override
+    public void close() {
+        replicas.forEach(HikariDataSource::close);
+        primary.close();
+    }
+
+    /**
+     * Reads the WAL position on the connection of a write transaction once it has committed, as the token
+     * {@link #issueToken()} hands out and as the position reads of cached results wait for. The connection is
+     * released after the synchronizations ran, so no second connection is checked out. Runs before the other
+     * synchronizations, so the position is known before a cache entry is evicted after the same commit.
+     *
+     * @param connection the connection of the current transaction
+     */
+    private void issueTokenAfterCommit(Connection connection) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()
+                || TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public int getOrder() {
+                return Ordered.HIGHEST_PRECEDENCE;
+            }
+
+            @Override
+            public void afterCommit() {
+                try (Statement statement = connection.createStatement();
+                     ResultSet resultSet = statement.executeQuery("SELECT pg_current_wal_lsn()")) {
+                    String lsn = resultSet.next() ? resultSet.getString(1) : null;
+                    if (lsn != null) {
+                        committedPosition.accumulateAndGet(ConsistencyToken.parse(lsn), Math::max);
+                        ConsistencyToken.issue(lsn);
+                    }
+                } catch (SQLException e) {
+                    LOGGER.warn("Cannot issue a consistency token: {}", e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits for a replica that has replayed the WAL up to a position.
+     *
+     * @param position the WAL position
+     * @return the index of the replica, or null if none caught up within the maximum wait
+     */
+    private Integer awaitReplica(long position) {
+        Integer replica = caughtUpReplica(position);
+        long deadline = System.nanoTime() + maxWait.toNanos();
+        while (replica == null) {
+            refreshReplayedPositions();
+            replica = caughtUpReplica(position);
+            if (replica != null || System.nanoTime() >= deadline) {
+                return replica;
+            }
+            try {
+                Thread.sleep(POLL_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        return replica;
+    }
+
+    /**
+     * Finds a replica known to have replayed the WAL up to a position, starting at the next replica in turn.
+     *
+     * @param position the WAL position
+     * @return the index of the replica, or null if none is known to have caught up
+     */
+    private Integer caughtUpReplica(long position) {
+        int first = nextReplica.getAndIncrement();
+        for (int i = 0; i < replicas.size(); i++) {
+            int replica = Math.floorMod(first + i, replicas.size());
+            if (replayedPositions.get(replica) >= position) {
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Asks every replica how far it has replayed the WAL. Replicas that cannot be asked keep their last position.
+     */
+    private void refreshReplayedPositions() {
+        for (int i = 0; i < replicas.size(); i++) {
+            try (Connection connection = replicas.get(i).getConnection();
+                 Statement statement = connection.createStatement();
+                 ResultSet resultSet = statement.executeQuery("SELECT pg_last_wal_replay_lsn()")) {
+                String lsn = resultSet.next() ? resultSet.getString(1) : null;
+                if (lsn != null) {
+                    replayedPositions.accumulateAndGet(i, ConsistencyToken.parse(lsn), Math::max);
+                }
+            } catch (SQLException e) {
+                LOGGER.debug("Cannot read the replay position of replica {}: {}", i, e.getMessage());
+            }
+        }
+    }
+}
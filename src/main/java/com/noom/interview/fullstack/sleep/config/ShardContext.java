@@ -0,0 +1,36 @@
+package com.noom.interview.fullstack.sleep.config;
+
+/**
+ * The shard the current thread works on, held while a {@link ShardRouter} callback runs and read by
+ * {@link ShardRoutingDataSource} when a connection is obtained.
+ */
+final class ShardContext {
+
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private ShardContext() {
+        // Utility class
+    }
+
+    /**
+     * Gets the shard of the current thread.
+     *
+     * @return the index of the shard, or null when no shard is selected
+     */
+    static Integer current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Selects the shard of the current thread.
+     *
+     * @param shard the index of the shard, or null to clear the selection
+     */
+    static void set(Integer shard) {
+        if (shard == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(shard);
+        }
+    }
+}
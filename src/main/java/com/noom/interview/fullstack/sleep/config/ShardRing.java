@@ -0,0 +1,88 @@
+package com.noom.interview.fullstack.sleep.config;
+
+import java.util.*;
+
+/**
+ * Consistent-hash ring that assigns users to shards. Every shard owns a number of virtual nodes spread over a
+ * 64-bit ring, and a user belongs to the shard of the first node at or after the hash of the user ID. The nodes of
+ * a shard only depend on its index, so adding a shard to the end moves about 1/N of the users, all of them to the
+ * new shard, and leaves every other user where it was.
+ */
+public final class ShardRing {
+
+    private final int shardCount;
+    private final long[] points;
+    private final int[] shards;
+
+    /**
+     * Creates a ring.
+     *
+     * @param shardCount the number of shards, numbered from 0
+     * @param virtualNodes the number of nodes of each shard; more nodes spread users more evenly
+     * @throws IllegalArgumentException if there is no shard or no node
+     */
+    public ShardRing(int shardCount, int virtualNodes) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Ring must have at least one shard");
+        }
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("Shards must have at least one virtual node");
+        }
+
+        TreeMap<Long, Integer> nodes = new TreeMap<>();
+        for (int shard = 0; shard < shardCount; shard++) {
+            for (int node = 0; node < virtualNodes; node++) {
+                // A collision of two 64-bit points is left to the first shard
+                nodes.putIfAbsent(mix((long) shard << 32 | node), shard);
+            }
+        }
+
+        this.shardCount = shardCount;
+        this.points = new long[nodes.size()];
+        this.shards = new int[nodes.size()];
+        int i = 0;
+        for (Map.Entry<Long, Integer> node : nodes.entrySet()) {
+            points[i] = node.getKey();
+            shards[i] = node.getValue();
+            i++;
+        }
+    }
+
+    /**
+     * Gets the number of shards of the ring.
+     *
+     * @return the number of shards
+     */
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * Gets the shard a user belongs to.
+     *
+     * @param userId the user ID
+     * @return the index of the shard
+     */
+    public int shardOf(UUID userId) {
+        long point = mix(userId.getMostSignificantBits() ^ mix(userId.getLeastSignificantBits()));
+        int index = Arrays.binarySearch(points, point);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        // Past the last node the ring wraps around to the first
+        return shards[index == points.length ? 0 : index];
+    }
+
+    /**
+     * Scrambles a 64-bit value with the MurmurHash3 finalizer, so that nearby inputs land far apart on the ring.
+     *
+     * @param value the value
+     * @return the scrambled value
+     */
+    private static long mix(long value) {
+        long z = value;
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+}
@@ -0,0 +1,171 @@
+package com.noom.interview.fullstack.sleep.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.function.IntConsumer;
+
+/**
+ * Maps users to the shards their sleep logs are stored on and runs work against a shard. The shards are the
+ * database of {@code spring.datasource.url}, shard 0, followed by those of {@code sleep.datasource.shard-urls};
+ * without further shards there is a single shard and the selection has no effect.
+ * <p>
+ * While the shards are resharded, {@code sleep.datasource.shard-migration-from} is the number of shards before
+ * the new ones were added. Users are then still served by their shard on the ring of those shards, and users that
+ * move to a new shard are also written there, see
+ * {@link com.noom.interview.fullstack.sleep.service.SleepLogShardMigrationService}.
+ * <p>
+ * A transaction works on a single shard: select the shard before its first statement, and give every shard of a
+ * cross-shard operation its own transaction.
+ */
+@Component
+public class ShardRouter {
+
+    private final ShardRing ring;
+    private final ShardRing previousRing;
+
+    /**
+     * Creates the router.
+     *
+     * @param shardUrls the JDBC URLs of the shards beyond {@code spring.datasource.url}
+     * @param migrationFrom the number of shards before resharding, or 0 when not resharding
+     * @param virtualNodes the number of ring nodes of each shard
+     * @throws IllegalArgumentException if the number of shards before resharding is not below the number of shards
+     */
+    public ShardRouter(@Value("${sleep.datasource.shard-urls:}") List<String> shardUrls,
+                       @Value("${sleep.datasource.shard-migration-from:0}") int migrationFrom,
+                       @Value("${sleep.datasource.shard-virtual-nodes:256}") int virtualNodes) {
+        int shardCount = 1 + (int) shardUrls.stream().filter(url -> !url.isBlank()).count();
+        if (migrationFrom < 0 || (migrationFrom != 0 && migrationFrom >= shardCount)) {
+            throw new IllegalArgumentException(String.format(
+                    "Shards to migrate from must be between 1 and %d, or 0 when not resharding", shardCount - 1));
+        }
+
+        this.ring = new ShardRing(shardCount, virtualNodes);
+        this.previousRing = migrationFrom > 0 ? new ShardRing(migrationFrom, virtualNodes) : null;
+    }
+
+    /**
+     * Gets the number of shards.
+     *
+     * @return the number of shards
+     */
+    public int getShardCount() {
+        return ring.getShardCount();
+    }
+
+    /**
+     * Tells whether users are being moved to newly added shards.
+     *
+     * @return true while resharding
+     */
+    public boolean isMigrating() {
+        return previousRing != null;
+    }
+
+    /**
+     * Gets the shard that serves a user: while resharding the user's shard before the new shards were added.
+     *
+     * @param userId the user ID
+     * @return the index of the shard
+     */
+    public int shardOf(UUID userId) {
+        return previousRing != null ? previousRing.shardOf(userId) : ring.shardOf(userId);
+    }
+
+    /**
+     * Gets the new shard of a user that moves while resharding.
+     *
+     * @param userId the user ID
+     * @return the index of the new shard, or empty when not resharding or the user stays on its shard
+     */
+    public OptionalInt migrationTargetOf(UUID userId) {
+        if (previousRing == null) {
+            return OptionalInt.empty();
+        }
+        int target = ring.shardOf(userId);
+        return target != previousRing.shardOf(userId) ? OptionalInt.of(target) : OptionalInt.empty();
+    }
+
+    /**
+     * Groups users by the shard that serves them.
+     *
+     * @param userIds the user IDs
+     * @return the user IDs of each shard, in shard order and with the users of a shard in the given order
+     */
+    public SortedMap<Integer, List<UUID>> groupByShard(Collection<UUID> userIds) {
+        SortedMap<Integer, List<UUID>> groups = new TreeMap<>();
+        for (UUID userId : userIds) {
+            groups.computeIfAbsent(shardOf(userId), shard -> new ArrayList<>()).add(userId);
+        }
+        return groups;
+    }
+
+    /**
+     * Runs work on the shard that serves a user.
+     *
+     * @param userId the user ID
+     * @param work the work
+     * @param <T> the type of the result
+     * @param <E> the type of the exception the work throws
+     * @return the result of the work
+     * @throws E if the work fails
+     */
+    public <T, E extends Exception> T onShardOf(UUID userId, ShardWork<T, E> work) throws E {
+        return onShard(shardOf(userId), work);
+    }
+
+    /**
+     * Runs work on a shard. The previously selected shard, if any, is selected again afterwards.
+     *
+     * @param shard the index of the shard
+     * @param work the work
+     * @param <T> the type of the result
+     * @param <E> the type of the exception the work throws
+     * @return the result of the work
+     * @throws E if the work fails
+     */
+    public <T, E extends Exception> T onShard(int shard, ShardWork<T, E> work) throws E {
+        Integer previous = ShardContext.current();
+        ShardContext.set(shard);
+        try {
+            return work.run();
+        } finally {
+            ShardContext.set(previous);
+        }
+    }
+
+    /**
+     * Runs work on every shard in turn, e.g. maintenance of each database.
+     *
+     * @param work the work, given the index of the shard
+     */
+    public void forEachShard(IntConsumer work) {
+        for (int shard = 0; shard < getShardCount(); shard++) {
+            int current = shard;
+            onShard(shard, () -> {
+                work.accept(current);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Work on a shard.
+     *
+     * @param <T> the type of the result
+     * @param <E> the type of the exception the work throws
+     */
+    @FunctionalInterface
+    public interface ShardWork<T, E extends Exception> {
+
+        /**
+         * Runs the work.
+         *
+         * @return the result
+         * @throws E if the work fails
+         */
+        T run() throws E;
+    }
+}
@@ -0,0 +1,94 @@
+package com.noom.interview.fullstack.sleep.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.flywaydb.core.Flyway;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.*;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.*;
+
+/**
+ * Configuration of sharding. Active when {@code sleep.datasource.shard-urls} lists at least one database beyond
+ * {@code spring.datasource.url}; the application's data source then routes every connection to the shard selected
+ * by {@link ShardRouter}. Shards are connected to with the credentials and pool settings of
+ * {@code spring.datasource}, and each has the full schema.
+ */
+@Configuration
+@ConditionalOnExpression("!'${sleep.datasource.shard-urls:}'.isBlank()")
+public class ShardRoutingConfig {
+
+    /**
+     * Creates the connection pools of the shards and routes between them.
+     *
+     * @param properties the {@code spring.datasource} properties of shard 0
+     * @param environment the environment, for the {@code spring.datasource.hikari} pool settings
+     * @param shardUrls the JDBC URLs of the shards beyond shard 0
+     * @param replicaUrls the JDBC URLs of read replicas, which cannot be combined with shards
+     * @return the routing data source
+     * @throws IllegalStateException if read replicas are configured as well
+     */
+    @Bean
+    public ShardRoutingDataSource shardRoutingDataSource(
+            DataSourceProperties properties,
+            Environment environment,
+            @Value("${sleep.datasource.shard-urls}") List<String> shardUrls,
+            @Value("${sleep.datasource.replica-urls:}") String replicaUrls) {
+        if (!replicaUrls.isBlank()) {
+            throw new IllegalStateException("Read replicas cannot be combined with shards; "
+                    + "unset sleep.datasource.replica-urls or sleep.datasource.shard-urls");
+        }
+
+        List<HikariDataSource> shards = new ArrayList<>();
+        shards.add(DataSourcePools.pool(properties, environment, properties.determineUrl(), "shard-0"));
+        for (String shardUrl : shardUrls) {
+            if (!shardUrl.isBlank()) {
+                shards.add(DataSourcePools.pool(properties, environment, shardUrl.trim(), "shard-" + shards.size()));
+            }
+        }
+        return new ShardRoutingDataSource(shards);
+    }
+
+    /**
+     * Exposes the routing data source to JPA, JDBC and Flyway. Connections are only obtained from it when the
+     * first statement runs, by which time the service has selected the shard.
+     *
+     * @param shardRoutingDataSource the routing data source
+     * @return the application's data source
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(ShardRoutingDataSource shardRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(shardRoutingDataSource);
+    }
+
+    /**
+     * Migrates the schema of every shard with the configured Flyway settings, so that a newly added shard is
+     * created on startup. The {@code shard} placeholder is the shard's position, which gives each shard its own
+     * range of sleep log IDs.
+     *
+     * @param shardRoutingDataSource the routing data source
+     * @return the migration strategy
+     */
+    @Bean
+    public FlywayMigrationStrategy shardFlywayMigrationStrategy(ShardRoutingDataSource shardRoutingDataSource) {
+        return flyway -> {
+            List<DataSource> shards = shardRoutingDataSource.getShards();
+            for (int shard = 0; shard < shards.size(); shard++) {
+                Map<String, String> placeholders = new HashMap<>(flyway.getConfiguration().getPlaceholders());
+                placeholders.put("shard", String.valueOf(shard));
+                Flyway.configure()
+                        .configuration(flyway.getConfiguration())
+                        .placeholders(placeholders)
+                        .dataSource(shards.get(shard))
+                        .load()
+                        .migrate();
+            }
+        };
+    }
+}
@@ -0,0 +1,56 @@
+package com.noom.interview.fullstack.sleep.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.*;
+
+/**
+ * Routes connections to the shard selected by the current {@link ShardRouter} callback. Work outside of a
+ * callback, such as Hibernate's startup metadata lookups, goes to shard 0, the database of
+ * {@code spring.datasource.url}.
+ * <p>
+ * Transactions obtain their connection when they begin, before the service selects the user's shard, so this
+ * data source must be used through a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+    private final List<HikariDataSource> shards;
+
+    /**
+     * Creates the data source.
+     *
+     * @param shards the pools of the shards, in shard order
+     */
+    public ShardRoutingDataSource(List<HikariDataSource> shards) {
+        this.shards = List.copyOf(shards);
+
+        Map<Object, Object> targets = new HashMap<>();
+        for (int i = 0; i < shards.size(); i++) {
+            targets.put(i, shards.get(i));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(shards.get(0));
+        setLenientFallback(false);
+    }
+
+    /**
+     * Gets the pools of the shards, e.g. to migrate each of them.
+     *
+     * @return the pools, in shard order
+     */
+    public List<DataSource> getShards() {
+        return List.copyOf(shards);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return ShardContext.current();
+    }
+
+    @Override
+    public void close() {
+        shards.forEach(HikariDataSource::close);
+    }
+}
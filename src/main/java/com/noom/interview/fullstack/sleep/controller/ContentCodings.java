@@ -0,0 +1,38 @@
+package com.noom.interview.fullstack.sleep.controller;
+
+/**
+ * Content coding negotiation for controllers that compress their own response bodies.
+ */
+final class ContentCodings {
+
+    /**
+     * The gzip content coding
+     */
+    static final String GZIP = "gzip";
+
+    private ContentCodings() {
+        // Utility class
+    }
+
+    /**
+     * Checks whether an Accept-Encoding header allows gzip, i.e. lists gzip or * without a zero quality.
+     *
+     * @param acceptEncoding the header value, may be null
+     * @return true if the response may be gzipped
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].strip();
+            if (!GZIP.equalsIgnoreCase(name) && !"*".equals(name)) {
+                continue;
+            }
+            boolean refused = parts.length > 1 && parts[1].strip().matches("q=0(\\.0*)?");
+            return !refused;
+        }
+        return false;
+    }
+}
@@ -1,32 +1,55 @@
 package com.noom.interview.fullstack.sleep.controller;
 
+import com.noom.interview.fullstack.sleep.config.ReplicaRoutingDataSource;
 import com.noom.interview.fullstack.sleep.domain.dto.*;
 import com.noom.interview.fullstack.sleep.service.SleepLogService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.*;
 import io.swagger.v3.oas.annotations.responses.*;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.*;
+import org.springframework.util.MimeTypeUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.*;
 import org.springframework.web.server.ResponseStatusException;
 
-import java.util.UUID;
+import java.io.*;
+import java.time.*;
+import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * REST controller for managing sleep logs.
  */
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequestMapping("/api/sleep-logs")
 @RequiredArgsConstructor
 @Tag(name = "Sleep Logs", description = "API for managing sleep logs")
 public class SleepLogController {
 
+    private static final String USER_ID_HEADER = "X-User-ID";
+    private static final String CBOR = "cbor";
+
+    // Request headers that select the bytes of a response, besides the URL
+    private static final String[] LATEST_VARY = {USER_ID_HEADER, HttpHeaders.ACCEPT};
+    private static final String[] STATISTICS_VARY = {USER_ID_HEADER, HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING};
+
     private final SleepLogService sleepLogService;
+    private final ObjectMapper objectMapper;
+    private final ObjectProvider<ReplicaRoutingDataSource> replicaRoutingDataSource;
 
     /**
-     * Creates a new sleep log.
+     * Creates a new sleep log. With read replicas, the response carries a consistency token; reads that send it
+     * back see the new sleep log.
      *
      * @param request the sleep log request
      * @param userId the ID of the user (from header)
@@ -48,48 +71,377 @@ public class SleepLogController {
 
         SleepLogResponse response = sleepLogService.createSleepLog(request);
 
-        return ResponseEntity.status(HttpStatus.CREATED).body(response);
+        return withConsistencyToken(ResponseEntity.status(HttpStatus.CREATED)).body(response);
+    }
+
+    /**
+     * Creates several sleep logs at once, e.g. when backfilling data from a wearable. With read replicas, the
+     * response carries a consistency token like a single create.
+     *
+     * @param requests the sleep log requests
+     * @param userId the ID of the user (from header)
+     * @return a result for each request with status 200 (OK)
+     */
+    @PostMapping("/batch")
+    @Operation(summary = "Create sleep logs in bulk",
+            description = "Creates several sleep logs for the specified user and reports the outcome of each one")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Batch processed",
+                    content = @Content(schema = @Schema(implementation = SleepLogBatchResponse.class))),
+            @ApiResponse(responseCode = "400", description = "Empty or oversized batch")
+    })
+    public ResponseEntity<SleepLogBatchResponse> createSleepLogs(
+            @RequestBody List<SleepLogRequest> requests,
+            @RequestHeader("X-User-ID") UUID userId) {
+
+        SleepLogBatchResponse response = sleepLogService.createSleepLogs(userId, requests);
+
+        return withConsistencyToken(ResponseEntity.ok()).body(response);
+    }
+
+    /**
+     * Adds the consistency token of the committed writes to a response, if reads are routed to replicas.
+     *
+     * @param response the response builder
+     * @return the response builder
+     */
+    private ResponseEntity.BodyBuilder withConsistencyToken(ResponseEntity.BodyBuilder response) {
+        ReplicaRoutingDataSource routing = replicaRoutingDataSource.getIfAvailable();
+        String token = routing != null ? routing.issueToken() : null;
+        return token != null ? response.header(ReplicaRoutingDataSource.CONSISTENCY_TOKEN_HEADER, token) : response;
+    }
+
+    /**
+     * Gets a user's sleep logs one page at a time, most recent first.
+     *
+     * @param userId the ID of the user (from header)
+     * @param before only sleep logs dated before this date, for the first page
+     * @param cursor the next cursor of the previous page
+     * @param limit the maximum number of sleep logs on the page
+     * @return the page with status 200 (OK)
+     */
+    @GetMapping
+    @Operation(summary = "List sleep logs",
+            description = "Gets one page of sleep logs for the specified user, most recent first; pass the "
+                    + "returned nextCursor to get the next, older page")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Page of sleep logs found",
+                    content = @Content(schema = @Schema(implementation = SleepLogPageResponse.class))),
+            @ApiResponse(responseCode = "400", description = "Invalid limit or cursor, or both before and cursor")
+    })
+    public ResponseEntity<SleepLogPageResponse> getSleepLogs(
+            @RequestHeader("X-User-ID") UUID userId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate before,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit) {
+
+        return ResponseEntity.ok(sleepLogService.getSleepLogs(userId, before, cursor, limit));
     }
 
     /**
-     * Gets the latest sleep log for a user.
+     * Gets the latest sleep log for a user. Responses carry an ETag and Last-Modified derived from the user's data
+     * version and the negotiated media type; a matching If-None-Match or If-Modified-Since is answered with 304
+     * without loading the sleep log.
      *
      * @param userId the ID of the user (from header)
-     * @return the latest sleep log with status 200 (OK) or 404 (Not Found) if none exists
+     * @param accept the media types the client accepts
+     * @param webRequest the request, for its conditional headers
+     * @return the latest sleep log with status 200 (OK), 304 (Not Modified) if the client's copy is current,
+     *         or 404 (Not Found) if none exists
      */
     @GetMapping("/latest")
     @Operation(summary = "Get latest sleep log", description = "Gets the most recent sleep log for the specified user")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Latest sleep log found",
                     content = @Content(schema = @Schema(implementation = SleepLogResponse.class))),
+            @ApiResponse(responseCode = "304", description = "Latest sleep log unchanged since the client's copy"),
             @ApiResponse(responseCode = "404", description = "No sleep logs found for the user")
     })
     public ResponseEntity<SleepLogResponse> getLatestSleepLog(
-            @RequestHeader("X-User-ID") UUID userId) {
+            @RequestHeader("X-User-ID") UUID userId,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            WebRequest webRequest) {
+
+        // A user who never had a sleep log has nothing to revalidate
+        SleepLogVersion version = sleepLogService.getSleepLogVersion(userId);
+        String etag = version.toETag(representation(accept, null, false));
+        if (version.getModifiedAt() != null
+                && checkNotModified(webRequest, etag, version.getModifiedAt().toEpochMilli(), LATEST_VARY)) {
+            return null;
+        }
 
         return sleepLogService.getLatestSleepLog(userId)
-                .map(ResponseEntity::ok)
+                .map(sleepLog -> revalidated(LATEST_VARY).body(sleepLog))
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, 
                         String.format("No sleep logs found for user %s", userId)));
     }
 
     /**
-     * Gets sleep statistics for a user over the last 30 days.
+     * Gets sleep statistics for a user over the last 30 days, or over the given date range. Responses carry an
+     * ETag and Last-Modified derived from the user's data version and the date range, so the ETag of the default
+     * window also changes when the window rolls over at midnight. A matching If-None-Match or If-Modified-Since is
+     * answered with 304 before any statistics are computed. Statistics of the default window are written from
+     * cached JSON bytes, gzipped if the client accepts gzip, unless the client prefers CBOR. Identity JSON, gzipped
+     * JSON and CBOR are different bytes, so each has an ETag of its own.
      *
      * @param userId the ID of the user (from header)
-     * @return the sleep statistics with status 200 (OK)
+     * @param from the start date (inclusive), required together with to
+     * @param to the end date (inclusive), required together with from
+     * @param accept the media types the client accepts
+     * @param acceptEncoding the content codings the client accepts
+     * @param webRequest the request, for its conditional headers
+     * @return the sleep statistics with status 200 (OK), or 304 (Not Modified) if the client's copy is current
      */
     @GetMapping("/statistics")
     @Operation(summary = "Get sleep statistics",
-            description = "Gets sleep statistics for the specified user over the last 30 days")
+            description = "Gets sleep statistics for the specified user over the last 30 days, "
+                    + "or over the date range given by from and to")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Sleep statistics calculated",
-                    content = @Content(schema = @Schema(implementation = SleepStatisticsResponse.class)))
+                    content = @Content(schema = @Schema(implementation = SleepStatisticsResponse.class))),
+            @ApiResponse(responseCode = "304", description = "Sleep statistics unchanged since the client's copy"),
+            @ApiResponse(responseCode = "400", description = "Only one of from and to given, or from after to")
     })
-    public ResponseEntity<SleepStatisticsResponse> getSleepStatistics(
-            @RequestHeader("X-User-ID") UUID userId) {
+    public ResponseEntity<?> getSleepStatistics(
+            @RequestHeader("X-User-ID") UUID userId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            WebRequest webRequest) {
+
+        boolean defaultWindow = from == null && to == null;
+        String representation = representation(accept, acceptEncoding, defaultWindow);
+        LocalDate today = LocalDate.now();
+        if ((defaultWindow || (from != null && to != null))
+                && isStatisticsNotModified(userId, from, to, today, representation, webRequest)) {
+            return null;
+        }
+        if (!defaultWindow) {
+            return revalidated(STATISTICS_VARY).body(sleepLogService.getSleepStatistics(userId, from, to));
+        }
+        // A load that started before midnight covers the day before and is not kept in the cache; a request that
+        // waited for it loads again, so the body matches the entity tag of today's window
+        if (CBOR.equals(representation)) {
+            SleepStatisticsResponse statistics = sleepLogService.getSleepStatistics(userId);
+            if (statistics.getDateRange() != null && statistics.getDateRange().getTo().isBefore(today)) {
+                statistics = sleepLogService.getSleepStatistics(userId);
+            }
+            return revalidated(STATISTICS_VARY).body(statistics);
+        }
+
+        // A cache hit is a lookup and a buffer copy: no statistics, Jackson or gzip work per request
+        SerializedJson statistics = sleepLogService.getSerializedSleepStatistics(userId);
+        if (statistics.getLastDay() != null && statistics.getLastDay().isBefore(today)) {
+            statistics = sleepLogService.getSerializedSleepStatistics(userId);
+        }
+        ResponseEntity.BodyBuilder response = revalidated(STATISTICS_VARY)
+                .contentType(MediaType.APPLICATION_JSON);
+        if (ContentCodings.GZIP.equals(representation)) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, ContentCodings.GZIP)
+                    .body(statistics.getGzippedJson());
+        }
+        return response.body(statistics.getJson());
+    }
+
+    /**
+     * Checks the conditional headers of a statistics request against the user's data version and the date range.
+     * The default window ends today, so its validators also change at local midnight even without writes.
+     *
+     * @param userId the ID of the user
+     * @param from the start date, or null for the default window
+     * @param to the end date, or null for the default window
+     * @param today the last day of the default window
+     * @param representation the representation qualifier of the response, or null for identity JSON
+     * @param webRequest the request, which is answered with 304 if its validators match
+     * @return true if the client's copy is current
+     */
+    private boolean isStatisticsNotModified(UUID userId, LocalDate from, LocalDate to, LocalDate today,
+                                            String representation, WebRequest webRequest) {
+        SleepLogVersion version = sleepLogService.getSleepLogVersion(userId);
+        if (from != null) {
+            Instant modifiedAt = version.getModifiedAt();
+            return checkNotModified(webRequest, version.toETag(from, to, representation),
+                    modifiedAt != null ? modifiedAt.toEpochMilli() : -1, STATISTICS_VARY);
+        }
+
+        Instant windowStart = today.atStartOfDay(ZoneId.systemDefault()).toInstant();
+        Instant modifiedAt = version.getModifiedAt() != null && version.getModifiedAt().isAfter(windowStart)
+                ? version.getModifiedAt()
+                : windowStart;
+        return checkNotModified(webRequest, version.toETag(today, representation), modifiedAt.toEpochMilli(),
+                STATISTICS_VARY);
+    }
+
+    /**
+     * Checks the conditional headers of a request and, if the client's copy is current, completes the 304 response
+     * with the Vary header the 200 response would have carried.
+     *
+     * @param webRequest the request
+     * @param etag the entity tag of the current representation
+     * @param lastModified the last modification time in epoch milliseconds, or -1 if unknown
+     * @param vary the request headers the representation depends on
+     * @return true if the client's copy is current
+     */
+    private static boolean checkNotModified(WebRequest webRequest, String etag, long lastModified, String[] vary) {
+        if (!webRequest.checkNotModified(etag, lastModified)) {
+            return false;
+        }
+        if (webRequest instanceof ServletWebRequest servletWebRequest && servletWebRequest.getResponse() != null) {
+            servletWebRequest.getResponse().setHeader(HttpHeaders.VARY, String.join(", ", vary));
+        }
+        return true;
+    }
+
+    /**
+     * Names the representation a response will be sent in, for its ETag: a strong ETag identifies exact bytes, so
+     * the same data as identity JSON, gzipped JSON or CBOR needs three different tags.
+     *
+     * @param accept the Accept header, may be null
+     * @param acceptEncoding the Accept-Encoding header, may be null
+     * @param gzipped whether the endpoint gzips JSON for clients that accept it
+     * @return "cbor", "gzip", or null for identity JSON, which keeps the plain tag
+     */
+    private static String representation(String accept, String acceptEncoding, boolean gzipped) {
+        if (!prefersJson(accept)) {
+            return CBOR;
+        }
+        return gzipped && ContentCodings.acceptsGzip(acceptEncoding) ? ContentCodings.GZIP : null;
+    }
+
+    /**
+     * Checks whether the client prefers JSON over CBOR, deciding as Spring's content negotiation does: accepted
+     * types are tried from the most specific and highest quality down, and wildcards match JSON first.
+     *
+     * @param accept the Accept header, may be null
+     * @return true if the response should be JSON
+     */
+    private static boolean prefersJson(String accept) {
+        if (accept == null) {
+            return true;
+        }
+        List<MediaType> acceptedTypes = MediaType.parseMediaTypes(accept);
+        MimeTypeUtils.sortBySpecificity(acceptedTypes);
+        for (MediaType acceptedType : acceptedTypes) {
+            if (acceptedType.getQualityValue() == 0) {
+                continue;
+            }
+            if (acceptedType.isCompatibleWith(MediaType.APPLICATION_JSON)) {
+                return true;
+            }
+            if (acceptedType.isCompatibleWith(MediaType.APPLICATION_CBOR)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Starts a 200 response that clients may store but must revalidate, separately for each user and
+     * representation.
+     *
+     * @param vary the request headers the representation depends on
+     * @return the response builder
+     */
+    private static ResponseEntity.BodyBuilder revalidated(String[] vary) {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache())
+                .varyBy(vary);
+    }
+
+    /**
+     * Gets sleep statistics for a user per week or month, e.g. to chart the last year.
+     *
+     * @param userId the ID of the user (from header)
+     * @param bucket the length of each point, week or month
+     * @param from the start date (inclusive); defaults to 52 weeks or 12 months before to
+     * @param to the end date (inclusive); defaults to today
+     * @return the trend series with status 200 (OK)
+     */
+    @GetMapping("/trends")
+    @Operation(summary = "Get sleep trends",
+            description = "Gets sleep statistics for the specified user per week or month over a date range")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Sleep trends calculated",
+                    content = @Content(schema = @Schema(implementation = SleepTrendResponse.class))),
+            @ApiResponse(responseCode = "400", description = "Unknown bucket, from after to, or range too long")
+    })
+    public ResponseEntity<SleepTrendResponse> getSleepTrends(
+            @RequestHeader("X-User-ID") UUID userId,
+            @RequestParam(defaultValue = "week") String bucket,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+
+        return ResponseEntity.ok(sleepLogService.getSleepTrends(userId, TrendBucket.of(bucket), from, to));
+    }
+
+    /**
+     * Gets sleep statistics for each user of a cohort and for the cohort as a whole. The users are written to the
+     * response as they are read from the database, so the response is never held in memory.
+     *
+     * @param request the users and date range
+     * @param response the HTTP response the statistics are streamed to
+     * @throws IOException if the response cannot be written
+     */
+    @PostMapping("/statistics/cohort")
+    @Operation(summary = "Get cohort sleep statistics",
+            description = "Gets sleep statistics for each of the given users and for all of them together")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Cohort statistics calculated",
+                    content = @Content(schema = @Schema(implementation = CohortStatisticsResponse.class))),
+            @ApiResponse(responseCode = "400", description = "No or too many users, missing dates, or from after to")
+    })
+    public void getCohortStatistics(@RequestBody CohortStatisticsRequest request, HttpServletResponse response)
+            throws IOException {
+
+        CohortStatisticsWriter writer = new CohortStatisticsWriter(request, response);
+        SleepStatisticsResponse cohort = sleepLogService.getCohortStatistics(request, writer);
+        writer.finish(cohort);
+    }
+
+    /**
+     * Writes a cohort statistics response in the field order of {@link CohortStatisticsResponse}. Nothing is
+     * written before the first user, so validation errors can still be answered with an error response.
+     */
+    private final class CohortStatisticsWriter implements Consumer<UserSleepStatistics> {
+
+        private final CohortStatisticsRequest request;
+        private final HttpServletResponse response;
+        private JsonGenerator generator;
+
+        private CohortStatisticsWriter(CohortStatisticsRequest request, HttpServletResponse response) {
+            this.request = request;
+            this.response = response;
+        }
+
+        @Override
+        public void accept(UserSleepStatistics userStatistics) {
+            try {
+                start();
+                generator.writeObject(userStatistics);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void finish(SleepStatisticsResponse cohort) throws IOException {
+            start();
+            generator.writeEndArray();
+            generator.writeObjectField("cohort", cohort);
+            generator.writeEndObject();
+            generator.close();
+        }
 
-        SleepStatisticsResponse statistics = sleepLogService.getSleepStatistics(userId);
-        return ResponseEntity.ok(statistics);
+        private void start() throws IOException {
+            if (generator != null) {
+                return;
+            }
+            response.setStatus(HttpStatus.OK.value());
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            generator = objectMapper.getFactory().createGenerator(response.getOutputStream());
+            generator.writeStartObject();
+            generator.writeObjectField("dateRange", new DateRange(request.getFrom(), request.getTo()));
+            generator.writeArrayFieldStart("users");
+        }
     }
 }
@@ -0,0 +1,78 @@
+package com.noom.interview.fullstack.sleep.controller;
+
+import com.noom.interview.fullstack.sleep.domain.dto.SleepLogExportFormat;
+import com.noom.interview.fullstack.sleep.service.SleepLogExportService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.*;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.*;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.*;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * REST controller for exporting a user's whole sleep history.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@RequestMapping("/api/sleep-logs")
+@RequiredArgsConstructor
+@Tag(name = "Sleep Logs", description = "API for managing sleep logs")
+public class SleepLogExportController {
+
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    private final SleepLogExportService sleepLogExportService;
+
+    /**
+     * Exports every sleep log of a user, oldest first. The payload is written while the sleep logs are read, on a
+     * separate thread, so histories of any length are exported without buffering them. The payload is gzipped on
+     * the fly when the client accepts gzip.
+     *
+     * @param userId the ID of the user (from header)
+     * @param format the payload format, ndjson or csv
+     * @param acceptEncoding the content codings the client accepts
+     * @return the streamed payload with status 200 (OK)
+     */
+    @GetMapping("/export")
+    @Operation(summary = "Export sleep logs",
+            description = "Streams every sleep log of the specified user as NDJSON or CSV, gzipped if accepted")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Export streamed"),
+            @ApiResponse(responseCode = "400", description = "Unknown format")
+    })
+    public ResponseEntity<StreamingResponseBody> exportSleepLogs(
+            @RequestHeader("X-User-ID") UUID userId,
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+
+        SleepLogExportFormat exportFormat = SleepLogExportFormat.of(format);
+        boolean gzip = ContentCodings.acceptsGzip(acceptEncoding);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType(exportFormat.getMediaType()));
+        headers.setContentDisposition(ContentDisposition.attachment()
+                .filename(String.format("sleep-logs-%s.%s", userId, exportFormat.getFileExtension()))
+                .build());
+        headers.setVary(List.of(HttpHeaders.ACCEPT_ENCODING));
+        if (gzip) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, ContentCodings.GZIP);
+        }
+
+        StreamingResponseBody body = output -> {
+            if (!gzip) {
+                sleepLogExportService.exportSleepLogs(userId, exportFormat, output);
+                return;
+            }
+            GZIPOutputStream gzipOutput = new GZIPOutputStream(output, GZIP_BUFFER_SIZE);
+            sleepLogExportService.exportSleepLogs(userId, exportFormat, gzipOutput);
+            gzipOutput.finish();
+        };
+
+        return ResponseEntity.ok().headers(headers).body(body);
+    }
+}
@@ -0,0 +1,56 @@
+package com.noom.interview.fullstack.sleep.controller;
+
+import com.noom.interview.fullstack.sleep.domain.dto.*;
+import com.noom.interview.fullstack.sleep.service.SleepLogImportService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.*;
+import io.swagger.v3.oas.annotations.responses.*;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.*;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+
+/**
+ * REST controller for administrative bulk operations on sleep logs.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@RequestMapping("/api/admin/sleep-logs")
+@RequiredArgsConstructor
+@Tag(name = "Sleep Log Administration", description = "API for bulk sleep log operations")
+public class SleepLogImportController {
+
+    private static final String TEXT_CSV_VALUE = "text/csv";
+
+    private final SleepLogImportService sleepLogImportService;
+
+    /**
+     * Imports historical sleep logs for any number of users. The request body is streamed, so payloads
+     * with millions of lines can be imported without buffering them.
+     *
+     * @param request the HTTP request whose body is the NDJSON or CSV payload
+     * @return the import summary with status 200 (OK)
+     * @throws IOException if the request body cannot be read
+     */
+    @PostMapping(value = "/import", consumes = {MediaType.APPLICATION_NDJSON_VALUE, TEXT_CSV_VALUE})
+    @Operation(summary = "Import sleep logs",
+            description = "Streams NDJSON or CSV sleep logs into the database, skipping existing user/date pairs")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Import finished",
+                    content = @Content(schema = @Schema(implementation = SleepLogImportResponse.class)))
+    })
+    public ResponseEntity<SleepLogImportResponse> importSleepLogs(HttpServletRequest request) throws IOException {
+        MediaType contentType = MediaType.parseMediaType(request.getContentType());
+        SleepLogImportFormat format = contentType.isCompatibleWith(MediaType.APPLICATION_NDJSON)
+                ? SleepLogImportFormat.NDJSON
+                : SleepLogImportFormat.CSV;
+
+        SleepLogImportResponse response = sleepLogImportService.importSleepLogs(request.getInputStream(), format);
+
+        return ResponseEntity.ok(response);
+    }
+}
@@ -0,0 +1,92 @@
+package com.noom.interview.fullstack.sleep.diagnostics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jdk.jfr.consumer.*;
+import org.slf4j.*;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.*;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Reports virtual threads that block while pinned to their carrier thread, e.g. on I/O inside a synchronized
+ * block. A pinned virtual thread keeps its carrier from running other virtual threads, so pinning on a hot path
+ * such as creating a sleep log or loading statistics caps concurrency at the number of carriers. Runs when the
+ * application is started with virtual threads and listens for JFR's {@code jdk.VirtualThreadPinned} events from
+ * startup on. Each event is logged with the innermost application frame and the top of its stack, and counted in
+ * {@code sleep.virtual-threads.pinned} tagged with that frame.
+ */
+@Component
+@ConditionalOnThreading(Threading.VIRTUAL)
+@ConditionalOnProperty(name = "sleep.virtual-threads.pinning-monitor.enabled", havingValue = "true",
+        matchIfMissing = true)
+public class VirtualThreadPinningMonitor implements SmartLifecycle {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VirtualThreadPinningMonitor.class);
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final String PINNED_COUNTER = "sleep.virtual-threads.pinned";
+    private static final String APPLICATION_PACKAGE = "com.noom.interview.fullstack.sleep.";
+    private static final int LOGGED_FRAMES = 16;
+
+    private final Duration threshold;
+    private final MeterRegistry meterRegistry;
+    private RecordingStream recordingStream;
+
+    /**
+     * Creates the monitor.
+     *
+     * @param threshold the shortest pinned block that is reported
+     * @param meterRegistry the registry of the pinning counter
+     */
+    public VirtualThreadPinningMonitor(
+            @Value("${sleep.virtual-threads.pinning-threshold:20ms}") Duration threshold,
+            MeterRegistry meterRegistry) {
+        this.threshold = threshold;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void start() {
+        recordingStream = new RecordingStream();
+        recordingStream.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+        recordingStream.onEvent(PINNED_EVENT, this::report);
+        recordingStream.startAsync();
+        LOGGER.info("Reporting virtual threads pinned to their carrier for at least {} ms", threshold.toMillis());
+    }
+
+    @Override
+    public void stop() {
+        recordingStream.close();
+        recordingStream = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return recordingStream != null;
+    }
+
+    private void report(RecordedEvent event) {
+        List<RecordedFrame> frames = event.getStackTrace() != null ? event.getStackTrace().getFrames() : List.of();
+        String applicationFrame = frames.stream()
+                .filter(frame -> frame.isJavaFrame() && frame.getMethod().getType().getName()
+                        .startsWith(APPLICATION_PACKAGE))
+                .findFirst()
+                .map(frame -> frame.getMethod().getType().getName() + "." + frame.getMethod().getName())
+                .orElse("none");
+        meterRegistry.counter(PINNED_COUNTER, "frame", applicationFrame).increment();
+
+        String stack = frames.stream()
+                .limit(LOGGED_FRAMES)
+                .map(frame -> "\tat " + frame.getMethod().getType().getName() + "." + frame.getMethod().getName()
+                        + ":" + frame.getLineNumber())
+                .collect(Collectors.joining(System.lineSeparator()));
+        LOGGER.warn("Virtual thread pinned to its carrier for {} ms in {}{}{}", event.getDuration().toMillis(),
+                applicationFrame, System.lineSeparator(), stack);
+    }
+}
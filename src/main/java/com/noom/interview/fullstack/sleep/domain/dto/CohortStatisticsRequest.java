@@ -0,0 +1,26 @@
+package com.noom.interview.fullstack.sleep.domain.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Request DTO for the sleep statistics of a cohort of users.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Users and date range of a cohort statistics request")
+public class CohortStatisticsRequest {
+    @Schema(description = "IDs of the users in the cohort; duplicates are ignored")
+    private List<UUID> userIds;
+
+    @Schema(description = "Start date of the range (inclusive)")
+    private LocalDate from;
+
+    @Schema(description = "End date of the range (inclusive)")
+    private LocalDate to;
+}
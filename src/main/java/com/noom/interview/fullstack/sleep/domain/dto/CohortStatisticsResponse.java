@@ -0,0 +1,26 @@
+package com.noom.interview.fullstack.sleep.domain.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+import java.util.List;
+
+/**
+ * Response DTO for the sleep statistics of a cohort. The response is streamed in field order, so the users are
+ * written as they are read and the cohort statistics come last.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Sleep statistics of each user of a cohort and of the cohort as a whole")
+public class CohortStatisticsResponse {
+    @Schema(description = "Date range for which statistics were calculated")
+    private DateRange dateRange;
+
+    @Schema(description = "Statistics of each requested user, in request order")
+    private List<UserSleepStatistics> users;
+
+    @Schema(description = "Statistics over the sleep logs of all requested users")
+    private SleepStatisticsResponse cohort;
+}
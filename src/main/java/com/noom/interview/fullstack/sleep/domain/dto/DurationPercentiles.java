@@ -0,0 +1,23 @@
+package com.noom.interview.fullstack.sleep.domain.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+/**
+ * Percentiles of a duration in minutes, estimated from fixed-width histogram buckets.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Percentiles of a duration in minutes, accurate to within a 15-minute bucket")
+public class DurationPercentiles {
+    @Schema(description = "10th percentile in minutes")
+    private Double p10;
+
+    @Schema(description = "Median in minutes")
+    private Double median;
+
+    @Schema(description = "90th percentile in minutes")
+    private Double p90;
+}
@@ -0,0 +1,32 @@
+package com.noom.interview.fullstack.sleep.domain.dto;
+
+import lombok.*;
+
+import java.time.LocalDate;
+
+/**
+ * A response body serialized once to JSON, together with its gzip-compressed form, so that it can be written to
+ * any number of responses without running Jackson or a compressor again. The arrays must not be modified.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SerializedJson {
+
+    /**
+     * UTF-8 encoded JSON
+     */
+    private byte[] json;
+
+    /**
+     * The JSON, gzip-compressed
+     */
+    private byte[] gzippedJson;
+
+    /**
+     * The last day of the data the body covers, or null if it does not depend on the date; a cached body expires
+     * when this day ends
+     */
+    private LocalDate lastDay;
+}
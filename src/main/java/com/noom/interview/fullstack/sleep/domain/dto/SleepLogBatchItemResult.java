@@ -0,0 +1,36 @@
+package com.noom.interview.fullstack.sleep.domain.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+/**
+ * Outcome of a single item in a batch sleep log request.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Result for a single item of a batch sleep log request")
+public class SleepLogBatchItemResult {
+
+    /**
+     * Status of a batch item.
+     */
+    public enum Status {
+        CREATED,
+        DUPLICATE,
+        INVALID
+    }
+
+    @Schema(description = "Zero-based position of the item in the request")
+    private int index;
+
+    @Schema(description = "Outcome of the item")
+    private Status status;
+
+    @Schema(description = "Reason the item was not created, if any")
+    private String message;
+
+    @Schema(description = "The created sleep log, present only when the status is CREATED")
+    private SleepLogResponse sleepLog;
+}
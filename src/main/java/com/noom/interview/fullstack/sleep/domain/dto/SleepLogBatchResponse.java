@@ -0,0 +1,29 @@
+package com.noom.interview.fullstack.sleep.domain.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+import java.util.List;
+
+/**
+ * Response DTO for a batch sleep log request.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Per-item results of a batch sleep log request")
+public class SleepLogBatchResponse {
+
+    @Schema(description = "Number of sleep logs created")
+    private int created;
+
+    @Schema(description = "Number of items skipped because a sleep log already exists for the date")
+    private int duplicates;
+
+    @Schema(description = "Number of items rejected by validation")
+    private int invalid;
+
+    @Schema(description = "Results in the same order as the request items")
+    private List<SleepLogBatchItemResult> results;
+}
@@ -0,0 +1,59 @@
+package com.noom.interview.fullstack.sleep.domain.dto;
+
+/**
+ * Supported formats for sleep history exports. Both carry the fields of the import payloads, so an export can be
+ * imported again as it is.
+ */
+public enum SleepLogExportFormat {
+    /**
+     * One JSON sleep log object per line, including the userId.
+     */
+    NDJSON("application/x-ndjson", "ndjson"),
+
+    /**
+     * Comma-separated userId,sleepDate,bedTime,wakeTime,feeling with a header line.
+     */
+    CSV("text/csv", "csv");
+
+    private final String mediaType;
+    private final String fileExtension;
+
+    SleepLogExportFormat(String mediaType, String fileExtension) {
+        this.mediaType = mediaType;
+        this.fileExtension = fileExtension;
+    }
+
+    /**
+     * Returns the format with the given name, ignoring case.
+     *
+     * @param value the format name, e.g. "csv"
+     * @return the format
+     * @throws IllegalArgumentException if no format has the given name
+     */
+    public static SleepLogExportFormat of(String value) {
+        for (SleepLogExportFormat format : values()) {
+            if (format.name().equalsIgnoreCase(value)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Format must be one of ndjson or csv, was %s", value));
+    }
+
+    /**
+     * Returns the media type of the exported payload.
+     *
+     * @return the media type
+     */
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * Returns the file extension of the exported payload.
+     *
+     * @return the file extension, without a dot
+     */
+    public String getFileExtension() {
+        return fileExtension;
+    }
+}
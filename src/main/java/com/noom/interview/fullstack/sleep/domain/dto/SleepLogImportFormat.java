@@ -0,0 +1,16 @@
+package com.noom.interview.fullstack.sleep.domain.dto;
+
+/**
+ * Supported payload formats for bulk sleep log imports.
+ */
+public enum SleepLogImportFormat {
+    /**
+     * One JSON sleep log object per line, including the userId.
+     */
+    NDJSON,
+
+    /**
+     * Comma-separated userId,sleepDate,bedTime,wakeTime,feeling with an optional header line.
+     */
+    CSV
+}
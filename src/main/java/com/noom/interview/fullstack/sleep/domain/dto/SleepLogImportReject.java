@@ -0,0 +1,21 @@
+package com.noom.interview.fullstack.sleep.domain.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+/**
+ * A line of an import payload that could not be imported.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "A rejected line of an import payload")
+public class SleepLogImportReject {
+
+    @Schema(description = "One-based line number in the payload")
+    private long line;
+
+    @Schema(description = "Reason the line was rejected")
+    private String message;
+}
@@ -0,0 +1,35 @@
+package com.noom.interview.fullstack.sleep.domain.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+import java.util.List;
+
+/**
+ * Summary of a bulk sleep log import.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Summary of a bulk sleep log import")
+public class SleepLogImportResponse {
+
+    @Schema(description = "Number of non-blank data lines read from the payload")
+    private long linesRead;
+
+    @Schema(description = "Number of sleep logs inserted")
+    private long imported;
+
+    @Schema(description = "Number of valid lines skipped because a sleep log already exists for the user and date")
+    private long duplicates;
+
+    @Schema(description = "Number of lines rejected by parsing or validation")
+    private long rejected;
+
+    @Schema(description = "The first rejected lines, up to a fixed limit")
+    private List<SleepLogImportReject> rejects;
+
+    @Schema(description = "True if more lines were rejected than are listed in rejects")
+    private boolean rejectsTruncated;
+}
@@ -0,0 +1,23 @@
+package com.noom.interview.fullstack.sleep.domain.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+import java.util.List;
+
+/**
+ * Response DTO for one page of a user's sleep history.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "One page of sleep logs, most recent first")
+public class SleepLogPageResponse {
+
+    @Schema(description = "Sleep logs of the page, most recent first")
+    private List<SleepLogResponse> items;
+
+    @Schema(description = "Opaque cursor of the next, older page; absent on the last page")
+    private String nextCursor;
+}
@@ -0,0 +1,43 @@
+package com.noom.interview.fullstack.sleep.domain.dto;
+
+import lombok.*;
+
+import java.time.Instant;
+
+/**
+ * DTO for the version of a user's sleep log data, used to answer conditional requests.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SleepLogVersion {
+
+    private Long version;
+    private Instant modifiedAt;
+
+    /**
+     * Returns the version of a user without sleep logs.
+     *
+     * @return version 0 without a modification time
+     */
+    public static SleepLogVersion none() {
+        return new SleepLogVersion(0L, null);
+    }
+
+    /**
+     * Builds a strong entity tag from the version and whatever else the response depends on.
+     *
+     * @param qualifiers further inputs of the response, e.g. its date range or representation; nulls are skipped
+     * @return the quoted entity tag
+     */
+    public String toETag(Object... qualifiers) {
+        StringBuilder etag = new StringBuilder("\"").append(version);
+        for (Object qualifier : qualifiers) {
+            if (qualifier != null) {
+                etag.append('-').append(qualifier);
+            }
+        }
+        return etag.append('"').toString();
+    }
+}
@@ -0,0 +1,28 @@
+package com.noom.interview.fullstack.sleep.domain.dto;
+
+import lombok.*;
+
+import java.util.UUID;
+
+/**
+ * Sums and histograms over a user's sleep logs in a date range, as read from the daily rollups. The histograms
+ * have one count per bucket, laid out as described by SleepHistograms.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SleepStatisticsAggregate {
+    private UUID userId;
+    private DateRange dateRange;
+    private long logCount;
+    private long totalTimeInBedMinutes;
+    private long bedTimeSeconds;
+    private long wakeTimeSeconds;
+    private long badCount;
+    private long okCount;
+    private long goodCount;
+    private int[] timeInBedHistogram;
+    private int[] bedTimeHistogram;
+    private int[] wakeTimeHistogram;
+}
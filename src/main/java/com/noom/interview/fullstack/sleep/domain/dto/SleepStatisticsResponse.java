@@ -29,6 +29,15 @@ public class SleepStatisticsResponse {
     @Schema(description = "Average wake time (local time)")
     private LocalTime averageWakeTime;
 
+    @Schema(description = "10th percentile, median and 90th percentile of the total time in bed")
+    private DurationPercentiles totalTimeInBedMinutesPercentiles;
+
+    @Schema(description = "10th percentile, median and 90th percentile of the bed time")
+    private TimeOfDayPercentiles bedTimePercentiles;
+
+    @Schema(description = "10th percentile, median and 90th percentile of the wake time")
+    private TimeOfDayPercentiles wakeTimePercentiles;
+
     @Schema(description = "Count of each feeling (BAD, OK, GOOD)")
     private Map<Feeling, Integer> feelingCounts;
 }
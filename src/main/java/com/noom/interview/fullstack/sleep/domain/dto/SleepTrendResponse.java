@@ -0,0 +1,26 @@
+package com.noom.interview.fullstack.sleep.domain.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+import java.util.List;
+
+/**
+ * Response DTO for a series of sleep statistics, one point per week or month.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Sleep statistics per week or month over a date range")
+public class SleepTrendResponse {
+
+    @Schema(description = "Length of each bucket")
+    private TrendBucket bucket;
+
+    @Schema(description = "Date range covered by the series")
+    private DateRange dateRange;
+
+    @Schema(description = "Statistics of each bucket in date order; the first and last buckets are cut to the range")
+    private List<SleepStatisticsResponse> points;
+}
@@ -0,0 +1,25 @@
+package com.noom.interview.fullstack.sleep.domain.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+import java.time.LocalTime;
+
+/**
+ * Percentiles of a local time of day, estimated from fixed-width histogram buckets.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Percentiles of a local time of day, accurate to within a 15-minute bucket")
+public class TimeOfDayPercentiles {
+    @Schema(description = "10th percentile (local time)")
+    private LocalTime p10;
+
+    @Schema(description = "Median (local time)")
+    private LocalTime median;
+
+    @Schema(description = "90th percentile (local time)")
+    private LocalTime p90;
+}
@@ -0,0 +1,77 @@
+package com.noom.interview.fullstack.sleep.domain.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.*;
+import java.time.temporal.ChronoUnit;
+import java.util.Locale;
+
+/**
+ * Length of the buckets of a sleep trend series. Weeks start on Monday, months on their first day.
+ */
+@Schema(description = "Length of the buckets of a trend series")
+public enum TrendBucket {
+    WEEK(ChronoUnit.WEEKS, "1 week"),
+    MONTH(ChronoUnit.MONTHS, "1 month");
+
+    private final ChronoUnit unit;
+    private final String interval;
+
+    TrendBucket(ChronoUnit unit, String interval) {
+        this.unit = unit;
+        this.interval = interval;
+    }
+
+    /**
+     * Parses a bucket name, ignoring case.
+     *
+     * @param value the bucket name, e.g. "week"
+     * @return the bucket
+     * @throws IllegalArgumentException if the name is not a known bucket
+     */
+    public static TrendBucket of(String value) {
+        for (TrendBucket bucket : values()) {
+            if (bucket.name().equalsIgnoreCase(value)) {
+                return bucket;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Bucket must be one of week or month, was %s", value));
+    }
+
+    /**
+     * Returns the unit of time of the bucket.
+     *
+     * @return the unit
+     */
+    public ChronoUnit getUnit() {
+        return unit;
+    }
+
+    /**
+     * Returns the bucket length as a PostgreSQL interval literal.
+     *
+     * @return the interval, e.g. "1 week"
+     */
+    public String getInterval() {
+        return interval;
+    }
+
+    /**
+     * Returns the field name for PostgreSQL date_trunc.
+     *
+     * @return the field, e.g. "week"
+     */
+    public String getTruncField() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Returns the first day of the bucket that contains a date.
+     *
+     * @param date the date
+     * @return the start of its bucket
+     */
+    public LocalDate startOf(LocalDate date) {
+        return this == WEEK ? date.with(DayOfWeek.MONDAY) : date.withDayOfMonth(1);
+    }
+}
@@ -0,0 +1,22 @@
+package com.noom.interview.fullstack.sleep.domain.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+import java.util.UUID;
+
+/**
+ * Sleep statistics of a single user of a cohort.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Sleep statistics of one user of a cohort")
+public class UserSleepStatistics {
+    @Schema(description = "ID of the user")
+    private UUID userId;
+
+    @Schema(description = "Statistics of the user over the requested range")
+    private SleepStatisticsResponse statistics;
+}
@@ -9,9 +9,10 @@ import java.util.UUID;
 @Entity
 @Table(
         name = "sleep_logs",
-        uniqueConstraints = @UniqueConstraint(
-                name = "uk_sleeplogs_user_date",
-                columnNames = {"user_id", "sleep_date"}
+        indexes = @Index(
+                name = "ux_sleeplogs_user_date_covering",
+                columnList = "user_id, sleep_date DESC",
+                unique = true
         )
 )
 @Getter
@@ -22,7 +23,8 @@ import java.util.UUID;
 public class SleepLog {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sleep_logs_seq")
+    @SequenceGenerator(name = "sleep_logs_seq", sequenceName = "sleep_logs_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "user_id", nullable = false)
@@ -40,6 +42,13 @@ public class SleepLog {
     @Column(name = "total_time_in_bed_minutes", nullable = false)
     private Integer totalTimeInBedMinutes;
 
+    // Local bed and wake times as seconds since midnight, derived on write for statistics
+    @Column(name = "bed_time_of_day_seconds")
+    private Integer bedTimeOfDaySeconds;
+
+    @Column(name = "wake_time_of_day_seconds")
+    private Integer wakeTimeOfDaySeconds;
+
     @Enumerated(EnumType.STRING)
     @Column(name = "feeling", nullable = false, length = 10)
     private Feeling feeling;
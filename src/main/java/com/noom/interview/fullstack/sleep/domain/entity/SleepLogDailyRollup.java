@@ -0,0 +1,98 @@
+package com.noom.interview.fullstack.sleep.domain.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * Pre-aggregated sums of a user's sleep logs for a single day, together with the running totals and running
+ * histograms of all of the user's days up to and including this one. Statistics over a date range, percentiles
+ * included, are the difference between the running values of two rows, so their cost does not depend on the
+ * length of the range.
+ */
+@Entity
+@Table(name = "sleep_log_daily_rollups")
+@IdClass(SleepLogDailyRollupId.class)
+@Getter
+@Setter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@Builder
+public class SleepLogDailyRollup {
+
+    @Id
+    @Column(name = "user_id", nullable = false)
+    private UUID userId;
+
+    @Id
+    @Column(name = "sleep_date", nullable = false)
+    private LocalDate sleepDate;
+
+    @Column(name = "log_count", nullable = false)
+    private Long logCount;
+
+    @Column(name = "total_time_in_bed_minutes", nullable = false)
+    private Long totalTimeInBedMinutes;
+
+    /**
+     * Sum of the bed times as seconds since local midnight
+     */
+    @Column(name = "bed_time_seconds", nullable = false)
+    private Long bedTimeSeconds;
+
+    /**
+     * Sum of the wake times as seconds since local midnight
+     */
+    @Column(name = "wake_time_seconds", nullable = false)
+    private Long wakeTimeSeconds;
+
+    @Column(name = "bad_count", nullable = false)
+    private Long badCount;
+
+    @Column(name = "ok_count", nullable = false)
+    private Long okCount;
+
+    @Column(name = "good_count", nullable = false)
+    private Long goodCount;
+
+    // Running totals of the user's rollups up to and including this date
+
+    @Column(name = "cum_log_count", nullable = false)
+    private Long cumLogCount;
+
+    @Column(name = "cum_total_time_in_bed_minutes", nullable = false)
+    private Long cumTotalTimeInBedMinutes;
+
+    @Column(name = "cum_bed_time_seconds", nullable = false)
+    private Long cumBedTimeSeconds;
+
+    @Column(name = "cum_wake_time_seconds", nullable = false)
+    private Long cumWakeTimeSeconds;
+
+    @Column(name = "cum_bad_count", nullable = false)
+    private Long cumBadCount;
+
+    @Column(name = "cum_ok_count", nullable = false)
+    private Long cumOkCount;
+
+    @Column(name = "cum_good_count", nullable = false)
+    private Long cumGoodCount;
+
+    // Running histograms of the user's sleep logs up to and including this date, laid out as in SleepHistograms
+
+    @JdbcTypeCode(SqlTypes.ARRAY)
+    @Column(name = "cum_time_in_bed_histogram", nullable = false)
+    private int[] cumTimeInBedHistogram;
+
+    @JdbcTypeCode(SqlTypes.ARRAY)
+    @Column(name = "cum_bed_time_histogram", nullable = false)
+    private int[] cumBedTimeHistogram;
+
+    @JdbcTypeCode(SqlTypes.ARRAY)
+    @Column(name = "cum_wake_time_histogram", nullable = false)
+    private int[] cumWakeTimeHistogram;
+}
@@ -0,0 +1,18 @@
+package com.noom.interview.fullstack.sleep.domain.entity;
+
+import lombok.*;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * Composite primary key of {@link SleepLogDailyRollup}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SleepLogDailyRollupId implements Serializable {
+    private UUID userId;
+    private LocalDate sleepDate;
+}
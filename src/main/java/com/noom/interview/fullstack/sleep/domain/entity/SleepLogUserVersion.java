@@ -0,0 +1,31 @@
+package com.noom.interview.fullstack.sleep.domain.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Version of a user's sleep log data, incremented by every write of the user's sleep logs. Conditional requests
+ * compare it against the client's validators without reading any sleep log.
+ */
+@Entity
+@Table(name = "sleep_log_user_versions")
+@Getter
+@Setter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@Builder
+public class SleepLogUserVersion {
+
+    @Id
+    @Column(name = "user_id", nullable = false)
+    private UUID userId;
+
+    @Column(name = "version", nullable = false)
+    private Long version;
+
+    @Column(name = "modified_at", nullable = false)
+    private Instant modifiedAt;
+}
@@ -0,0 +1,34 @@
+package com.noom.interview.fullstack.sleep.job;
+
+import com.noom.interview.fullstack.sleep.service.SleepLogArchiveService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.*;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.*;
+import org.springframework.stereotype.Component;
+
+/**
+ * Moves the months of sleep logs older than the retention to the cold archive, at startup and then daily. Only a
+ * month that has passed the retention is archived, so on most days the job finds nothing to do.
+ */
+@Component
+@EnableScheduling
+@ConditionalOnProperty(name = "sleep.archive.enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class SleepLogArchiveJob implements ApplicationRunner {
+
+    private final SleepLogArchiveService sleepLogArchiveService;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        archive();
+    }
+
+    /**
+     * Archives the months past the retention. Instances running the job at the same time archive each month once.
+     */
+    @Scheduled(cron = "${sleep.archive.cron:0 0 4 * * *}")
+    public void archive() {
+        sleepLogArchiveService.archive();
+    }
+}
@@ -0,0 +1,75 @@
+package com.noom.interview.fullstack.sleep.job;
+
+import com.noom.interview.fullstack.sleep.config.ShardRouter;
+import org.slf4j.*;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.*;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.*;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+
+/**
+ * Keeps the monthly partitions of sleep_logs ahead of the calendar. At startup and then daily it creates the
+ * partitions of the current month and the configured number of months ahead, so new sleep logs never land in
+ * the default partition. It also creates the partitions of any month that has rows in the default partition,
+ * e.g. from importing an old history, which moves those rows into their month. Every shard is maintained in turn.
+ */
+@Component
+@EnableScheduling
+@ConditionalOnProperty(name = "sleep.partitions.maintenance.enabled", havingValue = "true", matchIfMissing = true)
+public class SleepLogPartitionJob implements ApplicationRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SleepLogPartitionJob.class);
+
+    private static final String CREATE_PARTITIONS = "SELECT create_sleep_log_partitions(?, ?)";
+
+    private static final String CREATE_PARTITIONS_OF_DEFAULT_ROWS = "SELECT "
+            + "COALESCE(SUM(create_sleep_log_partitions(month, month)), 0) "
+            + "FROM (SELECT DISTINCT CAST(date_trunc('month', sleep_date) AS DATE) AS month "
+            + "FROM sleep_logs_default) AS m";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ShardRouter shardRouter;
+    private final int monthsAhead;
+
+    /**
+     * Creates the job.
+     *
+     * @param jdbcTemplate the JDBC template
+     * @param shardRouter the shard router
+     * @param monthsAhead how many months after the current one get a partition in advance
+     */
+    public SleepLogPartitionJob(JdbcTemplate jdbcTemplate, ShardRouter shardRouter,
+                                @Value("${sleep.partitions.months-ahead:3}") int monthsAhead) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.shardRouter = shardRouter;
+        this.monthsAhead = monthsAhead;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        createPartitions();
+    }
+
+    /**
+     * Creates the missing partitions. Each call to the database function runs in its own transaction and takes
+     * an advisory lock, so several instances of the application may run the job at the same time.
+     */
+    @Scheduled(cron = "${sleep.partitions.maintenance.cron:0 30 3 * * *}")
+    public void createPartitions() {
+        LocalDate today = LocalDate.now();
+        shardRouter.forEachShard(shard -> {
+            Integer ahead = jdbcTemplate.queryForObject(CREATE_PARTITIONS, Integer.class,
+                    today, today.plusMonths(monthsAhead));
+            Integer ofDefaultRows = jdbcTemplate.queryForObject(CREATE_PARTITIONS_OF_DEFAULT_ROWS, Integer.class);
+
+            if ((ahead != null && ahead > 0) || (ofDefaultRows != null && ofDefaultRows > 0)) {
+                LOGGER.info("Created {} sleep log partitions ahead and {} for rows of the default partition "
+                        + "on shard {}", ahead, ofDefaultRows, shard);
+            }
+        });
+    }
+}
@@ -0,0 +1,33 @@
+package com.noom.interview.fullstack.sleep.job;
+
+import com.noom.interview.fullstack.sleep.config.ShardRouter;
+import com.noom.interview.fullstack.sleep.service.SleepLogRollupService;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.*;
+import org.springframework.boot.*;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Backfills the daily sleep log rollups from existing sleep logs at startup. Enable it once after deploying
+ * the rollups to a database that already has sleep logs, or whenever the rollups need to be repaired. Every shard
+ * is rebuilt in turn.
+ */
+@Component
+@ConditionalOnProperty(name = "sleep.rollups.rebuild-on-startup", havingValue = "true")
+@RequiredArgsConstructor
+public class SleepLogRollupRebuildJob implements ApplicationRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SleepLogRollupRebuildJob.class);
+
+    private final SleepLogRollupService sleepLogRollupService;
+    private final ShardRouter shardRouter;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        shardRouter.forEachShard(shard -> {
+            LOGGER.info("Rebuilding sleep log daily rollups of shard {}", shard);
+            sleepLogRollupService.rebuildAll();
+        });
+    }
+}
@@ -0,0 +1,24 @@
+package com.noom.interview.fullstack.sleep.job;
+
+import com.noom.interview.fullstack.sleep.service.SleepLogShardMigrationService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.*;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Copies the history of users moving to newly added shards at startup. Enable it on one instance once every
+ * instance runs with {@code sleep.datasource.shard-migration-from} set and mirrors the writes of moving users.
+ */
+@Component
+@ConditionalOnProperty(name = "sleep.shards.backfill-on-startup", havingValue = "true")
+@RequiredArgsConstructor
+public class SleepLogShardBackfillJob implements ApplicationRunner {
+
+    private final SleepLogShardMigrationService sleepLogShardMigrationService;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        sleepLogShardMigrationService.backfill();
+    }
+}
@@ -0,0 +1,24 @@
+package com.noom.interview.fullstack.sleep.job;
+
+import com.noom.interview.fullstack.sleep.service.SleepLogShardMigrationService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.*;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Deletes users from the shards they moved away from at startup. Enable it on one instance once resharding is
+ * over and every instance serves users from their new shard.
+ */
+@Component
+@ConditionalOnProperty(name = "sleep.shards.purge-on-startup", havingValue = "true")
+@RequiredArgsConstructor
+public class SleepLogShardPurgeJob implements ApplicationRunner {
+
+    private final SleepLogShardMigrationService sleepLogShardMigrationService;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        sleepLogShardMigrationService.purge();
+    }
+}
@@ -19,6 +19,8 @@ public interface SleepLogMapper {
     @Mapping(target = "id", ignore = true)
     @Mapping(target = "createdAt", ignore = true)
     @Mapping(target = "totalTimeInBedMinutes", ignore = true)
+    @Mapping(target = "bedTimeOfDaySeconds", ignore = true)
+    @Mapping(target = "wakeTimeOfDaySeconds", ignore = true)
     SleepLog toEntity(SleepLogRequest request);
 
     /**
@@ -0,0 +1,47 @@
+package com.noom.interview.fullstack.sleep.repository;
+
+import com.noom.interview.fullstack.sleep.domain.entity.*;
+import org.springframework.data.jpa.repository.*;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Repository for managing {@link SleepLogDailyRollup} entities.
+ */
+@Repository
+public interface SleepLogDailyRollupRepository extends JpaRepository<SleepLogDailyRollup, SleepLogDailyRollupId> {
+
+    /**
+     * Recomputes the daily rollups, running totals and running histograms of every user from the sleep_logs
+     * table, using the persisted local bed and wake times of day. The histogram bucket widths match
+     * SleepHistograms.
+     *
+     * @return the number of rollup rows inserted
+     */
+    @Modifying
+    @Query(value = "INSERT INTO sleep_log_daily_rollups (user_id, sleep_date, log_count, "
+            + "total_time_in_bed_minutes, bed_time_seconds, wake_time_seconds, bad_count, ok_count, good_count, "
+            + "cum_log_count, cum_total_time_in_bed_minutes, cum_bed_time_seconds, cum_wake_time_seconds, "
+            + "cum_bad_count, cum_ok_count, cum_good_count, "
+            + "cum_time_in_bed_histogram, cum_bed_time_histogram, cum_wake_time_histogram) "
+            + "SELECT d.user_id, d.sleep_date, d.log_count, d.total_time_in_bed_minutes, d.bed_time_seconds, "
+            + "d.wake_time_seconds, d.bad_count, d.ok_count, d.good_count, "
+            + "SUM(log_count) OVER w, SUM(total_time_in_bed_minutes) OVER w, SUM(bed_time_seconds) OVER w, "
+            + "SUM(wake_time_seconds) OVER w, SUM(bad_count) OVER w, SUM(ok_count) OVER w, "
+            + "SUM(good_count) OVER w, "
+            + "sleep_histogram_sum(time_in_bed_histogram) OVER w, sleep_histogram_sum(bed_time_histogram) OVER w, "
+            + "sleep_histogram_sum(wake_time_histogram) OVER w "
+            + "FROM (SELECT user_id, sleep_date, COUNT(*) AS log_count, "
+            + "SUM(total_time_in_bed_minutes) AS total_time_in_bed_minutes, "
+            + "SUM(bed_time_of_day_seconds) AS bed_time_seconds, "
+            + "SUM(wake_time_of_day_seconds) AS wake_time_seconds, "
+            + "COUNT(*) FILTER (WHERE feeling = 'BAD') AS bad_count, "
+            + "COUNT(*) FILTER (WHERE feeling = 'OK') AS ok_count, "
+            + "COUNT(*) FILTER (WHERE feeling = 'GOOD') AS good_count, "
+            + "sleep_histogram_sum(sleep_histogram_of(total_time_in_bed_minutes, 15)) AS time_in_bed_histogram, "
+            + "sleep_histogram_sum(sleep_histogram_of(bed_time_of_day_seconds, 900)) AS bed_time_histogram, "
+            + "sleep_histogram_sum(sleep_histogram_of(wake_time_of_day_seconds, 900)) AS wake_time_histogram "
+            + "FROM sleep_logs GROUP BY user_id, sleep_date) d "
+            + "WINDOW w AS (PARTITION BY user_id ORDER BY sleep_date)",
+            nativeQuery = true)
+    int insertFromSleepLogs();
+}
@@ -1,17 +1,33 @@
 package com.noom.interview.fullstack.sleep.repository;
 
+import com.noom.interview.fullstack.sleep.domain.dto.SleepLogResponse;
 import com.noom.interview.fullstack.sleep.domain.entity.SleepLog;
-import org.springframework.data.jpa.repository.JpaRepository;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.*;
+import org.springframework.data.jpa.repository.*;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
-import java.time.LocalDate;
+import java.time.*;
 import java.util.*;
+import java.util.stream.Stream;
 
 /**
  * Repository for managing {@link SleepLog} entities.
  */
 @Repository
-public interface SleepLogRepository extends JpaRepository<SleepLog, Long> {
+public interface SleepLogRepository extends JpaRepository<SleepLog, Long>, SleepLogRepositoryCustom {
+
+    /**
+     * Page request for the single most recent row of an ordered query.
+     */
+    Pageable LATEST = PageRequest.ofSize(1);
+
+    /**
+     * Rows fetched per round trip when streaming a sleep history.
+     */
+    String STREAM_FETCH_SIZE = "500";
 
     /**
      * Finds the most recent sleep log for a specific user.
@@ -31,6 +47,83 @@ public interface SleepLogRepository extends JpaRepository<SleepLog, Long> {
      */
     List<SleepLog> findByUserIdAndSleepDateBetween(UUID userId, LocalDate start, LocalDate end);
 
+    /**
+     * Finds the sleep logs of a specific user as responses, most recent first. Only the response columns are
+     * selected and no entities are materialized, so the read skips persistence-context registration and
+     * dirty-checking snapshots.
+     *
+     * @param userId the ID of the user
+     * @param pageable the page to return
+     * @return the sleep log responses of the page
+     */
+    @Query("SELECT new com.noom.interview.fullstack.sleep.domain.dto.SleepLogResponse("
+            + "l.sleepDate, l.bedTime, l.wakeTime, l.totalTimeInBedMinutes, l.feeling) "
+            + "FROM SleepLog l WHERE l.userId = :userId ORDER BY l.sleepDate DESC")
+    List<SleepLogResponse> findResponsesByUserIdOrderBySleepDateDesc(@Param("userId") UUID userId,
+                                                                     Pageable pageable);
+
+    /**
+     * Finds the sleep logs of a specific user dated before a given date as responses, most recent first. This is
+     * the seek step of the keyset-paginated history: the previous page's last date bounds the
+     * (user_id, sleep_date DESC) covering index, so every page starts with an index descent and reads only its own
+     * rows, however deep it is. The pageable must be a first page; later pages move the date, never an offset.
+     *
+     * @param userId the ID of the user
+     * @param before the exclusive upper bound of the sleep dates
+     * @param pageable the page size, as a first page
+     * @return the sleep log responses dated before the given date
+     */
+    @Query("SELECT new com.noom.interview.fullstack.sleep.domain.dto.SleepLogResponse("
+            + "l.sleepDate, l.bedTime, l.wakeTime, l.totalTimeInBedMinutes, l.feeling) "
+            + "FROM SleepLog l WHERE l.userId = :userId AND l.sleepDate < :before ORDER BY l.sleepDate DESC")
+    List<SleepLogResponse> findResponsesByUserIdAndSleepDateBeforeOrderBySleepDateDesc(
+            @Param("userId") UUID userId, @Param("before") LocalDate before, Pageable pageable);
+
+    /**
+     * Finds the most recent sleep log of a specific user as a response, without materializing an entity.
+     *
+     * @param userId the ID of the user
+     * @return an Optional containing the most recent sleep log response, or empty if none exists
+     */
+    default Optional<SleepLogResponse> findLatestResponseByUserId(UUID userId) {
+        return findResponsesByUserIdOrderBySleepDateDesc(userId, LATEST).stream().findFirst();
+    }
+
+    /**
+     * Finds the sleep logs of a specific user within a date range (inclusive) as responses, ordered by date,
+     * without materializing entities.
+     *
+     * @param userId the ID of the user
+     * @param start the start date (inclusive)
+     * @param end the end date (inclusive)
+     * @return the sleep log responses within the date range
+     */
+    @Query("SELECT new com.noom.interview.fullstack.sleep.domain.dto.SleepLogResponse("
+            + "l.sleepDate, l.bedTime, l.wakeTime, l.totalTimeInBedMinutes, l.feeling) "
+            + "FROM SleepLog l WHERE l.userId = :userId AND l.sleepDate BETWEEN :start AND :end "
+            + "ORDER BY l.sleepDate")
+    List<SleepLogResponse> findResponsesByUserIdAndSleepDateBetween(@Param("userId") UUID userId,
+                                                                    @Param("start") LocalDate start,
+                                                                    @Param("end") LocalDate end);
+
+    /**
+     * Streams all sleep logs of a specific user, oldest first, from a forward-only cursor that fetches
+     * {@value #STREAM_FETCH_SIZE} rows per round trip. The entities are loaded read-only, without dirty-checking
+     * snapshots. Must be consumed and closed within a transaction; PostgreSQL only honours the fetch size with
+     * auto-commit off. Callers that read a long history should detach each entity once it has been processed so
+     * the persistence context does not grow with the history.
+     *
+     * @param userId the ID of the user
+     * @return the stream of sleep logs
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false")
+    })
+    @Query("SELECT l FROM SleepLog l WHERE l.userId = :userId ORDER BY l.sleepDate")
+    Stream<SleepLog> streamByUserIdOrderBySleepDate(@Param("userId") UUID userId);
+
     /**
      * Checks if a sleep log exists for a specific user on a specific date.
      *
@@ -39,4 +132,29 @@ public interface SleepLogRepository extends JpaRepository<SleepLog, Long> {
      * @return true if a sleep log exists, false otherwise
      */
     boolean existsByUserIdAndSleepDate(UUID userId, LocalDate date);
-}
\ No newline at end of file
+
+    /**
+     * Finds which of the given dates already have a sleep log for a specific user.
+     *
+     * @param userId the ID of the user
+     * @param dates the dates to check
+     * @return the subset of dates that already have a sleep log
+     */
+    @Query("SELECT l.sleepDate FROM SleepLog l WHERE l.userId = :userId AND l.sleepDate IN :dates")
+    Set<LocalDate> findSleepDatesByUserIdAndSleepDateIn(@Param("userId") UUID userId,
+                                                        @Param("dates") Collection<LocalDate> dates);
+
+    /**
+     * Fills in the local bed and wake times of day of sleep logs written before they were persisted.
+     *
+     * @param zone the time zone ID used to compute local bed and wake times
+     * @return the number of sleep logs updated
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "UPDATE sleep_logs SET "
+            + "bed_time_of_day_seconds = FLOOR(EXTRACT(EPOCH FROM CAST(bed_time AT TIME ZONE :zone AS TIME))), "
+            + "wake_time_of_day_seconds = FLOOR(EXTRACT(EPOCH FROM CAST(wake_time AT TIME ZONE :zone AS TIME))) "
+            + "WHERE bed_time_of_day_seconds IS NULL OR wake_time_of_day_seconds IS NULL",
+            nativeQuery = true)
+    int fillMissingTimesOfDay(@Param("zone") String zone);
+}
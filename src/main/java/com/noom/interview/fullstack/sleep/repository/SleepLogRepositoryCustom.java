@@ -0,0 +1,35 @@
+package com.noom.interview.fullstack.sleep.repository;
+
+import com.noom.interview.fullstack.sleep.domain.entity.SleepLog;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Writes of {@link SleepLogRepository} that run the statements of {@link SleepLogStatements}, which the reactive
+ * stack runs too.
+ */
+public interface SleepLogRepositoryCustom {
+
+    /**
+     * Inserts a sleep log unless one already exists for the same user and date. The existence check and the
+     * insert happen in a single statement, so concurrent requests for the same user and date cannot both
+     * succeed and the caller never has to handle a unique constraint violation.
+     *
+     * @param sleepLog the sleep log to insert, with derived values and creation timestamp set; its ID is ignored
+     * @return 1 if the sleep log was inserted, 0 if one already existed for the user and date
+     */
+    int insertIfAbsent(SleepLog sleepLog);
+
+    /**
+     * Inserts the sleep logs of a batch in a single statement, skipping each one whose user already has a sleep log
+     * for its date, so a concurrent insert for the same date turns the item into a duplicate instead of failing
+     * the batch on a unique constraint violation.
+     *
+     * @param sleepLogs the sleep logs of one user to insert, on distinct dates, with derived values and creation
+     *                  timestamps set; their IDs are ignored
+     * @return the dates of the inserted sleep logs; the dates that were already taken are absent
+     */
+    Set<LocalDate> insertAllIfAbsent(List<SleepLog> sleepLogs);
+}
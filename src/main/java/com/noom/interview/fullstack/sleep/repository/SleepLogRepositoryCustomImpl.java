@@ -0,0 +1,45 @@
+package com.noom.interview.fullstack.sleep.repository;
+
+import com.noom.interview.fullstack.sleep.domain.entity.SleepLog;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Implementation of the SleepLogRepositoryCustom interface. Statements run on the connection of the caller's
+ * transaction.
+ */
+@RequiredArgsConstructor
+public class SleepLogRepositoryCustomImpl implements SleepLogRepositoryCustom {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int insertIfAbsent(SleepLog sleepLog) {
+        return jdbcTemplate.update(SleepLogStatements.INSERT_IF_ABSENT, statement -> SleepLogStatements.bind(
+                statement, SleepLogStatements.insertIfAbsentParameters(sleepLog)));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<LocalDate> insertAllIfAbsent(List<SleepLog> sleepLogs) {
+        Set<LocalDate> insertedDates = new HashSet<>();
+        if (sleepLogs.isEmpty()) {
+            return insertedDates;
+        }
+        jdbcTemplate.query(SleepLogStatements.INSERT_ALL_IF_ABSENT, statement -> SleepLogStatements.bind(
+                        statement, SleepLogStatements.insertAllIfAbsentParameters(sleepLogs)),
+                (RowCallbackHandler) row -> insertedDates.add(row.getDate("sleep_date").toLocalDate()));
+        return insertedDates;
+    }
+}
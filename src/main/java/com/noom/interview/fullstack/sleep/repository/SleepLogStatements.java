@@ -0,0 +1,367 @@
+package com.noom.interview.fullstack.sleep.repository;
+
+import com.noom.interview.fullstack.sleep.domain.entity.*;
+import com.noom.interview.fullstack.sleep.service.impl.SleepHistograms;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.*;
+import java.util.*;
+
+/**
+ * The statements that write sleep logs, their rollups and the user's version, and that sum the rollups of a date
+ * range, shared by the JDBC repositories and {@code ReactiveSleepLogRepository} so that both stacks write the same
+ * rows. Each statement comes with the method that lays out its parameters; parameters are JDBC {@code ?}
+ * placeholders, which {@link #numbered(String)} turns into the {@code $n} placeholders of R2DBC.
+ * <p>
+ * Parameters are UUIDs, dates, instants, integers, longs, strings and arrays of integers or strings. Arrays of
+ * UUIDs and dates are passed as strings and cast by the statement, since not every driver binds them.
+ */
+public final class SleepLogStatements {
+
+    /**
+     * Blocks until no other transaction is writing sleep logs of the user. Parameters:
+     * {@link #lockUserParameters(UUID)}.
+     */
+    public static final String LOCK_USER = "SELECT pg_advisory_xact_lock(hashtextextended(CAST(? AS text), 0))";
+
+    /**
+     * Inserts a sleep log unless the user already has one for its date; the insert is skipped, not failed, when the
+     * date is taken. Parameters: {@link #insertIfAbsentParameters(SleepLog)}.
+     */
+    public static final String INSERT_IF_ABSENT = "INSERT INTO sleep_logs (id, user_id, sleep_date, bed_time, "
+            + "wake_time, total_time_in_bed_minutes, bed_time_of_day_seconds, wake_time_of_day_seconds, feeling, "
+            + "created_at) "
+            + "VALUES (nextval('sleep_logs_seq'), ?, ?, ?, ?, ?, ?, ?, ?, ?) "
+            + "ON CONFLICT (user_id, sleep_date) DO NOTHING";
+
+    /**
+     * Inserts a batch of sleep logs in one statement, skipping each one whose user already has a sleep log for its
+     * date, and returns the date of each inserted one. Parameters:
+     * {@link #insertAllIfAbsentParameters(List)}.
+     */
+    public static final String INSERT_ALL_IF_ABSENT = "INSERT INTO sleep_logs (id, user_id, sleep_date, bed_time, "
+            + "wake_time, total_time_in_bed_minutes, bed_time_of_day_seconds, wake_time_of_day_seconds, feeling, "
+            + "created_at) "
+            + "SELECT nextval('sleep_logs_seq'), l.* "
+            + "FROM unnest(CAST(? AS uuid[]), CAST(? AS date[]), CAST(? AS timestamptz[]), "
+            + "CAST(? AS timestamptz[]), CAST(? AS integer[]), CAST(? AS integer[]), CAST(? AS integer[]), "
+            + "CAST(? AS text[]), CAST(? AS timestamptz[])) "
+            + "AS l(user_id, sleep_date, bed_time, wake_time, total_time_in_bed_minutes, bed_time_of_day_seconds, "
+            + "wake_time_of_day_seconds, feeling, created_at) "
+            + "ON CONFLICT (user_id, sleep_date) DO NOTHING "
+            + "RETURNING sleep_date";
+
+    private static final String EMPTY_HISTOGRAM = "array_fill(0, ARRAY[" + SleepHistograms.BUCKETS + "])";
+
+    /**
+     * Adds a sleep log to the daily values of the rollup of its date. A new row starts from the running totals of
+     * the user's previous row; an existing row keeps its totals. Both are then advanced by
+     * {@link #ADVANCE_RUNNING_TOTALS}. Parameters: {@link #upsertRollupParameters(SleepLog)}.
+     */
+    public static final String UPSERT_ROLLUP = "INSERT INTO sleep_log_daily_rollups AS r (user_id, sleep_date, "
+            + "log_count, total_time_in_bed_minutes, bed_time_seconds, wake_time_seconds, "
+            + "bad_count, ok_count, good_count, "
+            + "cum_log_count, cum_total_time_in_bed_minutes, cum_bed_time_seconds, cum_wake_time_seconds, "
+            + "cum_bad_count, cum_ok_count, cum_good_count, "
+            + "cum_time_in_bed_histogram, cum_bed_time_histogram, cum_wake_time_histogram) "
+            + "SELECT CAST(? AS uuid), CAST(? AS date), 1, ?, ?, ?, ?, ?, ?, "
+            + "COALESCE(p.cum_log_count, 0), COALESCE(p.cum_total_time_in_bed_minutes, 0), "
+            + "COALESCE(p.cum_bed_time_seconds, 0), COALESCE(p.cum_wake_time_seconds, 0), "
+            + "COALESCE(p.cum_bad_count, 0), COALESCE(p.cum_ok_count, 0), COALESCE(p.cum_good_count, 0), "
+            + "COALESCE(p.cum_time_in_bed_histogram, " + EMPTY_HISTOGRAM + "), "
+            + "COALESCE(p.cum_bed_time_histogram, " + EMPTY_HISTOGRAM + "), "
+            + "COALESCE(p.cum_wake_time_histogram, " + EMPTY_HISTOGRAM + ") "
+            + "FROM (SELECT 1) AS one LEFT JOIN LATERAL ("
+            + "SELECT * FROM sleep_log_daily_rollups WHERE user_id = CAST(? AS uuid) AND sleep_date < CAST(? AS date) "
+            + "ORDER BY sleep_date DESC LIMIT 1) AS p ON TRUE "
+            + "ON CONFLICT (user_id, sleep_date) DO UPDATE SET "
+            + "log_count = r.log_count + EXCLUDED.log_count, "
+            + "total_time_in_bed_minutes = r.total_time_in_bed_minutes + EXCLUDED.total_time_in_bed_minutes, "
+            + "bed_time_seconds = r.bed_time_seconds + EXCLUDED.bed_time_seconds, "
+            + "wake_time_seconds = r.wake_time_seconds + EXCLUDED.wake_time_seconds, "
+            + "bad_count = r.bad_count + EXCLUDED.bad_count, "
+            + "ok_count = r.ok_count + EXCLUDED.ok_count, "
+            + "good_count = r.good_count + EXCLUDED.good_count";
+
+    /**
+     * Adds the sleep logs of the arrays to the running totals and histograms of every rollup of their users from
+     * each user's earliest date in the arrays on: each row gets the sums of the sleep logs up to its date (d),
+     * accumulated in date order, and is updated once. Rows inserted by {@link #UPSERT_ROLLUP} carry the running
+     * totals of their previous row from before the write, like every other row, so they are advanced the same way.
+     * Parameters: {@link #advanceRunningTotalsParameters(List)}.
+     */
+    public static final String ADVANCE_RUNNING_TOTALS = "WITH b AS (SELECT user_id, sleep_date, "
+            + "COUNT(*) AS log_count, "
+            + "SUM(minutes) AS total_time_in_bed_minutes, SUM(bed_seconds) AS bed_time_seconds, "
+            + "SUM(wake_seconds) AS wake_time_seconds, "
+            + "COUNT(*) FILTER (WHERE feeling = 'BAD') AS bad_count, "
+            + "COUNT(*) FILTER (WHERE feeling = 'OK') AS ok_count, "
+            + "COUNT(*) FILTER (WHERE feeling = 'GOOD') AS good_count, "
+            + "sleep_histogram_sum(sleep_histogram_of(minutes, 15)) AS time_in_bed_histogram, "
+            + "sleep_histogram_sum(sleep_histogram_of(bed_seconds, 900)) AS bed_time_histogram, "
+            + "sleep_histogram_sum(sleep_histogram_of(wake_seconds, 900)) AS wake_time_histogram "
+            + "FROM unnest(CAST(? AS uuid[]), CAST(? AS date[]), CAST(? AS integer[]), CAST(? AS integer[]), "
+            + "CAST(? AS integer[]), CAST(? AS text[])) "
+            + "AS l(user_id, sleep_date, minutes, bed_seconds, wake_seconds, feeling) "
+            + "GROUP BY user_id, sleep_date), "
+            + "d AS (SELECT r.user_id, r.sleep_date, "
+            + "SUM(COALESCE(b.log_count, 0)) OVER w AS log_count, "
+            + "SUM(COALESCE(b.total_time_in_bed_minutes, 0)) OVER w AS total_time_in_bed_minutes, "
+            + "SUM(COALESCE(b.bed_time_seconds, 0)) OVER w AS bed_time_seconds, "
+            + "SUM(COALESCE(b.wake_time_seconds, 0)) OVER w AS wake_time_seconds, "
+            + "SUM(COALESCE(b.bad_count, 0)) OVER w AS bad_count, "
+            + "SUM(COALESCE(b.ok_count, 0)) OVER w AS ok_count, "
+            + "SUM(COALESCE(b.good_count, 0)) OVER w AS good_count, "
+            + "sleep_histogram_sum(b.time_in_bed_histogram) OVER w AS time_in_bed_histogram, "
+            + "sleep_histogram_sum(b.bed_time_histogram) OVER w AS bed_time_histogram, "
+            + "sleep_histogram_sum(b.wake_time_histogram) OVER w AS wake_time_histogram "
+            + "FROM (SELECT user_id, MIN(sleep_date) AS sleep_date FROM b GROUP BY user_id) AS f "
+            + "JOIN sleep_log_daily_rollups r ON r.user_id = f.user_id AND r.sleep_date >= f.sleep_date "
+            + "LEFT JOIN b ON b.user_id = r.user_id AND b.sleep_date = r.sleep_date "
+            + "WINDOW w AS (PARTITION BY r.user_id ORDER BY r.sleep_date)) "
+            + "UPDATE sleep_log_daily_rollups r SET "
+            + "cum_log_count = r.cum_log_count + d.log_count, "
+            + "cum_total_time_in_bed_minutes = r.cum_total_time_in_bed_minutes + d.total_time_in_bed_minutes, "
+            + "cum_bed_time_seconds = r.cum_bed_time_seconds + d.bed_time_seconds, "
+            + "cum_wake_time_seconds = r.cum_wake_time_seconds + d.wake_time_seconds, "
+            + "cum_bad_count = r.cum_bad_count + d.bad_count, "
+            + "cum_ok_count = r.cum_ok_count + d.ok_count, "
+            + "cum_good_count = r.cum_good_count + d.good_count, "
+            + "cum_time_in_bed_histogram = sleep_histogram_add(r.cum_time_in_bed_histogram, d.time_in_bed_histogram), "
+            + "cum_bed_time_histogram = sleep_histogram_add(r.cum_bed_time_histogram, d.bed_time_histogram), "
+            + "cum_wake_time_histogram = sleep_histogram_add(r.cum_wake_time_histogram, d.wake_time_histogram) "
+            + "FROM d WHERE r.user_id = d.user_id AND r.sleep_date = d.sleep_date";
+
+    /**
+     * Increments the version of a user's sleep log data, starting at 1. Parameters:
+     * {@link #incrementVersionParameters(UUID)}.
+     */
+    public static final String INCREMENT_VERSION = "INSERT INTO sleep_log_user_versions AS v "
+            + "(user_id, version, modified_at) VALUES (?, 1, now()) "
+            + "ON CONFLICT (user_id) DO UPDATE SET version = v.version + 1, modified_at = EXCLUDED.modified_at";
+
+    /**
+     * The select list of the sums of a range, joined with {@link #rangeLookups(String)}: the running totals at the
+     * end of the range (u) minus those before its start (l). The running histograms of both rows (uh, lh) are
+     * returned as they are and subtracted by the caller.
+     */
+    public static final String RANGE_DIFFERENCE = "COALESCE(u.cum_log_count, 0) - COALESCE(l.cum_log_count, 0), "
+            + "COALESCE(u.cum_total_time_in_bed_minutes, 0) - COALESCE(l.cum_total_time_in_bed_minutes, 0), "
+            + "COALESCE(u.cum_bed_time_seconds, 0) - COALESCE(l.cum_bed_time_seconds, 0), "
+            + "COALESCE(u.cum_wake_time_seconds, 0) - COALESCE(l.cum_wake_time_seconds, 0), "
+            + "COALESCE(u.cum_bad_count, 0) - COALESCE(l.cum_bad_count, 0), "
+            + "COALESCE(u.cum_ok_count, 0) - COALESCE(l.cum_ok_count, 0), "
+            + "COALESCE(u.cum_good_count, 0) - COALESCE(l.cum_good_count, 0), "
+            + "uh.cum_time_in_bed_histogram, lh.cum_time_in_bed_histogram, "
+            + "uh.cum_bed_time_histogram, lh.cum_bed_time_histogram, "
+            + "uh.cum_wake_time_histogram, lh.cum_wake_time_histogram ";
+
+    /**
+     * Sums the rollups of a user within a date range, selecting {@link #RANGE_DIFFERENCE}. Parameters:
+     * {@link #aggregateRangeParameters(UUID, LocalDate, LocalDate)}.
+     */
+    public static final String AGGREGATE_RANGE = "SELECT " + RANGE_DIFFERENCE
+            + "FROM (SELECT 1) AS one " + rangeLookups("?");
+
+    private SleepLogStatements() {
+    }
+
+    /**
+     * Lays out the parameters of {@link #LOCK_USER}.
+     *
+     * @param userId the ID of the user
+     * @return the parameters in placeholder order
+     */
+    public static Object[] lockUserParameters(UUID userId) {
+        return new Object[]{userId};
+    }
+
+    /**
+     * Lays out the parameters of {@link #INSERT_IF_ABSENT}.
+     *
+     * @param sleepLog the sleep log, with its derived values and creation time set; its ID is ignored
+     * @return the parameters in placeholder order
+     */
+    public static Object[] insertIfAbsentParameters(SleepLog sleepLog) {
+        return new Object[]{
+                sleepLog.getUserId(),
+                sleepLog.getSleepDate(),
+                sleepLog.getBedTime(),
+                sleepLog.getWakeTime(),
+                sleepLog.getTotalTimeInBedMinutes(),
+                sleepLog.getBedTimeOfDaySeconds(),
+                sleepLog.getWakeTimeOfDaySeconds(),
+                sleepLog.getFeeling().name(),
+                sleepLog.getCreatedAt()};
+    }
+
+    /**
+     * Lays out the parameters of {@link #INSERT_ALL_IF_ABSENT}: one array per column, one element per sleep log.
+     *
+     * @param sleepLogs the sleep logs, with their derived values and creation times set; their IDs are ignored
+     * @return the parameters in placeholder order
+     */
+    public static Object[] insertAllIfAbsentParameters(List<SleepLog> sleepLogs) {
+        return new Object[]{
+                sleepLogs.stream().map(sleepLog -> sleepLog.getUserId().toString()).toArray(String[]::new),
+                sleepLogs.stream().map(sleepLog -> sleepLog.getSleepDate().toString()).toArray(String[]::new),
+                sleepLogs.stream().map(sleepLog -> sleepLog.getBedTime().toString()).toArray(String[]::new),
+                sleepLogs.stream().map(sleepLog -> sleepLog.getWakeTime().toString()).toArray(String[]::new),
+                sleepLogs.stream().map(SleepLog::getTotalTimeInBedMinutes).toArray(Integer[]::new),
+                sleepLogs.stream().map(SleepLog::getBedTimeOfDaySeconds).toArray(Integer[]::new),
+                sleepLogs.stream().map(SleepLog::getWakeTimeOfDaySeconds).toArray(Integer[]::new),
+                sleepLogs.stream().map(sleepLog -> sleepLog.getFeeling().name()).toArray(String[]::new),
+                sleepLogs.stream().map(sleepLog -> sleepLog.getCreatedAt().toString()).toArray(String[]::new)};
+    }
+
+    /**
+     * Lays out the parameters of {@link #UPSERT_ROLLUP}.
+     *
+     * @param sleepLog the sleep log, with its derived values set
+     * @return the parameters in placeholder order
+     */
+    public static Object[] upsertRollupParameters(SleepLog sleepLog) {
+        return new Object[]{
+                sleepLog.getUserId(),
+                sleepLog.getSleepDate(),
+                sleepLog.getTotalTimeInBedMinutes().longValue(),
+                sleepLog.getBedTimeOfDaySeconds().longValue(),
+                sleepLog.getWakeTimeOfDaySeconds().longValue(),
+                sleepLog.getFeeling() == Feeling.BAD ? 1L : 0L,
+                sleepLog.getFeeling() == Feeling.OK ? 1L : 0L,
+                sleepLog.getFeeling() == Feeling.GOOD ? 1L : 0L,
+                sleepLog.getUserId(),
+                sleepLog.getSleepDate()};
+    }
+
+    /**
+     * Lays out the parameters of {@link #ADVANCE_RUNNING_TOTALS}: one array per column, one element per sleep log.
+     *
+     * @param sleepLogs the sleep logs, with their derived values set, in any order
+     * @return the parameters in placeholder order
+     */
+    public static Object[] advanceRunningTotalsParameters(List<SleepLog> sleepLogs) {
+        return new Object[]{
+                sleepLogs.stream().map(sleepLog -> sleepLog.getUserId().toString()).toArray(String[]::new),
+                sleepLogs.stream().map(sleepLog -> sleepLog.getSleepDate().toString()).toArray(String[]::new),
+                sleepLogs.stream().map(SleepLog::getTotalTimeInBedMinutes).toArray(Integer[]::new),
+                sleepLogs.stream().map(SleepLog::getBedTimeOfDaySeconds).toArray(Integer[]::new),
+                sleepLogs.stream().map(SleepLog::getWakeTimeOfDaySeconds).toArray(Integer[]::new),
+                sleepLogs.stream().map(sleepLog -> sleepLog.getFeeling().name()).toArray(String[]::new)};
+    }
+
+    /**
+     * Lays out the parameters of {@link #INCREMENT_VERSION}.
+     *
+     * @param userId the ID of the user
+     * @return the parameters in placeholder order
+     */
+    public static Object[] incrementVersionParameters(UUID userId) {
+        return new Object[]{userId};
+    }
+
+    /**
+     * Lays out the parameters of {@link #AGGREGATE_RANGE}.
+     *
+     * @param userId the ID of the user
+     * @param from the start date (inclusive)
+     * @param to the end date (inclusive)
+     * @return the parameters in placeholder order
+     */
+    public static Object[] aggregateRangeParameters(UUID userId, LocalDate from, LocalDate to) {
+        return new Object[]{userId, to, userId, from, userId, to, userId, from};
+    }
+
+    /**
+     * Builds the lookups of the two boundary rows of a range that {@link #RANGE_DIFFERENCE} reads. The running
+     * totals (u, l) are read from the primary key alone, which includes them; the running histograms (uh, lh) are
+     * read from the heap by separate lookups, since the key leaves them out.
+     *
+     * @param userId the SQL expression of the user ID, a parameter or a column of the outer query
+     * @return the lateral joins, with the end date, the start date, the end date and the start date as parameters
+     */
+    public static String rangeLookups(String userId) {
+        return "LEFT JOIN LATERAL (" + runningTotalsBefore(userId, "<=") + ") AS u ON TRUE "
+                + "LEFT JOIN LATERAL (" + runningTotalsBefore(userId, "<") + ") AS l ON TRUE "
+                + "LEFT JOIN LATERAL (" + runningHistogramsBefore(userId, "<=") + ") AS uh ON TRUE "
+                + "LEFT JOIN LATERAL (" + runningHistogramsBefore(userId, "<") + ") AS lh ON TRUE ";
+    }
+
+    /**
+     * Builds the query for the running totals of the user's last rollup whose date compares to the parameter
+     * with the given operator.
+     *
+     * @param userId the SQL expression of the user ID, a parameter or a column of the outer query
+     * @param operator the date comparison operator
+     * @return the query, with the date as parameter
+     */
+    public static String runningTotalsBefore(String userId, String operator) {
+        return "SELECT cum_log_count, cum_total_time_in_bed_minutes, cum_bed_time_seconds, cum_wake_time_seconds, "
+                + "cum_bad_count, cum_ok_count, cum_good_count "
+                + "FROM sleep_log_daily_rollups "
+                + "WHERE user_id = " + userId + " AND sleep_date " + operator + " ? ORDER BY sleep_date DESC LIMIT 1";
+    }
+
+    /**
+     * Builds the query for the running histograms of the user's last rollup whose date compares to the parameter
+     * with the given operator.
+     *
+     * @param userId the SQL expression of the user ID, a parameter or a column of the outer query
+     * @param operator the date comparison operator
+     * @return the query, with the date as parameter
+     */
+    public static String runningHistogramsBefore(String userId, String operator) {
+        return "SELECT cum_time_in_bed_histogram, cum_bed_time_histogram, cum_wake_time_histogram "
+                + "FROM sleep_log_daily_rollups "
+                + "WHERE user_id = " + userId + " AND sleep_date " + operator + " ? ORDER BY sleep_date DESC LIMIT 1";
+    }
+
+    /**
+     * Numbers the placeholders of a statement for R2DBC: the n-th {@code ?} becomes {@code $n}. The statements of
+     * this class have no question marks other than their placeholders.
+     *
+     * @param sql the statement with JDBC placeholders
+     * @return the statement with R2DBC placeholders
+     */
+    public static String numbered(String sql) {
+        StringBuilder numbered = new StringBuilder(sql.length() + 16);
+        int parameter = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (c == '?') {
+                numbered.append('$').append(++parameter);
+            } else {
+                numbered.append(c);
+            }
+        }
+        return numbered.toString();
+    }
+
+    /**
+     * Binds laid out parameters to a JDBC statement. Dates and instants are bound as their SQL types, arrays as
+     * SQL arrays of their element type.
+     *
+     * @param statement the prepared statement
+     * @param parameters the parameters in placeholder order
+     * @throws SQLException if a parameter cannot be bound
+     */
+    public static void bind(PreparedStatement statement, Object... parameters) throws SQLException {
+        for (int i = 0; i < parameters.length; i++) {
+            Object parameter = parameters[i];
+            if (parameter instanceof LocalDate date) {
+                statement.setDate(i + 1, Date.valueOf(date));
+            } else if (parameter instanceof Instant instant) {
+                statement.setTimestamp(i + 1, Timestamp.from(instant));
+            } else if (parameter instanceof Integer[] integers) {
+                statement.setArray(i + 1, statement.getConnection().createArrayOf("integer", integers));
+            } else if (parameter instanceof String[] strings) {
+                statement.setArray(i + 1, statement.getConnection().createArrayOf("text", strings));
+            } else {
+                statement.setObject(i + 1, parameter);
+            }
+        }
+    }
+}
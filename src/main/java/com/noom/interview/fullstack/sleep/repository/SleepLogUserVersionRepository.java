@@ -0,0 +1,27 @@
+package com.noom.interview.fullstack.sleep.repository;
+
+import com.noom.interview.fullstack.sleep.domain.dto.SleepLogVersion;
+import com.noom.interview.fullstack.sleep.domain.entity.SleepLogUserVersion;
+import org.springframework.data.jpa.repository.*;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.*;
+
+/**
+ * Repository for managing {@link SleepLogUserVersion} entities.
+ */
+@Repository
+public interface SleepLogUserVersionRepository extends JpaRepository<SleepLogUserVersion, UUID>,
+        SleepLogUserVersionRepositoryCustom {
+
+    /**
+     * Finds the version of a user's sleep log data without materializing an entity.
+     *
+     * @param userId the ID of the user
+     * @return the version, or empty if the user never had a sleep log
+     */
+    @Query("SELECT new com.noom.interview.fullstack.sleep.domain.dto.SleepLogVersion(v.version, v.modifiedAt) "
+            + "FROM SleepLogUserVersion v WHERE v.userId = :userId")
+    Optional<SleepLogVersion> findVersionByUserId(@Param("userId") UUID userId);
+}
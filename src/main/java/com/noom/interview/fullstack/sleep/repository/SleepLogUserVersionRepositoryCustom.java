@@ -0,0 +1,19 @@
+package com.noom.interview.fullstack.sleep.repository;
+
+import java.util.UUID;
+
+/**
+ * Writes of {@link SleepLogUserVersionRepository} that run the statements of {@link SleepLogStatements}, which the
+ * reactive stack runs too.
+ */
+public interface SleepLogUserVersionRepositoryCustom {
+
+    /**
+     * Increments the version of a user's sleep log data, starting at 1. Must be called in the transaction that
+     * writes the sleep logs, so that readers never see new data under an old version.
+     *
+     * @param userId the ID of the user
+     * @return the number of rows written, always 1
+     */
+    int incrementVersion(UUID userId);
+}
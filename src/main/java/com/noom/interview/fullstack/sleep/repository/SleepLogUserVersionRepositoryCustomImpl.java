@@ -0,0 +1,25 @@
+package com.noom.interview.fullstack.sleep.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.UUID;
+
+/**
+ * Implementation of the SleepLogUserVersionRepositoryCustom interface. Statements run on the connection of the
+ * caller's transaction.
+ */
+@RequiredArgsConstructor
+public class SleepLogUserVersionRepositoryCustomImpl implements SleepLogUserVersionRepositoryCustom {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int incrementVersion(UUID userId) {
+        return jdbcTemplate.update(SleepLogStatements.INCREMENT_VERSION, statement -> SleepLogStatements.bind(
+                statement, SleepLogStatements.incrementVersionParameters(userId)));
+    }
+}
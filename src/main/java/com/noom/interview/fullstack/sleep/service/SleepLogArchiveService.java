@@ -0,0 +1,19 @@
+package com.noom.interview.fullstack.sleep.service;
+
+/**
+ * Service for moving old months of sleep logs out of the sleep_logs table into the cold archive. The daily rollups
+ * of archived months stay in the database, so statistics and trends are unaffected; the history, latest and export
+ * reads merge the archive with sleep_logs.
+ */
+public interface SleepLogArchiveService {
+
+    /**
+     * Archives every month of every shard that is older than the retention and not archived yet, oldest first. Each
+     * month's partition is written to a segment file and then emptied and closed to new sleep logs, in one
+     * transaction that keeps the month's sleep logs from being written meanwhile. Can be run again, e.g. after a
+     * failure, and by several instances at the same time.
+     *
+     * @return the number of sleep logs archived
+     */
+    long archive();
+}
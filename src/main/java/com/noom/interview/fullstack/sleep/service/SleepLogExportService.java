@@ -0,0 +1,25 @@
+package com.noom.interview.fullstack.sleep.service;
+
+import com.noom.interview.fullstack.sleep.domain.dto.SleepLogExportFormat;
+
+import java.io.*;
+import java.util.UUID;
+
+/**
+ * Service for exporting a user's whole sleep history, e.g. for data access requests or offline analysis.
+ */
+public interface SleepLogExportService {
+
+    /**
+     * Writes every sleep log of a user to a stream, oldest first, including the archived months. The logs are read
+     * from a database cursor and the archive one month at a time and written as they arrive, so memory use does
+     * not depend on the length of the history. The stream is flushed but not closed.
+     *
+     * @param userId the ID of the user
+     * @param format the payload format
+     * @param output the stream to write the UTF-8 encoded payload to
+     * @return the number of sleep logs written
+     * @throws IOException if the stream cannot be written
+     */
+    long exportSleepLogs(UUID userId, SleepLogExportFormat format, OutputStream output) throws IOException;
+}
@@ -0,0 +1,24 @@
+package com.noom.interview.fullstack.sleep.service;
+
+import com.noom.interview.fullstack.sleep.domain.dto.*;
+
+import java.io.*;
+
+/**
+ * Service for bulk importing historical sleep logs, e.g. when migrating from another sleep tracker.
+ */
+public interface SleepLogImportService {
+
+    /**
+     * Imports sleep logs from a stream. The payload is parsed line by line and never held in memory as a
+     * whole. Lines that fail parsing or validation, or fall in an archived month, are rejected individually; lines
+     * for a user and date that already have a sleep log (in the database or earlier in the payload) are counted as
+     * duplicates.
+     *
+     * @param payload the payload stream, UTF-8 encoded
+     * @param format the payload format
+     * @return the import summary
+     * @throws IOException if the payload cannot be read
+     */
+    SleepLogImportResponse importSleepLogs(InputStream payload, SleepLogImportFormat format) throws IOException;
+}
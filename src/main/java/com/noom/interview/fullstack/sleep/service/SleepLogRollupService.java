@@ -0,0 +1,63 @@
+package com.noom.interview.fullstack.sleep.service;
+
+import com.noom.interview.fullstack.sleep.domain.dto.*;
+import com.noom.interview.fullstack.sleep.domain.entity.SleepLog;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Service for maintaining and reading the per-user daily sleep log rollups.
+ */
+public interface SleepLogRollupService {
+
+    /**
+     * Adds newly created sleep logs to the rollups. Must be called in the transaction that inserts the logs.
+     *
+     * @param sleepLogs the newly created sleep logs
+     */
+    void recordSleepLogs(List<SleepLog> sleepLogs);
+
+    /**
+     * Sums a user's rollups over a date range (inclusive).
+     *
+     * @param userId the ID of the user
+     * @param from the start date (inclusive)
+     * @param to the end date (inclusive)
+     * @return the sums, all zero if the user has no sleep logs in the range
+     */
+    SleepStatisticsAggregate aggregate(UUID userId, LocalDate from, LocalDate to);
+
+    /**
+     * Sums the rollups of each of several users over a date range (inclusive) with a single query, handing the
+     * sums of every user to the consumer as they are read, in the order of the given users.
+     *
+     * @param userIds the IDs of the users, without duplicates
+     * @param from the start date (inclusive)
+     * @param to the end date (inclusive)
+     * @param consumer receives the sums of each user, all zero for users without sleep logs in the range
+     */
+    void aggregateEach(Collection<UUID> userIds, LocalDate from, LocalDate to,
+                       Consumer<SleepStatisticsAggregate> consumer);
+
+    /**
+     * Sums a user's rollups over each week or month of a date range, with a single query whatever the number of
+     * buckets. The first and last buckets are cut to the range.
+     *
+     * @param userId the ID of the user
+     * @param bucket the length of the buckets
+     * @param from the start date (inclusive)
+     * @param to the end date (inclusive)
+     * @return the sums of each bucket in date order, each with the date range it covers
+     */
+    List<SleepStatisticsAggregate> aggregateByBucket(UUID userId, TrendBucket bucket, LocalDate from, LocalDate to);
+
+    /**
+     * Discards all rollups and recomputes them from the sleep_logs table. Once months are archived, the rollups up
+     * to the newest archived month are kept instead, and the later ones continue their running totals.
+     *
+     * @return the number of rollup rows written
+     */
+    int rebuildAll();
+}
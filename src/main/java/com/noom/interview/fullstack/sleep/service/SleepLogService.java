@@ -2,7 +2,9 @@ package com.noom.interview.fullstack.sleep.service;
 
 import com.noom.interview.fullstack.sleep.domain.dto.*;
 
+import java.time.LocalDate;
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * Service for managing sleep logs.
@@ -14,24 +16,113 @@ public interface SleepLogService {
      *
      * @param request the sleep log request
      * @return the created sleep log response
-     * @throws IllegalArgumentException if the request is invalid (userId is null, wakeTime <= bedTime)
+     * @throws IllegalArgumentException if the request is invalid (userId is null, wakeTime <= bedTime) or its
+     *                                  month is archived
      * @throws IllegalStateException if a sleep log already exists for the given userId and sleepDate
      */
     SleepLogResponse createSleepLog(SleepLogRequest request);
 
     /**
-     * Gets the latest sleep log for a user.
+     * Creates several sleep logs for a user at once. Items are validated individually, existing dates are
+     * looked up with a single query and the new rows are written in JDBC batches.
+     *
+     * @param userId the ID of the user the sleep logs belong to
+     * @param requests the sleep log requests
+     * @return a result for each request, in request order
+     * @throws IllegalArgumentException if the list is empty or larger than the maximum batch size
+     */
+    SleepLogBatchResponse createSleepLogs(UUID userId, List<SleepLogRequest> requests);
+
+    /**
+     * Gets the version of a user's sleep log data, which changes with every write of the user's sleep logs. It is
+     * read with a single primary key lookup, so conditional requests can be answered without loading sleep logs
+     * or computing statistics.
+     *
+     * @param userId the ID of the user
+     * @return the version, 0 without a modification time if the user never had a sleep log
+     */
+    SleepLogVersion getSleepLogVersion(UUID userId);
+
+    /**
+     * Gets the latest sleep log for a user, from the archive if the user has none in the database.
      *
      * @param userId the ID of the user
      * @return an Optional containing the latest sleep log, or empty if none exists
      */
     Optional<SleepLogResponse> getLatestSleepLog(UUID userId);
 
+    /**
+     * Gets one page of a user's sleep logs, most recent first. Pages are found by seeking past the last sleep date
+     * of the previous page rather than by skipping rows, so every page costs the same as the first. Pages past the
+     * user's sleep logs in the database continue with the archived months.
+     *
+     * @param userId the ID of the user
+     * @param before only sleep logs dated before this date, optional; cannot be combined with a cursor
+     * @param cursor the next cursor of the previous page, optional
+     * @param limit the maximum number of sleep logs on the page
+     * @return the page, with a cursor for the next page unless it is the last one
+     * @throws IllegalArgumentException if the limit is out of range, the cursor is invalid or both before and a
+     *                                  cursor are given
+     */
+    SleepLogPageResponse getSleepLogs(UUID userId, LocalDate before, String cursor, int limit);
+
     /**
      * Gets sleep statistics for a user over the last 30 days.
+     * Results are cached per user until the user's next write or local midnight, whichever comes first.
      * 
      * @param userId the ID of the user
      * @return the sleep statistics response
      */
     SleepStatisticsResponse getSleepStatistics(UUID userId);
+
+    /**
+     * Gets the sleep statistics of a user over the last 30 days serialized to JSON, and gzip-compressed, as the
+     * API returns them. Serialized statistics are cached and evicted like {@link #getSleepStatistics(UUID)}, so
+     * repeated requests are answered without computing or serializing anything.
+     *
+     * @param userId the ID of the user
+     * @return the serialized sleep statistics response
+     */
+    SerializedJson getSerializedSleepStatistics(UUID userId);
+
+    /**
+     * Gets sleep statistics for a user over a date range. The cost does not depend on the length of the range.
+     *
+     * @param userId the ID of the user
+     * @param from the start date (inclusive)
+     * @param to the end date (inclusive)
+     * @return the sleep statistics response for the requested range
+     * @throws IllegalArgumentException if a date is missing or from is after to
+     */
+    SleepStatisticsResponse getSleepStatistics(UUID userId, LocalDate from, LocalDate to);
+
+    /**
+     * Gets sleep statistics for a user per week or month over a date range, read from the rollups with a single
+     * query. Without from, the series starts at the beginning of the 52nd week or 12th month before to; without
+     * to, it ends today.
+     *
+     * @param userId the ID of the user
+     * @param bucket the length of the buckets
+     * @param from the start date (inclusive), optional
+     * @param to the end date (inclusive), optional
+     * @return one statistics point per bucket, in date order
+     * @throws IllegalArgumentException if from is after to or the range spans too many buckets
+     */
+    SleepTrendResponse getSleepTrends(UUID userId, TrendBucket bucket, LocalDate from, LocalDate to);
+
+    /**
+     * Gets sleep statistics for each user of a cohort and for the cohort as a whole over a date range, with a
+     * single query per shard. The statistics of each user are handed to the consumer as they are read, shard by
+     * shard and in request order within a shard (in request order with a single database), so the caller can
+     * stream them; the cohort statistics are returned once every user has been handed over. The request is
+     * validated before any user is handed over.
+     *
+     * @param request the users and date range
+     * @param consumer receives the statistics of each distinct user
+     * @return the statistics over the sleep logs of all users
+     * @throws IllegalArgumentException if the users or dates are missing, the cohort is too large or from is
+     *                                  after to
+     */
+    SleepStatisticsResponse getCohortStatistics(CohortStatisticsRequest request,
+                                                Consumer<UserSleepStatistics> consumer);
 }
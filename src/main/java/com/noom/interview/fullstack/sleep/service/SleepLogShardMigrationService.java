@@ -0,0 +1,49 @@
+package com.noom.interview.fullstack.sleep.service;
+
+import com.noom.interview.fullstack.sleep.domain.entity.SleepLog;
+
+import java.util.*;
+
+/**
+ * Service for moving users to newly added shards. Resharding runs online in four steps:
+ * <ol>
+ *     <li>Add the new shards to {@code sleep.datasource.shard-urls} and set
+ *     {@code sleep.datasource.shard-migration-from} to the number of shards before. Users are still served by
+ *     their old shard, and the writes of users that move are mirrored to their new shard.</li>
+ *     <li>Once every instance mirrors writes, {@link #backfill()} copies the earlier history of the moving
+ *     users.</li>
+ *     <li>Unset {@code sleep.datasource.shard-migration-from}: users are served by their new shard.</li>
+ *     <li>Once every instance serves from the new shards, {@link #purge()} deletes the moved users from their old
+ *     shard.</li>
+ * </ol>
+ */
+public interface SleepLogShardMigrationService {
+
+    /**
+     * Copies newly created sleep logs of a user to the user's new shard, if the user moves. Within a transaction
+     * the copy is made after it commits, in a transaction of its own on the new shard; a copy that fails is logged
+     * and left to the backfill.
+     *
+     * @param userId the ID of the user
+     * @param sleepLogs the newly created sleep logs of the user
+     */
+    void mirror(UUID userId, List<SleepLog> sleepLogs);
+
+    /**
+     * Copies the sleep logs of every moving user from the old shard to the new one, skipping those already
+     * there, and adds them to the rollups of the new shard. Archived sleep logs stay in the archive and are only
+     * added to the rollups. Can be run again, e.g. after a failure.
+     *
+     * @return the number of sleep logs copied
+     * @throws IllegalStateException if the shards are not being resharded
+     */
+    long backfill();
+
+    /**
+     * Deletes the sleep logs, rollups and versions of users from every shard other than the one serving them.
+     *
+     * @return the number of users deleted from a shard
+     * @throws IllegalStateException if the shards are still being resharded
+     */
+    long purge();
+}
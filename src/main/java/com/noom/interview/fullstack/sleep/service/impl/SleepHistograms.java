@@ -0,0 +1,84 @@
+package com.noom.interview.fullstack.sleep.service.impl;
+
+/**
+ * Fixed-bucket histograms of the time in bed and of the local bed and wake times of day, as kept in the running
+ * histograms of the daily rollups. Histograms of the same kind are merged by adding and ranges are taken by
+ * subtracting them bucket by bucket, so percentiles of any date range need only two boundary histograms.
+ * The bucket layout must match the sleep_histogram_of calls in the rollup SQL.
+ */
+public final class SleepHistograms {
+
+    /**
+     * Number of buckets in every histogram
+     */
+    public static final int BUCKETS = 96;
+
+    /**
+     * Width of a time in bed bucket; nights of 24 hours or more share the last bucket
+     */
+    public static final int TIME_IN_BED_BUCKET_MINUTES = 15;
+
+    /**
+     * Width of a time of day bucket
+     */
+    public static final int TIME_OF_DAY_BUCKET_SECONDS = 900;
+
+    private SleepHistograms() {
+        // Utility class
+    }
+
+    /**
+     * Returns the bucket of a time in bed.
+     *
+     * @param minutes the time in bed in minutes, not negative
+     * @return the zero-based bucket index
+     */
+    public static int timeInBedBucket(int minutes) {
+        return Math.min(minutes / TIME_IN_BED_BUCKET_MINUTES, BUCKETS - 1);
+    }
+
+    /**
+     * Returns the bucket of a local time of day.
+     *
+     * @param secondOfDay the seconds since local midnight
+     * @return the zero-based bucket index
+     */
+    public static int timeOfDayBucket(int secondOfDay) {
+        return Math.min(secondOfDay / TIME_OF_DAY_BUCKET_SECONDS, BUCKETS - 1);
+    }
+
+    /**
+     * Adds the counts of one histogram into another.
+     *
+     * @param target the histogram to add to
+     * @param source the histogram to add, left unchanged
+     */
+    public static void add(int[] target, int[] source) {
+        for (int i = 0; i < BUCKETS; i++) {
+            target[i] += source[i];
+        }
+    }
+
+    /**
+     * Estimates a quantile of the values counted in a histogram, interpolating linearly inside the bucket that
+     * holds the quantile.
+     *
+     * @param histogram the bucket counts
+     * @param count the total of the bucket counts, greater than zero
+     * @param quantile the quantile, between 0 and 1
+     * @param bucketWidth the width of a bucket, in the unit of the values
+     * @return the estimated value
+     */
+    public static double quantile(int[] histogram, long count, double quantile, int bucketWidth) {
+        double rank = quantile * count;
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            int bucketCount = histogram[bucket];
+            if (bucketCount > 0 && seen + bucketCount >= rank) {
+                return (bucket + (rank - seen) / bucketCount) * bucketWidth;
+            }
+            seen += bucketCount;
+        }
+        return (double) BUCKETS * bucketWidth;
+    }
+}
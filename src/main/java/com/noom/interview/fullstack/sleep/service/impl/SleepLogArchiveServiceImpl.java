@@ -0,0 +1,196 @@
+package com.noom.interview.fullstack.sleep.service.impl;
+
+import com.noom.interview.fullstack.sleep.archive.*;
+import com.noom.interview.fullstack.sleep.config.ShardRouter;
+import com.noom.interview.fullstack.sleep.domain.entity.*;
+import com.noom.interview.fullstack.sleep.service.SleepLogArchiveService;
+import org.slf4j.*;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.*;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.*;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.*;
+import java.nio.file.Path;
+import java.sql.*;
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+/**
+ * Implementation of the SleepLogArchiveService interface. A month is archived by its partition of sleep_logs: the
+ * partition is read in user and date order straight into a segment file, then truncated, which also empties its
+ * indexes, and closed with a CHECK (false) constraint. The emptied partition stays attached, so the partition
+ * maintenance does not create it again and a sleep log of the month fails instead of landing in the default
+ * partition.
+ */
+@Service
+public class SleepLogArchiveServiceImpl implements SleepLogArchiveService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SleepLogArchiveServiceImpl.class);
+
+    private static final String PARTITION_PREFIX = "sleep_logs_";
+    private static final DateTimeFormatter PARTITION_MONTH = DateTimeFormatter.ofPattern("'y'yyyy'm'MM");
+    private static final int FETCH_SIZE = 10_000;
+
+    // Monthly partitions not archived yet, oldest first
+    private static final String FIND_PARTITIONS = "SELECT c.relname FROM pg_inherits i "
+            + "JOIN pg_class c ON c.oid = i.inhrelid "
+            + "WHERE i.inhparent = CAST('sleep_logs' AS regclass) AND c.relname ~ '^sleep_logs_y[0-9]{4}m[0-9]{2}$' "
+            + "AND NOT EXISTS (SELECT 1 FROM pg_constraint k WHERE k.conrelid = c.oid AND k.conname = '"
+            + SleepLogArchive.ARCHIVED_PARTITION_CONSTRAINT + "') "
+            + "ORDER BY c.relname";
+
+    // Serializes the archival of a shard across instances
+    private static final String LOCK_ARCHIVE = "SELECT pg_advisory_xact_lock("
+            + "hashtextextended('sleep_logs_archive', 0))";
+
+    private static final String IS_ARCHIVED = "SELECT EXISTS (SELECT 1 FROM pg_constraint "
+            + "WHERE conrelid = CAST(? AS regclass) AND conname = '"
+            + SleepLogArchive.ARCHIVED_PARTITION_CONSTRAINT + "')";
+
+    // Readers go on; writers of the month wait until the month is archived, then fail on the constraint
+    private static final String LOCK_PARTITION = "LOCK TABLE \"%s\" IN SHARE MODE";
+
+    private static final String SELECT_PARTITION = "SELECT id, user_id, sleep_date, bed_time, wake_time, "
+            + "total_time_in_bed_minutes, bed_time_of_day_seconds, wake_time_of_day_seconds, feeling, created_at "
+            + "FROM \"%s\" ORDER BY user_id, sleep_date";
+
+    private static final String TRUNCATE_PARTITION = "TRUNCATE TABLE \"%s\"";
+
+    private static final String CLOSE_PARTITION = "ALTER TABLE \"%s\" ADD CONSTRAINT "
+            + SleepLogArchive.ARCHIVED_PARTITION_CONSTRAINT + " CHECK (false)";
+
+    private final ShardRouter shardRouter;
+    private final SleepLogArchive sleepLogArchive;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate writeTransaction;
+    private final int retentionMonths;
+
+    /**
+     * Creates the service.
+     *
+     * @param shardRouter the shard router
+     * @param sleepLogArchive the archive the months are moved to
+     * @param jdbcTemplate the JDBC template
+     * @param transactionManager the transaction manager, for a transaction per month
+     * @param retentionMonths how many months before the current one stay in sleep_logs
+     */
+    public SleepLogArchiveServiceImpl(ShardRouter shardRouter, SleepLogArchive sleepLogArchive,
+                                      JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                      @Value("${sleep.archive.retention-months:12}") int retentionMonths) {
+        if (retentionMonths < 1) {
+            throw new IllegalArgumentException("Archive retention must be at least one month");
+        }
+        this.shardRouter = shardRouter;
+        this.sleepLogArchive = sleepLogArchive;
+        this.jdbcTemplate = jdbcTemplate;
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+        this.writeTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.retentionMonths = retentionMonths;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long archive() {
+        LocalDate cutoff = LocalDate.now().withDayOfMonth(1).minusMonths(retentionMonths);
+
+        long archived = 0;
+        for (int shard = 0; shard < shardRouter.getShardCount(); shard++) {
+            int source = shard;
+            List<String> partitions = shardRouter.onShard(source, () ->
+                    jdbcTemplate.queryForList(FIND_PARTITIONS, String.class));
+            for (String partition : partitions) {
+                LocalDate month = YearMonth.parse(partition.substring(PARTITION_PREFIX.length()), PARTITION_MONTH)
+                        .atDay(1);
+                if (!month.isBefore(cutoff)) {
+                    break;
+                }
+                archived += shardRouter.onShard(source, () -> archiveMonth(source, partition, month));
+            }
+        }
+
+        LOGGER.info("Archived {} sleep logs of months before {}", archived, cutoff);
+        return archived;
+    }
+
+    /**
+     * Moves the sleep logs of one month of the current shard into a segment file.
+     *
+     * @param shard the current shard
+     * @param partition the partition of the month
+     * @param month the first day of the month
+     * @return the number of sleep logs archived, 0 if another instance archived the month first
+     */
+    private long archiveMonth(int shard, String partition, LocalDate month) {
+        Long archived = writeTransaction.execute(status -> {
+            jdbcTemplate.query(LOCK_ARCHIVE, resultSet -> null);
+            if (Boolean.TRUE.equals(jdbcTemplate.queryForObject(IS_ARCHIVED, Boolean.class, partition))) {
+                return 0L;
+            }
+            jdbcTemplate.execute(String.format(LOCK_PARTITION, partition));
+
+            long rows = writeSegment(shard, partition, month);
+
+            // The segment is in place before the rows go; if the commit fails, the next run writes it again
+            jdbcTemplate.execute(String.format(TRUNCATE_PARTITION, partition));
+            jdbcTemplate.execute(String.format(CLOSE_PARTITION, partition));
+            return rows;
+        });
+
+        sleepLogArchive.refresh();
+        LOGGER.info("Archived {} sleep logs of {} from shard {}", archived, YearMonth.from(month), shard);
+        return archived != null ? archived : 0;
+    }
+
+    /**
+     * Writes the rows of a partition to the month's segment file of the shard, replacing any earlier attempt.
+     *
+     * @param shard the current shard
+     * @param partition the partition of the month
+     * @param month the first day of the month
+     * @return the number of sleep logs written
+     */
+    private long writeSegment(int shard, String partition, LocalDate month) {
+        try {
+            Path file = sleepLogArchive.segmentFile(shard, month);
+            try (SleepLogSegmentWriter writer = new SleepLogSegmentWriter(file)) {
+                // Rows are fetched in chunks from a cursor, so memory does not grow with the month
+                String select = String.format(SELECT_PARTITION, partition);
+                jdbcTemplate.query(connection -> {
+                    PreparedStatement statement = connection.prepareStatement(select);
+                    statement.setFetchSize(FETCH_SIZE);
+                    return statement;
+                }, (RowCallbackHandler) resultSet -> {
+                    try {
+                        writer.write(readSleepLog(resultSet));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                writer.finish();
+                return writer.getRowCount();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Sleep logs of " + YearMonth.from(month) + " cannot be archived", e);
+        }
+    }
+
+    private static SleepLog readSleepLog(ResultSet resultSet) throws SQLException {
+        return SleepLog.builder()
+                .id(resultSet.getLong("id"))
+                .userId(resultSet.getObject("user_id", UUID.class))
+                .sleepDate(resultSet.getDate("sleep_date").toLocalDate())
+                .bedTime(resultSet.getObject("bed_time", OffsetDateTime.class).toInstant())
+                .wakeTime(resultSet.getObject("wake_time", OffsetDateTime.class).toInstant())
+                .totalTimeInBedMinutes(resultSet.getInt("total_time_in_bed_minutes"))
+                .bedTimeOfDaySeconds(resultSet.getObject("bed_time_of_day_seconds", Integer.class))
+                .wakeTimeOfDaySeconds(resultSet.getObject("wake_time_of_day_seconds", Integer.class))
+                .feeling(Feeling.valueOf(resultSet.getString("feeling")))
+                .createdAt(resultSet.getObject("created_at", OffsetDateTime.class).toInstant())
+                .build();
+    }
+}
@@ -0,0 +1,54 @@
+package com.noom.interview.fullstack.sleep.service.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Opaque cursors of the sleep history pages. A cursor holds the sleep date of the last log of a page, the key the
+ * next page seeks past, so clients never depend on its format and it can change without breaking them.
+ */
+public final class SleepLogCursor {
+
+    private static final String VERSION = "1:";
+
+    private SleepLogCursor() {
+        // Utility class
+    }
+
+    /**
+     * Encodes the cursor of the page after the given sleep date.
+     *
+     * @param lastSleepDate the sleep date of the last log of the current page
+     * @return the URL-safe cursor
+     */
+    public static String encode(LocalDate lastSleepDate) {
+        byte[] key = (VERSION + lastSleepDate).getBytes(StandardCharsets.US_ASCII);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key);
+    }
+
+    /**
+     * Decodes a cursor into the sleep date the next page starts before.
+     *
+     * @param cursor the cursor returned with a previous page
+     * @return the sleep date of the last log of the previous page
+     * @throws IllegalArgumentException if the cursor was not issued by {@link #encode(LocalDate)}
+     */
+    public static LocalDate decode(String cursor) {
+        String key;
+        try {
+            key = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+        if (!key.startsWith(VERSION)) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        try {
+            return LocalDate.parse(key.substring(VERSION.length()));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+}
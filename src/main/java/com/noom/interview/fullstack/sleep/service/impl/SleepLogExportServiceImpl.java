@@ -0,0 +1,158 @@
+package com.noom.interview.fullstack.sleep.service.impl;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.noom.interview.fullstack.sleep.archive.SleepLogArchive;
+import com.noom.interview.fullstack.sleep.config.ShardRouter;
+import com.noom.interview.fullstack.sleep.domain.dto.SleepLogExportFormat;
+import com.noom.interview.fullstack.sleep.domain.entity.SleepLog;
+import com.noom.interview.fullstack.sleep.repository.SleepLogRepository;
+import com.noom.interview.fullstack.sleep.service.SleepLogExportService;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Implementation of the SleepLogExportService interface. Sleep logs are streamed from the repository's
+ * forward-only cursor and detached as soon as they are written, so neither the result set nor the persistence
+ * context grows with the history. The history is read from the user's shard, after the user's archived months,
+ * which are read one month at a time.
+ */
+@Service
+@RequiredArgsConstructor
+public class SleepLogExportServiceImpl implements SleepLogExportService {
+
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final String CSV_HEADER = "userId,sleepDate,bedTime,wakeTime,feeling\n";
+
+    private final SleepLogRepository sleepLogRepository;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+    private final ShardRouter shardRouter;
+    private final SleepLogArchive sleepLogArchive;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public long exportSleepLogs(UUID userId, SleepLogExportFormat format, OutputStream output)
+            throws IOException {
+        return shardRouter.onShardOf(userId, () -> writeSleepLogs(userId, format, output));
+    }
+
+    /**
+     * Writes the history of a user to the output in the export format.
+     *
+     * @param userId the ID of the user
+     * @param format the export format
+     * @param output the output stream
+     * @return the number of sleep logs written
+     * @throws IOException if the output cannot be written
+     */
+    private long writeSleepLogs(UUID userId, SleepLogExportFormat format, OutputStream output) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8),
+                WRITE_BUFFER_SIZE);
+        JsonGenerator generator = null;
+        if (format == SleepLogExportFormat.NDJSON) {
+            generator = objectMapper.getFactory().createGenerator(writer);
+            // Lines are separated by the line break written after each object instead of the default space
+            generator.setRootValueSeparator(null);
+        } else {
+            writer.write(CSV_HEADER);
+        }
+
+        long exported = 0;
+        try (Stream<SleepLog> archivedLogs = sleepLogArchive.streamByUserId(userId);
+             Stream<SleepLog> sleepLogs = sleepLogRepository.streamByUserIdOrderBySleepDate(userId)) {
+            // Both are in date order; a date in both, which happens while a month is being archived, is written once
+            Iterator<SleepLog> archived = archivedLogs.iterator();
+            SleepLog nextArchived = archived.hasNext() ? archived.next() : null;
+            Iterator<SleepLog> iterator = sleepLogs.iterator();
+            while (iterator.hasNext()) {
+                SleepLog sleepLog = iterator.next();
+                while (nextArchived != null && !nextArchived.getSleepDate().isAfter(sleepLog.getSleepDate())) {
+                    if (nextArchived.getSleepDate().isBefore(sleepLog.getSleepDate())) {
+                        writeLine(generator, writer, nextArchived);
+                        exported++;
+                    }
+                    nextArchived = archived.hasNext() ? archived.next() : null;
+                }
+                writeLine(generator, writer, sleepLog);
+                entityManager.detach(sleepLog);
+                exported++;
+            }
+            while (nextArchived != null) {
+                writeLine(generator, writer, nextArchived);
+                exported++;
+                nextArchived = archived.hasNext() ? archived.next() : null;
+            }
+        }
+
+        if (generator != null) {
+            generator.flush();
+        }
+        writer.flush();
+        return exported;
+    }
+
+    /**
+     * Writes a sleep log as a line of the export format.
+     *
+     * @param generator the JSON generator for NDJSON, or null for CSV
+     * @param writer the payload writer
+     * @param sleepLog the sleep log
+     * @throws IOException if the payload cannot be written
+     */
+    private void writeLine(JsonGenerator generator, Writer writer, SleepLog sleepLog) throws IOException {
+        if (generator != null) {
+            writeJsonLine(generator, sleepLog);
+        } else {
+            writeCsvLine(writer, sleepLog);
+        }
+    }
+
+    /**
+     * Writes a sleep log as one JSON object followed by a line break, in the shape of an import line.
+     *
+     * @param generator the JSON generator
+     * @param sleepLog the sleep log
+     * @throws IOException if the payload cannot be written
+     */
+    private void writeJsonLine(JsonGenerator generator, SleepLog sleepLog) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("userId", sleepLog.getUserId().toString());
+        generator.writeStringField("sleepDate", sleepLog.getSleepDate().toString());
+        generator.writeStringField("bedTime", sleepLog.getBedTime().toString());
+        generator.writeStringField("wakeTime", sleepLog.getWakeTime().toString());
+        generator.writeStringField("feeling", sleepLog.getFeeling().name());
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    /**
+     * Writes a sleep log as a userId,sleepDate,bedTime,wakeTime,feeling CSV line.
+     *
+     * @param writer the payload writer
+     * @param sleepLog the sleep log
+     * @throws IOException if the payload cannot be written
+     */
+    private void writeCsvLine(Writer writer, SleepLog sleepLog) throws IOException {
+        writer.write(sleepLog.getUserId().toString());
+        writer.write(',');
+        writer.write(sleepLog.getSleepDate().toString());
+        writer.write(',');
+        writer.write(sleepLog.getBedTime().toString());
+        writer.write(',');
+        writer.write(sleepLog.getWakeTime().toString());
+        writer.write(',');
+        writer.write(sleepLog.getFeeling().name());
+        writer.write('\n');
+    }
+}
@@ -0,0 +1,530 @@
+package com.noom.interview.fullstack.sleep.service.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.noom.interview.fullstack.sleep.archive.SleepLogArchive;
+import com.noom.interview.fullstack.sleep.config.*;
+import com.noom.interview.fullstack.sleep.domain.dto.*;
+import com.noom.interview.fullstack.sleep.domain.entity.Feeling;
+import com.noom.interview.fullstack.sleep.service.SleepLogImportService;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.slf4j.*;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.jdbc.core.*;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.*;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.sql.*;
+import java.time.*;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+/**
+ * Implementation of the SleepLogImportService interface backed by the PostgreSQL COPY protocol.
+ * Valid lines are streamed into a temporary staging table and then merged into sleep_logs with a single
+ * INSERT ... SELECT ... ON CONFLICT DO NOTHING that also updates the daily rollups, all within one transaction.
+ * <p>
+ * With several shards, valid lines are first spooled to a temporary file per shard and each file is then copied
+ * and merged into its shard in a transaction of its own. A failed import may then leave the shards before the
+ * failure imported; importing the payload again is safe, as the lines already imported count as duplicates.
+ */
+@Service
+public class SleepLogImportServiceImpl implements SleepLogImportService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SleepLogImportServiceImpl.class);
+
+    private static final int MAX_REPORTED_REJECTS = 1000;
+    private static final long PROGRESS_LOG_INTERVAL = 100_000;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    private static final int CSV_FIELD_COUNT = 5;
+    private static final String CSV_HEADER_PREFIX = "userId";
+
+    private static final String CREATE_STAGING_TABLE = "CREATE TEMP TABLE sleep_logs_import ("
+            + "line_number BIGINT NOT NULL, "
+            + "user_id UUID NOT NULL, "
+            + "sleep_date DATE NOT NULL, "
+            + "bed_time TIMESTAMP(6) WITH TIME ZONE NOT NULL, "
+            + "wake_time TIMESTAMP(6) WITH TIME ZONE NOT NULL, "
+            + "total_time_in_bed_minutes INTEGER NOT NULL, "
+            + "bed_time_of_day_seconds INTEGER NOT NULL, "
+            + "wake_time_of_day_seconds INTEGER NOT NULL, "
+            + "feeling VARCHAR(10) NOT NULL"
+            + ") ON COMMIT DROP";
+
+    private static final String COPY_INTO_STAGING_TABLE = "COPY sleep_logs_import (line_number, user_id, "
+            + "sleep_date, bed_time, wake_time, total_time_in_bed_minutes, bed_time_of_day_seconds, "
+            + "wake_time_of_day_seconds, feeling) FROM STDIN WITH (FORMAT csv)";
+
+    // Ordered by line number so that the first occurrence wins when the payload repeats a user and date.
+    // The inserted rows feed the daily rollups in the same statement; the outer count equals the rows imported.
+    private static final String MERGE_INTO_SLEEP_LOGS = "WITH inserted AS ("
+            + "INSERT INTO sleep_logs (id, user_id, sleep_date, "
+            + "bed_time, wake_time, total_time_in_bed_minutes, bed_time_of_day_seconds, wake_time_of_day_seconds, "
+            + "feeling, created_at) "
+            + "SELECT nextval('sleep_logs_seq'), user_id, sleep_date, bed_time, wake_time, "
+            + "total_time_in_bed_minutes, bed_time_of_day_seconds, wake_time_of_day_seconds, feeling, now() "
+            + "FROM sleep_logs_import ORDER BY line_number "
+            + "ON CONFLICT (user_id, sleep_date) DO NOTHING "
+            + "RETURNING user_id, sleep_date, total_time_in_bed_minutes, bed_time_of_day_seconds, "
+            + "wake_time_of_day_seconds, feeling) "
+            + "INSERT INTO sleep_log_daily_rollups AS r (user_id, sleep_date, log_count, "
+            + "total_time_in_bed_minutes, bed_time_seconds, wake_time_seconds, bad_count, ok_count, good_count) "
+            + "SELECT user_id, sleep_date, 1, total_time_in_bed_minutes, "
+            + "bed_time_of_day_seconds, wake_time_of_day_seconds, "
+            + "CASE WHEN feeling = 'BAD' THEN 1 ELSE 0 END, "
+            + "CASE WHEN feeling = 'OK' THEN 1 ELSE 0 END, "
+            + "CASE WHEN feeling = 'GOOD' THEN 1 ELSE 0 END "
+            + "FROM inserted "
+            + "ON CONFLICT (user_id, sleep_date) DO UPDATE SET "
+            + "log_count = r.log_count + EXCLUDED.log_count, "
+            + "total_time_in_bed_minutes = r.total_time_in_bed_minutes + EXCLUDED.total_time_in_bed_minutes, "
+            + "bed_time_seconds = r.bed_time_seconds + EXCLUDED.bed_time_seconds, "
+            + "wake_time_seconds = r.wake_time_seconds + EXCLUDED.wake_time_seconds, "
+            + "bad_count = r.bad_count + EXCLUDED.bad_count, "
+            + "ok_count = r.ok_count + EXCLUDED.ok_count, "
+            + "good_count = r.good_count + EXCLUDED.good_count";
+
+    // Same lock as the per-user rollup writes, taken in user order so that concurrent writers cannot deadlock
+    private static final String LOCK_IMPORTED_USERS = "SELECT pg_advisory_xact_lock("
+            + "hashtextextended(CAST(user_id AS text), 0)) "
+            + "FROM (SELECT DISTINCT user_id FROM sleep_logs_import ORDER BY user_id) AS u";
+
+    // The merge adds to the daily values only; the rollup rows it inserted still have a cum_log_count of 0, while
+    // every other row counts at least its own log. From each imported user's first inserted row on, the running
+    // totals of a row are those of the user's last row at or before its date that was not inserted (b), plus the
+    // daily values of the inserted rows up to its date (i, zero for the other rows). Only the imported sleep logs
+    // are read, so the running histograms of archived months, whose sleep logs have left sleep_logs, carry over.
+    private static final String RECOMPUTE_RUNNING_TOTALS = "UPDATE sleep_log_daily_rollups AS r SET "
+            + "cum_log_count = c.cum_log_count, "
+            + "cum_total_time_in_bed_minutes = c.cum_total_time_in_bed_minutes, "
+            + "cum_bed_time_seconds = c.cum_bed_time_seconds, "
+            + "cum_wake_time_seconds = c.cum_wake_time_seconds, "
+            + "cum_bad_count = c.cum_bad_count, "
+            + "cum_ok_count = c.cum_ok_count, "
+            + "cum_good_count = c.cum_good_count, "
+            + "cum_time_in_bed_histogram = c.cum_time_in_bed_histogram, "
+            + "cum_bed_time_histogram = c.cum_bed_time_histogram, "
+            + "cum_wake_time_histogram = c.cum_wake_time_histogram "
+            + "FROM (SELECT d.user_id, d.sleep_date, "
+            + "COALESCE(b.cum_log_count, 0) + SUM(i.log_count) OVER w AS cum_log_count, "
+            + "COALESCE(b.cum_total_time_in_bed_minutes, 0) + SUM(i.total_time_in_bed_minutes) OVER w "
+            + "AS cum_total_time_in_bed_minutes, "
+            + "COALESCE(b.cum_bed_time_seconds, 0) + SUM(i.bed_time_seconds) OVER w AS cum_bed_time_seconds, "
+            + "COALESCE(b.cum_wake_time_seconds, 0) + SUM(i.wake_time_seconds) OVER w AS cum_wake_time_seconds, "
+            + "COALESCE(b.cum_bad_count, 0) + SUM(i.bad_count) OVER w AS cum_bad_count, "
+            + "COALESCE(b.cum_ok_count, 0) + SUM(i.ok_count) OVER w AS cum_ok_count, "
+            + "COALESCE(b.cum_good_count, 0) + SUM(i.good_count) OVER w AS cum_good_count, "
+            + "sleep_histogram_add(b.cum_time_in_bed_histogram, "
+            + "sleep_histogram_sum(sleep_histogram_of(l.total_time_in_bed_minutes, 15)) OVER w) "
+            + "AS cum_time_in_bed_histogram, "
+            + "sleep_histogram_add(b.cum_bed_time_histogram, "
+            + "sleep_histogram_sum(sleep_histogram_of(l.bed_time_of_day_seconds, 900)) OVER w) "
+            + "AS cum_bed_time_histogram, "
+            + "sleep_histogram_add(b.cum_wake_time_histogram, "
+            + "sleep_histogram_sum(sleep_histogram_of(l.wake_time_of_day_seconds, 900)) OVER w) "
+            + "AS cum_wake_time_histogram "
+            + "FROM sleep_log_daily_rollups AS d "
+            + "JOIN (SELECT user_id, MIN(sleep_date) AS first_date FROM sleep_log_daily_rollups "
+            + "WHERE user_id IN (SELECT user_id FROM sleep_logs_import) AND cum_log_count = 0 "
+            + "GROUP BY user_id) AS f ON f.user_id = d.user_id AND d.sleep_date >= f.first_date "
+            + "CROSS JOIN LATERAL (SELECT "
+            + "CASE WHEN d.cum_log_count = 0 THEN d.log_count ELSE 0 END AS log_count, "
+            + "CASE WHEN d.cum_log_count = 0 THEN d.total_time_in_bed_minutes ELSE 0 END "
+            + "AS total_time_in_bed_minutes, "
+            + "CASE WHEN d.cum_log_count = 0 THEN d.bed_time_seconds ELSE 0 END AS bed_time_seconds, "
+            + "CASE WHEN d.cum_log_count = 0 THEN d.wake_time_seconds ELSE 0 END AS wake_time_seconds, "
+            + "CASE WHEN d.cum_log_count = 0 THEN d.bad_count ELSE 0 END AS bad_count, "
+            + "CASE WHEN d.cum_log_count = 0 THEN d.ok_count ELSE 0 END AS ok_count, "
+            + "CASE WHEN d.cum_log_count = 0 THEN d.good_count ELSE 0 END AS good_count) AS i "
+            + "LEFT JOIN sleep_logs AS l ON d.cum_log_count = 0 "
+            + "AND l.user_id = d.user_id AND l.sleep_date = d.sleep_date "
+            + "LEFT JOIN LATERAL (SELECT * FROM sleep_log_daily_rollups "
+            + "WHERE user_id = d.user_id AND sleep_date <= d.sleep_date AND cum_log_count > 0 "
+            + "ORDER BY sleep_date DESC LIMIT 1) AS b ON TRUE "
+            + "WINDOW w AS (PARTITION BY d.user_id ORDER BY d.sleep_date)) AS c "
+            + "WHERE r.user_id = c.user_id AND r.sleep_date = c.sleep_date";
+
+    // Bumps the data version of every user in the payload; users whose lines were all duplicates get a spurious
+    // bump, which only costs their clients one full response
+    private static final String INCREMENT_IMPORTED_USER_VERSIONS = "INSERT INTO sleep_log_user_versions AS v "
+            + "(user_id, version, modified_at) "
+            + "SELECT DISTINCT user_id, 1, now() FROM sleep_logs_import "
+            + "ON CONFLICT (user_id) DO UPDATE SET version = v.version + 1, modified_at = EXCLUDED.modified_at";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final ShardRouter shardRouter;
+    private final SleepLogArchive sleepLogArchive;
+
+    /**
+     * Creates the service.
+     *
+     * @param jdbcTemplate the JDBC template
+     * @param objectMapper the object mapper, for NDJSON lines
+     * @param transactionManager the transaction manager, for a transaction per shard
+     * @param shardRouter the shard router
+     * @param sleepLogArchive the archive, for the months closed to imports
+     */
+    public SleepLogImportServiceImpl(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper,
+                                     PlatformTransactionManager transactionManager, ShardRouter shardRouter,
+                                     SleepLogArchive sleepLogArchive) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.shardRouter = shardRouter;
+        this.sleepLogArchive = sleepLogArchive;
+
+        // A transaction of its own for every shard, never one the caller already holds on another shard
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @CacheEvict(cacheNames = {CacheConfig.SLEEP_STATISTICS_CACHE, CacheConfig.SLEEP_STATISTICS_JSON_CACHE},
+            allEntries = true)
+    public SleepLogImportResponse importSleepLogs(InputStream payload, SleepLogImportFormat format)
+            throws IOException {
+        ImportProgress progress = new ImportProgress();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(payload, StandardCharsets.UTF_8));
+        long imported;
+        try {
+            imported = shardRouter.getShardCount() == 1
+                    ? importIntoSingleDatabase(reader, format, progress)
+                    : importIntoShards(reader, format, progress);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        LOGGER.info("Sleep log import finished: {} lines read, {} imported, {} duplicates, {} rejected",
+                progress.linesRead, imported, progress.staged - imported, progress.rejected);
+
+        return SleepLogImportResponse.builder()
+                .linesRead(progress.linesRead)
+                .imported(imported)
+                .duplicates(progress.staged - imported)
+                .rejected(progress.rejected)
+                .rejects(progress.rejects)
+                .rejectsTruncated(progress.rejected > progress.rejects.size())
+                .build();
+    }
+
+    /**
+     * Streams the valid lines straight into the staging table and merges them, in one transaction.
+     *
+     * @param reader the payload reader
+     * @param format the payload format
+     * @param progress the import progress to update
+     * @return the number of sleep logs imported
+     */
+    private long importIntoSingleDatabase(BufferedReader reader, SleepLogImportFormat format,
+                                          ImportProgress progress) {
+        return transactionTemplate.execute(status -> jdbcTemplate.execute((ConnectionCallback<Long>) connection ->
+                copyAndMerge(connection, copyWriter -> stageLines(reader, format,
+                        (lineNumber, request) -> writeStagingRow(copyWriter, lineNumber, request), progress))));
+    }
+
+    /**
+     * Spools the valid lines to a file per shard of their user, then copies and merges each file into its shard.
+     * While resharding, the lines of moving users are also merged into their new shard; those merges are not
+     * counted, and one that fails is logged and left to the backfill.
+     *
+     * @param reader the payload reader
+     * @param format the payload format
+     * @param progress the import progress to update
+     * @return the number of sleep logs imported
+     * @throws IOException if the payload cannot be read or a spool file cannot be written
+     */
+    private long importIntoShards(BufferedReader reader, SleepLogImportFormat format, ImportProgress progress)
+            throws IOException {
+        Map<Integer, ShardSpool> spools = new TreeMap<>();
+        Map<Integer, ShardSpool> mirrorSpools = new TreeMap<>();
+        try {
+            stageLines(reader, format, (lineNumber, request) -> {
+                writeStagingRow(spoolOf(spools, shardRouter.shardOf(request.getUserId())), lineNumber, request);
+                OptionalInt target = shardRouter.migrationTargetOf(request.getUserId());
+                if (target.isPresent()) {
+                    writeStagingRow(spoolOf(mirrorSpools, target.getAsInt()), lineNumber, request);
+                }
+            }, progress);
+
+            long imported = 0;
+            for (Map.Entry<Integer, ShardSpool> spool : spools.entrySet()) {
+                imported += mergeSpool(spool.getKey(), spool.getValue());
+            }
+            for (Map.Entry<Integer, ShardSpool> spool : mirrorSpools.entrySet()) {
+                try {
+                    mergeSpool(spool.getKey(), spool.getValue());
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Imported sleep logs could not be mirrored to shard {}, leaving them to the backfill",
+                            spool.getKey(), e);
+                }
+            }
+            return imported;
+        } finally {
+            for (ShardSpool spool : spools.values()) {
+                spool.delete();
+            }
+            for (ShardSpool spool : mirrorSpools.values()) {
+                spool.delete();
+            }
+        }
+    }
+
+    /**
+     * Gets the spool file of a shard, creating it on first use.
+     *
+     * @param spools the spool files by shard
+     * @param shard the index of the shard
+     * @return the writer of the spool file
+     * @throws IOException if the spool file cannot be created
+     */
+    private Writer spoolOf(Map<Integer, ShardSpool> spools, int shard) throws IOException {
+        ShardSpool spool = spools.get(shard);
+        if (spool == null) {
+            spool = new ShardSpool(Files.createTempFile("sleep-log-import-shard-" + shard + "-", ".csv"));
+            spools.put(shard, spool);
+        }
+        return spool.writer;
+    }
+
+    /**
+     * Copies a spool file into the staging table of its shard and merges it, in a transaction on the shard.
+     *
+     * @param shard the index of the shard
+     * @param spool the spool file
+     * @return the number of sleep logs imported into the shard
+     */
+    private long mergeSpool(int shard, ShardSpool spool) {
+        try {
+            spool.writer.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return shardRouter.onShard(shard, () -> transactionTemplate.execute(status ->
+                jdbcTemplate.execute((ConnectionCallback<Long>) connection -> copyAndMerge(connection, copyWriter -> {
+                    try (Reader spooled = Files.newBufferedReader(spool.file, StandardCharsets.UTF_8)) {
+                        spooled.transferTo(copyWriter);
+                    }
+                }))));
+    }
+
+    /**
+     * Creates the staging table on the transaction's connection, copies the rows into it and merges it into
+     * sleep_logs.
+     *
+     * @param connection the transaction-bound connection
+     * @param rows writes the staging rows to the COPY stream
+     * @return the number of sleep logs imported
+     * @throws SQLException if a database operation fails
+     */
+    private long copyAndMerge(Connection connection, StagingRows rows) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(CREATE_STAGING_TABLE);
+        }
+
+        PGConnection pgConnection = connection.unwrap(PGConnection.class);
+        try (Writer copyWriter = new BufferedWriter(new OutputStreamWriter(
+                new PGCopyOutputStream(pgConnection, COPY_INTO_STAGING_TABLE, COPY_BUFFER_SIZE),
+                StandardCharsets.UTF_8))) {
+            rows.writeTo(copyWriter);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(LOCK_IMPORTED_USERS);
+            long imported = statement.executeUpdate(MERGE_INTO_SLEEP_LOGS);
+            statement.executeUpdate(RECOMPUTE_RUNNING_TOTALS);
+            statement.executeUpdate(INCREMENT_IMPORTED_USER_VERSIONS);
+            return imported;
+        }
+    }
+
+    /**
+     * Reads the payload line by line and hands every valid line to the staging writer.
+     *
+     * @param reader the payload reader
+     * @param format the payload format
+     * @param stagingWriter writes a valid line as a staging row
+     * @param progress the import progress to update
+     * @throws IOException if the payload cannot be read or a staging row cannot be written
+     */
+    private void stageLines(BufferedReader reader, SleepLogImportFormat format, StagingWriter stagingWriter,
+                            ImportProgress progress) throws IOException {
+        long lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank() || isCsvHeader(format, lineNumber, line)) {
+                continue;
+            }
+
+            progress.linesRead++;
+            try {
+                SleepLogRequest request = parseLine(line, format);
+                SleepLogRules.validateRequest(request);
+                sleepLogArchive.checkNotArchived(request.getSleepDate());
+                stagingWriter.write(lineNumber, request);
+                progress.staged++;
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                progress.reject(lineNumber, e.getMessage());
+            } catch (JsonProcessingException e) {
+                progress.reject(lineNumber, "Malformed JSON: " + e.getOriginalMessage());
+            }
+
+            if (progress.linesRead % PROGRESS_LOG_INTERVAL == 0) {
+                LOGGER.info("Sleep log import progress: {} lines read, {} staged, {} rejected",
+                        progress.linesRead, progress.staged, progress.rejected);
+            }
+        }
+    }
+
+    /**
+     * Checks whether the line is the optional CSV header.
+     *
+     * @param format the payload format
+     * @param lineNumber the one-based line number
+     * @param line the line
+     * @return true if the line is a CSV header
+     */
+    private boolean isCsvHeader(SleepLogImportFormat format, long lineNumber, String line) {
+        return format == SleepLogImportFormat.CSV && lineNumber == 1 && line.strip().startsWith(CSV_HEADER_PREFIX);
+    }
+
+    /**
+     * Parses a single payload line.
+     *
+     * @param line the line
+     * @param format the payload format
+     * @return the parsed sleep log request
+     * @throws JsonProcessingException if an NDJSON line is not valid JSON
+     * @throws IllegalArgumentException if an NDJSON line is the JSON null
+     */
+    private SleepLogRequest parseLine(String line, SleepLogImportFormat format) throws JsonProcessingException {
+        if (format == SleepLogImportFormat.NDJSON) {
+            SleepLogRequest request = objectMapper.readValue(line, SleepLogRequest.class);
+            if (request == null) {
+                throw new IllegalArgumentException("Expected a sleep log object but found null");
+            }
+            return request;
+        }
+        return parseCsvLine(line);
+    }
+
+    /**
+     * Parses a userId,sleepDate,bedTime,wakeTime,feeling CSV line.
+     *
+     * @param line the line
+     * @return the parsed sleep log request
+     * @throws IllegalArgumentException if the line does not have the expected fields
+     */
+    private SleepLogRequest parseCsvLine(String line) {
+        String[] fields = line.split(",", -1);
+        if (fields.length != CSV_FIELD_COUNT) {
+            throw new IllegalArgumentException(
+                    String.format("Expected %d fields but found %d", CSV_FIELD_COUNT, fields.length));
+        }
+
+        return SleepLogRequest.builder()
+                .userId(UUID.fromString(fields[0].strip()))
+                .sleepDate(LocalDate.parse(fields[1].strip()))
+                .bedTime(Instant.parse(fields[2].strip()))
+                .wakeTime(Instant.parse(fields[3].strip()))
+                .feeling(Feeling.valueOf(fields[4].strip()))
+                .build();
+    }
+
+    /**
+     * Writes a validated request as a CSV row of the staging table.
+     *
+     * @param copyWriter the COPY stream writer
+     * @param lineNumber the one-based line number
+     * @param request the validated request
+     * @throws IOException if the COPY stream cannot be written
+     */
+    private void writeStagingRow(Writer copyWriter, long lineNumber, SleepLogRequest request) throws IOException {
+        long totalMinutes = SleepLogRules.calculateTotalTimeInBedMinutes(request.getBedTime(), request.getWakeTime());
+
+        copyWriter.write(Long.toString(lineNumber));
+        copyWriter.write(',');
+        copyWriter.write(request.getUserId().toString());
+        copyWriter.write(',');
+        copyWriter.write(request.getSleepDate().toString());
+        copyWriter.write(',');
+        copyWriter.write(request.getBedTime().toString());
+        copyWriter.write(',');
+        copyWriter.write(request.getWakeTime().toString());
+        copyWriter.write(',');
+        copyWriter.write(Long.toString(totalMinutes));
+        copyWriter.write(',');
+        copyWriter.write(Integer.toString(SleepLogRules.toLocalSecondOfDay(request.getBedTime())));
+        copyWriter.write(',');
+        copyWriter.write(Integer.toString(SleepLogRules.toLocalSecondOfDay(request.getWakeTime())));
+        copyWriter.write(',');
+        copyWriter.write(request.getFeeling().name());
+        copyWriter.write('\n');
+    }
+
+    /**
+     * Writes the rows of the staging table to a COPY stream.
+     */
+    @FunctionalInterface
+    private interface StagingRows {
+        void writeTo(Writer copyWriter) throws IOException;
+    }
+
+    /**
+     * Writes a validated payload line as a row of the staging table.
+     */
+    @FunctionalInterface
+    private interface StagingWriter {
+        void write(long lineNumber, SleepLogRequest request) throws IOException;
+    }
+
+    /**
+     * Staging rows of one shard, spooled to a temporary file until the payload has been read.
+     */
+    private static final class ShardSpool {
+        private final Path file;
+        private final Writer writer;
+
+        private ShardSpool(Path file) throws IOException {
+            this.file = file;
+            this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        }
+
+        private void delete() {
+            try {
+                writer.close();
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                LOGGER.warn("Import spool file {} could not be deleted", file, e);
+            }
+        }
+    }
+
+    /**
+     * Mutable counters of a running import. Only the first rejects are kept so memory stays bounded.
+     */
+    private static final class ImportProgress {
+        private long linesRead;
+        private long staged;
+        private long rejected;
+        private final List<SleepLogImportReject> rejects = new ArrayList<>();
+
+        private void reject(long lineNumber, String message) {
+            rejected++;
+            if (rejects.size() < MAX_REPORTED_REJECTS) {
+                rejects.add(new SleepLogImportReject(lineNumber, message));
+            }
+        }
+    }
+}
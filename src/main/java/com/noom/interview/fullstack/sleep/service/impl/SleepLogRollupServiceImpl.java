@@ -0,0 +1,363 @@
+package com.noom.interview.fullstack.sleep.service.impl;
+
+import com.noom.interview.fullstack.sleep.archive.SleepLogArchive;
+import com.noom.interview.fullstack.sleep.config.CacheConfig;
+import com.noom.interview.fullstack.sleep.domain.dto.*;
+import com.noom.interview.fullstack.sleep.domain.entity.*;
+import com.noom.interview.fullstack.sleep.repository.*;
+import com.noom.interview.fullstack.sleep.service.SleepLogRollupService;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.*;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.dao.support.DataAccessUtils;
+import org.springframework.jdbc.core.*;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.*;
+
+import java.sql.Array;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.*;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Implementation of the SleepLogRollupService interface.
+ * Every rollup row carries the running totals and running histograms of the user's rollups up to its date. A
+ * write adds its values to the rows of their dates, then advances the running totals and histograms of every row
+ * of the user from its earliest date on with a single update, so a batch of older nights updates each later row
+ * once instead of once per sleep log. Writes of the same user are serialized with a transaction-scoped advisory
+ * lock so that running totals cannot lose updates.
+ */
+@Service
+@RequiredArgsConstructor
+public class SleepLogRollupServiceImpl implements SleepLogRollupService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SleepLogRollupServiceImpl.class);
+
+    // The boundary lookups of AGGREGATE_RANGE per user of the array, one result row per user in array order
+    private static final String AGGREGATE_COHORT = "SELECT c.user_id, " + SleepLogStatements.RANGE_DIFFERENCE
+            + "FROM unnest(CAST(? AS uuid[])) WITH ORDINALITY AS c(user_id, position) "
+            + SleepLogStatements.rangeLookups("c.user_id")
+            + "ORDER BY c.position";
+
+    private static final int COHORT_FETCH_SIZE = 500;
+
+    // Running totals at the day before the range and at the end of every bucket: one primary key lookup per
+    // boundary. Consecutive rows are subtracted by the caller.
+    private static final String RUNNING_TOTALS_AT_BUCKET_ENDS = "SELECT b.bucket_start, b.bucket_end, "
+            + "COALESCE(c.cum_log_count, 0), COALESCE(c.cum_total_time_in_bed_minutes, 0), "
+            + "COALESCE(c.cum_bed_time_seconds, 0), COALESCE(c.cum_wake_time_seconds, 0), "
+            + "COALESCE(c.cum_bad_count, 0), COALESCE(c.cum_ok_count, 0), COALESCE(c.cum_good_count, 0), "
+            + "c.cum_time_in_bed_histogram, c.cum_bed_time_histogram, c.cum_wake_time_histogram "
+            + "FROM (SELECT CAST(NULL AS date) AS bucket_start, CAST(? AS date) - 1 AS bucket_end "
+            + "UNION ALL "
+            + "SELECT CAST(GREATEST(s, CAST(? AS timestamp)) AS date), "
+            + "CAST(LEAST(s + CAST(? AS interval) - INTERVAL '1 day', CAST(? AS timestamp)) AS date) "
+            + "FROM generate_series(date_trunc(?, CAST(? AS timestamp)), CAST(? AS timestamp), "
+            + "CAST(? AS interval)) AS s) AS b "
+            + "LEFT JOIN LATERAL (SELECT cum_log_count, cum_total_time_in_bed_minutes, cum_bed_time_seconds, "
+            + "cum_wake_time_seconds, cum_bad_count, cum_ok_count, cum_good_count, "
+            + "cum_time_in_bed_histogram, cum_bed_time_histogram, cum_wake_time_histogram "
+            + "FROM sleep_log_daily_rollups WHERE user_id = ? AND sleep_date <= b.bucket_end "
+            + "ORDER BY sleep_date DESC LIMIT 1) AS c ON TRUE "
+            + "ORDER BY b.bucket_end";
+
+    // The day after the newest archived month. Partitions of archived months are empty, so the rollups before it
+    // can only be kept, not rebuilt.
+    private static final String ARCHIVE_HORIZON = "SELECT CAST(MAX(to_date(right(c.relname, 8), '\"y\"YYYY\"m\"MM')) "
+            + "+ INTERVAL '1 month' AS DATE) "
+            + "FROM pg_constraint k JOIN pg_class c ON c.oid = k.conrelid "
+            + "WHERE k.conname = '" + SleepLogArchive.ARCHIVED_PARTITION_CONSTRAINT + "'";
+
+    private static final String DELETE_ROLLUPS_FROM = "DELETE FROM sleep_log_daily_rollups WHERE sleep_date >= ?";
+
+    // Like SleepLogDailyRollupRepository.insertFromSleepLogs, for the days from a date on, with the running totals
+    // and histograms continuing from each user's last kept rollup
+    private static final String INSERT_ROLLUPS_FROM = "INSERT INTO sleep_log_daily_rollups (user_id, sleep_date, "
+            + "log_count, total_time_in_bed_minutes, bed_time_seconds, wake_time_seconds, "
+            + "bad_count, ok_count, good_count, "
+            + "cum_log_count, cum_total_time_in_bed_minutes, cum_bed_time_seconds, cum_wake_time_seconds, "
+            + "cum_bad_count, cum_ok_count, cum_good_count, "
+            + "cum_time_in_bed_histogram, cum_bed_time_histogram, cum_wake_time_histogram) "
+            + "SELECT d.user_id, d.sleep_date, d.log_count, d.total_time_in_bed_minutes, d.bed_time_seconds, "
+            + "d.wake_time_seconds, d.bad_count, d.ok_count, d.good_count, "
+            + "COALESCE(p.cum_log_count, 0) + SUM(d.log_count) OVER w, "
+            + "COALESCE(p.cum_total_time_in_bed_minutes, 0) + SUM(d.total_time_in_bed_minutes) OVER w, "
+            + "COALESCE(p.cum_bed_time_seconds, 0) + SUM(d.bed_time_seconds) OVER w, "
+            + "COALESCE(p.cum_wake_time_seconds, 0) + SUM(d.wake_time_seconds) OVER w, "
+            + "COALESCE(p.cum_bad_count, 0) + SUM(d.bad_count) OVER w, "
+            + "COALESCE(p.cum_ok_count, 0) + SUM(d.ok_count) OVER w, "
+            + "COALESCE(p.cum_good_count, 0) + SUM(d.good_count) OVER w, "
+            + "sleep_histogram_add(p.cum_time_in_bed_histogram, sleep_histogram_sum(d.time_in_bed_histogram) OVER w), "
+            + "sleep_histogram_add(p.cum_bed_time_histogram, sleep_histogram_sum(d.bed_time_histogram) OVER w), "
+            + "sleep_histogram_add(p.cum_wake_time_histogram, sleep_histogram_sum(d.wake_time_histogram) OVER w) "
+            + "FROM (SELECT user_id, sleep_date, COUNT(*) AS log_count, "
+            + "SUM(total_time_in_bed_minutes) AS total_time_in_bed_minutes, "
+            + "SUM(bed_time_of_day_seconds) AS bed_time_seconds, "
+            + "SUM(wake_time_of_day_seconds) AS wake_time_seconds, "
+            + "COUNT(*) FILTER (WHERE feeling = 'BAD') AS bad_count, "
+            + "COUNT(*) FILTER (WHERE feeling = 'OK') AS ok_count, "
+            + "COUNT(*) FILTER (WHERE feeling = 'GOOD') AS good_count, "
+            + "sleep_histogram_sum(sleep_histogram_of(total_time_in_bed_minutes, 15)) AS time_in_bed_histogram, "
+            + "sleep_histogram_sum(sleep_histogram_of(bed_time_of_day_seconds, 900)) AS bed_time_histogram, "
+            + "sleep_histogram_sum(sleep_histogram_of(wake_time_of_day_seconds, 900)) AS wake_time_histogram "
+            + "FROM sleep_logs WHERE sleep_date >= ? GROUP BY user_id, sleep_date) d "
+            + "LEFT JOIN LATERAL (SELECT * FROM sleep_log_daily_rollups "
+            + "WHERE user_id = d.user_id AND sleep_date < ? "
+            + "ORDER BY sleep_date DESC LIMIT 1) AS p ON TRUE "
+            + "WINDOW w AS (PARTITION BY d.user_id ORDER BY d.sleep_date)";
+
+    private final SleepLogRepository sleepLogRepository;
+    private final SleepLogDailyRollupRepository sleepLogDailyRollupRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordSleepLogs(List<SleepLog> sleepLogs) {
+        if (sleepLogs.isEmpty()) {
+            return;
+        }
+
+        // Locks are taken in a fixed order so that two writers of overlapping users cannot deadlock
+        sleepLogs.stream()
+                .map(SleepLog::getUserId)
+                .distinct()
+                .sorted()
+                .forEach(this::lockUser);
+
+        // One JDBC batch for all logs; a single create is a batch of one
+        jdbcTemplate.batchUpdate(SleepLogStatements.UPSERT_ROLLUP, sleepLogs, sleepLogs.size(),
+                (statement, sleepLog) -> SleepLogStatements.bind(statement,
+                        SleepLogStatements.upsertRollupParameters(sleepLog)));
+
+        // One statement for all logs, so every affected row is updated once
+        jdbcTemplate.update(SleepLogStatements.ADVANCE_RUNNING_TOTALS, statement -> SleepLogStatements.bind(statement,
+                SleepLogStatements.advanceRunningTotalsParameters(sleepLogs)));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public SleepStatisticsAggregate aggregate(UUID userId, LocalDate from, LocalDate to) {
+        return DataAccessUtils.requiredSingleResult(jdbcTemplate.query(SleepLogStatements.AGGREGATE_RANGE,
+                statement -> SleepLogStatements.bind(statement,
+                        SleepLogStatements.aggregateRangeParameters(userId, from, to)),
+                (resultSet, rowNumber) -> readRangeDifference(resultSet, 1, userId, new DateRange(from, to))));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Reads in a transaction of its own, so the shard selected for it is used even when the caller holds a
+     * transaction on another shard.
+     */
+    @Override
+    @Transactional(readOnly = true, propagation = Propagation.REQUIRES_NEW)
+    public void aggregateEach(Collection<UUID> userIds, LocalDate from, LocalDate to,
+                              Consumer<SleepStatisticsAggregate> consumer) {
+        DateRange dateRange = new DateRange(from, to);
+        // Rows are fetched in chunks from a cursor, so memory does not grow with the number of users
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(AGGREGATE_COHORT);
+            statement.setFetchSize(COHORT_FETCH_SIZE);
+            statement.setArray(1, connection.createArrayOf("uuid", userIds.toArray()));
+            statement.setDate(2, Date.valueOf(to));
+            statement.setDate(3, Date.valueOf(from));
+            statement.setDate(4, Date.valueOf(to));
+            statement.setDate(5, Date.valueOf(from));
+            return statement;
+        }, (RowCallbackHandler) resultSet -> consumer.accept(
+                readRangeDifference(resultSet, 2, resultSet.getObject(1, UUID.class), dateRange)));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<SleepStatisticsAggregate> aggregateByBucket(UUID userId, TrendBucket bucket, LocalDate from,
+                                                            LocalDate to) {
+        Date fromDate = Date.valueOf(from);
+        Date toDate = Date.valueOf(to);
+        List<SleepStatisticsAggregate> runningTotals = jdbcTemplate.query(RUNNING_TOTALS_AT_BUCKET_ENDS,
+                (resultSet, rowNumber) -> readRunningTotals(resultSet),
+                fromDate, fromDate, bucket.getInterval(), toDate, bucket.getTruncField(), fromDate, toDate,
+                bucket.getInterval(), userId);
+
+        List<SleepStatisticsAggregate> buckets = new ArrayList<>(runningTotals.size() - 1);
+        for (int i = 1; i < runningTotals.size(); i++) {
+            buckets.add(difference(runningTotals.get(i), runningTotals.get(i - 1)));
+        }
+        return buckets;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Transactional
+    @CacheEvict(cacheNames = {CacheConfig.SLEEP_STATISTICS_CACHE, CacheConfig.SLEEP_STATISTICS_JSON_CACHE},
+            allEntries = true)
+    public int rebuildAll() {
+        int filled = sleepLogRepository.fillMissingTimesOfDay(ZoneId.systemDefault().getId());
+        if (filled > 0) {
+            LOGGER.info("Filled in local bed and wake times of {} sleep logs", filled);
+        }
+
+        Date horizon = jdbcTemplate.queryForObject(ARCHIVE_HORIZON, Date.class);
+        if (horizon == null) {
+            sleepLogDailyRollupRepository.deleteAllInBatch();
+            int rows = sleepLogDailyRollupRepository.insertFromSleepLogs();
+            LOGGER.info("Rebuilt {} sleep log daily rollups", rows);
+            return rows;
+        }
+
+        jdbcTemplate.update(DELETE_ROLLUPS_FROM, horizon);
+        int rows = jdbcTemplate.update(INSERT_ROLLUPS_FROM, horizon, horizon);
+        LOGGER.info("Rebuilt {} sleep log daily rollups from {}, keeping those of the archived months before",
+                rows, horizon);
+        return rows;
+    }
+
+    /**
+     * Blocks until no other transaction is writing rollups of the user.
+     *
+     * @param userId the ID of the user
+     */
+    private void lockUser(UUID userId) {
+        jdbcTemplate.query(SleepLogStatements.LOCK_USER,
+                statement -> SleepLogStatements.bind(statement, SleepLogStatements.lockUserParameters(userId)),
+                resultSet -> null);
+    }
+
+    /**
+     * Reads the sums and histograms of a range, selected with RANGE_DIFFERENCE.
+     *
+     * @param resultSet the result set, positioned on the row
+     * @param firstColumn the column of the first RANGE_DIFFERENCE value
+     * @param userId the user the sums belong to
+     * @param dateRange the range the sums cover
+     * @return the sums and histograms of the range
+     * @throws SQLException if a column cannot be read
+     */
+    private static SleepStatisticsAggregate readRangeDifference(ResultSet resultSet, int firstColumn, UUID userId,
+                                                                DateRange dateRange) throws SQLException {
+        return SleepStatisticsAggregate.builder()
+                .userId(userId)
+                .dateRange(dateRange)
+                .logCount(resultSet.getLong(firstColumn))
+                .totalTimeInBedMinutes(resultSet.getLong(firstColumn + 1))
+                .bedTimeSeconds(resultSet.getLong(firstColumn + 2))
+                .wakeTimeSeconds(resultSet.getLong(firstColumn + 3))
+                .badCount(resultSet.getLong(firstColumn + 4))
+                .okCount(resultSet.getLong(firstColumn + 5))
+                .goodCount(resultSet.getLong(firstColumn + 6))
+                .timeInBedHistogram(histogramDifference(resultSet, firstColumn + 7))
+                .bedTimeHistogram(histogramDifference(resultSet, firstColumn + 9))
+                .wakeTimeHistogram(histogramDifference(resultSet, firstColumn + 11))
+                .build();
+    }
+
+    /**
+     * Reads a row of running totals at a bucket end.
+     *
+     * @param resultSet the result set, positioned on the row
+     * @return the running totals, with the bucket as date range
+     * @throws SQLException if a column cannot be read
+     */
+    private static SleepStatisticsAggregate readRunningTotals(ResultSet resultSet) throws SQLException {
+        Date bucketStart = resultSet.getDate(1);
+        return SleepStatisticsAggregate.builder()
+                .dateRange(new DateRange(bucketStart == null ? null : bucketStart.toLocalDate(),
+                        resultSet.getDate(2).toLocalDate()))
+                .logCount(resultSet.getLong(3))
+                .totalTimeInBedMinutes(resultSet.getLong(4))
+                .bedTimeSeconds(resultSet.getLong(5))
+                .wakeTimeSeconds(resultSet.getLong(6))
+                .badCount(resultSet.getLong(7))
+                .okCount(resultSet.getLong(8))
+                .goodCount(resultSet.getLong(9))
+                .timeInBedHistogram(readHistogram(resultSet, 10))
+                .bedTimeHistogram(readHistogram(resultSet, 11))
+                .wakeTimeHistogram(readHistogram(resultSet, 12))
+                .build();
+    }
+
+    /**
+     * Subtracts the running totals at the end of the previous bucket from those at the end of a bucket.
+     *
+     * @param upper the running totals at the end of the bucket
+     * @param lower the running totals at the end of the previous bucket
+     * @return the sums of the bucket, with the date range of the upper running totals
+     */
+    private static SleepStatisticsAggregate difference(SleepStatisticsAggregate upper, SleepStatisticsAggregate lower) {
+        int[] timeInBedHistogram = upper.getTimeInBedHistogram().clone();
+        int[] bedTimeHistogram = upper.getBedTimeHistogram().clone();
+        int[] wakeTimeHistogram = upper.getWakeTimeHistogram().clone();
+        for (int i = 0; i < SleepHistograms.BUCKETS; i++) {
+            timeInBedHistogram[i] -= lower.getTimeInBedHistogram()[i];
+            bedTimeHistogram[i] -= lower.getBedTimeHistogram()[i];
+            wakeTimeHistogram[i] -= lower.getWakeTimeHistogram()[i];
+        }
+
+        return SleepStatisticsAggregate.builder()
+                .dateRange(upper.getDateRange())
+                .logCount(upper.getLogCount() - lower.getLogCount())
+                .totalTimeInBedMinutes(upper.getTotalTimeInBedMinutes() - lower.getTotalTimeInBedMinutes())
+                .bedTimeSeconds(upper.getBedTimeSeconds() - lower.getBedTimeSeconds())
+                .wakeTimeSeconds(upper.getWakeTimeSeconds() - lower.getWakeTimeSeconds())
+                .badCount(upper.getBadCount() - lower.getBadCount())
+                .okCount(upper.getOkCount() - lower.getOkCount())
+                .goodCount(upper.getGoodCount() - lower.getGoodCount())
+                .timeInBedHistogram(timeInBedHistogram)
+                .bedTimeHistogram(bedTimeHistogram)
+                .wakeTimeHistogram(wakeTimeHistogram)
+                .build();
+    }
+
+    /**
+     * Reads a running histogram; a missing one is empty.
+     *
+     * @param resultSet the result set, positioned on the row
+     * @param column the column of the histogram
+     * @return the histogram
+     * @throws SQLException if the column cannot be read
+     */
+    private static int[] readHistogram(ResultSet resultSet, int column) throws SQLException {
+        int[] histogram = new int[SleepHistograms.BUCKETS];
+        Array array = resultSet.getArray(column);
+        if (array != null) {
+            Integer[] counts = (Integer[]) array.getArray();
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] = counts[i];
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Reads two running histograms, of the end of a range and of the day before it, and returns their difference:
+     * the histogram of the range. A missing running histogram counts as empty.
+     *
+     * @param resultSet the result set, positioned on the row
+     * @param upperColumn the column of the running histogram at the end of the range, followed by the other one
+     * @return the histogram of the range
+     * @throws SQLException if a column cannot be read
+     */
+    private static int[] histogramDifference(ResultSet resultSet, int upperColumn) throws SQLException {
+        int[] histogram = readHistogram(resultSet, upperColumn);
+        int[] lower = readHistogram(resultSet, upperColumn + 1);
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] -= lower[i];
+        }
+        return histogram;
+    }
+}
@@ -0,0 +1,89 @@
+package com.noom.interview.fullstack.sleep.service.impl;
+
+import com.noom.interview.fullstack.sleep.domain.dto.SleepLogRequest;
+import com.noom.interview.fullstack.sleep.domain.entity.SleepLog;
+
+import java.time.*;
+
+/**
+ * Validation and derived-value rules shared by every path that writes sleep logs.
+ */
+public final class SleepLogRules {
+
+    private SleepLogRules() {
+        // Utility class
+    }
+
+    /**
+     * Validates the sleep log request.
+     *
+     * @param request the sleep log request
+     * @throws IllegalArgumentException if the request is invalid
+     */
+    public static void validateRequest(SleepLogRequest request) {
+        // Validate userId
+        if (request.getUserId() == null) {
+            throw new IllegalArgumentException("User ID cannot be null");
+        }
+
+        // Validate sleepDate
+        if (request.getSleepDate() == null) {
+            throw new IllegalArgumentException("Sleep date cannot be null");
+        }
+
+        // Validate bedTime
+        if (request.getBedTime() == null) {
+            throw new IllegalArgumentException("Bed time cannot be null");
+        }
+
+        // Validate wakeTime
+        if (request.getWakeTime() == null) {
+            throw new IllegalArgumentException("Wake time cannot be null");
+        }
+
+        // Validate wakeTime > bedTime
+        if (!request.getWakeTime().isAfter(request.getBedTime())) {
+            throw new IllegalArgumentException("Wake time must be after bed time");
+        }
+
+        // Validate feeling
+        if (request.getFeeling() == null) {
+            throw new IllegalArgumentException("Feeling cannot be null");
+        }
+    }
+
+    /**
+     * Calculates the total time in bed in minutes.
+     *
+     * @param bedTime the bedtime
+     * @param wakeTime the wake time
+     * @return the total time in bed in minutes
+     */
+    public static long calculateTotalTimeInBedMinutes(Instant bedTime, Instant wakeTime) {
+        return Duration.between(bedTime, wakeTime).toMinutes();
+    }
+
+    /**
+     * Sets the values derived from the bed and wake times of a sleep log: the total time in bed and the local
+     * bed and wake times of day.
+     *
+     * @param sleepLog the sleep log, with bed and wake times set
+     */
+    public static void applyDerivedValues(SleepLog sleepLog) {
+        sleepLog.setTotalTimeInBedMinutes(
+                (int) calculateTotalTimeInBedMinutes(sleepLog.getBedTime(), sleepLog.getWakeTime()));
+        sleepLog.setBedTimeOfDaySeconds(toLocalSecondOfDay(sleepLog.getBedTime()));
+        sleepLog.setWakeTimeOfDaySeconds(toLocalSecondOfDay(sleepLog.getWakeTime()));
+    }
+
+    /**
+     * Converts an instant to seconds since midnight in the system time zone, the local time used for
+     * average bed and wake times.
+     *
+     * @param instant the instant
+     * @return the local second of day
+     */
+    public static int toLocalSecondOfDay(Instant instant) {
+        return LocalTime.from(instant.atZone(ZoneId.systemDefault())).toSecondOfDay();
+    }
+}
@@ -1,100 +1,259 @@
 package com.noom.interview.fullstack.sleep.service.impl;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.noom.interview.fullstack.sleep.archive.SleepLogArchive;
+import com.noom.interview.fullstack.sleep.config.*;
 import com.noom.interview.fullstack.sleep.domain.dto.*;
 import com.noom.interview.fullstack.sleep.domain.entity.*;
 import com.noom.interview.fullstack.sleep.mapper.SleepLogMapper;
-import com.noom.interview.fullstack.sleep.repository.SleepLogRepository;
-import com.noom.interview.fullstack.sleep.service.SleepLogService;
+import com.noom.interview.fullstack.sleep.repository.*;
+import com.noom.interview.fullstack.sleep.service.*;
 import lombok.RequiredArgsConstructor;
+import org.springframework.cache.*;
+import org.springframework.cache.annotation.*;
+import org.springframework.data.domain.*;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.*;
 import java.time.*;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
 
 /**
- * Implementation of the SleepLogService interface.
+ * Implementation of the SleepLogService interface. Every operation runs on the shard of its user, and cohort
+ * statistics on each shard of the cohort's users in turn. Reads of sleep logs fall back to the archive once the
+ * user's sleep logs in the database are exhausted; statistics come from the rollups, which cover archived months
+ * too.
  */
 @Service
 @RequiredArgsConstructor
 public class SleepLogServiceImpl implements SleepLogService {
 
     private static final int DAYS_IN_STATISTICS_RANGE = 29;  //30 days including today
+    private static final int MAX_BATCH_SIZE = 1000;
+    private static final int DEFAULT_TREND_BUCKETS = 52;
+    private static final int DEFAULT_MONTHLY_TREND_BUCKETS = 12;
+    private static final int MAX_TREND_BUCKETS = 520;
+    private static final int MAX_COHORT_SIZE = 10_000;
+    private static final int MAX_PAGE_SIZE = 100;
 
     private final SleepLogRepository sleepLogRepository;
     private final SleepLogMapper sleepLogMapper;
+    private final SleepLogRollupService sleepLogRollupService;
+    private final SleepLogUserVersionRepository sleepLogUserVersionRepository;
+    private final ObjectMapper objectMapper;
+    private final ShardRouter shardRouter;
+    private final SleepLogShardMigrationService sleepLogShardMigrationService;
+    private final SleepLogArchive sleepLogArchive;
+    private final CacheManager cacheManager;
 
     /**
      * {@inheritDoc}
      */
     @Override
     @Transactional
+    @CacheEvict(cacheNames = {CacheConfig.SLEEP_STATISTICS_CACHE, CacheConfig.SLEEP_STATISTICS_JSON_CACHE},
+            key = "#request.userId")
     public SleepLogResponse createSleepLog(SleepLogRequest request) {
-        validateRequest(request);
-
-        if (sleepLogRepository.existsByUserIdAndSleepDate(request.getUserId(), request.getSleepDate())) {
-            throw new IllegalStateException(
-                    String.format("Sleep log already exists for user %s on date %s", 
-                            request.getUserId(), request.getSleepDate()));
-        }
+        SleepLogRules.validateRequest(request);
+        sleepLogArchive.checkNotArchived(request.getSleepDate());
 
         SleepLog sleepLog = sleepLogMapper.toEntity(request);
+        SleepLogRules.applyDerivedValues(sleepLog);
+        sleepLog.setCreatedAt(Instant.now());
+
+        return shardRouter.onShardOf(request.getUserId(), () -> {
+            // Single round trip: the insert is skipped, not failed, when the user already has a log for the date
+            int inserted = sleepLogRepository.insertIfAbsent(sleepLog);
+
+            if (inserted == 0) {
+                throw new IllegalStateException(
+                        String.format("Sleep log already exists for user %s on date %s", 
+                                request.getUserId(), request.getSleepDate()));
+            }
 
-        long totalMinutes = calculateTotalTimeInBedMinutes(request.getBedTime(), request.getWakeTime());
-        sleepLog.setTotalTimeInBedMinutes((int) totalMinutes);
+            sleepLogRollupService.recordSleepLogs(List.of(sleepLog));
+            sleepLogUserVersionRepository.incrementVersion(request.getUserId());
+            sleepLogShardMigrationService.mirror(request.getUserId(), List.of(sleepLog));
 
-        SleepLog savedSleepLog = sleepLogRepository.save(sleepLog);
-        return sleepLogMapper.toResponse(savedSleepLog);
+            return sleepLogMapper.toResponse(sleepLog);
+        });
     }
 
     /**
-     * Validates the sleep log request.
-     *
-     * @param request the sleep log request
-     * @throws IllegalArgumentException if the request is invalid
+     * {@inheritDoc}
      */
-    private void validateRequest(SleepLogRequest request) {
-        // Validate userId
-        if (request.getUserId() == null) {
-            throw new IllegalArgumentException("User ID cannot be null");
+    @Override
+    @Transactional
+    @CacheEvict(cacheNames = {CacheConfig.SLEEP_STATISTICS_CACHE, CacheConfig.SLEEP_STATISTICS_JSON_CACHE},
+            key = "#userId")
+    public SleepLogBatchResponse createSleepLogs(UUID userId, List<SleepLogRequest> requests) {
+        if (requests == null || requests.isEmpty()) {
+            throw new IllegalArgumentException("Batch must contain at least one sleep log");
         }
+        if (requests.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException(
+                    String.format("Batch must not contain more than %d sleep logs", MAX_BATCH_SIZE));
+        }
+
+        SleepLogBatchItemResult[] results = new SleepLogBatchItemResult[requests.size()];
+        List<Integer> validIndexes = new ArrayList<>(requests.size());
+
+        for (int i = 0; i < requests.size(); i++) {
+            SleepLogRequest request = requests.get(i);
+            try {
+                if (request == null) {
+                    throw new IllegalArgumentException("Sleep log cannot be null");
+                }
+                request.setUserId(userId);
+                SleepLogRules.validateRequest(request);
+                sleepLogArchive.checkNotArchived(request.getSleepDate());
+                validIndexes.add(i);
+            } catch (IllegalArgumentException e) {
+                results[i] = batchItemResult(i, SleepLogBatchItemResult.Status.INVALID, e.getMessage(), null);
+            }
+        }
+
+        return shardRouter.onShardOf(userId, () -> saveValidSleepLogs(userId, requests, validIndexes, results));
+    }
 
-        // Validate sleepDate
-        if (request.getSleepDate() == null) {
-            throw new IllegalArgumentException("Sleep date cannot be null");
+    /**
+     * Saves the valid batch items that do not duplicate an existing sleep log or an earlier item, filling in the
+     * results of the saved and the duplicate items. Items whose date a concurrent request takes between the lookup
+     * and the insert are skipped by the insert and reported as duplicates too.
+     *
+     * @param userId the user ID
+     * @param requests the batch requests
+     * @param validIndexes the positions of the requests that passed validation
+     * @param results the item results in request order, with those of the invalid items filled in
+     * @return the batch response
+     */
+    private SleepLogBatchResponse saveValidSleepLogs(UUID userId, List<SleepLogRequest> requests,
+                                                     List<Integer> validIndexes, SleepLogBatchItemResult[] results) {
+        Set<LocalDate> takenDates = findExistingSleepDates(userId, requests, validIndexes);
+        Instant createdAt = Instant.now();
+
+        List<SleepLog> sleepLogsToSave = new ArrayList<>(validIndexes.size());
+        List<Integer> savedIndexes = new ArrayList<>(validIndexes.size());
+        for (int index : validIndexes) {
+            SleepLogRequest request = requests.get(index);
+            if (!takenDates.add(request.getSleepDate())) {
+                results[index] = duplicateItemResult(index, userId, request.getSleepDate());
+                continue;
+            }
+
+            SleepLog sleepLog = sleepLogMapper.toEntity(request);
+            SleepLogRules.applyDerivedValues(sleepLog);
+            sleepLog.setCreatedAt(createdAt);
+            sleepLogsToSave.add(sleepLog);
+            savedIndexes.add(index);
         }
 
-        // Validate bedTime
-        if (request.getBedTime() == null) {
-            throw new IllegalArgumentException("Bed time cannot be null");
+        // Single round trip: the dates taken since the lookup are skipped, not failed
+        Set<LocalDate> insertedDates = sleepLogRepository.insertAllIfAbsent(sleepLogsToSave);
+        List<SleepLog> savedSleepLogs = new ArrayList<>(insertedDates.size());
+        for (int i = 0; i < sleepLogsToSave.size(); i++) {
+            int index = savedIndexes.get(i);
+            SleepLog sleepLog = sleepLogsToSave.get(i);
+            if (!insertedDates.contains(sleepLog.getSleepDate())) {
+                results[index] = duplicateItemResult(index, userId, sleepLog.getSleepDate());
+                continue;
+            }
+
+            savedSleepLogs.add(sleepLog);
+            results[index] = batchItemResult(index, SleepLogBatchItemResult.Status.CREATED, null,
+                    sleepLogMapper.toResponse(sleepLog));
         }
 
-        // Validate wakeTime
-        if (request.getWakeTime() == null) {
-            throw new IllegalArgumentException("Wake time cannot be null");
+        sleepLogRollupService.recordSleepLogs(savedSleepLogs);
+        if (!savedSleepLogs.isEmpty()) {
+            sleepLogUserVersionRepository.incrementVersion(userId);
         }
+        sleepLogShardMigrationService.mirror(userId, savedSleepLogs);
 
-        // Validate wakeTime > bedTime
-        if (!request.getWakeTime().isAfter(request.getBedTime())) {
-            throw new IllegalArgumentException("Wake time must be after bed time");
+        return buildBatchResponse(Arrays.asList(results));
+    }
+
+    /**
+     * Looks up, with a single query, which of the dates in the valid batch items already have a sleep log.
+     *
+     * @param userId the user ID
+     * @param requests the batch requests
+     * @param validIndexes the positions of the requests that passed validation
+     * @return a mutable set of the dates that are already taken
+     */
+    private Set<LocalDate> findExistingSleepDates(UUID userId, List<SleepLogRequest> requests,
+                                                  List<Integer> validIndexes) {
+        if (validIndexes.isEmpty()) {
+            return new HashSet<>();
         }
 
-        // Validate feeling
-        if (request.getFeeling() == null) {
-            throw new IllegalArgumentException("Feeling cannot be null");
+        Set<LocalDate> requestedDates = new HashSet<>();
+        for (int index : validIndexes) {
+            requestedDates.add(requests.get(index).getSleepDate());
         }
+
+        return new HashSet<>(sleepLogRepository.findSleepDatesByUserIdAndSleepDateIn(userId, requestedDates));
     }
 
     /**
-     * Calculates the total time in bed in minutes.
+     * Creates the result of a single batch item.
      *
-     * @param bedTime the bedtime
-     * @param wakeTime the wake time
-     * @return the total time in bed in minutes
+     * @param index the position of the item in the request
+     * @param status the outcome of the item
+     * @param message the reason the item was not created, if any
+     * @param sleepLog the created sleep log, if any
+     * @return the batch item result
      */
-    private long calculateTotalTimeInBedMinutes(java.time.Instant bedTime, java.time.Instant wakeTime) {
-        return Duration.between(bedTime, wakeTime).toMinutes();
+    private SleepLogBatchItemResult batchItemResult(int index, SleepLogBatchItemResult.Status status,
+                                                    String message, SleepLogResponse sleepLog) {
+        return SleepLogBatchItemResult.builder()
+                .index(index)
+                .status(status)
+                .message(message)
+                .sleepLog(sleepLog)
+                .build();
+    }
+
+    /**
+     * Creates the result of a batch item whose date the user already has a sleep log for.
+     *
+     * @param index the position of the item in the request
+     * @param userId the user ID
+     * @param sleepDate the date of the item
+     * @return the batch item result
+     */
+    private SleepLogBatchItemResult duplicateItemResult(int index, UUID userId, LocalDate sleepDate) {
+        return batchItemResult(index, SleepLogBatchItemResult.Status.DUPLICATE,
+                String.format("Sleep log already exists for user %s on date %s", userId, sleepDate), null);
+    }
+
+    /**
+     * Builds the batch response, counting the outcome of each item.
+     *
+     * @param results the item results in request order
+     * @return the batch response
+     */
+    private SleepLogBatchResponse buildBatchResponse(List<SleepLogBatchItemResult> results) {
+        int created = 0;
+        int duplicates = 0;
+        int invalid = 0;
+        for (SleepLogBatchItemResult result : results) {
+            switch (result.getStatus()) {
+                case CREATED -> created++;
+                case DUPLICATE -> duplicates++;
+                default -> invalid++;
+            }
+        }
+
+        return SleepLogBatchResponse.builder()
+                .created(created)
+                .duplicates(duplicates)
+                .invalid(invalid)
+                .results(results)
+                .build();
     }
 
     /**
@@ -102,9 +261,9 @@ public class SleepLogServiceImpl implements SleepLogService {
      */
     @Override
     @Transactional(readOnly = true)
-    public Optional<SleepLogResponse> getLatestSleepLog(UUID userId) {
-        return sleepLogRepository.findFirstByUserIdOrderBySleepDateDesc(userId)
-                .map(sleepLogMapper::toResponse);
+    public SleepLogVersion getSleepLogVersion(UUID userId) {
+        return shardRouter.onShardOf(userId, () ->
+                sleepLogUserVersionRepository.findVersionByUserId(userId).orElseGet(SleepLogVersion::none));
     }
 
     /**
@@ -112,178 +271,269 @@ public class SleepLogServiceImpl implements SleepLogService {
      */
     @Override
     @Transactional(readOnly = true)
-    public SleepStatisticsResponse getSleepStatistics(UUID userId) {
-        DateRange dateRange = calculateDateRange();
-        List<SleepLog> sleepLogs = retrieveSleepLogs(userId, dateRange);
+    public Optional<SleepLogResponse> getLatestSleepLog(UUID userId) {
+        return shardRouter.onShardOf(userId, () -> sleepLogRepository.findLatestResponseByUserId(userId))
+                .or(() -> sleepLogArchive.findLatestByUserId(userId).map(sleepLogMapper::toResponse));
+    }
 
-        if (sleepLogs.isEmpty()) {
-           return createEmptyStatisticsResponse(dateRange);
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public SleepLogPageResponse getSleepLogs(UUID userId, LocalDate before, String cursor, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException(
+                    String.format("Limit must be between 1 and %d", MAX_PAGE_SIZE));
+        }
+        if (before != null && cursor != null) {
+            throw new IllegalArgumentException("Only one of before and cursor can be given");
         }
 
-        double averageSleepDurationMinutes = calculateAverageSleepDuration(sleepLogs);
-        AverageSleepTimes averageTimes = calculateAverageBedAndWakeTimes(sleepLogs);
-        Map<Feeling, Integer> feelingCounts = countFeelings(sleepLogs);
-
-        return buildStatisticsResponse(
-                dateRange,
-                averageSleepDurationMinutes,
-                averageTimes.getBedTime(),
-                averageTimes.getWakeTime(),
-                feelingCounts
-        );
+        // One row past the limit tells whether an older page exists without a count query
+        Pageable pageable = PageRequest.ofSize(limit + 1);
+        LocalDate seekDate = cursor != null ? SleepLogCursor.decode(cursor) : before;
+        List<SleepLogResponse> sleepLogs = shardRouter.onShardOf(userId, () -> seekDate == null
+                ? sleepLogRepository.findResponsesByUserIdOrderBySleepDateDesc(userId, pageable)
+                : sleepLogRepository.findResponsesByUserIdAndSleepDateBeforeOrderBySleepDateDesc(
+                        userId, seekDate, pageable));
+
+        if (sleepLogs.size() <= limit) {
+            // The database has no older sleep logs of the user; the rest of the page comes from the archive
+            List<SleepLogResponse> archived = sleepLogArchive.findByUserIdAndSleepDateBefore(userId, seekDate,
+                    limit + 1).stream().map(sleepLogMapper::toResponse).toList();
+            sleepLogs = mergeNewestFirst(sleepLogs, archived, limit + 1);
+        }
+        if (sleepLogs.size() <= limit) {
+            return new SleepLogPageResponse(sleepLogs, null);
+        }
+        List<SleepLogResponse> items = sleepLogs.subList(0, limit);
+        return new SleepLogPageResponse(items, SleepLogCursor.encode(items.get(limit - 1).getSleepDate()));
     }
 
     /**
-     * Calculates the date range for sleep statistics (30 days from now).
+     * Merges two lists of sleep logs that are each newest first. A date in both lists, which happens while a month
+     * is being archived, is taken once.
      *
-     * @return a DateRange object containing start and end dates
+     * @param sleepLogs the sleep logs from the database
+     * @param archived the sleep logs from the archive
+     * @param limit the maximum number of sleep logs
+     * @return the merged sleep logs, newest first
      */
-    private DateRange calculateDateRange() {
-        LocalDate endDate = LocalDate.now();
-        LocalDate startDate = endDate.minusDays(DAYS_IN_STATISTICS_RANGE);
+    private List<SleepLogResponse> mergeNewestFirst(List<SleepLogResponse> sleepLogs,
+                                                    List<SleepLogResponse> archived, int limit) {
+        if (archived.isEmpty()) {
+            return sleepLogs;
+        }
 
-        return new DateRange(startDate, endDate);
+        List<SleepLogResponse> merged = new ArrayList<>(Math.min(limit, sleepLogs.size() + archived.size()));
+        int i = 0;
+        int j = 0;
+        while (merged.size() < limit && (i < sleepLogs.size() || j < archived.size())) {
+            int comparison = i == sleepLogs.size() ? 1 : j == archived.size() ? -1
+                    : archived.get(j).getSleepDate().compareTo(sleepLogs.get(i).getSleepDate());
+            if (comparison > 0) {
+                merged.add(archived.get(j++));
+            } else if (comparison < 0) {
+                merged.add(sleepLogs.get(i++));
+            } else {
+                merged.add(sleepLogs.get(i++));
+                j++;
+            }
+        }
+        return merged;
     }
 
     /**
-     * Retrieves sleep logs for the user within the specified date range.
-     *
-     * @param userId the user ID
-     * @param dateRange the date range
-     * @return a list of sleep logs
+     * {@inheritDoc}
+     * <p>
+     * Cache misses are read-only and may be served by a replica, but only by one that has replayed every write
+     * committed by this instance: an entry loaded from a lagging replica would keep the data from before a write
+     * after its eviction, until the next write or midnight.
      */
-    private List<SleepLog> retrieveSleepLogs(UUID userId, DateRange dateRange) {
-        return sleepLogRepository.findByUserIdAndSleepDateBetween(userId, dateRange.getFrom(), dateRange.getTo());
+    @Override
+    @Transactional(readOnly = true)
+    @Cacheable(cacheNames = CacheConfig.SLEEP_STATISTICS_CACHE, key = "#userId", sync = true)
+    public SleepStatisticsResponse getSleepStatistics(UUID userId) {
+        return loadStatistics(userId);
     }
 
     /**
-     * Creates an empty statistics response when no sleep logs are found.
-     *
-     * @param dateRange the date range
-     * @return an empty statistics response
+     * {@inheritDoc}
+     * <p>
+     * Serializes the entry of {@link #getSleepStatistics(UUID)}, loading it into that cache on a miss, so the
+     * statistics are calculated once for both caches. Misses are read like those of {@link #getSleepStatistics(UUID)}.
      */
-    private SleepStatisticsResponse createEmptyStatisticsResponse(DateRange dateRange) {
-        Map<Feeling, Integer> emptyFeelingCounts = new EnumMap<>(Feeling.class);
-        for (Feeling feeling : Feeling.values()) {
-            emptyFeelingCounts.put(feeling, 0);
-        }
-
-        SleepStatisticsResponse response = new SleepStatisticsResponse();
-        response.setDateRange(dateRange);
-        response.setAverageTotalTimeInBedMinutes(0.0);
-        response.setAverageBedTime(null);
-        response.setAverageWakeTime(null);
-        response.setFeelingCounts(emptyFeelingCounts);
-        return response;
+    @Override
+    @Transactional(readOnly = true)
+    @Cacheable(cacheNames = CacheConfig.SLEEP_STATISTICS_JSON_CACHE, key = "#userId", sync = true)
+    public SerializedJson getSerializedSleepStatistics(UUID userId) {
+        Cache statisticsCache = cacheManager.getCache(CacheConfig.SLEEP_STATISTICS_CACHE);
+        SleepStatisticsResponse statistics = statisticsCache.get(userId, () -> loadStatistics(userId));
+        return serialize(statistics, statistics.getDateRange().getTo());
     }
 
     /**
-     * Calculates the average sleep duration in minutes from a list of sleep logs.
-     *
-     * @param sleepLogs the list of sleep logs
-     * @return the average sleep duration in minutes
+     * {@inheritDoc}
      */
-    private double calculateAverageSleepDuration(List<SleepLog> sleepLogs) {
-        return sleepLogs.stream()
-                .mapToInt(SleepLog::getTotalTimeInBedMinutes)
-                .average()
-                .orElse(0.0);
+    @Override
+    @Transactional(readOnly = true)
+    public SleepStatisticsResponse getSleepStatistics(UUID userId, LocalDate from, LocalDate to) {
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("Both from and to dates are required");
+        }
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("From date must not be after to date");
+        }
+
+        return calculateStatistics(userId, new DateRange(from, to));
     }
 
     /**
-     * Calculates average bed and wake times from a list of sleep logs.
-     *
-     * @param sleepLogs the list of sleep logs
-     * @return an AverageSleepTimes object containing average bed time and wake time
+     * {@inheritDoc}
      */
-    private AverageSleepTimes calculateAverageBedAndWakeTimes(List<SleepLog> sleepLogs) {
-        ZoneId zoneId = ZoneId.systemDefault();
+    @Override
+    @Transactional(readOnly = true)
+    public SleepTrendResponse getSleepTrends(UUID userId, TrendBucket bucket, LocalDate from, LocalDate to) {
+        LocalDate end = to != null ? to : LocalDate.now();
+        int defaultBuckets = bucket == TrendBucket.WEEK ? DEFAULT_TREND_BUCKETS : DEFAULT_MONTHLY_TREND_BUCKETS;
+        LocalDate start = from != null ? from : bucket.startOf(end.minus(defaultBuckets - 1L, bucket.getUnit()));
+        if (start.isAfter(end)) {
+            throw new IllegalArgumentException("From date must not be after to date");
+        }
+        if (bucket.getUnit().between(bucket.startOf(start), end) >= MAX_TREND_BUCKETS) {
+            throw new IllegalArgumentException(
+                    String.format("Trend must not span more than %d buckets", MAX_TREND_BUCKETS));
+        }
 
-        // Convert Instant to LocalTime for bed times
-        List<LocalTime> bedTimes = sleepLogs.stream()
-                .map(log -> LocalTime.from(log.getBedTime().atZone(zoneId)))
-                .toList();
+        List<SleepStatisticsAggregate> aggregates = shardRouter.onShardOf(userId, () ->
+                sleepLogRollupService.aggregateByBucket(userId, bucket, start, end));
+        List<SleepStatisticsResponse> points = new ArrayList<>();
+        for (SleepStatisticsAggregate aggregate : aggregates) {
+            SleepStatisticsAccumulator accumulator = new SleepStatisticsAccumulator();
+            accumulator.add(aggregate);
+            points.add(accumulator.toResponse(aggregate.getDateRange()));
+        }
 
-        // Convert Instant to LocalTime for wake times
-        List<LocalTime> wakeTimes = sleepLogs.stream()
-                .map(log -> LocalTime.from(log.getWakeTime().atZone(zoneId)))
-                .toList();
+        return SleepTrendResponse.builder()
+                .bucket(bucket)
+                .dateRange(new DateRange(start, end))
+                .points(points)
+                .build();
+    }
 
-        // Calculate average times
-        LocalTime averageBedTime = calculateAverageTime(bedTimes);
-        LocalTime averageWakeTime = calculateAverageTime(wakeTimes);
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Not transactional itself: the users of each shard are read in a transaction of their own on that shard.
+     */
+    @Override
+    public SleepStatisticsResponse getCohortStatistics(CohortStatisticsRequest request,
+                                                       Consumer<UserSleepStatistics> consumer) {
+        Set<UUID> userIds = validateCohortRequest(request);
+        DateRange dateRange = new DateRange(request.getFrom(), request.getTo());
+
+        // Accumulators merge associatively, so folding each user into the cohort as the rows stream in gives the
+        // same result as merging per-user partitions, without holding every user in memory
+        SleepStatisticsAccumulator cohort = new SleepStatisticsAccumulator();
+        shardRouter.groupByShard(userIds).forEach((shard, shardUserIds) -> shardRouter.onShard(shard, () -> {
+            sleepLogRollupService.aggregateEach(shardUserIds, dateRange.getFrom(), dateRange.getTo(), aggregate -> {
+                SleepStatisticsAccumulator user = new SleepStatisticsAccumulator();
+                user.add(aggregate);
+                consumer.accept(new UserSleepStatistics(aggregate.getUserId(), user.toResponse(dateRange)));
+                cohort.merge(user);
+            });
+            return null;
+        }));
 
-        return new AverageSleepTimes(averageBedTime, averageWakeTime);
+        return cohort.toResponse(dateRange);
     }
 
     /**
-     * Counts the occurrences of each feeling from a list of sleep logs.
+     * Validates a cohort statistics request.
      *
-     * @param sleepLogs the list of sleep logs
-     * @return a map of feelings and their counts
+     * @param request the request
+     * @return the distinct user IDs in request order
+     * @throws IllegalArgumentException if the request is invalid
      */
-    private Map<Feeling, Integer> countFeelings(List<SleepLog> sleepLogs) {
-        // Count each feeling
-        Map<Feeling, Integer> feelingCounts = sleepLogs.stream()
-                .collect(Collectors.groupingBy(
-                        SleepLog::getFeeling,
-                        Collectors.summingInt(log -> 1)
-                ));
-
-        // Ensure all feelings are represented in the map
-        for (Feeling feeling : Feeling.values()) {
-            feelingCounts.putIfAbsent(feeling, 0);
+    private Set<UUID> validateCohortRequest(CohortStatisticsRequest request) {
+        if (request == null || request.getUserIds() == null || request.getUserIds().isEmpty()) {
+            throw new IllegalArgumentException("Cohort must contain at least one user");
+        }
+        if (request.getFrom() == null || request.getTo() == null) {
+            throw new IllegalArgumentException("Both from and to dates are required");
+        }
+        if (request.getFrom().isAfter(request.getTo())) {
+            throw new IllegalArgumentException("From date must not be after to date");
         }
 
-        return feelingCounts;
+        Set<UUID> userIds = new LinkedHashSet<>(request.getUserIds());
+        if (userIds.contains(null)) {
+            throw new IllegalArgumentException("User ID cannot be null");
+        }
+        if (userIds.size() > MAX_COHORT_SIZE) {
+            throw new IllegalArgumentException(
+                    String.format("Cohort must not contain more than %d users", MAX_COHORT_SIZE));
+        }
+        return userIds;
     }
 
     /**
-     * Builds a sleep statistics response from the calculated statistics.
+     * Calculates the statistics of a user over a date range from the rollup running totals.
      *
-     * @param dateRange the date range for statistics
-     * @param averageTotalTimeInBedMinutes the average sleep duration in minutes
-     * @param averageBedTime the average bed time
-     * @param averageWakeTime the average wake time
-     * @param feelingCounts the map of feelings and their counts
+     * @param userId the user ID
+     * @param dateRange the date range
      * @return the sleep statistics response
      */
-    private SleepStatisticsResponse buildStatisticsResponse(
-            DateRange dateRange,
-            double averageTotalTimeInBedMinutes,
-            LocalTime averageBedTime,
-            LocalTime averageWakeTime,
-            Map<Feeling, Integer> feelingCounts) {
-
-        SleepStatisticsResponse response = new SleepStatisticsResponse();
-        response.setDateRange(dateRange);
-        response.setAverageTotalTimeInBedMinutes(averageTotalTimeInBedMinutes);
-        response.setAverageBedTime(averageBedTime);
-        response.setAverageWakeTime(averageWakeTime);
-        response.setFeelingCounts(feelingCounts);
-        return response;
+    private SleepStatisticsResponse calculateStatistics(UUID userId, DateRange dateRange) {
+        SleepStatisticsAccumulator accumulator = new SleepStatisticsAccumulator();
+        accumulator.add(shardRouter.onShardOf(userId, () ->
+                sleepLogRollupService.aggregate(userId, dateRange.getFrom(), dateRange.getTo())));
+
+        return accumulator.toResponse(dateRange);
     }
 
     /**
-     * Calculates the average time from a list of LocalTime objects.
+     * Calculates the 30-day statistics of a user for the statistics caches, from a replica that has replayed the
+     * writes whose commits evicted the user's entries, or from the primary.
      *
-     * @param times the list of LocalTime objects
-     * @return the average time
+     * @param userId the user ID
+     * @return the sleep statistics response
      */
-    private LocalTime calculateAverageTime(List<LocalTime> times) {
-        if (times.isEmpty()) {
-            return null;
-        }
+    private SleepStatisticsResponse loadStatistics(UUID userId) {
+        return ReplicaRoutingDataSource.readCommittedWrites(() -> calculateStatistics(userId, calculateDateRange()));
+    }
 
-        // Convert times to seconds since midnight
-        long totalSeconds = times.stream()
-                .mapToLong(LocalTime::toSecondOfDay)
-                .sum();
+    /**
+     * Serializes a response body with the application's object mapper, once plain and once gzip-compressed.
+     *
+     * @param body the response body
+     * @param lastDay the last day of the data the body covers
+     * @return the serialized body
+     */
+    private SerializedJson serialize(Object body, LocalDate lastDay) {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(body);
+            ByteArrayOutputStream gzipped = new ByteArrayOutputStream(json.length);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(gzipped)) {
+                gzip.write(json);
+            }
+            return new SerializedJson(json, gzipped.toByteArray(), lastDay);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Response body cannot be serialized", e);
+        }
+    }
 
-        // Calculate average seconds
-        long averageSeconds = totalSeconds / times.size();
+    /**
+     * Calculates the date range for sleep statistics (30 days from now). Shared with
+     * {@code ReactiveSleepLogServiceImpl} of the reactive source set.
+     *
+     * @return a DateRange object containing start and end dates
+     */
+    static DateRange calculateDateRange() {
+        LocalDate endDate = LocalDate.now();
+        LocalDate startDate = endDate.minusDays(DAYS_IN_STATISTICS_RANGE);
 
-        // Convert back to LocalTime
-        return LocalTime.ofSecondOfDay(averageSeconds);
+        return new DateRange(startDate, endDate);
     }
 }
@@ -0,0 +1,283 @@
+package com.noom.interview.fullstack.sleep.service.impl;
+
+import com.noom.interview.fullstack.sleep.archive.SleepLogArchive;
+import com.noom.interview.fullstack.sleep.config.ShardRouter;
+import com.noom.interview.fullstack.sleep.domain.entity.SleepLog;
+import com.noom.interview.fullstack.sleep.repository.*;
+import com.noom.interview.fullstack.sleep.service.*;
+import org.slf4j.*;
+import org.springframework.jdbc.core.*;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.*;
+import org.springframework.transaction.support.*;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Implementation of the SleepLogShardMigrationService interface. Copies are made with the same statements as
+ * new sleep logs: inserted unless the user already has a log for the date, then added to the rollups under the
+ * user's lock, so mirrored writes, the backfill and concurrent writes of the same user can overlap.
+ */
+@Service
+public class SleepLogShardMigrationServiceImpl implements SleepLogShardMigrationService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SleepLogShardMigrationServiceImpl.class);
+
+    private static final int PURGE_BATCH_SIZE = 1000;
+
+    // Users whose sleep logs are all archived only have rollups left
+    private static final String SELECT_USERS = "SELECT user_id FROM sleep_log_daily_rollups "
+            + "UNION SELECT user_id FROM sleep_logs";
+
+    private static final String SELECT_ROLLUP_DATES = "SELECT sleep_date FROM sleep_log_daily_rollups "
+            + "WHERE user_id = ?";
+
+    private static final String DELETE_SLEEP_LOGS = "DELETE FROM sleep_logs WHERE user_id = ANY(CAST(? AS uuid[]))";
+
+    private static final String DELETE_ROLLUPS = "DELETE FROM sleep_log_daily_rollups "
+            + "WHERE user_id = ANY(CAST(? AS uuid[]))";
+
+    private static final String DELETE_VERSIONS = "DELETE FROM sleep_log_user_versions "
+            + "WHERE user_id = ANY(CAST(? AS uuid[]))";
+
+    private final ShardRouter shardRouter;
+    private final SleepLogRepository sleepLogRepository;
+    private final SleepLogRollupService sleepLogRollupService;
+    private final SleepLogUserVersionRepository sleepLogUserVersionRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final SleepLogArchive sleepLogArchive;
+    private final TransactionTemplate readTransaction;
+    private final TransactionTemplate writeTransaction;
+
+    /**
+     * Creates the service.
+     *
+     * @param shardRouter the shard router
+     * @param sleepLogRepository the sleep log repository
+     * @param sleepLogRollupService the rollup service
+     * @param sleepLogUserVersionRepository the user version repository
+     * @param jdbcTemplate the JDBC template
+     * @param sleepLogArchive the archive, for the archived history of moving users
+     * @param transactionManager the transaction manager, for a transaction per shard
+     */
+    public SleepLogShardMigrationServiceImpl(ShardRouter shardRouter, SleepLogRepository sleepLogRepository,
+                                             SleepLogRollupService sleepLogRollupService,
+                                             SleepLogUserVersionRepository sleepLogUserVersionRepository,
+                                             JdbcTemplate jdbcTemplate, SleepLogArchive sleepLogArchive,
+                                             PlatformTransactionManager transactionManager) {
+        this.shardRouter = shardRouter;
+        this.sleepLogRepository = sleepLogRepository;
+        this.sleepLogRollupService = sleepLogRollupService;
+        this.sleepLogUserVersionRepository = sleepLogUserVersionRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.sleepLogArchive = sleepLogArchive;
+
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+        this.readTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        // A transaction of its own, also when called after the commit of the transaction that wrote the originals
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+        this.writeTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void mirror(UUID userId, List<SleepLog> sleepLogs) {
+        OptionalInt target = shardRouter.migrationTargetOf(userId);
+        if (target.isEmpty() || sleepLogs.isEmpty()) {
+            return;
+        }
+
+        List<SleepLog> copies = sleepLogs.stream().map(this::copyOf).toList();
+        Runnable mirror = () -> {
+            try {
+                copyToShard(target.getAsInt(), userId, copies);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Sleep logs of user {} could not be mirrored to shard {}, leaving them to the backfill",
+                        userId, target.getAsInt(), e);
+            }
+        };
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    mirror.run();
+                }
+            });
+        } else {
+            mirror.run();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long backfill() {
+        if (!shardRouter.isMigrating()) {
+            throw new IllegalStateException("Shards are not being resharded");
+        }
+
+        long copied = 0;
+        for (int shard = 0; shard < shardRouter.getShardCount(); shard++) {
+            int source = shard;
+            // Users on a shard that does not serve them are copies, not the originals
+            List<UUID> movingUsers = usersOf(source, userId ->
+                    shardRouter.shardOf(userId) == source && shardRouter.migrationTargetOf(userId).isPresent());
+            LOGGER.info("Backfilling {} moving users of shard {}", movingUsers.size(), source);
+
+            for (UUID userId : movingUsers) {
+                int target = shardRouter.migrationTargetOf(userId).getAsInt();
+                copyArchivedRollupsToShard(target, userId);
+                List<SleepLog> sleepLogs = shardRouter.onShard(source, () -> readTransaction.execute(status -> {
+                    try (Stream<SleepLog> history = sleepLogRepository.streamByUserIdOrderBySleepDate(userId)) {
+                        return history.map(this::copyOf).toList();
+                    }
+                }));
+                copied += copyToShard(target, userId, sleepLogs);
+            }
+        }
+
+        LOGGER.info("Backfill copied {} sleep logs to their new shards", copied);
+        return copied;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long purge() {
+        if (shardRouter.isMigrating()) {
+            throw new IllegalStateException("Shards are still being resharded");
+        }
+
+        long purged = 0;
+        for (int shard = 0; shard < shardRouter.getShardCount(); shard++) {
+            int current = shard;
+            List<UUID> movedUsers = usersOf(current, userId -> shardRouter.shardOf(userId) != current);
+            for (int from = 0; from < movedUsers.size(); from += PURGE_BATCH_SIZE) {
+                String[] batch = movedUsers.subList(from, Math.min(from + PURGE_BATCH_SIZE, movedUsers.size()))
+                        .stream()
+                        .map(UUID::toString)
+                        .toArray(String[]::new);
+                shardRouter.onShard(current, () -> writeTransaction.execute(status -> {
+                    jdbcTemplate.update(DELETE_SLEEP_LOGS, (Object) batch);
+                    jdbcTemplate.update(DELETE_ROLLUPS, (Object) batch);
+                    return jdbcTemplate.update(DELETE_VERSIONS, (Object) batch);
+                }));
+            }
+            LOGGER.info("Purged {} moved users from shard {}", movedUsers.size(), current);
+            purged += movedUsers.size();
+        }
+        return purged;
+    }
+
+    /**
+     * Lists the users with sleep logs on a shard.
+     *
+     * @param shard the index of the shard
+     * @param filter selects the users to list
+     * @return the selected users
+     */
+    private List<UUID> usersOf(int shard, Predicate<UUID> filter) {
+        List<UUID> users = new ArrayList<>();
+        shardRouter.onShard(shard, () -> {
+            jdbcTemplate.query(SELECT_USERS, (RowCallbackHandler) resultSet -> {
+                UUID userId = resultSet.getObject(1, UUID.class);
+                if (filter.test(userId)) {
+                    users.add(userId);
+                }
+            });
+            return null;
+        });
+        return users;
+    }
+
+    /**
+     * Inserts sleep logs of a user on a shard unless the user already has a log for the date, and adds the
+     * inserted logs to the user's rollups and version, in a transaction of its own.
+     *
+     * @param shard the index of the shard
+     * @param userId the ID of the user
+     * @param sleepLogs the sleep logs, without IDs
+     * @return the number of sleep logs inserted
+     */
+    private long copyToShard(int shard, UUID userId, List<SleepLog> sleepLogs) {
+        return shardRouter.onShard(shard, () -> writeTransaction.execute(status -> {
+            List<SleepLog> inserted = new ArrayList<>(sleepLogs.size());
+            for (SleepLog sleepLog : sleepLogs) {
+                if (sleepLogRepository.insertIfAbsent(sleepLog) > 0) {
+                    inserted.add(sleepLog);
+                }
+            }
+            if (!inserted.isEmpty()) {
+                sleepLogRollupService.recordSleepLogs(inserted);
+                sleepLogUserVersionRepository.incrementVersion(userId);
+            }
+            return (long) inserted.size();
+        }));
+    }
+
+    /**
+     * Adds the archived sleep logs of a user to the user's rollups on a shard, in a transaction of its own. The
+     * sleep logs stay in the archive, whose segments are read for every shard, but the rollups of the old shard are
+     * deleted by the purge. Dates that already have a rollup on the shard are skipped, so the copy can be repeated.
+     *
+     * @param shard the index of the shard
+     * @param userId the ID of the user
+     * @return the number of archived sleep logs added to the rollups
+     */
+    private long copyArchivedRollupsToShard(int shard, UUID userId) {
+        List<SleepLog> archived;
+        try (Stream<SleepLog> history = sleepLogArchive.streamByUserId(userId)) {
+            archived = history.map(this::copyOf).toList();
+        }
+        if (archived.isEmpty()) {
+            return 0;
+        }
+
+        return shardRouter.onShard(shard, () -> writeTransaction.execute(status -> {
+            Set<LocalDate> recorded = new HashSet<>(
+                    jdbcTemplate.queryForList(SELECT_ROLLUP_DATES, LocalDate.class, userId));
+            List<SleepLog> missing = archived.stream()
+                    .filter(sleepLog -> !recorded.contains(sleepLog.getSleepDate()))
+                    .toList();
+            if (!missing.isEmpty()) {
+                sleepLogRollupService.recordSleepLogs(missing);
+                sleepLogUserVersionRepository.incrementVersion(userId);
+            }
+            return (long) missing.size();
+        }));
+    }
+
+    /**
+     * Copies a sleep log without its ID, which the shard it is copied to assigns from its own sequence. Local bed
+     * and wake times missing from old logs are derived, as the rollups need them.
+     *
+     * @param sleepLog the sleep log
+     * @return the copy
+     */
+    private SleepLog copyOf(SleepLog sleepLog) {
+        SleepLog copy = SleepLog.builder()
+                .userId(sleepLog.getUserId())
+                .sleepDate(sleepLog.getSleepDate())
+                .bedTime(sleepLog.getBedTime())
+                .wakeTime(sleepLog.getWakeTime())
+                .totalTimeInBedMinutes(sleepLog.getTotalTimeInBedMinutes())
+                .bedTimeOfDaySeconds(sleepLog.getBedTimeOfDaySeconds())
+                .wakeTimeOfDaySeconds(sleepLog.getWakeTimeOfDaySeconds())
+                .feeling(sleepLog.getFeeling())
+                .createdAt(sleepLog.getCreatedAt())
+                .build();
+        if (copy.getBedTimeOfDaySeconds() == null || copy.getWakeTimeOfDaySeconds() == null) {
+            SleepLogRules.applyDerivedValues(copy);
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,214 @@
+package com.noom.interview.fullstack.sleep.service.impl;
+
+import com.noom.interview.fullstack.sleep.domain.dto.*;
+import com.noom.interview.fullstack.sleep.domain.entity.*;
+
+import java.time.LocalTime;
+import java.util.*;
+import java.util.stream.Collector;
+
+/**
+ * Mutable, single-pass fold of sleep logs into primitive sums, feeling counts indexed by
+ * {@link Feeling#ordinal()} and {@link SleepHistograms} of the time in bed and bed and wake times. Adding a log
+ * allocates nothing, and accumulators built over separate partitions (e.g. parallel stream segments or users of
+ * a cohort) can be merged. Not thread safe.
+ */
+public final class SleepStatisticsAccumulator {
+
+    private static final Feeling[] FEELINGS = Feeling.values();
+    private static final double P10 = 0.1;
+    private static final double MEDIAN = 0.5;
+    private static final double P90 = 0.9;
+    private static final long LAST_SECOND_OF_DAY = 86_399;
+
+    private long logCount;
+    private long totalTimeInBedMinutes;
+    private long bedTimeSeconds;
+    private long wakeTimeSeconds;
+    private final int[] feelingCounts = new int[FEELINGS.length];
+    private final int[] timeInBedHistogram = new int[SleepHistograms.BUCKETS];
+    private final int[] bedTimeHistogram = new int[SleepHistograms.BUCKETS];
+    private final int[] wakeTimeHistogram = new int[SleepHistograms.BUCKETS];
+
+    /**
+     * Returns a collector folding sleep logs into an accumulator, usable with parallel streams.
+     *
+     * @return the collector
+     */
+    public static Collector<SleepLog, ?, SleepStatisticsAccumulator> collector() {
+        return Collector.of(SleepStatisticsAccumulator::new, SleepStatisticsAccumulator::add,
+                SleepStatisticsAccumulator::merge, Collector.Characteristics.UNORDERED,
+                Collector.Characteristics.IDENTITY_FINISH);
+    }
+
+    /**
+     * Folds a sleep log into the sums. Legacy logs without persisted times of day fall back to converting their
+     * bed and wake instants.
+     *
+     * @param sleepLog the sleep log, with derived values applied
+     */
+    public void add(SleepLog sleepLog) {
+        Integer bedTimeOfDay = sleepLog.getBedTimeOfDaySeconds();
+        Integer wakeTimeOfDay = sleepLog.getWakeTimeOfDaySeconds();
+        add(sleepLog.getTotalTimeInBedMinutes(),
+                bedTimeOfDay != null ? bedTimeOfDay : SleepLogRules.toLocalSecondOfDay(sleepLog.getBedTime()),
+                wakeTimeOfDay != null ? wakeTimeOfDay : SleepLogRules.toLocalSecondOfDay(sleepLog.getWakeTime()),
+                sleepLog.getFeeling());
+    }
+
+    /**
+     * Folds the values of a single sleep log into the sums.
+     *
+     * @param timeInBedMinutes the total time in bed in minutes
+     * @param bedTimeOfDaySeconds the local bed time as seconds since midnight
+     * @param wakeTimeOfDaySeconds the local wake time as seconds since midnight
+     * @param feeling how the user felt
+     */
+    public void add(int timeInBedMinutes, int bedTimeOfDaySeconds, int wakeTimeOfDaySeconds, Feeling feeling) {
+        logCount++;
+        totalTimeInBedMinutes += timeInBedMinutes;
+        bedTimeSeconds += bedTimeOfDaySeconds;
+        wakeTimeSeconds += wakeTimeOfDaySeconds;
+        feelingCounts[feeling.ordinal()]++;
+        timeInBedHistogram[SleepHistograms.timeInBedBucket(timeInBedMinutes)]++;
+        bedTimeHistogram[SleepHistograms.timeOfDayBucket(bedTimeOfDaySeconds)]++;
+        wakeTimeHistogram[SleepHistograms.timeOfDayBucket(wakeTimeOfDaySeconds)]++;
+    }
+
+    /**
+     * Folds pre-aggregated sums and histograms, such as those read from the daily rollups, into the sums.
+     * Missing histograms count as empty.
+     *
+     * @param aggregate the sums to add
+     */
+    public void add(SleepStatisticsAggregate aggregate) {
+        logCount += aggregate.getLogCount();
+        totalTimeInBedMinutes += aggregate.getTotalTimeInBedMinutes();
+        bedTimeSeconds += aggregate.getBedTimeSeconds();
+        wakeTimeSeconds += aggregate.getWakeTimeSeconds();
+        feelingCounts[Feeling.BAD.ordinal()] += (int) aggregate.getBadCount();
+        feelingCounts[Feeling.OK.ordinal()] += (int) aggregate.getOkCount();
+        feelingCounts[Feeling.GOOD.ordinal()] += (int) aggregate.getGoodCount();
+        if (aggregate.getTimeInBedHistogram() != null) {
+            SleepHistograms.add(timeInBedHistogram, aggregate.getTimeInBedHistogram());
+        }
+        if (aggregate.getBedTimeHistogram() != null) {
+            SleepHistograms.add(bedTimeHistogram, aggregate.getBedTimeHistogram());
+        }
+        if (aggregate.getWakeTimeHistogram() != null) {
+            SleepHistograms.add(wakeTimeHistogram, aggregate.getWakeTimeHistogram());
+        }
+    }
+
+    /**
+     * Adds the sums of another accumulator into this one.
+     *
+     * @param other the accumulator to merge, left unchanged
+     * @return this accumulator
+     */
+    public SleepStatisticsAccumulator merge(SleepStatisticsAccumulator other) {
+        logCount += other.logCount;
+        totalTimeInBedMinutes += other.totalTimeInBedMinutes;
+        bedTimeSeconds += other.bedTimeSeconds;
+        wakeTimeSeconds += other.wakeTimeSeconds;
+        for (int i = 0; i < feelingCounts.length; i++) {
+            feelingCounts[i] += other.feelingCounts[i];
+        }
+        SleepHistograms.add(timeInBedHistogram, other.timeInBedHistogram);
+        SleepHistograms.add(bedTimeHistogram, other.bedTimeHistogram);
+        SleepHistograms.add(wakeTimeHistogram, other.wakeTimeHistogram);
+        return this;
+    }
+
+    /**
+     * Returns the number of sleep logs folded so far.
+     *
+     * @return the log count
+     */
+    public long getLogCount() {
+        return logCount;
+    }
+
+    /**
+     * Returns how many of the folded sleep logs have the given feeling.
+     *
+     * @param feeling the feeling
+     * @return the count
+     */
+    public int getFeelingCount(Feeling feeling) {
+        return feelingCounts[feeling.ordinal()];
+    }
+
+    /**
+     * Copies the sums and histograms into an aggregate.
+     *
+     * @return the aggregate
+     */
+    public SleepStatisticsAggregate toAggregate() {
+        return SleepStatisticsAggregate.builder()
+                .logCount(logCount)
+                .totalTimeInBedMinutes(totalTimeInBedMinutes)
+                .bedTimeSeconds(bedTimeSeconds)
+                .wakeTimeSeconds(wakeTimeSeconds)
+                .badCount(getFeelingCount(Feeling.BAD))
+                .okCount(getFeelingCount(Feeling.OK))
+                .goodCount(getFeelingCount(Feeling.GOOD))
+                .timeInBedHistogram(timeInBedHistogram.clone())
+                .bedTimeHistogram(bedTimeHistogram.clone())
+                .wakeTimeHistogram(wakeTimeHistogram.clone())
+                .build();
+    }
+
+    /**
+     * Builds the statistics response for the sums. Without any sleep logs the averages are zero or null, the
+     * percentiles are null and every feeling count is zero.
+     *
+     * @param dateRange the date range the sums cover
+     * @return the sleep statistics response
+     */
+    public SleepStatisticsResponse toResponse(DateRange dateRange) {
+        Map<Feeling, Integer> counts = new EnumMap<>(Feeling.class);
+        for (Feeling feeling : FEELINGS) {
+            counts.put(feeling, feelingCounts[feeling.ordinal()]);
+        }
+
+        SleepStatisticsResponse response = new SleepStatisticsResponse();
+        response.setDateRange(dateRange);
+        response.setFeelingCounts(counts);
+        if (logCount == 0) {
+            response.setAverageTotalTimeInBedMinutes(0.0);
+            return response;
+        }
+
+        response.setAverageTotalTimeInBedMinutes((double) totalTimeInBedMinutes / logCount);
+        response.setAverageBedTime(LocalTime.ofSecondOfDay(bedTimeSeconds / logCount));
+        response.setAverageWakeTime(LocalTime.ofSecondOfDay(wakeTimeSeconds / logCount));
+        response.setTotalTimeInBedMinutesPercentiles(DurationPercentiles.builder()
+                .p10(timeInBedQuantile(P10))
+                .median(timeInBedQuantile(MEDIAN))
+                .p90(timeInBedQuantile(P90))
+                .build());
+        response.setBedTimePercentiles(timeOfDayPercentiles(bedTimeHistogram));
+        response.setWakeTimePercentiles(timeOfDayPercentiles(wakeTimeHistogram));
+        return response;
+    }
+
+    private double timeInBedQuantile(double quantile) {
+        return SleepHistograms.quantile(timeInBedHistogram, logCount, quantile,
+                SleepHistograms.TIME_IN_BED_BUCKET_MINUTES);
+    }
+
+    private TimeOfDayPercentiles timeOfDayPercentiles(int[] histogram) {
+        return TimeOfDayPercentiles.builder()
+                .p10(timeOfDayQuantile(histogram, P10))
+                .median(timeOfDayQuantile(histogram, MEDIAN))
+                .p90(timeOfDayQuantile(histogram, P90))
+                .build();
+    }
+
+    private LocalTime timeOfDayQuantile(int[] histogram, double quantile) {
+        double secondOfDay = SleepHistograms.quantile(histogram, logCount, quantile,
+                SleepHistograms.TIME_OF_DAY_BUCKET_SECONDS);
+        return LocalTime.ofSecondOfDay(Math.min(Math.round(secondOfDay), LAST_SECOND_OF_DAY));
+    }
+}
@@ -0,0 +1,22 @@
+-- Every shard has its own sleep_logs_seq, and all of them started at 1. Hibernate's pooled optimizer (allocationSize
+-- 50) is one per application, not per shard: it can take a block of 50 ids from one shard's sequence and hand them
+-- out on another shard, whose own nextval calls (insertIfAbsent, imports, the reactive stack) return the same ids
+-- sooner or later. Mirroring and backfilling moving users also copies their ids to another shard. Ids were
+-- therefore not unique, not even within a shard, and V1.8's "ids stay unique through sleep_logs_seq" only held
+-- without sharding.
+--
+-- Each shard's sequence now draws from a range of its own: 2^48 ids starting at (shard + 1) * 2^48, where shard is
+-- the shard's position in the configured list (0 without sharding). Every value is handed out once, by one
+-- sequence, so ids are unique across all shards wherever a block of them is used. The ranges start above the ids
+-- given out before, which stay as they are. The first value is 50 past the start because the pooled optimizer uses
+-- each value as the upper bound of its block. A sequence that runs out of its range fails instead of overlapping
+-- the next one.
+DO
+$$
+DECLARE
+    range_start BIGINT := (CAST(${shard} AS BIGINT) + 1) << 48;
+BEGIN
+    EXECUTE format('ALTER SEQUENCE sleep_logs_seq MINVALUE %s MAXVALUE %s RESTART WITH %s',
+                   range_start + 1, range_start + (CAST(1 AS BIGINT) << 48) - 1, range_start + 50);
+END
+$$;
@@ -0,0 +1,23 @@
+-- Sleep logs table. Ids come from a pooled sequence (allocationSize = 50 on the entity) rather than an
+-- identity column so that Hibernate can batch inserts.
+CREATE SEQUENCE IF NOT EXISTS sleep_logs_seq INCREMENT BY 50;
+
+CREATE TABLE IF NOT EXISTS sleep_logs (
+    id                        BIGINT                   NOT NULL,
+    user_id                   UUID                     NOT NULL,
+    sleep_date                DATE                     NOT NULL,
+    bed_time                  TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+    wake_time                 TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+    total_time_in_bed_minutes INTEGER                  NOT NULL,
+    feeling                   VARCHAR(10)              NOT NULL,
+    created_at                TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+    CONSTRAINT sleep_logs_pkey PRIMARY KEY (id),
+    CONSTRAINT uk_sleeplogs_user_date UNIQUE (user_id, sleep_date)
+);
+
+-- Databases whose schema was generated by Hibernate still carry the old identity column.
+ALTER TABLE sleep_logs ALTER COLUMN id DROP IDENTITY IF EXISTS;
+
+-- Move the sequence past any existing ids. The pooled optimizer treats each value as the upper bound of a
+-- block of 50, so the next value must be at least MAX(id) + 50.
+SELECT setval('sleep_logs_seq', COALESCE((SELECT MAX(id) FROM sleep_logs), 0) + 50, false);
@@ -0,0 +1,15 @@
+-- Per-user daily sums of sleep_logs, maintained on write. Statistics over a date range sum these rows instead
+-- of loading sleep logs. Bed and wake times are stored as seconds since local midnight. Existing sleep logs
+-- are backfilled by the rollup rebuild job (sleep.rollups.rebuild-on-startup=true).
+CREATE TABLE IF NOT EXISTS sleep_log_daily_rollups (
+    user_id                   UUID   NOT NULL,
+    sleep_date                DATE   NOT NULL,
+    log_count                 BIGINT NOT NULL,
+    total_time_in_bed_minutes BIGINT NOT NULL,
+    bed_time_seconds          BIGINT NOT NULL,
+    wake_time_seconds         BIGINT NOT NULL,
+    bad_count                 BIGINT NOT NULL,
+    ok_count                  BIGINT NOT NULL,
+    good_count                BIGINT NOT NULL,
+    CONSTRAINT sleep_log_daily_rollups_pkey PRIMARY KEY (user_id, sleep_date)
+);
@@ -0,0 +1,10 @@
+-- Local bed and wake times as seconds since midnight, derived once on write so that statistics never convert
+-- timestamps at read time. Rows written before this migration are filled in by the rollup rebuild job
+-- (sleep.rollups.rebuild-on-startup=true), which knows the application time zone.
+ALTER TABLE sleep_logs
+    ADD COLUMN IF NOT EXISTS bed_time_of_day_seconds INTEGER,
+    ADD COLUMN IF NOT EXISTS wake_time_of_day_seconds INTEGER;
+
+ALTER TABLE sleep_logs
+    ADD CONSTRAINT ck_sleeplogs_bed_time_of_day CHECK (bed_time_of_day_seconds BETWEEN 0 AND 86399),
+    ADD CONSTRAINT ck_sleeplogs_wake_time_of_day CHECK (wake_time_of_day_seconds BETWEEN 0 AND 86399);
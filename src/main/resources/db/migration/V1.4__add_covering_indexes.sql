@@ -0,0 +1,10 @@
+-- Covering index so that the latest and range reads are answered by index-only scans. The rollup primary key,
+-- which covers the statistics, is defined once all of its columns exist, in V1.9.
+
+-- One unique index on (user_id, sleep_date DESC) replaces the plain unique constraint: it still backs
+-- ON CONFLICT (user_id, sleep_date) and also carries every column of a sleep log response.
+CREATE UNIQUE INDEX IF NOT EXISTS ux_sleeplogs_user_date_covering
+    ON sleep_logs (user_id, sleep_date DESC)
+    INCLUDE (bed_time, wake_time, total_time_in_bed_minutes, feeling);
+
+ALTER TABLE sleep_logs DROP CONSTRAINT IF EXISTS uk_sleeplogs_user_date;
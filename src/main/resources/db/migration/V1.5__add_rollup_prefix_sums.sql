@@ -0,0 +1,30 @@
+-- Running totals per user: each rollup row also holds the sums of all of the user's rollups up to and including
+-- its date. Statistics for any date range are the difference of two rows, whatever the length of the range.
+ALTER TABLE sleep_log_daily_rollups
+    ADD COLUMN IF NOT EXISTS cum_log_count                 BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN IF NOT EXISTS cum_total_time_in_bed_minutes BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN IF NOT EXISTS cum_bed_time_seconds          BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN IF NOT EXISTS cum_wake_time_seconds         BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN IF NOT EXISTS cum_bad_count                 BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN IF NOT EXISTS cum_ok_count                  BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN IF NOT EXISTS cum_good_count                BIGINT NOT NULL DEFAULT 0;
+
+UPDATE sleep_log_daily_rollups r
+SET cum_log_count = c.cum_log_count,
+    cum_total_time_in_bed_minutes = c.cum_total_time_in_bed_minutes,
+    cum_bed_time_seconds = c.cum_bed_time_seconds,
+    cum_wake_time_seconds = c.cum_wake_time_seconds,
+    cum_bad_count = c.cum_bad_count,
+    cum_ok_count = c.cum_ok_count,
+    cum_good_count = c.cum_good_count
+FROM (SELECT user_id, sleep_date,
+             SUM(log_count) OVER w                 AS cum_log_count,
+             SUM(total_time_in_bed_minutes) OVER w AS cum_total_time_in_bed_minutes,
+             SUM(bed_time_seconds) OVER w          AS cum_bed_time_seconds,
+             SUM(wake_time_seconds) OVER w         AS cum_wake_time_seconds,
+             SUM(bad_count) OVER w                 AS cum_bad_count,
+             SUM(ok_count) OVER w                  AS cum_ok_count,
+             SUM(good_count) OVER w                AS cum_good_count
+      FROM sleep_log_daily_rollups
+      WINDOW w AS (PARTITION BY user_id ORDER BY sleep_date)) c
+WHERE r.user_id = c.user_id AND r.sleep_date = c.sleep_date;
@@ -0,0 +1,49 @@
+-- Running histograms per user: each rollup row also holds, for the time in bed and the local bed and wake times
+-- of day, how many of the user's sleep logs up to and including its date fall into each of 96 fixed buckets
+-- (15 minutes of time in bed, 900 seconds of time of day; longer nights share the last bucket). Like the running
+-- sums, the histogram of any date range is the difference of two rows, and percentiles are read from it.
+
+-- Element-wise sum of two histograms of the same length; NULL acts as the empty histogram
+CREATE OR REPLACE FUNCTION sleep_histogram_add(a INTEGER[], b INTEGER[]) RETURNS INTEGER[]
+    LANGUAGE sql IMMUTABLE PARALLEL SAFE AS
+$$
+SELECT CASE
+           WHEN a IS NULL THEN b
+           WHEN b IS NULL THEN a
+           ELSE ARRAY(SELECT x + y FROM unnest(a, b) WITH ORDINALITY AS t(x, y, i) ORDER BY i)
+       END
+$$;
+
+-- Histogram counting a single value; a missing value counts nowhere
+CREATE OR REPLACE FUNCTION sleep_histogram_of(value INTEGER, bucket_width INTEGER) RETURNS INTEGER[]
+    LANGUAGE sql IMMUTABLE PARALLEL SAFE AS
+$$
+SELECT ARRAY(SELECT CASE WHEN value IS NOT NULL AND i = LEAST(value / bucket_width, 95) + 1 THEN 1 ELSE 0 END
+             FROM generate_series(1, 96) AS i
+             ORDER BY i)
+$$;
+
+CREATE AGGREGATE sleep_histogram_sum(INTEGER[]) (
+    SFUNC = sleep_histogram_add,
+    STYPE = INTEGER[]
+);
+
+ALTER TABLE sleep_log_daily_rollups
+    ADD COLUMN IF NOT EXISTS cum_time_in_bed_histogram INTEGER[] NOT NULL DEFAULT array_fill(0, ARRAY[96]),
+    ADD COLUMN IF NOT EXISTS cum_bed_time_histogram    INTEGER[] NOT NULL DEFAULT array_fill(0, ARRAY[96]),
+    ADD COLUMN IF NOT EXISTS cum_wake_time_histogram   INTEGER[] NOT NULL DEFAULT array_fill(0, ARRAY[96]);
+
+UPDATE sleep_log_daily_rollups r
+SET cum_time_in_bed_histogram = c.cum_time_in_bed_histogram,
+    cum_bed_time_histogram = c.cum_bed_time_histogram,
+    cum_wake_time_histogram = c.cum_wake_time_histogram
+FROM (SELECT user_id, sleep_date,
+             sleep_histogram_sum(sleep_histogram_of(total_time_in_bed_minutes, 15)) OVER w
+                 AS cum_time_in_bed_histogram,
+             sleep_histogram_sum(sleep_histogram_of(bed_time_of_day_seconds, 900)) OVER w
+                 AS cum_bed_time_histogram,
+             sleep_histogram_sum(sleep_histogram_of(wake_time_of_day_seconds, 900)) OVER w
+                 AS cum_wake_time_histogram
+      FROM sleep_logs
+      WINDOW w AS (PARTITION BY user_id ORDER BY sleep_date)) c
+WHERE r.user_id = c.user_id AND r.sleep_date = c.sleep_date;
@@ -0,0 +1,15 @@
+-- Per-user version of the sleep log data, bumped in the transaction of every write. Conditional GETs compare it
+-- against the client's ETag or Last-Modified with one primary key lookup, before any sleep log or rollup is read.
+CREATE TABLE IF NOT EXISTS sleep_log_user_versions (
+    user_id     UUID                        NOT NULL,
+    version     BIGINT                      NOT NULL,
+    modified_at TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+    CONSTRAINT sleep_log_user_versions_pkey PRIMARY KEY (user_id) INCLUDE (version, modified_at)
+);
+
+-- Sleep logs are never updated or deleted, so the number of a user's logs is a valid starting version
+INSERT INTO sleep_log_user_versions (user_id, version, modified_at)
+SELECT user_id, COUNT(*), MAX(created_at)
+FROM sleep_logs
+GROUP BY user_id
+ON CONFLICT (user_id) DO NOTHING;
@@ -0,0 +1,90 @@
+-- Declarative monthly range partitions of sleep_logs on sleep_date. Date range reads touch only the partitions of
+-- their months, and each month is vacuumed, analyzed and eventually detached on its own. Partitions are named
+-- sleep_logs_yYYYYmMM; rows of months without a partition land in sleep_logs_default until one is created.
+--
+-- The existing rows are copied once into the partitioned table while the migration holds its locks, so on a large
+-- table run it in a maintenance window.
+
+-- Creates the missing monthly partitions of the months from from_date to to_date, moving rows of those months out
+-- of the default partition first. Returns the number of partitions created. Safe to call concurrently.
+CREATE OR REPLACE FUNCTION create_sleep_log_partitions(from_date DATE, to_date DATE) RETURNS INTEGER
+    LANGUAGE plpgsql AS
+$$
+DECLARE
+    month_start DATE := CAST(date_trunc('month', from_date) AS DATE);
+    month_end   DATE;
+    partition   TEXT;
+    created     INTEGER := 0;
+BEGIN
+    PERFORM pg_advisory_xact_lock(hashtextextended('sleep_logs_partitions', 0));
+    WHILE month_start <= to_date LOOP
+        month_end := CAST(month_start + INTERVAL '1 month' AS DATE);
+        partition := 'sleep_logs_' || to_char(month_start, '"y"YYYY"m"MM');
+        IF to_regclass(partition) IS NULL THEN
+            EXECUTE format('CREATE TABLE %I (LIKE sleep_logs INCLUDING DEFAULTS INCLUDING CONSTRAINTS)', partition);
+            -- Named like the parent's covering index so that plans show which month they read
+            EXECUTE format('CREATE UNIQUE INDEX %I ON %I (user_id, sleep_date DESC) '
+                               || 'INCLUDE (bed_time, wake_time, total_time_in_bed_minutes, feeling)',
+                           partition || '_user_date_covering', partition);
+            -- Attaching fails while the default partition holds rows of the month
+            EXECUTE format('WITH moved AS (DELETE FROM sleep_logs_default '
+                               || 'WHERE sleep_date >= %L AND sleep_date < %L RETURNING *) '
+                               || 'INSERT INTO %I SELECT * FROM moved',
+                           month_start, month_end, partition);
+            EXECUTE format('ALTER TABLE sleep_logs ATTACH PARTITION %I FOR VALUES FROM (%L) TO (%L)',
+                           partition, month_start, month_end);
+            created := created + 1;
+        END IF;
+        month_start := month_end;
+    END LOOP;
+    RETURN created;
+END
+$$;
+
+ALTER TABLE sleep_logs RENAME TO sleep_logs_unpartitioned;
+ALTER TABLE sleep_logs_unpartitioned RENAME CONSTRAINT sleep_logs_pkey TO sleep_logs_unpartitioned_pkey;
+ALTER INDEX ux_sleeplogs_user_date_covering RENAME TO ux_sleeplogs_unpartitioned_user_date_covering;
+
+-- Unique constraints of a partitioned table must contain the partition key. The covering index on
+-- (user_id, sleep_date) already does, so it keeps enforcing one sleep log per user and date across all partitions
+-- and still backs ON CONFLICT (user_id, sleep_date). Ids stay unique through sleep_logs_seq.
+CREATE TABLE sleep_logs (
+    id                        BIGINT                      NOT NULL,
+    user_id                   UUID                        NOT NULL,
+    sleep_date                DATE                        NOT NULL,
+    bed_time                  TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+    wake_time                 TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+    total_time_in_bed_minutes INTEGER                     NOT NULL,
+    feeling                   VARCHAR(10)                 NOT NULL,
+    created_at                TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+    bed_time_of_day_seconds   INTEGER,
+    wake_time_of_day_seconds  INTEGER,
+    CONSTRAINT sleep_logs_pkey PRIMARY KEY (id, sleep_date),
+    CONSTRAINT ck_sleeplogs_bed_time_of_day CHECK (bed_time_of_day_seconds BETWEEN 0 AND 86399),
+    CONSTRAINT ck_sleeplogs_wake_time_of_day CHECK (wake_time_of_day_seconds BETWEEN 0 AND 86399)
+) PARTITION BY RANGE (sleep_date);
+
+CREATE UNIQUE INDEX ux_sleeplogs_user_date_covering
+    ON sleep_logs (user_id, sleep_date DESC)
+    INCLUDE (bed_time, wake_time, total_time_in_bed_minutes, feeling);
+
+CREATE TABLE sleep_logs_default (LIKE sleep_logs INCLUDING DEFAULTS INCLUDING CONSTRAINTS);
+CREATE UNIQUE INDEX sleep_logs_default_user_date_covering
+    ON sleep_logs_default (user_id, sleep_date DESC)
+    INCLUDE (bed_time, wake_time, total_time_in_bed_minutes, feeling);
+ALTER TABLE sleep_logs ATTACH PARTITION sleep_logs_default DEFAULT;
+
+-- A partition for every month that has sleep logs, and for the current month and the next three
+SELECT create_sleep_log_partitions(month, month)
+FROM (SELECT DISTINCT CAST(date_trunc('month', sleep_date) AS DATE) AS month FROM sleep_logs_unpartitioned) AS m;
+SELECT create_sleep_log_partitions(CURRENT_DATE, CAST(CURRENT_DATE + INTERVAL '3 months' AS DATE));
+
+INSERT INTO sleep_logs (id, user_id, sleep_date, bed_time, wake_time, total_time_in_bed_minutes, feeling,
+                        created_at, bed_time_of_day_seconds, wake_time_of_day_seconds)
+SELECT id, user_id, sleep_date, bed_time, wake_time, total_time_in_bed_minutes, feeling,
+       created_at, bed_time_of_day_seconds, wake_time_of_day_seconds
+FROM sleep_logs_unpartitioned;
+
+DROP TABLE sleep_logs_unpartitioned;
+
+ANALYZE sleep_logs;
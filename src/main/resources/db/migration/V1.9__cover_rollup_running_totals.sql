@@ -0,0 +1,16 @@
+-- The rollup primary key, defined once now that every rollup column exists. Statistics read the running totals of
+-- two boundary rows per range; the key INCLUDEs the seven running sums, so those lookups are index-only scans.
+-- The running histograms (three INTEGER[96], about 1.2 KB per row) stay out of the key: every rollup write would
+-- copy them into a new index entry. They are read from the heap by separate lookups of the same two rows.
+--
+-- Advancing the running sums changes included columns, so rollup updates write a new index entry of key and seven
+-- BIGINTs and are not heap-only tuple (HOT) updates.
+ALTER TABLE sleep_log_daily_rollups
+    DROP CONSTRAINT sleep_log_daily_rollups_pkey,
+    ADD CONSTRAINT sleep_log_daily_rollups_pkey PRIMARY KEY (user_id, sleep_date)
+        INCLUDE (cum_log_count, cum_total_time_in_bed_minutes, cum_bed_time_seconds, cum_wake_time_seconds,
+                 cum_bad_count, cum_ok_count, cum_good_count);
+
+-- Room on every page for the new versions of its rows, so that an update can keep its row on the same page.
+-- Applies to pages written from now on; existing pages get it when the table is rewritten.
+ALTER TABLE sleep_log_daily_rollups SET (fillfactor = 70);
@@ -0,0 +1,93 @@
+package com.noom.interview.fullstack.sleep.controller;
+
+import com.noom.interview.fullstack.sleep.domain.dto.*;
+import com.noom.interview.fullstack.sleep.service.ReactiveSleepLogService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.*;
+import io.swagger.v3.oas.annotations.responses.*;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.*;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+import java.util.UUID;
+
+/**
+ * WebFlux handlers of the reactive profile for creating sleep logs and reading the latest sleep log and the
+ * statistics of the last 30 days. Requests and responses are those of {@link SleepLogController}, without its
+ * conditional requests, CBOR and gzip representations and consistency tokens.
+ */
+@RestController
+@RequestMapping("/api/sleep-logs")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@RequiredArgsConstructor
+@Tag(name = "Sleep Logs", description = "API for managing sleep logs")
+public class ReactiveSleepLogController {
+
+    private final ReactiveSleepLogService reactiveSleepLogService;
+
+    /**
+     * Creates a new sleep log.
+     *
+     * @param request the sleep log request
+     * @param userId the ID of the user (from header)
+     * @return the created sleep log response with status 201 (Created)
+     */
+    @PostMapping
+    @Operation(summary = "Create a new sleep log", description = "Creates a new sleep log for the specified user")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "201", description = "Sleep log created",
+                    content = @Content(schema = @Schema(implementation = SleepLogResponse.class))),
+            @ApiResponse(responseCode = "400", description = "Invalid request"),
+            @ApiResponse(responseCode = "409", description = "Sleep log already exists for the given user and date")
+    })
+    @ResponseStatus(HttpStatus.CREATED)
+    public Mono<SleepLogResponse> createSleepLog(
+            @Valid @RequestBody SleepLogRequest request,
+            @RequestHeader("X-User-ID") UUID userId) {
+
+        request.setUserId(userId);
+
+        return reactiveSleepLogService.createSleepLog(request);
+    }
+
+    /**
+     * Gets the latest sleep log for a user.
+     *
+     * @param userId the ID of the user (from header)
+     * @return the latest sleep log with status 200 (OK), or 404 (Not Found) if none exists
+     */
+    @GetMapping("/latest")
+    @Operation(summary = "Get latest sleep log", description = "Gets the most recent sleep log for the specified user")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Latest sleep log found",
+                    content = @Content(schema = @Schema(implementation = SleepLogResponse.class))),
+            @ApiResponse(responseCode = "404", description = "No sleep logs found for the user")
+    })
+    public Mono<SleepLogResponse> getLatestSleepLog(@RequestHeader("X-User-ID") UUID userId) {
+        return reactiveSleepLogService.getLatestSleepLog(userId)
+                .switchIfEmpty(Mono.error(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,
+                        String.format("No sleep logs found for user %s", userId))));
+    }
+
+    /**
+     * Gets sleep statistics for a user over the last 30 days.
+     *
+     * @param userId the ID of the user (from header)
+     * @return the sleep statistics with status 200 (OK)
+     */
+    @GetMapping("/statistics")
+    @Operation(summary = "Get sleep statistics",
+            description = "Gets sleep statistics for the specified user over the last 30 days")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Sleep statistics calculated",
+                    content = @Content(schema = @Schema(implementation = SleepStatisticsResponse.class)))
+    })
+    public Mono<SleepStatisticsResponse> getSleepStatistics(@RequestHeader("X-User-ID") UUID userId) {
+        return reactiveSleepLogService.getSleepStatistics(userId);
+    }
+}
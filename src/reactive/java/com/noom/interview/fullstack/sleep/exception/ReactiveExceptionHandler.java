@@ -0,0 +1,121 @@
+package com.noom.interview.fullstack.sleep.exception;
+
+
+import com.noom.interview.fullstack.sleep.domain.dto.ErrorResponse;
+import io.r2dbc.spi.R2dbcTimeoutException;
+import org.slf4j.*;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.*;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.bind.support.WebExchangeBindException;
+import org.springframework.web.server.*;
+
+import java.time.OffsetDateTime;
+import java.util.stream.Collectors;
+
+/**
+ * Exception handler of the reactive profile. Converts exceptions into the same ErrorResponse objects and statuses
+ * as {@link GlobalExceptionHandler} does for the servlet stack.
+ */
+@ControllerAdvice
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveExceptionHandler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReactiveExceptionHandler.class);
+
+    /**
+     * Handles validation exceptions (e.g., from @Valid annotations).
+     * Returns HTTP 400 Bad Request.
+     */
+    @ExceptionHandler(WebExchangeBindException.class)
+    public ResponseEntity<ErrorResponse> handleValidationExceptions(
+            WebExchangeBindException ex, ServerHttpRequest request) {
+        String message = ex.getBindingResult().getAllErrors().stream()
+                .map(error -> error.getDefaultMessage())
+                .collect(Collectors.joining(", "));
+        return errorResponse(HttpStatus.BAD_REQUEST, message, request);
+    }
+
+    /**
+     * Handles ServerWebInputException, e.g. a missing header or a body that cannot be read.
+     * Returns HTTP 400 Bad Request.
+     */
+    @ExceptionHandler(ServerWebInputException.class)
+    public ResponseEntity<ErrorResponse> handleServerWebInputException(
+            ServerWebInputException ex, ServerHttpRequest request) {
+        return errorResponse(HttpStatus.BAD_REQUEST, ex.getReason(), request);
+    }
+
+    /**
+     * Handles IllegalArgumentException (often used for bad parameters).
+     * Returns HTTP 400 Bad Request.
+     */
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<ErrorResponse> handleIllegalArgumentException(
+            IllegalArgumentException ex, ServerHttpRequest request) {
+        return errorResponse(HttpStatus.BAD_REQUEST, ex.getMessage(), request);
+    }
+
+    /**
+     * Handles IllegalStateException (often indicates an invalid state for the requested operation).
+     * Returns HTTP 409 Conflict.
+     */
+    @ExceptionHandler(IllegalStateException.class)
+    public ResponseEntity<ErrorResponse> handleIllegalStateException(
+            IllegalStateException ex, ServerHttpRequest request) {
+        return errorResponse(HttpStatus.CONFLICT, ex.getMessage(), request);
+    }
+
+    /**
+     * Handles running out of database connections, i.e. no pooled connection freed up within
+     * {@code sleep.r2dbc.max-acquire-time}. Returns HTTP 503 Service Unavailable with a Retry-After header.
+     */
+    @ExceptionHandler(R2dbcTimeoutException.class)
+    public ResponseEntity<ErrorResponse> handleConnectionUnavailableException(
+            R2dbcTimeoutException ex, ServerHttpRequest request) {
+        LOGGER.warn("No database connection available for {}: {}", request.getPath(), ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(errorBody(HttpStatus.SERVICE_UNAVAILABLE,
+                        "The service is overloaded. Please try again later.", request));
+    }
+
+    /**
+     * Handles ResponseStatusException, using the status and reason from the exception.
+     */
+    @ExceptionHandler(ResponseStatusException.class)
+    public ResponseEntity<ErrorResponse> handleResponseStatusException(
+            ResponseStatusException ex, ServerHttpRequest request) {
+        HttpStatus status = HttpStatus.valueOf(ex.getStatusCode().value());
+        if (status.is5xxServerError()) {
+            LOGGER.error("ResponseStatusException occurred: Status={}, Reason='{}'", status, ex.getReason(), ex);
+        }
+        return errorResponse(status, ex.getReason(), request);
+    }
+
+    /**
+     * Handles all other uncaught exceptions.
+     * Returns HTTP 500 Internal Server Error.
+     */
+    @ExceptionHandler(Exception.class)
+    public ResponseEntity<ErrorResponse> handleException(Exception ex, ServerHttpRequest request) {
+        LOGGER.error("An unexpected error occurred processing request {}", request.getPath(), ex);
+        return errorResponse(HttpStatus.INTERNAL_SERVER_ERROR,
+                "An unexpected internal error occurred. Please try again later.", request);
+    }
+
+    private static ResponseEntity<ErrorResponse> errorResponse(HttpStatus status, String message,
+                                                               ServerHttpRequest request) {
+        return new ResponseEntity<>(errorBody(status, message, request), status);
+    }
+
+    private static ErrorResponse errorBody(HttpStatus status, String message, ServerHttpRequest request) {
+        return new ErrorResponse(
+                OffsetDateTime.now(),
+                status.value(),
+                status.getReasonPhrase(),
+                message,
+                request.getPath().value());
+    }
+}
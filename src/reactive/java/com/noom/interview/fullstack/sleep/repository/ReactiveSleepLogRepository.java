@@ -0,0 +1,226 @@
+package com.noom.interview.fullstack.sleep.repository;
+
+import com.noom.interview.fullstack.sleep.domain.dto.*;
+import com.noom.interview.fullstack.sleep.domain.entity.*;
+import com.noom.interview.fullstack.sleep.service.impl.SleepHistograms;
+import io.r2dbc.pool.*;
+import io.r2dbc.spi.*;
+import jakarta.annotation.PreDestroy;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.*;
+
+import java.time.*;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Non-blocking counterpart of {@link SleepLogRepository} for the reactive profile: creates sleep logs, finds the
+ * latest one and sums the rollups of a date range over R2DBC. A create writes the sleep log, its rollup and the
+ * user's version in one transaction with the statements and parameters of {@link SleepLogStatements}, which the
+ * servlet stack runs too, so both stacks write the same rows and can serve the same database.
+ * <p>
+ * Connects to a single database, {@code sleep.r2dbc.url}, with the credentials of {@code spring.datasource}; it
+ * cannot be combined with shards. The pool is not a connection factory bean, since the JDBC data source
+ * would back off from one.
+ */
+@Repository
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveSleepLogRepository {
+
+    private static final String LOCK_USER = SleepLogStatements.numbered(SleepLogStatements.LOCK_USER);
+
+    private static final String INSERT_IF_ABSENT = SleepLogStatements.numbered(SleepLogStatements.INSERT_IF_ABSENT);
+
+    private static final String UPSERT_ROLLUP = SleepLogStatements.numbered(SleepLogStatements.UPSERT_ROLLUP);
+
+    private static final String ADVANCE_RUNNING_TOTALS =
+            SleepLogStatements.numbered(SleepLogStatements.ADVANCE_RUNNING_TOTALS);
+
+    private static final String INCREMENT_VERSION = SleepLogStatements.numbered(SleepLogStatements.INCREMENT_VERSION);
+
+    private static final String FIND_LATEST = "SELECT sleep_date, bed_time, wake_time, total_time_in_bed_minutes, "
+            + "feeling FROM sleep_logs WHERE user_id = $1 ORDER BY sleep_date DESC LIMIT 1";
+
+    private static final String AGGREGATE_RANGE = SleepLogStatements.numbered(SleepLogStatements.AGGREGATE_RANGE);
+
+    private final ConnectionPool connectionPool;
+
+    /**
+     * Creates the repository and its connection pool.
+     *
+     * @param properties the {@code spring.datasource} properties, for the credentials
+     * @param url the R2DBC URL of the database
+     * @param poolSize the number of pooled connections
+     * @param maxAcquireTime how long a statement waits for a pooled connection before it fails
+     * @param shardUrls the JDBC URLs of shards beyond shard 0, which cannot be combined with this repository
+     * @throws IllegalStateException if shards are configured
+     */
+    public ReactiveSleepLogRepository(DataSourceProperties properties,
+                                      @Value("${sleep.r2dbc.url}") String url,
+                                      @Value("${sleep.r2dbc.pool-size:10}") int poolSize,
+                                      @Value("${sleep.r2dbc.max-acquire-time:2s}") Duration maxAcquireTime,
+                                      @Value("${sleep.datasource.shard-urls:}") String shardUrls) {
+        if (!shardUrls.isBlank()) {
+            throw new IllegalStateException("The reactive profile cannot be combined with shards; "
+                    + "unset sleep.datasource.shard-urls");
+        }
+
+        ConnectionFactoryOptions.Builder options = ConnectionFactoryOptions.parse(url).mutate();
+        if (properties.determineUsername() != null) {
+            options.option(ConnectionFactoryOptions.USER, properties.determineUsername());
+        }
+        if (properties.determinePassword() != null) {
+            options.option(ConnectionFactoryOptions.PASSWORD, properties.determinePassword());
+        }
+        ConnectionFactory connectionFactory = ConnectionFactories.get(options.build());
+        connectionPool = new ConnectionPool(ConnectionPoolConfiguration.builder(connectionFactory)
+                .name("sleep-r2dbc")
+                .initialSize(poolSize)
+                .maxSize(poolSize)
+                .maxAcquireTime(maxAcquireTime)
+                .build());
+    }
+
+    /**
+     * Inserts a sleep log unless the user already has one for its date. An inserted sleep log is added to the
+     * user's rollups and increments the user's version in the same transaction; writes of the same user are
+     * serialized with the advisory lock the servlet stack takes.
+     *
+     * @param sleepLog the sleep log, with its derived values and creation time set
+     * @return whether the sleep log was inserted
+     */
+    public Mono<Boolean> insertIfAbsent(SleepLog sleepLog) {
+        return inTransaction(connection -> execute(bind(connection.createStatement(LOCK_USER),
+                SleepLogStatements.lockUserParameters(sleepLog.getUserId())))
+                .then(execute(bind(connection.createStatement(INSERT_IF_ABSENT),
+                        SleepLogStatements.insertIfAbsentParameters(sleepLog))))
+                .flatMap(inserted -> inserted == 0
+                        ? Mono.just(false)
+                        : execute(bind(connection.createStatement(UPSERT_ROLLUP),
+                                SleepLogStatements.upsertRollupParameters(sleepLog)))
+                        .then(execute(bind(connection.createStatement(ADVANCE_RUNNING_TOTALS),
+                                SleepLogStatements.advanceRunningTotalsParameters(List.of(sleepLog)))))
+                        .then(execute(bind(connection.createStatement(INCREMENT_VERSION),
+                                SleepLogStatements.incrementVersionParameters(sleepLog.getUserId()))))
+                        .thenReturn(true)));
+    }
+
+    /**
+     * Finds the most recent sleep log of a user as a response.
+     *
+     * @param userId the ID of the user
+     * @return the most recent sleep log response, or empty if the user has none in the database
+     */
+    public Mono<SleepLogResponse> findLatestResponseByUserId(UUID userId) {
+        return Mono.usingWhen(connectionPool.create(),
+                connection -> Mono.from(connection.createStatement(FIND_LATEST).bind(0, userId).execute())
+                        .flatMap(result -> Mono.from(result.map((row, metadata) -> new SleepLogResponse(
+                                row.get(0, LocalDate.class),
+                                row.get(1, Instant.class),
+                                row.get(2, Instant.class),
+                                row.get(3, Integer.class),
+                                Feeling.valueOf(row.get(4, String.class)))))),
+                Connection::close);
+    }
+
+    /**
+     * Sums the rollups of a user within a date range with two primary key lookups, like
+     * {@link com.noom.interview.fullstack.sleep.service.SleepLogRollupService#aggregate}.
+     *
+     * @param userId the ID of the user
+     * @param from the start date (inclusive)
+     * @param to the end date (inclusive)
+     * @return the sums and histograms of the range
+     */
+    public Mono<SleepStatisticsAggregate> aggregate(UUID userId, LocalDate from, LocalDate to) {
+        DateRange dateRange = new DateRange(from, to);
+        return Mono.usingWhen(connectionPool.create(),
+                connection -> Mono.from(bind(connection.createStatement(AGGREGATE_RANGE),
+                                SleepLogStatements.aggregateRangeParameters(userId, from, to)).execute())
+                        .flatMap(result -> Mono.from(result.map((row, metadata) -> SleepStatisticsAggregate.builder()
+                                .userId(userId)
+                                .dateRange(dateRange)
+                                .logCount(row.get(0, Long.class))
+                                .totalTimeInBedMinutes(row.get(1, Long.class))
+                                .bedTimeSeconds(row.get(2, Long.class))
+                                .wakeTimeSeconds(row.get(3, Long.class))
+                                .badCount(row.get(4, Long.class))
+                                .okCount(row.get(5, Long.class))
+                                .goodCount(row.get(6, Long.class))
+                                .timeInBedHistogram(histogramDifference(row, 7))
+                                .bedTimeHistogram(histogramDifference(row, 9))
+                                .wakeTimeHistogram(histogramDifference(row, 11))
+                                .build()))),
+                Connection::close);
+    }
+
+    /**
+     * Closes the pooled connections.
+     */
+    @PreDestroy
+    public void close() {
+        connectionPool.dispose();
+    }
+
+    /**
+     * Runs work in a transaction on a pooled connection: committed when the work completes, rolled back when it
+     * fails or is cancelled. The connection is returned to the pool either way.
+     *
+     * @param work the statements of the transaction
+     * @param <T> the type of the result
+     * @return the result of the work
+     */
+    private <T> Mono<T> inTransaction(Function<Connection, Mono<T>> work) {
+        return Mono.usingWhen(connectionPool.create(),
+                connection -> Mono.from(connection.beginTransaction()).then(work.apply(connection)),
+                connection -> release(connection, connection.commitTransaction()),
+                (connection, error) -> release(connection, connection.rollbackTransaction()),
+                connection -> release(connection, connection.rollbackTransaction()));
+    }
+
+    /**
+     * Ends the transaction of a connection and returns the connection to the pool, even if ending it fails.
+     */
+    private static Mono<Void> release(Connection connection, Publisher<Void> end) {
+        return Mono.from(end)
+                .onErrorResume(error -> Mono.from(connection.close()).then(Mono.error(error)))
+                .then(Mono.from(connection.close()));
+    }
+
+    /**
+     * Executes a statement and counts the rows it updated; a query is consumed without reading its rows.
+     */
+    private static Mono<Long> execute(Statement statement) {
+        return Flux.from(statement.execute())
+                .flatMap(Result::getRowsUpdated)
+                .reduce(0L, Long::sum);
+    }
+
+    /**
+     * Binds parameters laid out by {@link SleepLogStatements} to a statement in placeholder order.
+     */
+    private static Statement bind(Statement statement, Object... parameters) {
+        for (int i = 0; i < parameters.length; i++) {
+            statement.bind(i, parameters[i]);
+        }
+        return statement;
+    }
+
+    /**
+     * Reads two running histograms, of the end of a range and of the day before it, and returns their difference.
+     * A missing running histogram counts as empty.
+     */
+    private static int[] histogramDifference(Row row, int upperColumn) {
+        int[] histogram = new int[SleepHistograms.BUCKETS];
+        Integer[] upper = row.get(upperColumn, Integer[].class);
+        Integer[] lower = row.get(upperColumn + 1, Integer[].class);
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = (upper != null ? upper[i] : 0) - (lower != null ? lower[i] : 0);
+        }
+        return histogram;
+    }
+}
@@ -0,0 +1,40 @@
+package com.noom.interview.fullstack.sleep.service;
+
+import com.noom.interview.fullstack.sleep.domain.dto.*;
+import reactor.core.publisher.Mono;
+
+import java.util.UUID;
+
+/**
+ * Non-blocking counterpart of the create, latest and statistics operations of {@link SleepLogService}, for the
+ * reactive profile. Requests are validated and statistics computed with the same rules; statistics are read from
+ * the rollups on every request instead of a cache.
+ */
+public interface ReactiveSleepLogService {
+
+    /**
+     * Creates a new sleep log.
+     *
+     * @param request the sleep log request
+     * @return the created sleep log response; fails with IllegalArgumentException if the request is invalid or its
+     *         month is archived, and with IllegalStateException if a sleep log already exists for the given userId
+     *         and sleepDate
+     */
+    Mono<SleepLogResponse> createSleepLog(SleepLogRequest request);
+
+    /**
+     * Gets the latest sleep log for a user, from the archive if the user has none in the database.
+     *
+     * @param userId the ID of the user
+     * @return the latest sleep log, or empty if none exists
+     */
+    Mono<SleepLogResponse> getLatestSleepLog(UUID userId);
+
+    /**
+     * Gets sleep statistics for a user over the last 30 days.
+     *
+     * @param userId the ID of the user
+     * @return the sleep statistics response
+     */
+    Mono<SleepStatisticsResponse> getSleepStatistics(UUID userId);
+}
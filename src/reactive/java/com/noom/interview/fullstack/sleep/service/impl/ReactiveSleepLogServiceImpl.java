@@ -0,0 +1,83 @@
+package com.noom.interview.fullstack.sleep.service.impl;
+
+import com.noom.interview.fullstack.sleep.archive.SleepLogArchive;
+import com.noom.interview.fullstack.sleep.domain.dto.*;
+import com.noom.interview.fullstack.sleep.domain.entity.SleepLog;
+import com.noom.interview.fullstack.sleep.mapper.SleepLogMapper;
+import com.noom.interview.fullstack.sleep.repository.ReactiveSleepLogRepository;
+import com.noom.interview.fullstack.sleep.service.ReactiveSleepLogService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Implementation of the ReactiveSleepLogService interface. Validation, derived values and the statistics are
+ * those of {@link SleepLogServiceImpl}; only the database access differs. Work that may touch the archive runs
+ * on the bounded elastic scheduler, since the archive rescans its directory and reads its segments from files.
+ */
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@RequiredArgsConstructor
+public class ReactiveSleepLogServiceImpl implements ReactiveSleepLogService {
+
+    private final ReactiveSleepLogRepository reactiveSleepLogRepository;
+    private final SleepLogMapper sleepLogMapper;
+    private final SleepLogArchive sleepLogArchive;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Mono<SleepLogResponse> createSleepLog(SleepLogRequest request) {
+        Mono<SleepLog> sleepLog = Mono.fromCallable(() -> {
+            SleepLogRules.validateRequest(request);
+            sleepLogArchive.checkNotArchived(request.getSleepDate());
+
+            SleepLog entity = sleepLogMapper.toEntity(request);
+            SleepLogRules.applyDerivedValues(entity);
+            entity.setCreatedAt(Instant.now());
+            return entity;
+        }).subscribeOn(Schedulers.boundedElastic());
+
+        return sleepLog.flatMap(entity -> reactiveSleepLogRepository.insertIfAbsent(entity).map(inserted -> {
+            if (!inserted) {
+                throw new IllegalStateException(String.format("Sleep log already exists for user %s on date %s",
+                        request.getUserId(), request.getSleepDate()));
+            }
+            return sleepLogMapper.toResponse(entity);
+        }));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Mono<SleepLogResponse> getLatestSleepLog(UUID userId) {
+        return reactiveSleepLogRepository.findLatestResponseByUserId(userId)
+                .switchIfEmpty(Mono.fromCallable(() -> sleepLogArchive.findLatestByUserId(userId))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .flatMap(Mono::justOrEmpty)
+                        .map(sleepLogMapper::toResponse));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Mono<SleepStatisticsResponse> getSleepStatistics(UUID userId) {
+        return Mono.defer(() -> {
+            DateRange dateRange = SleepLogServiceImpl.calculateDateRange();
+            return reactiveSleepLogRepository.aggregate(userId, dateRange.getFrom(), dateRange.getTo())
+                    .map(aggregate -> {
+                        SleepStatisticsAccumulator accumulator = new SleepStatisticsAccumulator();
+                        accumulator.add(aggregate);
+                        return accumulator.toResponse(dateRange);
+                    });
+        });
+    }
+}
@@ -0,0 +1,224 @@
+package com.noom.interview.fullstack.sleep.integration;
+
+import com.noom.interview.fullstack.sleep.domain.dto.*;
+import com.noom.interview.fullstack.sleep.domain.entity.Feeling;
+import com.noom.interview.fullstack.sleep.service.*;
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.*;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.*;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.utility.DockerImageName;
+
+import java.time.*;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the WebFlux handlers and R2DBC repository of the reactive profile against PostgreSQL, including that the
+ * rollups they write are those the servlet stack would have written.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "spring.main.web-application-type=reactive")
+@ActiveProfiles({"integration", "reactive"})
+@Testcontainers
+class ReactiveSleepLogIntegrationTest {
+
+    private static final DockerImageName POSTGRES_IMAGE = DockerImageName.parse("postgres:13-alpine");
+
+    private static final String BASE_URL = "/api/sleep-logs";
+
+    @Container
+    private static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>(POSTGRES_IMAGE)
+            .withDatabaseName("postgres")
+            .withUsername("postgres")
+            .withPassword("postgres");
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private SleepLogRollupService sleepLogRollupService;
+
+    @Autowired
+    private SleepLogService sleepLogService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @DynamicPropertySource
+    static void datasourceProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", POSTGRES::getJdbcUrl);
+        registry.add("spring.datasource.username", POSTGRES::getUsername);
+        registry.add("spring.datasource.password", POSTGRES::getPassword);
+        registry.add("sleep.r2dbc.url", () -> String.format("r2dbc:postgresql://%s:%d/%s", POSTGRES.getHost(),
+                POSTGRES.getMappedPort(PostgreSQLContainer.POSTGRESQL_PORT), POSTGRES.getDatabaseName()));
+    }
+
+    @Test
+    void createSleepLog_ValidRequest_Returns201AndIsReadBack() {
+        // Arrange
+        UUID userId = UUID.randomUUID();
+        LocalDate today = LocalDate.now();
+
+        // Act & Assert
+        create(userId, today, 480)
+                .expectStatus().isCreated()
+                .expectBody()
+                .jsonPath("$.sleepDate").isEqualTo(today.toString())
+                .jsonPath("$.totalTimeInBedMinutes").isEqualTo(480)
+                .jsonPath("$.feeling").isEqualTo("GOOD");
+
+        get(userId, "/latest")
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.sleepDate").isEqualTo(today.toString())
+                .jsonPath("$.totalTimeInBedMinutes").isEqualTo(480);
+
+        get(userId, "/statistics")
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.averageTotalTimeInBedMinutes").isEqualTo(480.0)
+                .jsonPath("$.feelingCounts.GOOD").isEqualTo(1)
+                .jsonPath("$.totalTimeInBedMinutesPercentiles.median").exists();
+    }
+
+    @Test
+    void createSleepLog_DuplicateDate_Returns409() {
+        // Arrange
+        UUID userId = UUID.randomUUID();
+        LocalDate today = LocalDate.now();
+        create(userId, today, 480).expectStatus().isCreated();
+
+        // Act & Assert
+        create(userId, today, 420)
+                .expectStatus().isEqualTo(HttpStatus.CONFLICT)
+                .expectBody()
+                .jsonPath("$.status").isEqualTo(409)
+                .jsonPath("$.path").isEqualTo(BASE_URL);
+    }
+
+    @Test
+    void createSleepLog_BeforeLaterSleepLog_KeepsRollupsOfServletStack() {
+        // Arrange: the earlier night arrives last, so the running totals of the later rollup are advanced
+        UUID userId = UUID.randomUUID();
+        LocalDate today = LocalDate.now();
+        create(userId, today, 480).expectStatus().isCreated();
+        create(userId, today.minusDays(1), 360).expectStatus().isCreated();
+
+        // Act
+        SleepStatisticsResponse written = statistics(userId);
+        sleepLogRollupService.rebuildAll();
+        SleepStatisticsResponse rebuilt = statistics(userId);
+
+        // Assert
+        assertThat(written.getAverageTotalTimeInBedMinutes()).isEqualTo(420.0);
+        assertThat(written).usingRecursiveComparison().isEqualTo(rebuilt);
+    }
+
+    @Test
+    void createSleepLog_SameNightsOutOfOrder_WritesRollupsOfJdbcWrites() {
+        // Arrange: nights arrive out of order, so new rows land before, between and after existing ones
+        UUID jdbcUserId = UUID.randomUUID();
+        UUID jdbcBatchUserId = UUID.randomUUID();
+        UUID reactiveUserId = UUID.randomUUID();
+        LocalDate today = LocalDate.now();
+        List<SleepLogRequest> nights = List.of(
+                night(today.minusDays(2), 480, Feeling.GOOD),
+                night(today.minusDays(5), 300, Feeling.BAD),
+                night(today, 420, Feeling.OK),
+                night(today.minusDays(3), 510, Feeling.GOOD),
+                night(today.minusDays(1), 360, Feeling.BAD),
+                night(today.minusDays(6), 600, Feeling.OK));
+
+        // Act
+        for (SleepLogRequest night : nights) {
+            night.setUserId(jdbcUserId);
+            sleepLogService.createSleepLog(night);
+        }
+        sleepLogService.createSleepLogs(jdbcBatchUserId, nights);
+        for (SleepLogRequest night : nights) {
+            create(reactiveUserId, night.getSleepDate(), night.getBedTime(), night.getWakeTime(), night.getFeeling())
+                    .expectStatus().isCreated();
+        }
+
+        // Assert
+        List<String> jdbcRollups = rollups(jdbcUserId);
+        assertThat(jdbcRollups).hasSize(nights.size());
+        assertThat(rollups(jdbcBatchUserId)).isEqualTo(jdbcRollups);
+        assertThat(rollups(reactiveUserId)).isEqualTo(jdbcRollups);
+    }
+
+    @Test
+    void getLatestSleepLog_NoSleepLogs_Returns404() {
+        get(UUID.randomUUID(), "/latest")
+                .expectStatus().isNotFound()
+                .expectBody()
+                .jsonPath("$.status").isEqualTo(404);
+    }
+
+    @Test
+    void getSleepStatistics_MissingUserIdHeader_Returns400() {
+        webTestClient.get().uri(BASE_URL + "/statistics")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody()
+                .jsonPath("$.status").isEqualTo(400);
+    }
+
+    private WebTestClient.ResponseSpec create(UUID userId, LocalDate date, int minutesInBed) {
+        SleepLogRequest night = night(date, minutesInBed, Feeling.GOOD);
+        return create(userId, date, night.getBedTime(), night.getWakeTime(), night.getFeeling());
+    }
+
+    private WebTestClient.ResponseSpec create(UUID userId, LocalDate date, Instant bedTime, Instant wakeTime,
+                                              Feeling feeling) {
+        Map<String, String> request = Map.of(
+                "sleepDate", date.toString(),
+                "bedTime", bedTime.toString(),
+                "wakeTime", wakeTime.toString(),
+                "feeling", feeling.name());
+        return webTestClient.post().uri(BASE_URL)
+                .header("X-User-ID", userId.toString())
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(request)
+                .exchange();
+    }
+
+    private WebTestClient.ResponseSpec get(UUID userId, String path) {
+        return webTestClient.get().uri(BASE_URL + path)
+                .header("X-User-ID", userId.toString())
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange();
+    }
+
+    private SleepStatisticsResponse statistics(UUID userId) {
+        return get(userId, "/statistics")
+                .expectStatus().isOk()
+                .expectBody(SleepStatisticsResponse.class)
+                .returnResult()
+                .getResponseBody();
+    }
+
+    private static SleepLogRequest night(LocalDate date, int minutesInBed, Feeling feeling) {
+        Instant wake = date.atTime(7, 0).atZone(ZoneId.systemDefault()).toInstant();
+        return SleepLogRequest.builder()
+                .sleepDate(date)
+                .bedTime(wake.minus(minutesInBed, ChronoUnit.MINUTES))
+                .wakeTime(wake)
+                .feeling(feeling)
+                .build();
+    }
+
+    private List<String> rollups(UUID userId) {
+        return jdbcTemplate.queryForList("SELECT CAST(to_jsonb(r) - 'user_id' AS text) "
+                + "FROM sleep_log_daily_rollups r WHERE user_id = ? ORDER BY sleep_date", String.class, userId);
+    }
+}
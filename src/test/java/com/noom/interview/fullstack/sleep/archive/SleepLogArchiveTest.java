@@ -0,0 +1,197 @@
+package com.noom.interview.fullstack.sleep.archive;
+
+import com.noom.interview.fullstack.sleep.domain.entity.*;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.time.*;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class SleepLogArchiveTest {
+
+    private static final LocalDate MAY = LocalDate.of(2023, 5, 1);
+    private static final LocalDate JUNE = LocalDate.of(2023, 6, 1);
+
+    @TempDir
+    private Path directory;
+
+    private SleepLogArchive archive;
+    private UUID userId;
+    private UUID otherUserId;
+
+    @BeforeEach
+    void setUp() {
+        archive = new SleepLogArchive(directory.toString(), Duration.ofMinutes(1));
+        userId = UUID.randomUUID();
+        otherUserId = UUID.randomUUID();
+    }
+
+    @Test
+    void read_WrittenSegment_ReturnsEverySleepLogOfUserUnchanged() throws IOException {
+        // Arrange
+        List<SleepLog> sleepLogs = month(userId, MAY);
+        Path file = write(0, MAY, sleepLogs, month(otherUserId, MAY));
+
+        // Act
+        List<SleepLog> read = SleepLogSegment.open(file).read(userId, null, null);
+
+        // Assert
+        assertThat(read).usingRecursiveFieldByFieldElementComparator().isEqualTo(sleepLogs);
+    }
+
+    @Test
+    void read_DateRange_ReturnsOnlySleepLogsInRange() throws IOException {
+        // Arrange
+        Path file = write(0, MAY, month(userId, MAY));
+
+        // Act
+        List<SleepLog> read = SleepLogSegment.open(file).read(userId, MAY.plusDays(9), MAY.plusDays(11));
+
+        // Assert
+        assertThat(read).extracting(SleepLog::getSleepDate)
+                .containsExactly(MAY.plusDays(9), MAY.plusDays(10), MAY.plusDays(11));
+        assertThat(SleepLogSegment.open(file).read(userId, JUNE, null)).isEmpty();
+        assertThat(SleepLogSegment.open(file).read(UUID.randomUUID(), null, null)).isEmpty();
+    }
+
+    @Test
+    void read_TruncatedColumn_ThrowsIllegalStateException() throws IOException {
+        // Arrange - the first column of the only row group claims half of its deflated bytes
+        Path file = write(0, MAY, month(userId, MAY));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer compressedLength = ByteBuffer.allocate(Integer.BYTES);
+            channel.read(compressedLength, Long.BYTES);
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, compressedLength.getInt(0) / 2), Long.BYTES);
+        }
+        SleepLogSegment segment = SleepLogSegment.open(file);
+
+        // Act & Assert
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> assertThatIllegalStateException()
+                .isThrownBy(() -> segment.read(userId, null, null))
+                .withMessageContaining("Truncated column"));
+    }
+
+    @Test
+    void write_SleepLogsNotGroupedByUser_ThrowsIllegalArgumentException() throws IOException {
+        // Arrange
+        try (SleepLogSegmentWriter writer = new SleepLogSegmentWriter(archive.segmentFile(0, MAY))) {
+            writer.write(sleepLog(userId, MAY));
+            writer.write(sleepLog(otherUserId, MAY));
+
+            // Act & Assert
+            assertThatIllegalArgumentException().isThrownBy(() -> writer.write(sleepLog(userId, MAY.plusDays(1))));
+            assertThatIllegalArgumentException().isThrownBy(() -> writer.write(sleepLog(otherUserId, MAY)));
+        }
+
+        // Assert - an unfinished segment leaves no file behind
+        try (var files = Files.list(directory)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    @Test
+    void findByUserIdAndSleepDateBefore_SeveralMonths_ReturnsNewestFirstAcrossMonths() throws IOException {
+        // Arrange
+        write(0, MAY, month(userId, MAY));
+        write(0, JUNE, month(userId, JUNE));
+
+        // Act
+        List<SleepLog> page = archive.findByUserIdAndSleepDateBefore(userId, JUNE.plusDays(2), 4);
+
+        // Assert
+        assertThat(page).extracting(SleepLog::getSleepDate)
+                .containsExactly(JUNE.plusDays(1), JUNE, MAY.plusDays(30), MAY.plusDays(29));
+        assertThat(archive.findLatestByUserId(userId)).get()
+                .extracting(SleepLog::getSleepDate).isEqualTo(JUNE.plusDays(29));
+        assertThat(archive.isArchived(MAY.plusDays(14))).isTrue();
+        assertThat(archive.isArchived(JUNE.plusMonths(1))).isFalse();
+    }
+
+    @Test
+    void streamByUserId_UserInSegmentsOfTwoShards_ReturnsEachDateOnceInDateOrder() throws IOException {
+        // Arrange - the user moved from shard 0 to shard 1 after May was archived on shard 0
+        write(0, MAY, month(userId, MAY));
+        write(1, MAY, month(userId, MAY), month(otherUserId, MAY));
+        write(1, JUNE, month(userId, JUNE));
+
+        // Act
+        List<LocalDate> dates = archive.streamByUserId(userId).map(SleepLog::getSleepDate).toList();
+
+        // Assert
+        assertThat(dates).hasSize(61).isSorted().doesNotHaveDuplicates();
+        assertThat(archive.findByUserIdAndSleepDateBetween(userId, MAY.plusDays(30), JUNE))
+                .extracting(SleepLog::getSleepDate).containsExactly(MAY.plusDays(30), JUNE);
+    }
+
+    @Test
+    void refresh_ReplacedSegment_ReadsReplacement() throws IOException {
+        // Arrange - a second attempt at archiving May replaces the segment of the first one
+        write(0, MAY, month(userId, MAY));
+        assertThat(archive.findByUserIdAndSleepDateBetween(userId, MAY, MAY.plusDays(30))).hasSize(31);
+
+        // Act
+        write(0, MAY, month(otherUserId, MAY));
+
+        // Assert
+        assertThat(archive.findByUserIdAndSleepDateBetween(userId, MAY, MAY.plusDays(30))).isEmpty();
+        assertThat(archive.findByUserIdAndSleepDateBetween(otherUserId, MAY, MAY.plusDays(30))).hasSize(31);
+    }
+
+    @Test
+    void checkNotArchived_ArchivedMonth_ThrowsIllegalArgumentException() throws IOException {
+        // Arrange
+        write(0, MAY, month(userId, MAY));
+
+        // Act & Assert
+        assertThatIllegalArgumentException().isThrownBy(() -> archive.checkNotArchived(MAY.plusDays(3)))
+                .withMessageContaining("2023-05");
+        assertThatNoException().isThrownBy(() -> archive.checkNotArchived(JUNE));
+    }
+
+    @SafeVarargs
+    private Path write(int shard, LocalDate month, List<SleepLog>... users) throws IOException {
+        Path file = archive.segmentFile(shard, month);
+        try (SleepLogSegmentWriter writer = new SleepLogSegmentWriter(file)) {
+            for (List<SleepLog> sleepLogs : users) {
+                for (SleepLog sleepLog : sleepLogs) {
+                    writer.write(sleepLog);
+                }
+            }
+            writer.finish();
+        }
+        archive.refresh();
+        return file;
+    }
+
+    private static List<SleepLog> month(UUID userId, LocalDate month) {
+        List<SleepLog> sleepLogs = new ArrayList<>();
+        for (LocalDate date = month; date.getMonth() == month.getMonth(); date = date.plusDays(1)) {
+            sleepLogs.add(sleepLog(userId, date));
+        }
+        return sleepLogs;
+    }
+
+    private static SleepLog sleepLog(UUID userId, LocalDate date) {
+        Instant wakeTime = date.atTime(6, 30).toInstant(ZoneOffset.UTC).plusNanos(123_000);
+        int minutes = 420 + date.getDayOfMonth();
+        return SleepLog.builder()
+                .id(1000L + date.toEpochDay())
+                .userId(userId)
+                .sleepDate(date)
+                .bedTime(wakeTime.minus(Duration.ofMinutes(minutes)))
+                .wakeTime(wakeTime)
+                .totalTimeInBedMinutes(minutes)
+                .bedTimeOfDaySeconds(date.getDayOfMonth() % 7 == 0 ? null : 84_600 - minutes)
+                .wakeTimeOfDaySeconds(23_400)
+                .feeling(Feeling.values()[date.getDayOfMonth() % Feeling.values().length])
+                .createdAt(wakeTime.plusSeconds(60))
+                .build();
+    }
+}
@@ -0,0 +1,95 @@
+package com.noom.interview.fullstack.sleep.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.junit.jupiter.api.*;
+import org.springframework.cache.Cache;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+class CoalescingCaffeineCacheTest {
+
+    private static final String KEY = "user";
+
+    private CoalescingCaffeineCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new CoalescingCaffeineCache("test", Caffeine.newBuilder().build(), true);
+    }
+
+    @Test
+    void get_ConcurrentMisses_LoadOnceAndShareValue() throws Exception {
+        // Arrange
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        Callable<String> loader = () -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            release.await();
+            return "statistics";
+        };
+
+        // Act
+        List<Future<String>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            results.add(executor.submit(() -> cache.get(KEY, loader)));
+            loading.await();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> cache.get(KEY, loader)));
+            }
+            release.countDown();
+        }
+
+        // Assert
+        assertThat(loads).hasValue(1);
+        for (Future<String> result : results) {
+            assertThat(result.get()).isEqualTo("statistics");
+        }
+        assertThat(cache.get(KEY).get()).isEqualTo("statistics");
+    }
+
+    @Test
+    void get_EvictedDuringLoad_ReturnsButDoesNotCacheValue() {
+        // Arrange
+        Callable<String> loader = () -> {
+            cache.evict(KEY);
+            return "stale statistics";
+        };
+
+        // Act
+        String value = cache.get(KEY, loader);
+
+        // Assert
+        assertThat(value).isEqualTo("stale statistics");
+        assertThat(cache.get(KEY)).isNull();
+    }
+
+    @Test
+    void get_CachedValue_DoesNotLoad() {
+        // Arrange
+        cache.put(KEY, "statistics");
+
+        // Act
+        String value = cache.get(KEY, () -> fail("Loaded a cached value"));
+
+        // Assert
+        assertThat(value).isEqualTo("statistics");
+    }
+
+    @Test
+    void get_LoaderThrows_ThrowsValueRetrievalExceptionAndLoadsAgainNextTime() {
+        // Arrange
+        IllegalStateException failure = new IllegalStateException("Database unavailable");
+
+        // Act & Assert
+        assertThatThrownBy(() -> cache.get(KEY, () -> {
+            throw failure;
+        })).isInstanceOf(Cache.ValueRetrievalException.class).hasCause(failure);
+        assertThat(cache.get(KEY, () -> "statistics")).isEqualTo("statistics");
+    }
+}
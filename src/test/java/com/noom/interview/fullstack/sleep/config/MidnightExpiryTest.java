@@ -0,0 +1,91 @@
+package com.noom.interview.fullstack.sleep.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MidnightExpiryTest {
+
+    private static final ZoneId ZONE = ZoneId.of("Europe/Berlin");
+
+    @Test
+    void expireAfterCreate_EveningTime_ExpiresAtNextMidnight() {
+        // Arrange
+        MidnightExpiry<String, LocalDate> expiry = expiryAt(LocalDateTime.of(2024, 3, 10, 22, 30));
+
+        // Act
+        long nanos = expiry.expireAfterCreate("key", LocalDate.of(2024, 3, 10), 0L);
+
+        // Assert
+        assertThat(nanos).isEqualTo(TimeUnit.MINUTES.toNanos(90));
+    }
+
+    @Test
+    void expireAfterUpdate_RefreshedValue_ExpiresAtNextMidnight() {
+        // Arrange
+        MidnightExpiry<String, LocalDate> expiry = expiryAt(LocalDateTime.of(2024, 3, 10, 23, 59, 59));
+
+        // Act
+        long nanos = expiry.expireAfterUpdate("key", LocalDate.of(2024, 3, 10), 0L, TimeUnit.HOURS.toNanos(5));
+
+        // Assert
+        assertThat(nanos).isEqualTo(TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    void expireAfterCreate_ValueOfDayBefore_ExpiresImmediately() {
+        // Arrange - loaded for the window ending on the 10th, cached a second after midnight
+        MidnightExpiry<String, LocalDate> expiry = expiryAt(LocalDateTime.of(2024, 3, 11, 0, 0, 1));
+
+        // Act
+        long nanos = expiry.expireAfterCreate("key", LocalDate.of(2024, 3, 10), 0L);
+
+        // Assert
+        assertThat(nanos).isZero();
+    }
+
+    @Test
+    void expireAfterCreate_ValueWithoutLastDay_ExpiresAtNextMidnight() {
+        // Arrange
+        MidnightExpiry<String, LocalDate> expiry = expiryAt(LocalDateTime.of(2024, 3, 10, 22, 30));
+
+        // Act
+        long nanos = expiry.expireAfterCreate("key", null, 0L);
+
+        // Assert
+        assertThat(nanos).isEqualTo(TimeUnit.MINUTES.toNanos(90));
+    }
+
+    @Test
+    void expireAfterRead_CachedValue_KeepsRemainingDuration() {
+        // Arrange
+        MidnightExpiry<String, LocalDate> expiry = expiryAt(LocalDateTime.of(2024, 3, 10, 12, 0));
+
+        // Act
+        long nanos = expiry.expireAfterRead("key", LocalDate.of(2024, 3, 10), 0L, 42L);
+
+        // Assert
+        assertThat(nanos).isEqualTo(42L);
+    }
+
+    @Test
+    void expireAfterCreate_DaylightSavingDay_UsesActualDurationUntilMidnight() {
+        // Arrange - clocks go forward on 2024-03-31 in Berlin, so the day is 23 hours long
+        MidnightExpiry<String, LocalDate> expiry = expiryAt(LocalDateTime.of(2024, 3, 31, 0, 0));
+
+        // Act
+        long nanos = expiry.expireAfterCreate("key", LocalDate.of(2024, 3, 31), 0L);
+
+        // Assert
+        assertThat(nanos).isEqualTo(TimeUnit.HOURS.toNanos(23));
+    }
+
+    private MidnightExpiry<String, LocalDate> expiryAt(LocalDateTime localDateTime) {
+        Clock clock = Clock.fixed(localDateTime.atZone(ZONE).toInstant(), ZONE);
+        return new MidnightExpiry<>(clock, Function.identity());
+    }
+}
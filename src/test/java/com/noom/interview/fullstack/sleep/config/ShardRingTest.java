@@ -0,0 +1,66 @@
+package com.noom.interview.fullstack.sleep.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.*;
+
+class ShardRingTest {
+
+    private static final int USERS = 100_000;
+    private static final int VIRTUAL_NODES = 256;
+
+    @Test
+    void shardOf_SameUser_IsStable() {
+        // Arrange
+        ShardRing ring = new ShardRing(4, VIRTUAL_NODES);
+        ShardRing sameRing = new ShardRing(4, VIRTUAL_NODES);
+        UUID userId = UUID.randomUUID();
+
+        // Act & Assert
+        assertThat(ring.shardOf(userId)).isEqualTo(sameRing.shardOf(userId)).isBetween(0, 3);
+    }
+
+    @Test
+    void shardOf_ManyUsers_SpreadsEvenly() {
+        // Arrange
+        ShardRing ring = new ShardRing(4, VIRTUAL_NODES);
+        int[] users = new int[4];
+
+        // Act
+        for (int i = 0; i < USERS; i++) {
+            users[ring.shardOf(UUID.randomUUID())]++;
+        }
+
+        // Assert
+        for (int count : users) {
+            assertThat(count).isCloseTo(USERS / 4, withinPercentage(15));
+        }
+    }
+
+    @Test
+    void shardOf_ShardAdded_MovesOnlyUsersToNewShard() {
+        // Arrange
+        ShardRing before = new ShardRing(3, VIRTUAL_NODES);
+        ShardRing after = new ShardRing(4, VIRTUAL_NODES);
+        int moved = 0;
+
+        // Act & Assert
+        for (int i = 0; i < USERS; i++) {
+            UUID userId = UUID.randomUUID();
+            int shard = after.shardOf(userId);
+            if (shard != before.shardOf(userId)) {
+                assertThat(shard).isEqualTo(3);
+                moved++;
+            }
+        }
+        assertThat(moved).isCloseTo(USERS / 4, withinPercentage(15));
+    }
+
+    @Test
+    void constructor_NoShard_ThrowsIllegalArgumentException() {
+        // Act & Assert
+        assertThatIllegalArgumentException().isThrownBy(() -> new ShardRing(0, VIRTUAL_NODES));
+    }
+}
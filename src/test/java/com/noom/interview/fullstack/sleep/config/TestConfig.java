@@ -1,6 +1,6 @@
 package com.noom.interview.fullstack.sleep.config;
 
-import com.noom.interview.fullstack.sleep.service.SleepLogService;
+import com.noom.interview.fullstack.sleep.service.*;
 import org.mockito.Mockito;
 import org.springframework.context.annotation.*;
 
@@ -22,4 +22,26 @@ public class TestConfig {
     public SleepLogService sleepLogService() {
         return Mockito.mock(SleepLogService.class);
     }
+
+    /**
+     * Provides a mock SleepLogImportService bean for testing.
+     *
+     * @return a mock SleepLogImportService
+     */
+    @Bean
+    @Primary
+    public SleepLogImportService sleepLogImportService() {
+        return Mockito.mock(SleepLogImportService.class);
+    }
+
+    /**
+     * Provides a mock SleepLogExportService bean for testing.
+     *
+     * @return a mock SleepLogExportService
+     */
+    @Bean
+    @Primary
+    public SleepLogExportService sleepLogExportService() {
+        return Mockito.mock(SleepLogExportService.class);
+    }
 }
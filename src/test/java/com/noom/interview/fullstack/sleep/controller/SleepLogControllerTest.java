@@ -10,12 +10,17 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.context.annotation.Import;
 import org.springframework.http.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.CannotCreateTransactionException;
 
+import java.io.ByteArrayOutputStream;
 import java.time.*;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
@@ -37,6 +42,8 @@ class SleepLogControllerTest {
     @Autowired
     private SleepLogService sleepLogService;
 
+    private final ObjectMapper cborMapper = Jackson2ObjectMapperBuilder.cbor().build();
+
     private UUID userId;
     private LocalDate sleepDate;
     private Instant bedTime;
@@ -48,6 +55,7 @@ class SleepLogControllerTest {
     void setUp() {
         // Reset the mock before each test
         reset(sleepLogService);
+        when(sleepLogService.getSleepLogVersion(any())).thenReturn(SleepLogVersion.none());
 
         userId = UUID.randomUUID();
         sleepDate = LocalDate.now();
@@ -136,6 +144,111 @@ class SleepLogControllerTest {
         verify(sleepLogService).createSleepLog(any(SleepLogRequest.class));
     }
 
+    @Test
+    void createSleepLog_NoConnectionAvailable_Returns503WithRetryAfter() throws Exception {
+        // Arrange
+        when(sleepLogService.createSleepLog(any(SleepLogRequest.class)))
+                .thenThrow(new CannotCreateTransactionException("Could not open JPA EntityManager for transaction"));
+
+        // Act & Assert
+        mockMvc.perform(post("/api/sleep-logs")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header("X-User-ID", userId.toString())
+                        .content(objectMapper.writeValueAsString(validRequest)))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"))
+                .andExpect(jsonPath("$.status").value(503));
+    }
+
+    @Test
+    void createSleepLog_CborRequestAcceptingCbor_Returns201WithCborBody() throws Exception {
+        // Arrange
+        when(sleepLogService.createSleepLog(any(SleepLogRequest.class))).thenReturn(expectedResponse);
+
+        // Act
+        byte[] body = mockMvc.perform(post("/api/sleep-logs")
+                        .contentType(MediaType.APPLICATION_CBOR)
+                        .accept(MediaType.APPLICATION_CBOR)
+                        .header("X-User-ID", userId.toString())
+                        .content(cborMapper.writeValueAsBytes(validRequest)))
+                .andExpect(status().isCreated())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        // Assert
+        SleepLogResponse response = cborMapper.readValue(body, SleepLogResponse.class);
+        Assertions.assertEquals(expectedResponse, response);
+        verify(sleepLogService).createSleepLog(argThat(request -> userId.equals(request.getUserId())
+                && sleepDate.equals(request.getSleepDate()) && bedTime.equals(request.getBedTime())));
+    }
+
+    @Test
+    void createSleepLog_CborServiceThrowsIllegalArgumentException_Returns400WithCborErrorResponse() throws Exception {
+        // Arrange
+        when(sleepLogService.createSleepLog(any(SleepLogRequest.class)))
+                .thenThrow(new IllegalArgumentException("Wake time must be after bed time"));
+
+        // Act
+        byte[] body = mockMvc.perform(post("/api/sleep-logs")
+                        .contentType(MediaType.APPLICATION_CBOR)
+                        .accept(MediaType.APPLICATION_CBOR)
+                        .header("X-User-ID", userId.toString())
+                        .content(cborMapper.writeValueAsBytes(validRequest)))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        // Assert
+        ErrorResponse error = cborMapper.readValue(body, ErrorResponse.class);
+        Assertions.assertEquals(400, error.getStatus());
+        Assertions.assertEquals("Wake time must be after bed time", error.getMessage());
+        Assertions.assertEquals("/api/sleep-logs", error.getPath());
+    }
+
+    @Test
+    void createSleepLogs_ValidBatch_Returns200WithResults() throws Exception {
+        // Arrange
+        SleepLogBatchResponse batchResponse = SleepLogBatchResponse.builder()
+                .created(1)
+                .duplicates(0)
+                .invalid(0)
+                .results(List.of(SleepLogBatchItemResult.builder()
+                        .index(0)
+                        .status(SleepLogBatchItemResult.Status.CREATED)
+                        .sleepLog(expectedResponse)
+                        .build()))
+                .build();
+        when(sleepLogService.createSleepLogs(eq(userId), anyList())).thenReturn(batchResponse);
+
+        // Act & Assert
+        mockMvc.perform(post("/api/sleep-logs/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header("X-User-ID", userId.toString())
+                        .content(objectMapper.writeValueAsString(List.of(validRequest))))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.created").value(1))
+                .andExpect(jsonPath("$.results[0].status").value("CREATED"))
+                .andExpect(jsonPath("$.results[0].sleepLog.totalTimeInBedMinutes").value(480));
+
+        verify(sleepLogService).createSleepLogs(eq(userId), anyList());
+    }
+
+    @Test
+    void createSleepLogs_ServiceThrowsIllegalArgumentException_Returns400BadRequest() throws Exception {
+        // Arrange
+        when(sleepLogService.createSleepLogs(eq(userId), anyList()))
+                .thenThrow(new IllegalArgumentException("Batch must contain at least one sleep log"));
+
+        // Act & Assert
+        mockMvc.perform(post("/api/sleep-logs/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header("X-User-ID", userId.toString())
+                        .content("[]"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("Batch must contain at least one sleep log"));
+    }
+
     @Test
     void getLatestSleepLog_SleepLogExists_Returns200Ok() throws Exception {
         // Arrange
@@ -181,6 +294,86 @@ class SleepLogControllerTest {
         verify(sleepLogService).getLatestSleepLog(userId);
     }
 
+    @Test
+    void getSleepLogs_CursorAndLimit_Returns200WithPage() throws Exception {
+        // Arrange
+        when(sleepLogService.getSleepLogs(userId, null, "MToyMDI0LTAzLTEw", 1))
+                .thenReturn(new SleepLogPageResponse(List.of(expectedResponse), "MToyMDI0LTAzLTA5"));
+
+        // Act & Assert
+        mockMvc.perform(get("/api/sleep-logs")
+                        .header("X-User-ID", userId.toString())
+                        .param("cursor", "MToyMDI0LTAzLTEw")
+                        .param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[0].sleepDate").value(sleepDate.toString()))
+                .andExpect(jsonPath("$.nextCursor").value("MToyMDI0LTAzLTA5"));
+    }
+
+    @Test
+    void getSleepLogs_InvalidCursor_Returns400BadRequest() throws Exception {
+        // Arrange
+        when(sleepLogService.getSleepLogs(userId, null, "bogus", 20))
+                .thenThrow(new IllegalArgumentException("Invalid cursor"));
+
+        // Act & Assert
+        mockMvc.perform(get("/api/sleep-logs")
+                        .header("X-User-ID", userId.toString())
+                        .param("cursor", "bogus"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("Invalid cursor"));
+    }
+
+    @Test
+    void getLatestSleepLog_SleepLogExists_ReturnsVersionValidators() throws Exception {
+        // Arrange
+        Instant modifiedAt = Instant.parse("2024-03-10T07:00:00Z");
+        when(sleepLogService.getSleepLogVersion(userId)).thenReturn(new SleepLogVersion(3L, modifiedAt));
+        when(sleepLogService.getLatestSleepLog(userId)).thenReturn(Optional.of(expectedResponse));
+
+        // Act & Assert
+        mockMvc.perform(get("/api/sleep-logs/latest")
+                        .header("X-User-ID", userId.toString()))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"3\""))
+                .andExpect(header().dateValue(HttpHeaders.LAST_MODIFIED, modifiedAt.toEpochMilli()))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache"))
+                .andExpect(header().string(HttpHeaders.VARY, Matchers.containsString("X-User-ID")));
+    }
+
+    @Test
+    void getLatestSleepLog_MatchingIfNoneMatch_Returns304WithoutLoadingSleepLog() throws Exception {
+        // Arrange
+        when(sleepLogService.getSleepLogVersion(userId))
+                .thenReturn(new SleepLogVersion(3L, Instant.parse("2024-03-10T07:00:00Z")));
+
+        // Act & Assert
+        mockMvc.perform(get("/api/sleep-logs/latest")
+                        .header("X-User-ID", userId.toString())
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"3\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        verify(sleepLogService, never()).getLatestSleepLog(any());
+    }
+
+    @Test
+    void getLatestSleepLog_PrefersCbor_ReturnsETagOfCborRepresentation() throws Exception {
+        // Arrange
+        when(sleepLogService.getSleepLogVersion(userId))
+                .thenReturn(new SleepLogVersion(3L, Instant.parse("2024-03-10T07:00:00Z")));
+        when(sleepLogService.getLatestSleepLog(userId)).thenReturn(Optional.of(expectedResponse));
+
+        // Act & Assert - the JSON copy's ETag does not validate the CBOR bytes
+        mockMvc.perform(get("/api/sleep-logs/latest")
+                        .header("X-User-ID", userId.toString())
+                        .header(HttpHeaders.ACCEPT, MediaType.APPLICATION_CBOR_VALUE)
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"3\""))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"3-cbor\""));
+    }
+
     @Test
     void getLatestSleepLog_MissingUserId_Returns400BadRequest() throws Exception {
         // Act & Assert
@@ -206,7 +399,7 @@ class SleepLogControllerTest {
                 .feelingCounts(feelingCounts)
                 .build();
 
-        when(sleepLogService.getSleepStatistics(userId)).thenReturn(statisticsResponse);
+        when(sleepLogService.getSerializedSleepStatistics(userId)).thenReturn(serialized(statisticsResponse));
 
         // Act & Assert
         mockMvc.perform(get("/api/sleep-logs/statistics")
@@ -221,7 +414,166 @@ class SleepLogControllerTest {
                 .andExpect(jsonPath("$.feelingCounts.BAD").value(1));
 
         // Verify that the service was called with the correct userId
-        verify(sleepLogService).getSleepStatistics(userId);
+        verify(sleepLogService).getSerializedSleepStatistics(userId);
+    }
+
+    @Test
+    void getSleepStatistics_MatchingIfNoneMatchForToday_Returns304WithoutComputingStatistics() throws Exception {
+        // Arrange
+        when(sleepLogService.getSleepLogVersion(userId))
+                .thenReturn(new SleepLogVersion(5L, Instant.parse("2024-03-10T07:00:00Z")));
+
+        // Act & Assert
+        mockMvc.perform(get("/api/sleep-logs/statistics")
+                        .header("X-User-ID", userId.toString())
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"5-" + LocalDate.now() + "\""))
+                .andExpect(status().isNotModified());
+
+        verify(sleepLogService, never()).getSerializedSleepStatistics(any());
+    }
+
+    @Test
+    void getSleepStatistics_ETagOfPreviousWindow_Returns200WithETagOfToday() throws Exception {
+        // Arrange
+        LocalDate today = LocalDate.now();
+        when(sleepLogService.getSleepLogVersion(userId))
+                .thenReturn(new SleepLogVersion(5L, Instant.parse("2024-03-10T07:00:00Z")));
+        when(sleepLogService.getSerializedSleepStatistics(userId))
+                .thenReturn(serialized(new SleepStatisticsResponse()));
+
+        // Act & Assert
+        mockMvc.perform(get("/api/sleep-logs/statistics")
+                        .header("X-User-ID", userId.toString())
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"5-" + today.minusDays(1) + "\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"5-" + today + "\""))
+                .andExpect(header().dateValue(HttpHeaders.LAST_MODIFIED,
+                        today.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli()));
+    }
+
+    @Test
+    void getSleepStatistics_DateRangeAfterWrite_Returns200ForOldETag() throws Exception {
+        // Arrange
+        LocalDate from = LocalDate.of(2024, 3, 1);
+        LocalDate to = LocalDate.of(2024, 3, 30);
+        when(sleepLogService.getSleepLogVersion(userId))
+                .thenReturn(new SleepLogVersion(6L, Instant.parse("2024-03-10T07:00:00Z")));
+        when(sleepLogService.getSleepStatistics(userId, from, to)).thenReturn(new SleepStatisticsResponse());
+
+        // Act & Assert
+        mockMvc.perform(get("/api/sleep-logs/statistics")
+                        .header("X-User-ID", userId.toString())
+                        .param("from", from.toString())
+                        .param("to", to.toString())
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"5-2024-03-01-2024-03-30\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"6-2024-03-01-2024-03-30\""));
+    }
+
+    @Test
+    void getSleepStatistics_AcceptsGzip_WritesCachedGzippedJson() throws Exception {
+        // Arrange
+        SerializedJson statistics = serialized(SleepStatisticsResponse.builder()
+                .averageTotalTimeInBedMinutes(480.0)
+                .build());
+        when(sleepLogService.getSerializedSleepStatistics(userId)).thenReturn(statistics);
+
+        // Act & Assert
+        mockMvc.perform(get("/api/sleep-logs/statistics")
+                        .header("X-User-ID", userId.toString())
+                        .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andExpect(header().string(HttpHeaders.VARY, Matchers.allOf(
+                        Matchers.containsString("X-User-ID"), Matchers.containsString("Accept-Encoding"))))
+                .andExpect(content().bytes(statistics.getGzippedJson()));
+
+        verify(sleepLogService, never()).getSleepStatistics(any());
+    }
+
+    @Test
+    void getSleepStatistics_BodyOfDayBefore_LoadsTodaysWindowAgain() throws Exception {
+        // Arrange - the first body comes from a load that started before midnight
+        SerializedJson yesterday = serialized(SleepStatisticsResponse.builder()
+                .averageTotalTimeInBedMinutes(420.0)
+                .build());
+        yesterday.setLastDay(LocalDate.now().minusDays(1));
+        SerializedJson today = serialized(SleepStatisticsResponse.builder()
+                .averageTotalTimeInBedMinutes(480.0)
+                .build());
+        today.setLastDay(LocalDate.now());
+        when(sleepLogService.getSerializedSleepStatistics(userId)).thenReturn(yesterday, today);
+
+        // Act & Assert
+        mockMvc.perform(get("/api/sleep-logs/statistics")
+                        .header("X-User-ID", userId.toString()))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(today.getJson()));
+
+        verify(sleepLogService, times(2)).getSerializedSleepStatistics(userId);
+    }
+
+    @Test
+    void getSleepStatistics_AcceptsGzip_ReturnsETagOfGzippedRepresentation() throws Exception {
+        // Arrange
+        LocalDate today = LocalDate.now();
+        when(sleepLogService.getSleepLogVersion(userId))
+                .thenReturn(new SleepLogVersion(5L, Instant.parse("2024-03-10T07:00:00Z")));
+        when(sleepLogService.getSerializedSleepStatistics(userId))
+                .thenReturn(serialized(new SleepStatisticsResponse()));
+
+        // Act & Assert - the identity copy's ETag does not validate the gzipped bytes
+        mockMvc.perform(get("/api/sleep-logs/statistics")
+                        .header("X-User-ID", userId.toString())
+                        .header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"5-" + today + "\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"5-" + today + "-gzip\""));
+    }
+
+    @Test
+    void getSleepStatistics_MatchingIfNoneMatchForGzip_Returns304VaryingByAcceptAndAcceptEncoding()
+            throws Exception {
+        // Arrange
+        when(sleepLogService.getSleepLogVersion(userId))
+                .thenReturn(new SleepLogVersion(5L, Instant.parse("2024-03-10T07:00:00Z")));
+
+        // Act & Assert
+        mockMvc.perform(get("/api/sleep-logs/statistics")
+                        .header("X-User-ID", userId.toString())
+                        .header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"5-" + LocalDate.now() + "-gzip\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.VARY, Matchers.allOf(
+                        Matchers.containsString("Accept"), Matchers.containsString("Accept-Encoding"))));
+
+        verify(sleepLogService, never()).getSerializedSleepStatistics(any());
+    }
+
+    @Test
+    void getSleepStatistics_PrefersCbor_WritesStatisticsAsCborInsteadOfCachedJson() throws Exception {
+        // Arrange
+        SleepStatisticsResponse statistics = SleepStatisticsResponse.builder()
+                .averageTotalTimeInBedMinutes(480.0)
+                .averageBedTime(LocalTime.of(22, 30))
+                .build();
+        when(sleepLogService.getSleepStatistics(userId)).thenReturn(statistics);
+
+        // Act
+        byte[] body = mockMvc.perform(get("/api/sleep-logs/statistics")
+                        .header("X-User-ID", userId.toString())
+                        .header(HttpHeaders.ACCEPT, "application/json;q=0.5, application/cbor"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andExpect(header().string(HttpHeaders.VARY, Matchers.containsString("Accept")))
+                .andExpect(header().string(HttpHeaders.ETAG, Matchers.endsWith("-cbor\"")))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        // Assert
+        Assertions.assertEquals(statistics, cborMapper.readValue(body, SleepStatisticsResponse.class));
+        verify(sleepLogService, never()).getSerializedSleepStatistics(any());
     }
 
     @Test
@@ -231,7 +583,7 @@ class SleepLogControllerTest {
                 .andExpect(status().isBadRequest());
 
         // Verify that the service was not called
-        verify(sleepLogService, never()).getSleepStatistics(any());
+        verify(sleepLogService, never()).getSerializedSleepStatistics(any());
     }
 
     @Test
@@ -249,7 +601,7 @@ class SleepLogControllerTest {
                 .feelingCounts(emptyFeelingCounts)
                 .build();
 
-        when(sleepLogService.getSleepStatistics(userId)).thenReturn(emptyResponse);
+        when(sleepLogService.getSerializedSleepStatistics(userId)).thenReturn(serialized(emptyResponse));
 
         // Act & Assert
         mockMvc.perform(get("/api/sleep-logs/statistics")
@@ -264,6 +616,167 @@ class SleepLogControllerTest {
                 .andExpect(jsonPath("$.feelingCounts.BAD").value(0));
 
         // Verify that the service was called with the correct userId
-        verify(sleepLogService).getSleepStatistics(userId);
+        verify(sleepLogService).getSerializedSleepStatistics(userId);
+    }
+
+    @Test
+    void getSleepStatistics_DateRange_Returns200OkWithRequestedRange() throws Exception {
+        // Arrange
+        LocalDate from = LocalDate.of(2024, 1, 1);
+        LocalDate to = LocalDate.of(2024, 12, 31);
+        SleepStatisticsResponse statisticsResponse = SleepStatisticsResponse.builder()
+                .dateRange(new DateRange(from, to))
+                .averageTotalTimeInBedMinutes(450.0)
+                .build();
+
+        when(sleepLogService.getSleepStatistics(userId, from, to)).thenReturn(statisticsResponse);
+
+        // Act & Assert
+        mockMvc.perform(get("/api/sleep-logs/statistics")
+                        .header("X-User-ID", userId.toString())
+                        .param("from", "2024-01-01")
+                        .param("to", "2024-12-31"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.dateRange.from").value("2024-01-01"))
+                .andExpect(jsonPath("$.dateRange.to").value("2024-12-31"))
+                .andExpect(jsonPath("$.averageTotalTimeInBedMinutes").value(450.0));
+
+        verify(sleepLogService).getSleepStatistics(userId, from, to);
+        verify(sleepLogService, never()).getSerializedSleepStatistics(any());
+    }
+
+    @Test
+    void getSleepStatistics_InvalidDateRange_Returns400BadRequest() throws Exception {
+        // Arrange
+        LocalDate from = LocalDate.of(2024, 2, 1);
+        LocalDate to = LocalDate.of(2024, 1, 1);
+        when(sleepLogService.getSleepStatistics(userId, from, to))
+                .thenThrow(new IllegalArgumentException("From date must not be after to date"));
+
+        // Act & Assert
+        mockMvc.perform(get("/api/sleep-logs/statistics")
+                        .header("X-User-ID", userId.toString())
+                        .param("from", "2024-02-01")
+                        .param("to", "2024-01-01"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void getSleepTrends_MonthlyBuckets_Returns200OkWithPoints() throws Exception {
+        // Arrange
+        LocalDate from = LocalDate.of(2024, 1, 1);
+        LocalDate to = LocalDate.of(2024, 2, 29);
+        SleepTrendResponse trendResponse = SleepTrendResponse.builder()
+                .bucket(TrendBucket.MONTH)
+                .dateRange(new DateRange(from, to))
+                .points(List.of(
+                        SleepStatisticsResponse.builder()
+                                .dateRange(new DateRange(from, LocalDate.of(2024, 1, 31)))
+                                .averageTotalTimeInBedMinutes(450.0)
+                                .build(),
+                        SleepStatisticsResponse.builder()
+                                .dateRange(new DateRange(LocalDate.of(2024, 2, 1), to))
+                                .averageTotalTimeInBedMinutes(420.0)
+                                .build()))
+                .build();
+
+        when(sleepLogService.getSleepTrends(userId, TrendBucket.MONTH, from, to)).thenReturn(trendResponse);
+
+        // Act & Assert
+        mockMvc.perform(get("/api/sleep-logs/trends")
+                        .header("X-User-ID", userId.toString())
+                        .param("bucket", "month")
+                        .param("from", "2024-01-01")
+                        .param("to", "2024-02-29"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.bucket").value("MONTH"))
+                .andExpect(jsonPath("$.points.length()").value(2))
+                .andExpect(jsonPath("$.points[1].dateRange.from").value("2024-02-01"))
+                .andExpect(jsonPath("$.points[1].averageTotalTimeInBedMinutes").value(420.0));
+    }
+
+    @Test
+    void getSleepTrends_NoBucket_DefaultsToWeeks() throws Exception {
+        // Arrange
+        when(sleepLogService.getSleepTrends(userId, TrendBucket.WEEK, null, null))
+                .thenReturn(SleepTrendResponse.builder().bucket(TrendBucket.WEEK).points(List.of()).build());
+
+        // Act & Assert
+        mockMvc.perform(get("/api/sleep-logs/trends")
+                        .header("X-User-ID", userId.toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.bucket").value("WEEK"));
+
+        verify(sleepLogService).getSleepTrends(userId, TrendBucket.WEEK, null, null);
+    }
+
+    @Test
+    void getSleepTrends_UnknownBucket_Returns400BadRequest() throws Exception {
+        // Act & Assert
+        mockMvc.perform(get("/api/sleep-logs/trends")
+                        .header("X-User-ID", userId.toString())
+                        .param("bucket", "day"))
+                .andExpect(status().isBadRequest());
+
+        verify(sleepLogService, never()).getSleepTrends(any(), any(), any(), any());
+    }
+
+    @Test
+    void getCohortStatistics_ValidRequest_StreamsUsersThenCohort() throws Exception {
+        // Arrange
+        UUID otherUserId = UUID.randomUUID();
+        LocalDate from = LocalDate.of(2024, 1, 1);
+        LocalDate to = LocalDate.of(2024, 1, 31);
+        CohortStatisticsRequest request = CohortStatisticsRequest.builder()
+                .userIds(List.of(userId, otherUserId))
+                .from(from)
+                .to(to)
+                .build();
+
+        doAnswer(invocation -> {
+            Consumer<UserSleepStatistics> consumer = invocation.getArgument(1);
+            consumer.accept(new UserSleepStatistics(userId, SleepStatisticsResponse.builder()
+                    .averageTotalTimeInBedMinutes(480.0)
+                    .build()));
+            consumer.accept(new UserSleepStatistics(otherUserId, SleepStatisticsResponse.builder()
+                    .averageTotalTimeInBedMinutes(420.0)
+                    .build()));
+            return SleepStatisticsResponse.builder().averageTotalTimeInBedMinutes(450.0).build();
+        }).when(sleepLogService).getCohortStatistics(eq(request), any());
+
+        // Act & Assert
+        mockMvc.perform(post("/api/sleep-logs/statistics/cohort")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.dateRange.from").value("2024-01-01"))
+                .andExpect(jsonPath("$.users.length()").value(2))
+                .andExpect(jsonPath("$.users[0].userId").value(userId.toString()))
+                .andExpect(jsonPath("$.users[1].statistics.averageTotalTimeInBedMinutes").value(420.0))
+                .andExpect(jsonPath("$.cohort.averageTotalTimeInBedMinutes").value(450.0));
+    }
+
+    @Test
+    void getCohortStatistics_ServiceThrowsIllegalArgumentException_Returns400BadRequest() throws Exception {
+        // Arrange
+        CohortStatisticsRequest request = CohortStatisticsRequest.builder().userIds(List.of()).build();
+        when(sleepLogService.getCohortStatistics(any(), any()))
+                .thenThrow(new IllegalArgumentException("Cohort must contain at least one user"));
+
+        // Act & Assert
+        mockMvc.perform(post("/api/sleep-logs/statistics/cohort")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isBadRequest());
+    }
+
+    private SerializedJson serialized(SleepStatisticsResponse statistics) throws Exception {
+        byte[] json = objectMapper.writeValueAsBytes(statistics);
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(gzipped)) {
+            gzip.write(json);
+        }
+        return new SerializedJson(json, gzipped.toByteArray(), null);
     }
 }
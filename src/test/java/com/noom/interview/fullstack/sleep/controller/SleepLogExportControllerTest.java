@@ -0,0 +1,106 @@
+package com.noom.interview.fullstack.sleep.controller;
+
+import com.noom.interview.fullstack.sleep.domain.dto.SleepLogExportFormat;
+import com.noom.interview.fullstack.sleep.service.SleepLogExportService;
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(SleepLogExportController.class)
+@Import({com.noom.interview.fullstack.sleep.config.TestConfig.class,
+        com.noom.interview.fullstack.sleep.exception.GlobalExceptionHandler.class})
+@ActiveProfiles("unittest")
+class SleepLogExportControllerTest {
+
+    private static final String CSV_PAYLOAD = "userId,sleepDate,bedTime,wakeTime,feeling\n";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private SleepLogExportService sleepLogExportService;
+
+    private UUID userId;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        reset(sleepLogExportService);
+        userId = UUID.randomUUID();
+
+        when(sleepLogExportService.exportSleepLogs(eq(userId), any(SleepLogExportFormat.class),
+                any(OutputStream.class))).thenAnswer(invocation -> {
+                    OutputStream output = invocation.getArgument(2);
+                    output.write(CSV_PAYLOAD.getBytes(StandardCharsets.UTF_8));
+                    return 0L;
+                });
+    }
+
+    @Test
+    void exportSleepLogs_Csv_StreamsAttachment() throws Exception {
+        // Act
+        MvcResult result = mockMvc.perform(get("/api/sleep-logs/export")
+                        .header("X-User-ID", userId.toString())
+                        .param("format", "csv"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // Assert
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "text/csv"))
+                .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"sleep-logs-" + userId + ".csv\""))
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(content().string(CSV_PAYLOAD));
+        verify(sleepLogExportService).exportSleepLogs(eq(userId), eq(SleepLogExportFormat.CSV),
+                any(OutputStream.class));
+    }
+
+    @Test
+    void exportSleepLogs_AcceptsGzip_StreamsGzippedPayload() throws Exception {
+        // Act
+        MvcResult result = mockMvc.perform(get("/api/sleep-logs/export")
+                        .header("X-User-ID", userId.toString())
+                        .header(HttpHeaders.ACCEPT_ENCODING, "br;q=1.0, gzip;q=0.8"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // Assert
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "application/x-ndjson"))
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"));
+        byte[] body = result.getResponse().getContentAsByteArray();
+        try (InputStream unzipped = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            assertThat(new String(unzipped.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(CSV_PAYLOAD);
+        }
+        verify(sleepLogExportService).exportSleepLogs(eq(userId), eq(SleepLogExportFormat.NDJSON),
+                any(OutputStream.class));
+    }
+
+    @Test
+    void exportSleepLogs_UnknownFormat_Returns400BadRequest() throws Exception {
+        // Act & Assert
+        mockMvc.perform(get("/api/sleep-logs/export")
+                        .header("X-User-ID", userId.toString())
+                        .param("format", "xml"))
+                .andExpect(status().isBadRequest());
+
+        verifyNoInteractions(sleepLogExportService);
+    }
+}
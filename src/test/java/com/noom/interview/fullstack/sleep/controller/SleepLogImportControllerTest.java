@@ -0,0 +1,73 @@
+package com.noom.interview.fullstack.sleep.controller;
+
+import com.noom.interview.fullstack.sleep.domain.dto.*;
+import com.noom.interview.fullstack.sleep.service.SleepLogImportService;
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.InputStream;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(SleepLogImportController.class)
+@Import({com.noom.interview.fullstack.sleep.config.TestConfig.class,
+        com.noom.interview.fullstack.sleep.exception.GlobalExceptionHandler.class})
+@ActiveProfiles("unittest")
+class SleepLogImportControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private SleepLogImportService sleepLogImportService;
+
+    private SleepLogImportResponse importResponse;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        reset(sleepLogImportService);
+
+        importResponse = SleepLogImportResponse.builder()
+                .linesRead(2)
+                .imported(1)
+                .duplicates(0)
+                .rejected(1)
+                .rejects(List.of(new SleepLogImportReject(2, "Wake time must be after bed time")))
+                .build();
+        when(sleepLogImportService.importSleepLogs(any(InputStream.class), any(SleepLogImportFormat.class)))
+                .thenReturn(importResponse);
+    }
+
+    @Test
+    void importSleepLogs_NdjsonPayload_UsesNdjsonFormat() throws Exception {
+        // Act & Assert
+        mockMvc.perform(post("/api/admin/sleep-logs/import")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content("{}\n{}\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported").value(1))
+                .andExpect(jsonPath("$.rejects[0].line").value(2));
+
+        verify(sleepLogImportService).importSleepLogs(any(InputStream.class), eq(SleepLogImportFormat.NDJSON));
+    }
+
+    @Test
+    void importSleepLogs_CsvPayload_UsesCsvFormat() throws Exception {
+        // Act & Assert
+        mockMvc.perform(post("/api/admin/sleep-logs/import")
+                        .contentType("text/csv")
+                        .content("userId,sleepDate,bedTime,wakeTime,feeling\n"))
+                .andExpect(status().isOk());
+
+        verify(sleepLogImportService).importSleepLogs(any(InputStream.class), eq(SleepLogImportFormat.CSV));
+    }
+}
@@ -0,0 +1,240 @@
+package com.noom.interview.fullstack.sleep.integration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.noom.interview.fullstack.sleep.config.ReplicaRoutingDataSource;
+import com.noom.interview.fullstack.sleep.domain.dto.SleepLogRequest;
+import com.noom.interview.fullstack.sleep.domain.entity.Feeling;
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.*;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.*;
+import org.testcontainers.containers.wait.strategy.Wait;
+import org.testcontainers.images.builder.Transferable;
+import org.testcontainers.junit.jupiter.*;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.utility.DockerImageName;
+
+import java.sql.*;
+import java.time.*;
+import java.time.temporal.ChronoUnit;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Checks the routing of read-only transactions against a primary and a streaming replica of it.
+ */
+@SpringBootTest(properties = "sleep.datasource.replica-max-wait=500ms")
+@AutoConfigureMockMvc
+@ActiveProfiles("integration")
+@Testcontainers
+class ReadReplicaRoutingIntegrationTest {
+
+    private static final DockerImageName POSTGRES_IMAGE = DockerImageName.parse("postgres:13-alpine");
+    private static final Network NETWORK = Network.newNetwork();
+
+    // The image's pg_hba.conf only admits replication connections from localhost
+    private static final String ALLOW_REPLICATION = "#!/bin/sh\n"
+            + "echo 'host replication all all md5' >> \"$PGDATA/pg_hba.conf\"\n";
+
+    private static final String START_REPLICA = "until pg_basebackup -h primary -U postgres "
+            + "-D \"$PGDATA\" -R -X stream; do sleep 1; done; "
+            + "chown -R postgres:postgres \"$PGDATA\" && chmod 700 \"$PGDATA\" && exec su-exec postgres postgres";
+
+    @Container
+    private static final PostgreSQLContainer<?> PRIMARY = new PostgreSQLContainer<>(POSTGRES_IMAGE)
+            .withDatabaseName("postgres")
+            .withUsername("postgres")
+            .withPassword("postgres")
+            .withNetwork(NETWORK)
+            .withNetworkAliases("primary")
+            .withCopyToContainer(Transferable.of(ALLOW_REPLICATION, 0755),
+                    "/docker-entrypoint-initdb.d/allow-replication.sh")
+            .withCommand("postgres", "-c", "wal_level=replica", "-c", "max_wal_senders=4");
+
+    @Container
+    private static final GenericContainer<?> REPLICA = new GenericContainer<>(POSTGRES_IMAGE)
+            .dependsOn(PRIMARY)
+            .withNetwork(NETWORK)
+            .withEnv("PGPASSWORD", "postgres")
+            .withEnv("PGDATA", "/var/lib/postgresql/data")
+            .withExposedPorts(PostgreSQLContainer.POSTGRESQL_PORT)
+            .withCreateContainerCmdModifier(cmd -> cmd.withEntrypoint("sh", "-c"))
+            .withCommand(START_REPLICA)
+            .waitingFor(Wait.forLogMessage(".*database system is ready to accept read only connections.*", 1)
+                    .withStartupTimeout(Duration.ofMinutes(2)));
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @DynamicPropertySource
+    static void datasourceProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", PRIMARY::getJdbcUrl);
+        registry.add("spring.datasource.username", PRIMARY::getUsername);
+        registry.add("spring.datasource.password", PRIMARY::getPassword);
+        registry.add("sleep.datasource.replica-urls", ReadReplicaRoutingIntegrationTest::replicaUrl);
+    }
+
+    @AfterEach
+    void resumeReplay() throws SQLException {
+        try (Connection connection = replicaConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("SELECT pg_wal_replay_resume()");
+        }
+    }
+
+    @Test
+    void readOnlyTransaction_IsRoutedToReplica() {
+        // Act
+        Boolean readOnlyInRecovery = inTransaction(true);
+        Boolean readWriteInRecovery = inTransaction(false);
+
+        // Assert
+        assertThat(readOnlyInRecovery).isTrue();
+        assertThat(readWriteInRecovery).isFalse();
+    }
+
+    @Test
+    void getLatestSleepLog_WithConsistencyToken_SeesOwnWrite() throws Exception {
+        // Arrange
+        UUID userId = UUID.randomUUID();
+        String token = create(userId);
+
+        // Act & Assert
+        mockMvc.perform(get("/api/sleep-logs/latest")
+                        .header("X-User-ID", userId)
+                        .header(ReplicaRoutingDataSource.CONSISTENCY_TOKEN_HEADER, token))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.sleepDate").value(LocalDate.now().toString()));
+    }
+
+    @Test
+    void getLatestSleepLog_ReplicaBehindConsistencyToken_FallsBackToPrimary() throws Exception {
+        // Arrange: the replica keeps receiving the WAL but stops applying it
+        try (Connection connection = replicaConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("SELECT pg_wal_replay_pause()");
+        }
+        UUID userId = UUID.randomUUID();
+        String token = create(userId);
+
+        // Act & Assert
+        mockMvc.perform(get("/api/sleep-logs/latest").header("X-User-ID", userId))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get("/api/sleep-logs/latest")
+                        .header("X-User-ID", userId)
+                        .header(ReplicaRoutingDataSource.CONSISTENCY_TOKEN_HEADER, token))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.sleepDate").value(LocalDate.now().toString()));
+    }
+
+    @Test
+    void getSleepStatistics_ReplicaBehind_LoadsCacheMissFromPrimary() throws Exception {
+        // Arrange: the version lookup before the statistics reads from the replica, which misses the write
+        try (Connection connection = replicaConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("SELECT pg_wal_replay_pause()");
+        }
+        UUID userId = UUID.randomUUID();
+        create(userId);
+
+        // Act & Assert
+        mockMvc.perform(get("/api/sleep-logs/statistics")
+                        .header("X-User-ID", userId)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.averageTotalTimeInBedMinutes").value(480.0))
+                .andExpect(jsonPath("$.feelingCounts.GOOD").value(1));
+    }
+
+    @Test
+    void getSleepStatistics_ReplicaCaughtUpWithWrites_LoadsCacheMissFromReplica() throws Exception {
+        // Arrange: the replica has the write, then stops applying the WAL; the rollups are then deleted on the
+        // primary behind the application's back, so only the replica still has them
+        UUID userId = UUID.randomUUID();
+        String token = create(userId);
+        awaitReplay(token);
+        try (Connection connection = replicaConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("SELECT pg_wal_replay_pause()");
+        }
+        try (Connection connection = DriverManager.getConnection(PRIMARY.getJdbcUrl(), "postgres", "postgres");
+             PreparedStatement statement = connection.prepareStatement(
+                     "DELETE FROM sleep_log_daily_rollups WHERE user_id = ?")) {
+            statement.setObject(1, userId);
+            statement.executeUpdate();
+        }
+
+        // Act & Assert
+        mockMvc.perform(get("/api/sleep-logs/statistics")
+                        .header("X-User-ID", userId)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.averageTotalTimeInBedMinutes").value(480.0));
+    }
+
+    private String create(UUID userId) throws Exception {
+        Instant wakeTime = Instant.now().truncatedTo(ChronoUnit.MINUTES);
+        SleepLogRequest request = SleepLogRequest.builder()
+                .sleepDate(LocalDate.now())
+                .bedTime(wakeTime.minus(8, ChronoUnit.HOURS))
+                .wakeTime(wakeTime)
+                .feeling(Feeling.GOOD)
+                .build();
+
+        return mockMvc.perform(post("/api/sleep-logs")
+                        .header("X-User-ID", userId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isCreated())
+                .andExpect(header().exists(ReplicaRoutingDataSource.CONSISTENCY_TOKEN_HEADER))
+                .andReturn().getResponse().getHeader(ReplicaRoutingDataSource.CONSISTENCY_TOKEN_HEADER);
+    }
+
+    private static void awaitReplay(String token) throws Exception {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        try (Connection connection = replicaConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT pg_last_wal_replay_lsn() >= CAST(? AS pg_lsn)")) {
+            statement.setString(1, token);
+            while (System.nanoTime() < deadline) {
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    if (resultSet.next() && resultSet.getBoolean(1)) {
+                        return;
+                    }
+                }
+                Thread.sleep(10);
+            }
+        }
+        throw new AssertionError("Replica did not replay up to " + token);
+    }
+
+    private Boolean inTransaction(boolean readOnly) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(readOnly);
+        return template.execute(status -> jdbcTemplate.queryForObject("SELECT pg_is_in_recovery()", Boolean.class));
+    }
+
+    private static String replicaUrl() {
+        return String.format("jdbc:postgresql://%s:%d/postgres", REPLICA.getHost(),
+                REPLICA.getMappedPort(PostgreSQLContainer.POSTGRESQL_PORT));
+    }
+
+    private static Connection replicaConnection() throws SQLException {
+        return DriverManager.getConnection(replicaUrl(), "postgres", "postgres");
+    }
+}
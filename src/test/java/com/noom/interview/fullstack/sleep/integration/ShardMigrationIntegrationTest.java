@@ -0,0 +1,239 @@
+package com.noom.interview.fullstack.sleep.integration;
+
+import com.noom.interview.fullstack.sleep.config.ShardRouter;
+import com.noom.interview.fullstack.sleep.domain.dto.*;
+import com.noom.interview.fullstack.sleep.domain.entity.Feeling;
+import com.noom.interview.fullstack.sleep.job.SleepLogPartitionJob;
+import com.noom.interview.fullstack.sleep.service.*;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.*;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.*;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.utility.DockerImageName;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.*;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Checks resharding from two shards to three: mirrored writes, the backfill, including the rollups of archived
+ * months, and the purge guard.
+ */
+@SpringBootTest(properties = "sleep.datasource.shard-migration-from=2")
+@ActiveProfiles("integration")
+@Testcontainers
+class ShardMigrationIntegrationTest {
+
+    private static final DockerImageName POSTGRES_IMAGE = DockerImageName.parse("postgres:13-alpine");
+
+    private static final String COUNT_SLEEP_LOGS = "SELECT COUNT(*) FROM sleep_logs WHERE user_id = ?";
+
+    private static final String LAST_RUNNING_LOG_COUNT = "SELECT COALESCE(MAX(cum_log_count), 0) "
+            + "FROM sleep_log_daily_rollups WHERE user_id = ?";
+
+    private static final String INSERT_SLEEP_LOG = "INSERT INTO sleep_logs (id, user_id, sleep_date, bed_time, "
+            + "wake_time, total_time_in_bed_minutes, bed_time_of_day_seconds, wake_time_of_day_seconds, feeling, "
+            + "created_at) VALUES (nextval('sleep_logs_seq'), ?, CURRENT_DATE - ?, now() - INTERVAL '8 hours', "
+            + "now(), 480, 0, 28800, 'GOOD', now())";
+
+    private static final String LAST_RUNNING_HISTOGRAM = "SELECT CAST(cum_time_in_bed_histogram AS text) "
+            + "FROM sleep_log_daily_rollups WHERE user_id = ? ORDER BY sleep_date DESC LIMIT 1";
+
+    private static final String DELETE_SLEEP_LOGS = "DELETE FROM sleep_logs WHERE user_id = ?";
+
+    private static final String DELETE_ROLLUPS = "DELETE FROM sleep_log_daily_rollups WHERE user_id = ?";
+
+    private static final Path ARCHIVE_DIRECTORY = createArchiveDirectory();
+
+    @Container
+    private static final PostgreSQLContainer<?> SHARD_0 = shard();
+
+    @Container
+    private static final PostgreSQLContainer<?> SHARD_1 = shard();
+
+    @Container
+    private static final PostgreSQLContainer<?> SHARD_2 = shard();
+
+    @Autowired
+    private SleepLogService sleepLogService;
+
+    @Autowired
+    private SleepLogImportService sleepLogImportService;
+
+    @Autowired
+    private SleepLogShardMigrationService sleepLogShardMigrationService;
+
+    @Autowired
+    private SleepLogArchiveService sleepLogArchiveService;
+
+    @Autowired
+    private SleepLogPartitionJob sleepLogPartitionJob;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @DynamicPropertySource
+    static void datasourceProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", SHARD_0::getJdbcUrl);
+        registry.add("spring.datasource.username", SHARD_0::getUsername);
+        registry.add("spring.datasource.password", SHARD_0::getPassword);
+        registry.add("sleep.datasource.shard-urls", () -> SHARD_1.getJdbcUrl() + "," + SHARD_2.getJdbcUrl());
+        registry.add("sleep.archive.directory", ARCHIVE_DIRECTORY::toString);
+    }
+
+    @Test
+    void createSleepLog_MovingUser_IsServedByOldShardAndMirroredToNewShard() {
+        // Arrange
+        UUID movingUserId = movingUser();
+        UUID stayingUserId = stayingUser();
+
+        // Act
+        sleepLogService.createSleepLog(request(movingUserId, LocalDate.now()));
+        sleepLogService.createSleepLog(request(stayingUserId, LocalDate.now()));
+
+        // Assert
+        int oldShard = shardRouter.shardOf(movingUserId);
+        assertThat(oldShard).isIn(0, 1);
+        assertThat(count(oldShard, COUNT_SLEEP_LOGS, movingUserId)).isEqualTo(1);
+        assertThat(count(2, COUNT_SLEEP_LOGS, movingUserId)).isEqualTo(1);
+        assertThat(count(2, LAST_RUNNING_LOG_COUNT, movingUserId)).isEqualTo(1);
+        assertThat(count(2, COUNT_SLEEP_LOGS, stayingUserId)).isZero();
+    }
+
+    @Test
+    void importSleepLogs_MovingUser_IsMirroredToNewShard() throws IOException {
+        // Arrange
+        UUID movingUserId = movingUser();
+        String payload = movingUserId + ",2024-03-10,2024-03-09T23:00:00Z,2024-03-10T07:00:00Z,GOOD\n";
+
+        // Act
+        SleepLogImportResponse response = sleepLogImportService.importSleepLogs(
+                new ByteArrayInputStream(payload.getBytes(StandardCharsets.UTF_8)), SleepLogImportFormat.CSV);
+
+        // Assert
+        assertThat(response.getImported()).isEqualTo(1);
+        assertThat(count(shardRouter.shardOf(movingUserId), COUNT_SLEEP_LOGS, movingUserId)).isEqualTo(1);
+        assertThat(count(2, COUNT_SLEEP_LOGS, movingUserId)).isEqualTo(1);
+    }
+
+    @Test
+    void backfill_HistoryWrittenBeforeMirroring_IsCopiedOnce() {
+        // Arrange: a history written before the instances mirrored writes
+        UUID movingUserId = movingUser();
+        JdbcTemplate oldShard = shardJdbcTemplate(shardRouter.shardOf(movingUserId));
+        for (int daysAgo = 1; daysAgo <= 3; daysAgo++) {
+            oldShard.update(INSERT_SLEEP_LOG, movingUserId, daysAgo);
+        }
+        sleepLogService.createSleepLog(request(movingUserId, LocalDate.now()));
+
+        // Act
+        sleepLogShardMigrationService.backfill();
+        long copiedAgain = sleepLogShardMigrationService.backfill();
+
+        // Assert
+        assertThat(count(2, COUNT_SLEEP_LOGS, movingUserId)).isEqualTo(4);
+        assertThat(count(2, LAST_RUNNING_LOG_COUNT, movingUserId)).isEqualTo(4);
+        assertThat(copiedAgain).isZero();
+    }
+
+    @Test
+    void backfill_MovingUserWithArchivedMonth_CopiesRollupsOfArchivedMonth() {
+        // Arrange: a history written before the instances mirrored writes, whose old month is then archived
+        UUID movingUserId = movingUser();
+        int oldShard = shardRouter.shardOf(movingUserId);
+        LocalDate oldMonth = LocalDate.now().withDayOfMonth(1).minusMonths(14);
+        int[] minutesInBed = {400, 430, 460};
+        for (int day = 0; day < minutesInBed.length; day++) {
+            sleepLogService.createSleepLog(request(movingUserId, oldMonth.plusDays(day), minutesInBed[day]));
+        }
+        sleepLogService.createSleepLog(request(movingUserId, LocalDate.now(), 480));
+        shardJdbcTemplate(2).update(DELETE_SLEEP_LOGS, movingUserId);
+        shardJdbcTemplate(2).update(DELETE_ROLLUPS, movingUserId);
+        sleepLogPartitionJob.createPartitions();
+        sleepLogArchiveService.archive();
+
+        // Act
+        sleepLogShardMigrationService.backfill();
+        sleepLogShardMigrationService.backfill();
+
+        // Assert: only today's sleep log is live, but the rollups of the new shard count the archived month once
+        assertThat(count(oldShard, COUNT_SLEEP_LOGS, movingUserId)).isEqualTo(1);
+        assertThat(count(2, COUNT_SLEEP_LOGS, movingUserId)).isEqualTo(1);
+        assertThat(count(2, LAST_RUNNING_LOG_COUNT, movingUserId)).isEqualTo(4);
+        assertThat(shardJdbcTemplate(2).queryForObject(LAST_RUNNING_HISTOGRAM, String.class, movingUserId))
+                .isEqualTo(shardJdbcTemplate(oldShard).queryForObject(LAST_RUNNING_HISTOGRAM, String.class,
+                        movingUserId));
+    }
+
+    @Test
+    void purge_WhileResharding_ThrowsIllegalStateException() {
+        // Act & Assert
+        assertThatIllegalStateException().isThrownBy(() -> sleepLogShardMigrationService.purge());
+    }
+
+    private UUID movingUser() {
+        UUID userId;
+        do {
+            userId = UUID.randomUUID();
+        } while (shardRouter.migrationTargetOf(userId).isEmpty());
+        return userId;
+    }
+
+    private UUID stayingUser() {
+        UUID userId;
+        do {
+            userId = UUID.randomUUID();
+        } while (shardRouter.migrationTargetOf(userId).isPresent());
+        return userId;
+    }
+
+    private static long count(int shard, String sql, UUID userId) {
+        return shardJdbcTemplate(shard).queryForObject(sql, Long.class, userId);
+    }
+
+    private static JdbcTemplate shardJdbcTemplate(int shard) {
+        PostgreSQLContainer<?> container = List.of(SHARD_0, SHARD_1, SHARD_2).get(shard);
+        return new JdbcTemplate(new DriverManagerDataSource(
+                container.getJdbcUrl(), container.getUsername(), container.getPassword()));
+    }
+
+    private static SleepLogRequest request(UUID userId, LocalDate date) {
+        return request(userId, date, 480);
+    }
+
+    private static SleepLogRequest request(UUID userId, LocalDate date, int minutesInBed) {
+        Instant wake = date.atTime(7, 0).atZone(ZoneId.systemDefault()).toInstant();
+        return SleepLogRequest.builder()
+                .userId(userId)
+                .sleepDate(date)
+                .bedTime(wake.minus(minutesInBed, ChronoUnit.MINUTES))
+                .wakeTime(wake)
+                .feeling(Feeling.GOOD)
+                .build();
+    }
+
+    private static PostgreSQLContainer<?> shard() {
+        return new PostgreSQLContainer<>(POSTGRES_IMAGE)
+                .withDatabaseName("postgres")
+                .withUsername("postgres")
+                .withPassword("postgres");
+    }
+
+    private static Path createArchiveDirectory() {
+        try {
+            return Files.createTempDirectory("sleep-archive");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
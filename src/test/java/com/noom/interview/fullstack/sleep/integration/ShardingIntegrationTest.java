@@ -0,0 +1,321 @@
+package com.noom.interview.fullstack.sleep.integration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.noom.interview.fullstack.sleep.config.ShardRouter;
+import com.noom.interview.fullstack.sleep.domain.dto.*;
+import com.noom.interview.fullstack.sleep.domain.entity.Feeling;
+import com.noom.interview.fullstack.sleep.service.*;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.*;
+import org.springframework.test.web.servlet.MockMvc;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.*;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.utility.DockerImageName;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.*;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Checks the routing of sleep logs across three shards.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("integration")
+@Testcontainers
+class ShardingIntegrationTest {
+
+    private static final DockerImageName POSTGRES_IMAGE = DockerImageName.parse("postgres:13-alpine");
+
+    private static final String COUNT_SLEEP_LOGS = "SELECT COUNT(*) FROM sleep_logs WHERE user_id = ?";
+
+    private static final String INSERT_SLEEP_LOG = "INSERT INTO sleep_logs (id, user_id, sleep_date, bed_time, "
+            + "wake_time, total_time_in_bed_minutes, bed_time_of_day_seconds, wake_time_of_day_seconds, feeling, "
+            + "created_at) VALUES (nextval('sleep_logs_seq'), ?, CURRENT_DATE, now() - INTERVAL '8 hours', now(), "
+            + "480, 0, 28800, 'GOOD', now())";
+
+    @Container
+    private static final PostgreSQLContainer<?> SHARD_0 = shard();
+
+    @Container
+    private static final PostgreSQLContainer<?> SHARD_1 = shard();
+
+    @Container
+    private static final PostgreSQLContainer<?> SHARD_2 = shard();
+
+    @Autowired
+    private SleepLogService sleepLogService;
+
+    @Autowired
+    private SleepLogImportService sleepLogImportService;
+
+    @Autowired
+    private SleepLogExportService sleepLogExportService;
+
+    @Autowired
+    private SleepLogShardMigrationService sleepLogShardMigrationService;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @DynamicPropertySource
+    static void datasourceProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", SHARD_0::getJdbcUrl);
+        registry.add("spring.datasource.username", SHARD_0::getUsername);
+        registry.add("spring.datasource.password", SHARD_0::getPassword);
+        registry.add("sleep.datasource.shard-urls", () -> SHARD_1.getJdbcUrl() + "," + SHARD_2.getJdbcUrl());
+    }
+
+    @Test
+    void createSleepLog_ManyUsers_StoresEachUserOnlyOnItsShard() {
+        // Arrange
+        List<UUID> userIds = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            userIds.add(UUID.randomUUID());
+        }
+
+        // Act
+        for (UUID userId : userIds) {
+            sleepLogService.createSleepLog(request(userId, LocalDate.now(), 480, Feeling.GOOD));
+        }
+
+        // Assert
+        Set<Integer> usedShards = new HashSet<>();
+        for (UUID userId : userIds) {
+            int shard = shardRouter.shardOf(userId);
+            usedShards.add(shard);
+            for (int i = 0; i < shardRouter.getShardCount(); i++) {
+                assertThat(countSleepLogs(i, userId)).isEqualTo(i == shard ? 1 : 0);
+            }
+            assertThat(sleepLogService.getLatestSleepLog(userId)).isPresent();
+            assertThat(sleepLogService.getSleepStatistics(userId).getAverageTotalTimeInBedMinutes())
+                    .isEqualTo(480.0);
+        }
+        assertThat(usedShards).containsExactlyInAnyOrder(0, 1, 2);
+    }
+
+    @Test
+    void createSleepLog_UsersOnEveryShard_TakesIdsFromEachShardsOwnRange() {
+        // Arrange
+        List<UUID> userIds = oneUserPerShard();
+
+        // Act
+        for (UUID userId : userIds) {
+            for (int days = 0; days < 3; days++) {
+                sleepLogService.createSleepLog(request(userId, LocalDate.now().minusDays(days), 480, Feeling.GOOD));
+            }
+        }
+
+        // Assert
+        List<Long> ids = new ArrayList<>();
+        for (int shard = 0; shard < shardRouter.getShardCount(); shard++) {
+            JdbcTemplate jdbcTemplate = shardJdbcTemplate(shard);
+            assertThat(jdbcTemplate.queryForObject("SELECT nextval('sleep_logs_seq')", Long.class))
+                    .isBetween((shard + 1L) << 48, ((shard + 2L) << 48) - 1);
+            ids.addAll(jdbcTemplate.queryForList("SELECT id FROM sleep_logs", Long.class));
+        }
+        assertThat(ids).hasSizeGreaterThanOrEqualTo(9).doesNotHaveDuplicates();
+    }
+
+    @Test
+    void getCohortStatistics_UsersOnEveryShard_MergesAllShards() {
+        // Arrange
+        List<UUID> userIds = oneUserPerShard();
+        LocalDate day = LocalDate.now();
+        int[] minutesInBed = {360, 420, 480};
+        for (int i = 0; i < userIds.size(); i++) {
+            sleepLogService.createSleepLog(request(userIds.get(i), day, minutesInBed[i], Feeling.OK));
+        }
+        CohortStatisticsRequest cohortRequest = CohortStatisticsRequest.builder()
+                .userIds(userIds)
+                .from(day.minusDays(29))
+                .to(day)
+                .build();
+        List<UserSleepStatistics> users = new ArrayList<>();
+
+        // Act
+        SleepStatisticsResponse cohort = sleepLogService.getCohortStatistics(cohortRequest, users::add);
+
+        // Assert
+        assertThat(users).extracting(UserSleepStatistics::getUserId).containsExactlyElementsOf(userIds);
+        assertThat(cohort.getAverageTotalTimeInBedMinutes()).isEqualTo(420.0);
+        assertThat(cohort.getFeelingCounts()).containsEntry(Feeling.OK, 3);
+    }
+
+    @Test
+    void importSleepLogs_UsersOnEveryShard_MergesEachShard() throws IOException {
+        // Arrange
+        List<UUID> userIds = oneUserPerShard();
+        StringBuilder payload = new StringBuilder("userId,sleepDate,bedTime,wakeTime,feeling\n");
+        for (UUID userId : userIds) {
+            payload.append(userId).append(",2024-03-10,2024-03-09T23:00:00Z,2024-03-10T07:00:00Z,GOOD\n");
+        }
+        payload.append(userIds.get(1)).append(",2024-03-10,2024-03-09T22:00:00Z,2024-03-10T06:00:00Z,BAD\n");
+
+        // Act
+        SleepLogImportResponse response = sleepLogImportService.importSleepLogs(
+                new ByteArrayInputStream(payload.toString().getBytes(StandardCharsets.UTF_8)),
+                SleepLogImportFormat.CSV);
+
+        // Assert
+        assertThat(response.getImported()).isEqualTo(3);
+        assertThat(response.getDuplicates()).isEqualTo(1);
+        for (int shard = 0; shard < userIds.size(); shard++) {
+            UUID userId = userIds.get(shard);
+            assertThat(countSleepLogs(shard, userId)).isEqualTo(1);
+            assertThat(sleepLogService.getSleepStatistics(userId, LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 31))
+                    .getFeelingCounts()).containsEntry(Feeling.GOOD, 1);
+        }
+    }
+
+    @Test
+    void postCohortStatistics_UsersOnEveryShard_ReadsEachUserFromItsShard() throws Exception {
+        // Arrange: over HTTP, every shard must be read on a connection of its own
+        List<UUID> userIds = oneUserPerShard();
+        LocalDate day = LocalDate.now();
+        int[] minutesInBed = {360, 420, 480};
+        for (int i = 0; i < userIds.size(); i++) {
+            sleepLogService.createSleepLog(request(userIds.get(i), day, minutesInBed[i], Feeling.OK));
+        }
+        CohortStatisticsRequest cohortRequest = CohortStatisticsRequest.builder()
+                .userIds(userIds)
+                .from(day.minusDays(29))
+                .to(day)
+                .build();
+
+        // Act & Assert
+        mockMvc.perform(post("/api/sleep-logs/statistics/cohort")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(cohortRequest)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.users.length()").value(3))
+                .andExpect(jsonPath("$.users[0].userId").value(userIds.get(0).toString()))
+                .andExpect(jsonPath("$.users[0].statistics.averageTotalTimeInBedMinutes").value(360.0))
+                .andExpect(jsonPath("$.users[1].statistics.averageTotalTimeInBedMinutes").value(420.0))
+                .andExpect(jsonPath("$.users[2].userId").value(userIds.get(2).toString()))
+                .andExpect(jsonPath("$.users[2].statistics.averageTotalTimeInBedMinutes").value(480.0))
+                .andExpect(jsonPath("$.cohort.averageTotalTimeInBedMinutes").value(420.0))
+                .andExpect(jsonPath("$.cohort.feelingCounts.OK").value(3));
+    }
+
+    @Test
+    void postImport_UsersOnEveryShard_MergesEachShardOnItsOwnConnection() throws Exception {
+        // Arrange
+        List<UUID> userIds = oneUserPerShard();
+        StringBuilder payload = new StringBuilder("userId,sleepDate,bedTime,wakeTime,feeling\n");
+        for (UUID userId : userIds) {
+            payload.append(userId).append(",2024-04-10,2024-04-09T23:00:00Z,2024-04-10T07:00:00Z,GOOD\n");
+        }
+
+        // Act
+        mockMvc.perform(post("/api/admin/sleep-logs/import")
+                        .contentType("text/csv")
+                        .content(payload.toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported").value(3))
+                .andExpect(jsonPath("$.rejected").value(0));
+
+        // Assert
+        for (int shard = 0; shard < userIds.size(); shard++) {
+            UUID userId = userIds.get(shard);
+            for (int i = 0; i < shardRouter.getShardCount(); i++) {
+                assertThat(countSleepLogs(i, userId)).isEqualTo(i == shard ? 1 : 0);
+            }
+            assertThat(sleepLogService.getSleepStatistics(userId, LocalDate.of(2024, 4, 1), LocalDate.of(2024, 4, 30))
+                    .getFeelingCounts()).containsEntry(Feeling.GOOD, 1);
+        }
+    }
+
+    @Test
+    void exportSleepLogs_UserOnLastShard_ExportsHistoryFromItsShard() throws IOException {
+        // Arrange
+        UUID userId = oneUserPerShard().get(2);
+        sleepLogService.createSleepLog(request(userId, LocalDate.now().minusDays(1), 450, Feeling.OK));
+        sleepLogService.createSleepLog(request(userId, LocalDate.now(), 480, Feeling.GOOD));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        // Act
+        long exported = sleepLogExportService.exportSleepLogs(userId, SleepLogExportFormat.NDJSON, output);
+
+        // Assert
+        assertThat(exported).isEqualTo(2);
+        assertThat(output.toString(StandardCharsets.UTF_8).lines()).hasSize(2);
+    }
+
+    @Test
+    void purge_UserCopiedToOtherShard_DeletesOnlyTheCopy() {
+        // Arrange
+        UUID userId = oneUserPerShard().get(0);
+        sleepLogService.createSleepLog(request(userId, LocalDate.now(), 480, Feeling.GOOD));
+        shardJdbcTemplate(1).update(INSERT_SLEEP_LOG, userId);
+
+        // Act
+        long purged = sleepLogShardMigrationService.purge();
+
+        // Assert
+        assertThat(purged).isGreaterThanOrEqualTo(1);
+        assertThat(countSleepLogs(0, userId)).isEqualTo(1);
+        assertThat(countSleepLogs(1, userId)).isZero();
+    }
+
+    private List<UUID> oneUserPerShard() {
+        UUID[] userIds = new UUID[shardRouter.getShardCount()];
+        int found = 0;
+        while (found < userIds.length) {
+            UUID userId = UUID.randomUUID();
+            int shard = shardRouter.shardOf(userId);
+            if (userIds[shard] == null) {
+                userIds[shard] = userId;
+                found++;
+            }
+        }
+        return List.of(userIds);
+    }
+
+    private long countSleepLogs(int shard, UUID userId) {
+        return shardJdbcTemplate(shard).queryForObject(COUNT_SLEEP_LOGS, Long.class, userId);
+    }
+
+    private static JdbcTemplate shardJdbcTemplate(int shard) {
+        PostgreSQLContainer<?> container = List.of(SHARD_0, SHARD_1, SHARD_2).get(shard);
+        return new JdbcTemplate(new DriverManagerDataSource(
+                container.getJdbcUrl(), container.getUsername(), container.getPassword()));
+    }
+
+    private static SleepLogRequest request(UUID userId, LocalDate date, int minutesInBed, Feeling feeling) {
+        Instant wake = date.atTime(7, 0).atZone(ZoneId.systemDefault()).toInstant();
+        return SleepLogRequest.builder()
+                .userId(userId)
+                .sleepDate(date)
+                .bedTime(wake.minus(minutesInBed, ChronoUnit.MINUTES))
+                .wakeTime(wake)
+                .feeling(feeling)
+                .build();
+    }
+
+    private static PostgreSQLContainer<?> shard() {
+        return new PostgreSQLContainer<>(POSTGRES_IMAGE)
+                .withDatabaseName("postgres")
+                .withUsername("postgres")
+                .withPassword("postgres");
+    }
+}
@@ -0,0 +1,192 @@
+package com.noom.interview.fullstack.sleep.integration;
+
+import com.noom.interview.fullstack.sleep.domain.dto.*;
+import com.noom.interview.fullstack.sleep.domain.entity.Feeling;
+import com.noom.interview.fullstack.sleep.job.SleepLogPartitionJob;
+import com.noom.interview.fullstack.sleep.service.*;
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.*;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.*;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.utility.DockerImageName;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.*;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Checks that archived months leave sleep_logs but stay readable, keep their statistics and accept no new sleep
+ * logs. Runs on a database and archive directory of its own, since archived months are closed for every test.
+ */
+@SpringBootTest
+@ActiveProfiles("integration")
+@Testcontainers
+class SleepLogArchiveIntegrationTest {
+
+    private static final DockerImageName POSTGRES_IMAGE = DockerImageName.parse("postgres:13-alpine");
+
+    private static final String COUNT_SLEEP_LOGS = "SELECT COUNT(*) FROM sleep_logs WHERE user_id = ?";
+
+    @Container
+    private static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>(POSTGRES_IMAGE)
+            .withDatabaseName("postgres")
+            .withUsername("postgres")
+            .withPassword("postgres");
+
+    private static final Path ARCHIVE_DIRECTORY = createArchiveDirectory();
+
+    private static final LocalDate OLD_MONTH = LocalDate.now().withDayOfMonth(1).minusMonths(14);
+
+    @Autowired
+    private SleepLogService sleepLogService;
+
+    @Autowired
+    private SleepLogExportService sleepLogExportService;
+
+    @Autowired
+    private SleepLogArchiveService sleepLogArchiveService;
+
+    @Autowired
+    private SleepLogRollupService sleepLogRollupService;
+
+    @Autowired
+    private SleepLogImportService sleepLogImportService;
+
+    @Autowired
+    private SleepLogPartitionJob sleepLogPartitionJob;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @DynamicPropertySource
+    static void datasourceProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", POSTGRES::getJdbcUrl);
+        registry.add("spring.datasource.username", POSTGRES::getUsername);
+        registry.add("spring.datasource.password", POSTGRES::getPassword);
+        registry.add("sleep.archive.directory", ARCHIVE_DIRECTORY::toString);
+    }
+
+    @Test
+    void archive_OldMonths_AreMovedOutOfSleepLogsAndStayReadable() throws IOException {
+        // Arrange: three nights of an old month and one recent night
+        UUID userId = UUID.randomUUID();
+        for (int day = 0; day < 3; day++) {
+            sleepLogService.createSleepLog(request(userId, OLD_MONTH.plusDays(day), 420 + day));
+        }
+        LocalDate today = LocalDate.now();
+        sleepLogService.createSleepLog(request(userId, today, 480));
+        sleepLogPartitionJob.createPartitions();
+        SleepStatisticsResponse oldStatistics = sleepLogService.getSleepStatistics(
+                userId, OLD_MONTH, OLD_MONTH.plusDays(2));
+
+        // Act
+        long archived = sleepLogArchiveService.archive();
+
+        // Assert
+        assertThat(archived).isGreaterThanOrEqualTo(3);
+        assertThat(jdbcTemplate.queryForObject(COUNT_SLEEP_LOGS, Long.class, userId)).isEqualTo(1);
+
+        SleepLogPageResponse page = sleepLogService.getSleepLogs(userId, null, null, 10);
+        assertThat(page.getItems()).extracting(SleepLogResponse::getSleepDate)
+                .containsExactly(today, OLD_MONTH.plusDays(2), OLD_MONTH.plusDays(1), OLD_MONTH);
+
+        SleepLogPageResponse firstPage = sleepLogService.getSleepLogs(userId, null, null, 2);
+        SleepLogPageResponse secondPage = sleepLogService.getSleepLogs(userId, null, firstPage.getNextCursor(), 2);
+        assertThat(secondPage.getItems()).extracting(SleepLogResponse::getSleepDate)
+                .containsExactly(OLD_MONTH.plusDays(1), OLD_MONTH);
+
+        ByteArrayOutputStream export = new ByteArrayOutputStream();
+        long exported = sleepLogExportService.exportSleepLogs(userId, SleepLogExportFormat.CSV, export);
+        assertThat(exported).isEqualTo(4);
+        assertThat(export.toString(StandardCharsets.UTF_8)).contains(OLD_MONTH.toString(), today.toString());
+
+        sleepLogRollupService.rebuildAll();
+        assertThat(sleepLogService.getSleepStatistics(userId, OLD_MONTH, OLD_MONTH.plusDays(2)))
+                .usingRecursiveComparison().isEqualTo(oldStatistics);
+    }
+
+    @Test
+    void createSleepLog_ArchivedMonth_ThrowsIllegalArgumentException() {
+        // Arrange: a month of its own, so that the test does not depend on the order of the tests
+        LocalDate month = OLD_MONTH.minusMonths(1);
+        UUID userId = UUID.randomUUID();
+        sleepLogService.createSleepLog(request(userId, month.plusDays(10), 450));
+        sleepLogPartitionJob.createPartitions();
+        sleepLogArchiveService.archive();
+
+        // Act & Assert
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> sleepLogService.createSleepLog(request(userId, month.plusDays(11), 450)))
+                .withMessageContaining("archived");
+        assertThat(sleepLogService.getLatestSleepLog(userId)).get()
+                .extracting(SleepLogResponse::getSleepDate).isEqualTo(month.plusDays(10));
+    }
+
+    @Test
+    void importSleepLogs_AfterArchivedMonth_KeepsPercentilesOfArchivedMonth() throws IOException {
+        // Arrange: a month of its own; the imported user gets its recent nights from an import after the archive,
+        // the reference user through the API before it
+        LocalDate month = OLD_MONTH.minusMonths(2);
+        LocalDate today = LocalDate.now();
+        UUID importedUserId = UUID.randomUUID();
+        UUID referenceUserId = UUID.randomUUID();
+        int[] oldMinutesInBed = {400, 430, 460};
+        for (int day = 0; day < oldMinutesInBed.length; day++) {
+            sleepLogService.createSleepLog(request(importedUserId, month.plusDays(day), oldMinutesInBed[day]));
+            sleepLogService.createSleepLog(request(referenceUserId, month.plusDays(day), oldMinutesInBed[day]));
+        }
+        List<SleepLogRequest> recent = List.of(request(importedUserId, today.minusDays(1), 500),
+                request(importedUserId, today, 530));
+        for (SleepLogRequest request : recent) {
+            sleepLogService.createSleepLog(request(referenceUserId, request.getSleepDate(),
+                    (int) Duration.between(request.getBedTime(), request.getWakeTime()).toMinutes()));
+        }
+        sleepLogPartitionJob.createPartitions();
+        sleepLogArchiveService.archive();
+        StringBuilder payload = new StringBuilder();
+        for (SleepLogRequest request : recent) {
+            payload.append(String.join(",", importedUserId.toString(), request.getSleepDate().toString(),
+                    request.getBedTime().toString(), request.getWakeTime().toString(), "GOOD")).append('\n');
+        }
+
+        // Act
+        SleepLogImportResponse response = sleepLogImportService.importSleepLogs(
+                new ByteArrayInputStream(payload.toString().getBytes(StandardCharsets.UTF_8)),
+                SleepLogImportFormat.CSV);
+
+        // Assert
+        assertThat(response.getImported()).isEqualTo(2);
+        SleepStatisticsResponse imported = sleepLogService.getSleepStatistics(importedUserId, month, today);
+        SleepStatisticsResponse reference = sleepLogService.getSleepStatistics(referenceUserId, month, today);
+        assertThat(imported.getTotalTimeInBedMinutesPercentiles()).isNotNull();
+        assertThat(imported).usingRecursiveComparison().isEqualTo(reference);
+    }
+
+    private static SleepLogRequest request(UUID userId, LocalDate date, int minutesInBed) {
+        Instant wake = date.atTime(7, 0).atZone(ZoneId.systemDefault()).toInstant();
+        return SleepLogRequest.builder()
+                .userId(userId)
+                .sleepDate(date)
+                .bedTime(wake.minus(minutesInBed, ChronoUnit.MINUTES))
+                .wakeTime(wake)
+                .feeling(Feeling.GOOD)
+                .build();
+    }
+
+    private static Path createArchiveDirectory() {
+        try {
+            return Files.createTempDirectory("sleep-archive");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.noom.interview.fullstack.sleep.integration;
+
+import com.noom.interview.fullstack.sleep.domain.dto.*;
+import com.noom.interview.fullstack.sleep.domain.entity.Feeling;
+import com.noom.interview.fullstack.sleep.repository.SleepLogRepository;
+import com.noom.interview.fullstack.sleep.service.SleepLogService;
+import com.noom.interview.fullstack.sleep.test.AbstractIntegrationTest;
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.time.*;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Stress test for concurrent creates of the same user and date.
+ */
+class SleepLogConcurrencyIntegrationTest extends AbstractIntegrationTest {
+
+    private static final int PARALLEL_REQUESTS = 32;
+    private static final int ROUNDS = 10;
+
+    @Autowired
+    private SleepLogService sleepLogService;
+
+    @Autowired
+    private SleepLogRepository sleepLogRepository;
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        sleepLogRepository.deleteAll();
+        executor = Executors.newFixedThreadPool(PARALLEL_REQUESTS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void createSleepLog_ParallelRequestsForSameUserAndDate_ExactlyOneSucceedsOthersConflict() throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            // Arrange
+            UUID userId = UUID.randomUUID();
+            LocalDate sleepDate = LocalDate.now().minusDays(round);
+            Instant wakeTime = Instant.now().minus(round, ChronoUnit.DAYS);
+            Instant bedTime = wakeTime.minus(8, ChronoUnit.HOURS);
+
+            CountDownLatch startGate = new CountDownLatch(1);
+            AtomicInteger created = new AtomicInteger();
+            AtomicInteger conflicts = new AtomicInteger();
+            List<Future<?>> futures = new ArrayList<>();
+
+            for (int i = 0; i < PARALLEL_REQUESTS; i++) {
+                futures.add(executor.submit(() -> {
+                    SleepLogRequest request = SleepLogRequest.builder()
+                            .userId(userId)
+                            .sleepDate(sleepDate)
+                            .bedTime(bedTime)
+                            .wakeTime(wakeTime)
+                            .feeling(Feeling.GOOD)
+                            .build();
+                    startGate.await();
+                    try {
+                        sleepLogService.createSleepLog(request);
+                        created.incrementAndGet();
+                    } catch (IllegalStateException e) {
+                        conflicts.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+
+            // Act
+            startGate.countDown();
+            for (Future<?> future : futures) {
+                // Any exception other than the expected conflict fails the test here
+                future.get(30, TimeUnit.SECONDS);
+            }
+
+            // Assert
+            assertThat(created.get()).isEqualTo(1);
+            assertThat(conflicts.get()).isEqualTo(PARALLEL_REQUESTS - 1);
+            assertThat(sleepLogRepository.findByUserIdAndSleepDateBetween(userId, sleepDate, sleepDate))
+                    .hasSize(1);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.noom.interview.fullstack.sleep.integration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.noom.interview.fullstack.sleep.domain.dto.*;
+import com.noom.interview.fullstack.sleep.domain.entity.Feeling;
+import com.noom.interview.fullstack.sleep.repository.SleepLogRepository;
+import com.noom.interview.fullstack.sleep.service.*;
+import com.noom.interview.fullstack.sleep.test.AbstractIntegrationTest;
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.*;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SleepLogExportIntegrationTest extends AbstractIntegrationTest {
+
+    // More than the repository's stream fetch size, so the export spans several round trips
+    private static final int HISTORY_DAYS = 1200;
+    private static final int BATCH_SIZE = 600;
+    private static final LocalDate FIRST_DATE = LocalDate.of(2021, 1, 1);
+
+    @Autowired
+    private SleepLogExportService sleepLogExportService;
+
+    @Autowired
+    private SleepLogImportService sleepLogImportService;
+
+    @Autowired
+    private SleepLogService sleepLogService;
+
+    @Autowired
+    private SleepLogRepository sleepLogRepository;
+
+    @Autowired
+    private SleepLogRollupService sleepLogRollupService;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private UUID userId;
+
+    @BeforeEach
+    void setUp() {
+        sleepLogRepository.deleteAll();
+        sleepLogRollupService.rebuildAll();
+
+        userId = UUID.randomUUID();
+        for (int start = 0; start < HISTORY_DAYS; start += BATCH_SIZE) {
+            List<SleepLogRequest> batch = new ArrayList<>();
+            for (int day = start; day < start + BATCH_SIZE; day++) {
+                batch.add(request(FIRST_DATE.plusDays(day), Feeling.values()[day % Feeling.values().length]));
+            }
+            sleepLogService.createSleepLogs(userId, batch);
+        }
+        sleepLogService.createSleepLogs(UUID.randomUUID(), List.of(request(FIRST_DATE, Feeling.BAD)));
+    }
+
+    @Test
+    void exportSleepLogs_Ndjson_WritesEveryLogOfUserOldestFirstAsImportLines() throws IOException {
+        // Arrange
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        // Act
+        long exported = sleepLogExportService.exportSleepLogs(userId, SleepLogExportFormat.NDJSON, output);
+
+        // Assert
+        List<String> lines = output.toString(StandardCharsets.UTF_8).lines().toList();
+        assertThat(exported).isEqualTo(HISTORY_DAYS);
+        assertThat(lines).hasSize(HISTORY_DAYS);
+        SleepLogRequest first = objectMapper.readValue(lines.get(0), SleepLogRequest.class);
+        SleepLogRequest last = objectMapper.readValue(lines.get(lines.size() - 1), SleepLogRequest.class);
+        assertThat(first).isEqualTo(request(FIRST_DATE, Feeling.values()[0]));
+        assertThat(last.getSleepDate()).isEqualTo(FIRST_DATE.plusDays(HISTORY_DAYS - 1L));
+        assertThat(last.getUserId()).isEqualTo(userId);
+    }
+
+    @Test
+    void exportSleepLogs_Csv_CanBeImportedAgain() throws IOException {
+        // Arrange
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        sleepLogExportService.exportSleepLogs(userId, SleepLogExportFormat.CSV, output);
+        sleepLogRepository.deleteAll();
+        sleepLogRollupService.rebuildAll();
+
+        // Act
+        SleepLogImportResponse response = sleepLogImportService.importSleepLogs(
+                new ByteArrayInputStream(output.toByteArray()), SleepLogImportFormat.CSV);
+
+        // Assert
+        assertThat(response.getImported()).isEqualTo(HISTORY_DAYS);
+        assertThat(response.getRejected()).isZero();
+        assertThat(sleepLogService.getSleepStatistics(userId, FIRST_DATE, FIRST_DATE.plusDays(HISTORY_DAYS - 1L))
+                .getAverageTotalTimeInBedMinutes()).isEqualTo(8.0 * 60);
+    }
+
+    @Test
+    @Transactional
+    void exportSleepLogs_LongHistory_LeavesNoEntityInPersistenceContext() throws IOException {
+        // Arrange
+        entityManager.clear();
+
+        // Act
+        sleepLogExportService.exportSleepLogs(userId, SleepLogExportFormat.CSV, OutputStream.nullOutputStream());
+
+        // Assert - every streamed entity was detached once written
+        assertThat(entityManager.unwrap(Session.class).getStatistics().getEntityCount()).isZero();
+    }
+
+    private SleepLogRequest request(LocalDate date, Feeling feeling) {
+        Instant wake = date.atTime(6, 30).toInstant(ZoneOffset.UTC);
+        return SleepLogRequest.builder()
+                .userId(userId)
+                .sleepDate(date)
+                .bedTime(wake.minus(8, ChronoUnit.HOURS))
+                .wakeTime(wake)
+                .feeling(feeling)
+                .build();
+    }
+}
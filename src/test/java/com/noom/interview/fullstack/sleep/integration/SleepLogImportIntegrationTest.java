@@ -0,0 +1,143 @@
+package com.noom.interview.fullstack.sleep.integration;
+
+import com.noom.interview.fullstack.sleep.domain.dto.*;
+import com.noom.interview.fullstack.sleep.domain.entity.*;
+import com.noom.interview.fullstack.sleep.repository.SleepLogRepository;
+import com.noom.interview.fullstack.sleep.service.*;
+import com.noom.interview.fullstack.sleep.test.AbstractIntegrationTest;
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.*;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SleepLogImportIntegrationTest extends AbstractIntegrationTest {
+
+    @Autowired
+    private SleepLogImportService sleepLogImportService;
+
+    @Autowired
+    private SleepLogRepository sleepLogRepository;
+
+    @Autowired
+    private SleepLogRollupService sleepLogRollupService;
+
+    @Autowired
+    private SleepLogService sleepLogService;
+
+    private UUID userId;
+    private LocalDate sleepDate;
+
+    @BeforeEach
+    void setUp() {
+        sleepLogRepository.deleteAll();
+        sleepLogRollupService.rebuildAll();
+
+        userId = UUID.randomUUID();
+        sleepDate = LocalDate.of(2024, 3, 10);
+    }
+
+    @Test
+    void importSleepLogs_NdjsonPayload_ImportsValidLinesAndReportsRejects() throws IOException {
+        // Arrange
+        sleepLogRepository.save(SleepLog.builder()
+                .userId(userId)
+                .sleepDate(sleepDate.minusDays(1))
+                .bedTime(Instant.parse("2024-03-08T22:00:00Z"))
+                .wakeTime(Instant.parse("2024-03-09T06:00:00Z"))
+                .totalTimeInBedMinutes(480)
+                .feeling(Feeling.OK)
+                .build());
+
+        String payload = String.join("\n",
+                ndjsonLine(userId, "2024-03-10", "2024-03-09T23:00:00Z", "2024-03-10T06:30:00Z", "GOOD"),
+                ndjsonLine(userId, "2024-03-09", "2024-03-08T23:00:00Z", "2024-03-09T06:30:00Z", "GOOD"),
+                ndjsonLine(userId, "2024-03-11", "2024-03-11T06:00:00Z", "2024-03-10T22:00:00Z", "BAD"),
+                "{not json",
+                "",
+                ndjsonLine(userId, "2024-03-10", "2024-03-09T22:00:00Z", "2024-03-10T06:00:00Z", "BAD"),
+                "null");
+
+        // Act
+        SleepLogImportResponse response = sleepLogImportService.importSleepLogs(
+                toStream(payload), SleepLogImportFormat.NDJSON);
+
+        // Assert
+        assertThat(response.getLinesRead()).isEqualTo(6);
+        assertThat(response.getImported()).isEqualTo(1);
+        assertThat(response.getDuplicates()).isEqualTo(2);
+        assertThat(response.getRejected()).isEqualTo(3);
+        assertThat(response.getRejects()).extracting(SleepLogImportReject::getLine).containsExactly(3L, 4L, 7L);
+        assertThat(response.getRejects().get(0).getMessage()).isEqualTo("Wake time must be after bed time");
+        assertThat(response.getRejects().get(2).getMessage()).isEqualTo("Expected a sleep log object but found null");
+
+        // The first occurrence of a repeated user and date wins
+        List<SleepLog> imported = sleepLogRepository.findByUserIdAndSleepDateBetween(userId, sleepDate, sleepDate);
+        assertThat(imported).hasSize(1);
+        assertThat(imported.get(0).getFeeling()).isEqualTo(Feeling.GOOD);
+        assertThat(imported.get(0).getTotalTimeInBedMinutes()).isEqualTo(450);
+    }
+
+    @Test
+    void importSleepLogs_NewSleepLogs_IncrementsVersionOfEachImportedUser() throws IOException {
+        // Arrange
+        UUID otherUserId = UUID.randomUUID();
+        String payload = String.join("\n",
+                userId + ",2024-03-10,2024-03-09T22:00:00Z,2024-03-10T06:00:00Z,GOOD",
+                userId + ",2024-03-11,2024-03-10T22:00:00Z,2024-03-11T06:00:00Z,GOOD",
+                otherUserId + ",2024-03-10,2024-03-09T23:30:00Z,2024-03-10T07:00:00Z,OK");
+
+        // Act
+        sleepLogImportService.importSleepLogs(toStream(payload), SleepLogImportFormat.CSV);
+
+        // Assert - one version per import, not per line
+        assertThat(sleepLogService.getSleepLogVersion(userId).getVersion()).isEqualTo(1L);
+        assertThat(sleepLogService.getSleepLogVersion(otherUserId).getVersion()).isEqualTo(1L);
+    }
+
+    @Test
+    void importSleepLogs_CsvPayloadWithHeader_ImportsAllLines() throws IOException {
+        // Arrange
+        UUID otherUserId = UUID.randomUUID();
+        String payload = String.join("\n",
+                "userId,sleepDate,bedTime,wakeTime,feeling",
+                userId + ",2024-03-10,2024-03-09T22:00:00Z,2024-03-10T06:00:00Z,GOOD",
+                otherUserId + ",2024-03-10,2024-03-09T23:30:00Z,2024-03-10T07:00:00Z,OK",
+                userId + ",2024-03-11,not-a-time,2024-03-11T06:00:00Z,OK",
+                userId + ",2024-03-12,2024-03-11T22:00:00Z,GOOD");
+
+        // Act
+        SleepLogImportResponse response = sleepLogImportService.importSleepLogs(
+                toStream(payload), SleepLogImportFormat.CSV);
+
+        // Assert
+        assertThat(response.getLinesRead()).isEqualTo(4);
+        assertThat(response.getImported()).isEqualTo(2);
+        assertThat(response.getDuplicates()).isZero();
+        assertThat(response.getRejected()).isEqualTo(2);
+        assertThat(response.isRejectsTruncated()).isFalse();
+        assertThat(sleepLogRepository.findFirstByUserIdOrderBySleepDateDesc(otherUserId))
+                .get()
+                .extracting(SleepLog::getTotalTimeInBedMinutes)
+                .isEqualTo(450);
+
+        // Imported rows are added to the daily rollups in the same statement
+        SleepStatisticsAggregate aggregate = sleepLogRollupService.aggregate(otherUserId, sleepDate, sleepDate);
+        assertThat(aggregate.getLogCount()).isEqualTo(1);
+        assertThat(aggregate.getTotalTimeInBedMinutes()).isEqualTo(450);
+        assertThat(aggregate.getOkCount()).isEqualTo(1);
+    }
+
+    private String ndjsonLine(UUID user, String date, String bedTime, String wakeTime, String feeling) {
+        return String.format("{\"userId\":\"%s\",\"sleepDate\":\"%s\",\"bedTime\":\"%s\",\"wakeTime\":\"%s\","
+                + "\"feeling\":\"%s\"}", user, date, bedTime, wakeTime, feeling);
+    }
+
+    private InputStream toStream(String payload) {
+        return new ByteArrayInputStream(payload.getBytes(StandardCharsets.UTF_8));
+    }
+}
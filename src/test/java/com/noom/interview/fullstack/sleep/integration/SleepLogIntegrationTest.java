@@ -3,16 +3,20 @@ package com.noom.interview.fullstack.sleep.integration;
 import com.noom.interview.fullstack.sleep.domain.dto.*;
 import com.noom.interview.fullstack.sleep.domain.entity.*;
 import com.noom.interview.fullstack.sleep.repository.SleepLogRepository;
-import com.noom.interview.fullstack.sleep.service.SleepLogService;
+import com.noom.interview.fullstack.sleep.service.*;
 import com.noom.interview.fullstack.sleep.test.AbstractIntegrationTest;
 import org.junit.jupiter.api.*;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.*;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class SleepLogIntegrationTest extends AbstractIntegrationTest {
@@ -23,6 +27,15 @@ class SleepLogIntegrationTest extends AbstractIntegrationTest {
     @Autowired
     private SleepLogRepository sleepLogRepository;
 
+    @Autowired
+    private SleepLogRollupService sleepLogRollupService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
     private UUID userId;
     private LocalDate sleepDate;
     private Instant bedTime;
@@ -32,6 +45,7 @@ class SleepLogIntegrationTest extends AbstractIntegrationTest {
     void setUp() {
         // Clean up the database before each test
         sleepLogRepository.deleteAll();
+        sleepLogRollupService.rebuildAll();
 
         // Set up test data
         userId = UUID.randomUUID();
@@ -113,6 +127,39 @@ class SleepLogIntegrationTest extends AbstractIntegrationTest {
         assertThat(exception.getMessage()).contains("Wake time must be after bed time");
     }
 
+    @Test
+    void createSleepLogs_BatchWithExistingDate_CreatesOnlyNewSleepLogs() {
+        // Arrange
+        sleepLogRepository.save(SleepLog.builder()
+                .userId(userId)
+                .sleepDate(sleepDate)
+                .bedTime(bedTime)
+                .wakeTime(wakeTime)
+                .totalTimeInBedMinutes(480)
+                .feeling(Feeling.GOOD)
+                .build());
+
+        List<SleepLogRequest> requests = new ArrayList<>();
+        for (int daysAgo = 0; daysAgo < 60; daysAgo++) {
+            requests.add(SleepLogRequest.builder()
+                    .sleepDate(sleepDate.minusDays(daysAgo))
+                    .bedTime(bedTime.minus(daysAgo, ChronoUnit.DAYS))
+                    .wakeTime(wakeTime.minus(daysAgo, ChronoUnit.DAYS))
+                    .feeling(Feeling.OK)
+                    .build());
+        }
+
+        // Act
+        SleepLogBatchResponse response = sleepLogService.createSleepLogs(userId, requests);
+
+        // Assert
+        assertThat(response.getCreated()).isEqualTo(59);
+        assertThat(response.getDuplicates()).isEqualTo(1);
+        assertThat(response.getResults().get(0).getStatus()).isEqualTo(SleepLogBatchItemResult.Status.DUPLICATE);
+        assertThat(sleepLogRepository.findByUserIdAndSleepDateBetween(userId, sleepDate.minusDays(59), sleepDate))
+                .hasSize(60);
+    }
+
     @Test
     void getLatestSleepLog_NoSleepLogs_ReturnsEmptyOptional() {
         // Act
@@ -243,6 +290,59 @@ class SleepLogIntegrationTest extends AbstractIntegrationTest {
         assertThat(otherResponse.getFeeling()).isEqualTo(Feeling.GOOD);
     }
 
+    @Test
+    void getSleepLogs_FollowingCursors_WalksWholeHistoryOnceMostRecentFirst() {
+        // Arrange - 25 nights, every other day, plus another user's night that must not show up
+        LocalDate newest = LocalDate.of(2024, 3, 31);
+        List<SleepLogRequest> batch = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            batch.add(request(newest.minusDays(2L * i), 8 * 60, Feeling.GOOD));
+        }
+        sleepLogService.createSleepLogs(userId, batch);
+        sleepLogService.createSleepLogs(UUID.randomUUID(), List.of(request(newest.minusDays(1), 6 * 60, Feeling.BAD)));
+
+        // Act
+        List<LocalDate> dates = new ArrayList<>();
+        List<Integer> pageSizes = new ArrayList<>();
+        String cursor = null;
+        do {
+            SleepLogPageResponse page = sleepLogService.getSleepLogs(userId, null, cursor, 10);
+            page.getItems().forEach(item -> dates.add(item.getSleepDate()));
+            pageSizes.add(page.getItems().size());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+
+        // Assert
+        assertThat(pageSizes).containsExactly(10, 10, 5);
+        assertThat(dates).hasSize(25).doesNotHaveDuplicates().isSortedAccordingTo(Comparator.reverseOrder());
+        assertThat(dates.get(0)).isEqualTo(newest);
+        assertThat(sleepLogService.getSleepLogs(userId, newest.minusDays(44), null, 10).getItems())
+                .extracting(SleepLogResponse::getSleepDate)
+                .containsExactly(newest.minusDays(46), newest.minusDays(48));
+    }
+
+    @Test
+    void getSleepLogVersion_AfterEachWrite_IncrementsVersion() {
+        // Arrange
+        SleepLogVersion before = sleepLogService.getSleepLogVersion(userId);
+
+        // Act
+        sleepLogService.createSleepLog(request(sleepDate, 8 * 60, Feeling.GOOD));
+        SleepLogVersion afterCreate = sleepLogService.getSleepLogVersion(userId);
+        sleepLogService.createSleepLogs(userId, List.of(request(sleepDate, 7 * 60, Feeling.OK)));
+        SleepLogVersion afterDuplicateBatch = sleepLogService.getSleepLogVersion(userId);
+        sleepLogService.createSleepLogs(userId, List.of(request(sleepDate.minusDays(1), 7 * 60, Feeling.OK)));
+        SleepLogVersion afterBatch = sleepLogService.getSleepLogVersion(userId);
+
+        // Assert
+        assertThat(before.getVersion()).isZero();
+        assertThat(before.getModifiedAt()).isNull();
+        assertThat(afterCreate.getVersion()).isEqualTo(1L);
+        assertThat(afterCreate.getModifiedAt()).isNotNull();
+        assertThat(afterDuplicateBatch).isEqualTo(afterCreate);
+        assertThat(afterBatch.getVersion()).isEqualTo(2L);
+    }
+
     @Test
     void getSleepStatistics_NoSleepLogs_ReturnsEmptyStatistics() {
         // Act
@@ -299,6 +399,8 @@ class SleepLogIntegrationTest extends AbstractIntegrationTest {
                 .feeling(Feeling.BAD)
                 .build();
         sleepLogRepository.save(badLog);
+        // Logs saved through the repository bypass the rollups
+        sleepLogRollupService.rebuildAll();
 
         // Act
         SleepStatisticsResponse statistics = sleepLogService.getSleepStatistics(userId);
@@ -368,6 +470,7 @@ class SleepLogIntegrationTest extends AbstractIntegrationTest {
                 .feeling(Feeling.BAD)
                 .build();
         sleepLogRepository.save(otherUserLog2);
+        sleepLogRollupService.rebuildAll();
 
         // Act - Get statistics for main user
         SleepStatisticsResponse userStats = sleepLogService.getSleepStatistics(userId);
@@ -390,4 +493,197 @@ class SleepLogIntegrationTest extends AbstractIntegrationTest {
         assertThat(otherUserFeelingCounts.get(Feeling.OK)).isZero();
         assertThat(otherUserFeelingCounts).containsEntry(Feeling.BAD, 2);
     }
+
+    @Test
+    void getSleepStatistics_AfterCreateAndBatch_ReflectsNewSleepLogsWithoutRebuild() {
+        // Arrange
+        LocalDate today = LocalDate.now();
+        sleepLogService.createSleepLog(SleepLogRequest.builder()
+                .userId(userId)
+                .sleepDate(today.minusDays(1))
+                .bedTime(bedTime.minus(24, ChronoUnit.HOURS))
+                .wakeTime(wakeTime.minus(24, ChronoUnit.HOURS))
+                .feeling(Feeling.GOOD)
+                .build());
+        sleepLogService.createSleepLogs(userId, List.of(SleepLogRequest.builder()
+                .sleepDate(today.minusDays(2))
+                .bedTime(bedTime.minus(48, ChronoUnit.HOURS))
+                .wakeTime(wakeTime.minus(48, ChronoUnit.HOURS))
+                .feeling(Feeling.BAD)
+                .build()));
+
+        // Act
+        SleepStatisticsResponse statistics = sleepLogService.getSleepStatistics(userId);
+
+        // Assert
+        assertThat(statistics.getAverageTotalTimeInBedMinutes()).isEqualTo(480.0);
+        assertThat(statistics.getFeelingCounts())
+                .containsEntry(Feeling.GOOD, 1)
+                .containsEntry(Feeling.OK, 0)
+                .containsEntry(Feeling.BAD, 1);
+    }
+
+    @Test
+    void getSleepStatistics_DateRangeWithBackfilledSleepLogs_ReturnsStatisticsOfRange() {
+        // Arrange - write newest first so that older days are inserted before existing running totals
+        LocalDate day = LocalDate.of(2024, 3, 10);
+        sleepLogService.createSleepLog(request(day, 8 * 60, Feeling.GOOD));
+        sleepLogService.createSleepLog(request(day.minusDays(10), 6 * 60, Feeling.BAD));
+        sleepLogService.createSleepLogs(userId, List.of(
+                request(day.minusDays(5), 7 * 60, Feeling.OK),
+                request(day.minusDays(20), 9 * 60, Feeling.GOOD)));
+
+        // Act
+        SleepStatisticsResponse middle =
+                sleepLogService.getSleepStatistics(userId, day.minusDays(10), day.minusDays(1));
+        SleepStatisticsResponse all = sleepLogService.getSleepStatistics(userId, day.minusDays(365), day);
+        SleepStatisticsResponse none = sleepLogService.getSleepStatistics(userId, day.plusDays(1), day.plusDays(7));
+
+        // Assert
+        assertThat(middle.getDateRange()).isEqualTo(new DateRange(day.minusDays(10), day.minusDays(1)));
+        assertThat(middle.getAverageTotalTimeInBedMinutes()).isEqualTo(390.0);
+        assertThat(middle.getFeelingCounts())
+                .containsEntry(Feeling.BAD, 1)
+                .containsEntry(Feeling.OK, 1)
+                .containsEntry(Feeling.GOOD, 0);
+
+        assertThat(all.getAverageTotalTimeInBedMinutes()).isEqualTo(450.0);
+        assertThat(all.getFeelingCounts()).containsEntry(Feeling.GOOD, 2);
+
+        assertThat(none.getAverageTotalTimeInBedMinutes()).isEqualTo(0.0);
+        assertThat(none.getAverageBedTime()).isNull();
+    }
+
+    @Test
+    void getSleepStatistics_BackfilledSleepLogs_PercentilesMatchRebuiltRollups() {
+        // Arrange - 300 to 750 minutes in bed, written out of date order through both write paths
+        LocalDate day = LocalDate.of(2024, 3, 10);
+        for (int i = 0; i < 5; i++) {
+            sleepLogService.createSleepLog(request(day.minusDays(i), 300 + 100 * i, Feeling.GOOD));
+        }
+        List<SleepLogRequest> batch = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            batch.add(request(day.minusDays(10 + i), 350 + 100 * i, Feeling.OK));
+        }
+        sleepLogService.createSleepLogs(userId, batch);
+
+        // Act
+        SleepStatisticsResponse written = sleepLogService.getSleepStatistics(userId, day.minusDays(30), day);
+        sleepLogRollupService.rebuildAll();
+        SleepStatisticsResponse rebuilt = sleepLogService.getSleepStatistics(userId, day.minusDays(30), day);
+
+        // Assert
+        DurationPercentiles timeInBed = written.getTotalTimeInBedMinutesPercentiles();
+        assertThat(timeInBed.getMedian()).isCloseTo(525.0, within(30.0));
+        assertThat(timeInBed.getP10()).isLessThanOrEqualTo(timeInBed.getMedian());
+        assertThat(timeInBed.getP90()).isGreaterThanOrEqualTo(timeInBed.getMedian());
+        assertThat(written.getWakeTimePercentiles().getMedian()).isBetween(LocalTime.of(7, 0), LocalTime.of(7, 15));
+        assertThat(written).isEqualTo(rebuilt);
+    }
+
+    @Test
+    void createSleepLogs_BackfillBetweenExistingNights_UpdatesEachLaterRollupOnce() {
+        // Arrange - ten nights every other day, then a batch of five older and in-between nights, newest first
+        LocalDate day = LocalDate.of(2024, 3, 20);
+        List<SleepLogRequest> existing = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            existing.add(request(day.minusDays(2L * i), 360 + 10 * i, Feeling.GOOD));
+        }
+        sleepLogService.createSleepLogs(userId, existing);
+        List<SleepLogRequest> backfill = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            backfill.add(request(day.minusDays(3 + 4L * i), 420 + 30 * i, Feeling.BAD));
+        }
+
+        // Act - the statistics counters of a transaction only cover that transaction
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        Long updatedRollups = template.execute(status -> {
+            sleepLogService.createSleepLogs(userId, backfill);
+            return jdbcTemplate.queryForObject(
+                    "SELECT pg_stat_get_xact_tuples_updated('sleep_log_daily_rollups'::regclass)", Long.class);
+        });
+        SleepStatisticsResponse written = sleepLogService.getSleepStatistics(userId, day.minusDays(30), day);
+        sleepLogRollupService.rebuildAll();
+        SleepStatisticsResponse rebuilt = sleepLogService.getSleepStatistics(userId, day.minusDays(30), day);
+
+        // Assert - the fifteen rows from the oldest backfilled night on, once each, instead of once per sleep log
+        assertThat(updatedRollups).isEqualTo(15L);
+        assertThat(written.getFeelingCounts()).containsEntry(Feeling.BAD, 5).containsEntry(Feeling.GOOD, 10);
+        assertThat(written).isEqualTo(rebuilt);
+    }
+
+    @Test
+    void getSleepTrends_WeeklyBuckets_EachPointMatchesStatisticsOfItsWeek() {
+        // Arrange - Wednesday 2024-03-06 to Sunday 2024-03-24, every other day, newest first
+        LocalDate from = LocalDate.of(2024, 3, 6);
+        LocalDate to = LocalDate.of(2024, 3, 24);
+        List<SleepLogRequest> batch = new ArrayList<>();
+        for (LocalDate date = to; !date.isBefore(from); date = date.minusDays(2)) {
+            batch.add(request(date, 360 + date.getDayOfMonth() * 5, Feeling.OK));
+        }
+        sleepLogService.createSleepLogs(userId, batch);
+
+        // Act
+        SleepTrendResponse trends = sleepLogService.getSleepTrends(userId, TrendBucket.WEEK, from, to);
+
+        // Assert
+        assertThat(trends.getPoints())
+                .extracting(SleepStatisticsResponse::getDateRange)
+                .containsExactly(
+                        new DateRange(from, LocalDate.of(2024, 3, 10)),
+                        new DateRange(LocalDate.of(2024, 3, 11), LocalDate.of(2024, 3, 17)),
+                        new DateRange(LocalDate.of(2024, 3, 18), to));
+        for (SleepStatisticsResponse point : trends.getPoints()) {
+            assertThat(point).isEqualTo(sleepLogService.getSleepStatistics(
+                    userId, point.getDateRange().getFrom(), point.getDateRange().getTo()));
+        }
+        assertThat(trends.getPoints().get(0).getFeelingCounts()).containsEntry(Feeling.OK, 3);
+    }
+
+    @Test
+    void getCohortStatistics_ThreeUsers_EachUserMatchesStatisticsAndCohortSumsAllLogs() {
+        // Arrange
+        LocalDate day = LocalDate.of(2024, 3, 10);
+        UUID otherUserId = UUID.randomUUID();
+        UUID userWithoutLogs = UUID.randomUUID();
+        sleepLogService.createSleepLogs(userId, List.of(
+                request(day, 8 * 60, Feeling.GOOD),
+                request(day.minusDays(1), 7 * 60, Feeling.OK)));
+        sleepLogService.createSleepLogs(otherUserId, List.of(
+                request(day, 6 * 60, Feeling.BAD),
+                request(day.minusDays(40), 9 * 60, Feeling.GOOD)));
+        CohortStatisticsRequest cohortRequest = CohortStatisticsRequest.builder()
+                .userIds(List.of(userWithoutLogs, userId, otherUserId))
+                .from(day.minusDays(29))
+                .to(day)
+                .build();
+        List<UserSleepStatistics> users = new ArrayList<>();
+
+        // Act
+        SleepStatisticsResponse cohort = sleepLogService.getCohortStatistics(cohortRequest, users::add);
+
+        // Assert
+        assertThat(users).extracting(UserSleepStatistics::getUserId)
+                .containsExactly(userWithoutLogs, userId, otherUserId);
+        for (UserSleepStatistics user : users) {
+            assertThat(user.getStatistics()).isEqualTo(
+                    sleepLogService.getSleepStatistics(user.getUserId(), day.minusDays(29), day));
+        }
+        assertThat(cohort.getAverageTotalTimeInBedMinutes()).isEqualTo(420.0);
+        assertThat(cohort.getFeelingCounts())
+                .containsEntry(Feeling.GOOD, 1)
+                .containsEntry(Feeling.OK, 1)
+                .containsEntry(Feeling.BAD, 1);
+    }
+
+    private SleepLogRequest request(LocalDate date, int minutesInBed, Feeling feeling) {
+        Instant wake = date.atTime(7, 0).atZone(ZoneId.systemDefault()).toInstant();
+        return SleepLogRequest.builder()
+                .userId(userId)
+                .sleepDate(date)
+                .bedTime(wake.minus(minutesInBed, ChronoUnit.MINUTES))
+                .wakeTime(wake)
+                .feeling(feeling)
+                .build();
+    }
 }
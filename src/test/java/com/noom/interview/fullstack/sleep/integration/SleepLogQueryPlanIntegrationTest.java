@@ -0,0 +1,285 @@
+package com.noom.interview.fullstack.sleep.integration;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.*;
+import com.noom.interview.fullstack.sleep.job.SleepLogPartitionJob;
+import com.noom.interview.fullstack.sleep.repository.SleepLogRepository;
+import com.noom.interview.fullstack.sleep.service.SleepLogRollupService;
+import com.noom.interview.fullstack.sleep.test.AbstractIntegrationTest;
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.*;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that the read queries behind /latest, the history pages and /statistics are answered from the covering
+ * indexes alone, and that date range reads only touch the monthly partitions of their range. Sequential scans are
+ * disabled so that the small test tables do not make the planner prefer them, and the tables are vacuumed so that
+ * the visibility map allows index-only scans without heap fetches.
+ */
+class SleepLogQueryPlanIntegrationTest extends AbstractIntegrationTest {
+
+    private static final int USERS = 20;
+    private static final int DAYS_PER_USER = 60;
+
+    private static final String SEED_USER = "INSERT INTO sleep_logs (id, user_id, sleep_date, bed_time, wake_time, "
+            + "total_time_in_bed_minutes, bed_time_of_day_seconds, wake_time_of_day_seconds, feeling, created_at) "
+            + "SELECT nextval('sleep_logs_seq'), ?, CURRENT_DATE - d, "
+            + "(CURRENT_DATE - d - 1) + TIME '22:00', (CURRENT_DATE - d) + TIME '06:00', "
+            + "480, 79200, 21600, 'GOOD', now() "
+            + "FROM generate_series(0, ?) AS d";
+
+    // Mirror the SQL generated for SleepLogRepository.findLatestResponseByUserId
+    private static final String LATEST_QUERY = "SELECT sleep_date, bed_time, wake_time, total_time_in_bed_minutes, "
+            + "feeling FROM sleep_logs WHERE user_id = '%s' ORDER BY sleep_date DESC LIMIT 1";
+
+    // Mirror the SQL generated for SleepLogRepository.findResponsesByUserIdAndSleepDateBetween
+    private static final String RANGE_QUERY = "SELECT sleep_date, bed_time, wake_time, total_time_in_bed_minutes, "
+            + "feeling FROM sleep_logs WHERE user_id = '%s' AND sleep_date BETWEEN '%s' AND '%s' ORDER BY sleep_date";
+
+    // Mirror the SQL generated for SleepLogRepository.findResponsesByUserIdAndSleepDateBeforeOrderBySleepDateDesc
+    private static final String HISTORY_PAGE_QUERY = "SELECT sleep_date, bed_time, wake_time, "
+            + "total_time_in_bed_minutes, feeling FROM sleep_logs WHERE user_id = '%s' AND sleep_date < '%s' "
+            + "ORDER BY sleep_date DESC LIMIT %d";
+
+    // RANGE_QUERY with parameters, as the repository runs it
+    private static final String PREPARE_RANGE_QUERY = "PREPARE range_query(uuid, date, date) AS "
+            + "SELECT sleep_date, bed_time, wake_time, total_time_in_bed_minutes, feeling FROM sleep_logs "
+            + "WHERE user_id = $1 AND sleep_date BETWEEN $2 AND $3 ORDER BY sleep_date";
+
+    private static final int PAGE_ROWS = 21;
+
+    // The covering index of sleep_logs and its copy on every monthly partition
+    private static final String COVERING_INDEX = "(ux_sleeplogs|sleep_logs_\\w+)_user_date_covering";
+
+    // Mirror the running total lookups of SleepLogStatements.AGGREGATE_RANGE
+    private static final String STATISTICS_QUERY = "SELECT "
+            + "COALESCE(u.cum_log_count, 0) - COALESCE(l.cum_log_count, 0), "
+            + "COALESCE(u.cum_good_count, 0) - COALESCE(l.cum_good_count, 0) "
+            + "FROM (SELECT 1) AS one "
+            + "LEFT JOIN LATERAL (SELECT cum_log_count, cum_total_time_in_bed_minutes, cum_bed_time_seconds, "
+            + "cum_wake_time_seconds, cum_bad_count, cum_ok_count, cum_good_count FROM sleep_log_daily_rollups "
+            + "WHERE user_id = '%1$s' AND sleep_date <= '%3$s' ORDER BY sleep_date DESC LIMIT 1) AS u ON TRUE "
+            + "LEFT JOIN LATERAL (SELECT cum_log_count, cum_total_time_in_bed_minutes, cum_bed_time_seconds, "
+            + "cum_wake_time_seconds, cum_bad_count, cum_ok_count, cum_good_count FROM sleep_log_daily_rollups "
+            + "WHERE user_id = '%1$s' AND sleep_date < '%2$s' ORDER BY sleep_date DESC LIMIT 1) AS l ON TRUE";
+
+    // Mirror the running histogram lookups of SleepLogStatements.AGGREGATE_RANGE
+    private static final String STATISTICS_HISTOGRAM_QUERY = "SELECT "
+            + "uh.cum_time_in_bed_histogram, lh.cum_time_in_bed_histogram "
+            + "FROM (SELECT 1) AS one "
+            + "LEFT JOIN LATERAL (SELECT cum_time_in_bed_histogram, cum_bed_time_histogram, cum_wake_time_histogram "
+            + "FROM sleep_log_daily_rollups "
+            + "WHERE user_id = '%1$s' AND sleep_date <= '%3$s' ORDER BY sleep_date DESC LIMIT 1) AS uh ON TRUE "
+            + "LEFT JOIN LATERAL (SELECT cum_time_in_bed_histogram, cum_bed_time_histogram, cum_wake_time_histogram "
+            + "FROM sleep_log_daily_rollups "
+            + "WHERE user_id = '%1$s' AND sleep_date < '%2$s' ORDER BY sleep_date DESC LIMIT 1) AS lh ON TRUE";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private SleepLogRepository sleepLogRepository;
+
+    @Autowired
+    private SleepLogRollupService sleepLogRollupService;
+
+    @Autowired
+    private SleepLogPartitionJob sleepLogPartitionJob;
+
+    private UUID userId;
+    private LocalDate today;
+
+    @BeforeEach
+    void setUp() {
+        sleepLogRepository.deleteAll();
+
+        List<UUID> userIds = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            UUID seededUserId = UUID.randomUUID();
+            jdbcTemplate.update(SEED_USER, seededUserId, DAYS_PER_USER - 1);
+            userIds.add(seededUserId);
+        }
+        sleepLogRollupService.rebuildAll();
+        // The seeded months before the current one start out in the default partition
+        sleepLogPartitionJob.createPartitions();
+
+        // VACUUM cannot run inside a transaction; JdbcTemplate runs it in auto-commit mode
+        jdbcTemplate.execute("VACUUM ANALYZE sleep_logs");
+        jdbcTemplate.execute("VACUUM ANALYZE sleep_log_daily_rollups");
+
+        userId = userIds.get(USERS / 2);
+        today = LocalDate.now();
+    }
+
+    @Test
+    void latestQuery_UsesIndexOnlyScanOnCoveringIndex() {
+        // Act
+        JsonNode plan = explain(String.format(LATEST_QUERY, userId));
+
+        // Assert
+        assertIndexOnlyScan(plan, COVERING_INDEX);
+    }
+
+    @Test
+    void rangeQuery_UsesIndexOnlyScanOnCoveringIndex() {
+        // Act
+        JsonNode plan = explain(String.format(RANGE_QUERY, userId, today.minusDays(30), today));
+
+        // Assert
+        assertIndexOnlyScan(plan, COVERING_INDEX);
+    }
+
+    @Test
+    void historyPageQuery_DeepPage_ReadsOnlyItsOwnRowsFromCoveringIndex() {
+        // Act - the last full page of the user's history
+        JsonNode plan = explain(String.format(HISTORY_PAGE_QUERY, userId,
+                today.minusDays(DAYS_PER_USER - PAGE_ROWS - 1L), PAGE_ROWS));
+
+        // Assert - a seek, not a scan past the newer rows as an OFFSET would. The partitions are merged in date
+        // order, and each partition that is not exhausted reads one row past the last row it returned.
+        assertIndexOnlyScan(plan, COVERING_INDEX);
+        List<JsonNode> scans = indexOnlyScans(plan);
+        assertThat(scans.stream().mapToLong(scan -> scan.get("Actual Rows").asLong()).sum())
+                .as("rows read by %s", plan)
+                .isBetween((long) PAGE_ROWS, (long) PAGE_ROWS + scans.size());
+    }
+
+    @Test
+    void rangeQuery_StatisticsWindow_ReadsAtMostTwoPartitions() {
+        // Act
+        JsonNode plan = explain(String.format(RANGE_QUERY, userId, today.minusDays(29), today));
+
+        // Assert
+        assertThat(indexOnlyScans(plan))
+                .as("partitions read by %s", plan)
+                .extracting(scan -> scan.get("Relation Name").asText())
+                .hasSizeBetween(1, 2)
+                .allSatisfy(partition -> assertThat(partition).matches("sleep_logs_y\\d{4}m\\d{2}"));
+    }
+
+    @Test
+    void rangeQuery_PreparedWithGenericPlan_PrunesPartitionsAtExecution() {
+        // Act - parameters are only known when a generic plan runs, so pruning moves from planning to execution
+        JsonNode plan = jdbcTemplate.execute((ConnectionCallback<JsonNode>) connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET plan_cache_mode = force_generic_plan");
+                statement.execute(PREPARE_RANGE_QUERY);
+                try {
+                    return explainStatement(statement, String.format("EXECUTE range_query('%s', '%s', '%s')",
+                            userId, today.minusDays(29), today));
+                } finally {
+                    statement.execute("DEALLOCATE range_query");
+                    statement.execute("RESET plan_cache_mode");
+                }
+            }
+        });
+
+        // Assert
+        assertThat(indexOnlyScans(plan)).as("partitions read by %s", plan).hasSizeBetween(1, 2);
+        List<JsonNode> nodes = new ArrayList<>();
+        collectNodes(plan, nodes);
+        assertThat(nodes.stream().mapToInt(node -> node.path("Subplans Removed").asInt()).sum())
+                .as("partitions pruned by %s", plan)
+                .isPositive();
+    }
+
+    @Test
+    void statisticsQuery_UsesIndexOnlyScanOnRollupPrimaryKey() {
+        // Act
+        JsonNode plan = explain(String.format(STATISTICS_QUERY, userId, today.minusDays(30), today));
+
+        // Assert
+        assertIndexOnlyScan(plan, "sleep_log_daily_rollups_pkey");
+    }
+
+    @Test
+    void statisticsHistogramQuery_ReadsOneRowPerBoundaryThroughRollupPrimaryKey() {
+        // Act
+        JsonNode plan = explain(String.format(STATISTICS_HISTOGRAM_QUERY, userId, today.minusDays(30), today));
+
+        // Assert - the primary key leaves the histograms out; each boundary is a backward seek that fetches a
+        // single row from the heap
+        List<JsonNode> nodes = new ArrayList<>();
+        collectNodes(plan, nodes);
+        assertThat(nodes)
+                .as("plan nodes of %s", plan)
+                .extracting(node -> node.get("Node Type").asText())
+                .doesNotContain("Seq Scan", "Bitmap Heap Scan");
+        assertThat(nodes)
+                .filteredOn(node -> "Index Scan".equals(node.get("Node Type").asText()))
+                .as("index scans of %s", plan)
+                .hasSize(2)
+                .allSatisfy(scan -> {
+                    assertThat(scan.get("Index Name").asText()).isEqualTo("sleep_log_daily_rollups_pkey");
+                    assertThat(scan.get("Actual Rows").asLong()).as("rows read by %s", plan).isLessThanOrEqualTo(1);
+                });
+    }
+
+    private JsonNode explain(String query) {
+        return jdbcTemplate.execute((ConnectionCallback<JsonNode>) connection -> {
+            try (Statement statement = connection.createStatement()) {
+                return explainStatement(statement, query);
+            }
+        });
+    }
+
+    private JsonNode explainStatement(Statement statement, String query) throws SQLException {
+        String json;
+        statement.execute("SET enable_seqscan = off");
+        try (ResultSet resultSet = statement.executeQuery("EXPLAIN (ANALYZE, BUFFERS, FORMAT JSON) " + query)) {
+            resultSet.next();
+            json = resultSet.getString(1);
+        } finally {
+            statement.execute("RESET enable_seqscan");
+        }
+
+        try {
+            return objectMapper.readTree(json).get(0).get("Plan");
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unreadable plan: " + json, e);
+        }
+    }
+
+    private List<JsonNode> indexOnlyScans(JsonNode plan) {
+        List<JsonNode> nodes = new ArrayList<>();
+        collectNodes(plan, nodes);
+        return nodes.stream()
+                .filter(node -> "Index Only Scan".equals(node.get("Node Type").asText()))
+                .toList();
+    }
+
+    private void assertIndexOnlyScan(JsonNode plan, String indexNamePattern) {
+        List<JsonNode> nodes = new ArrayList<>();
+        collectNodes(plan, nodes);
+
+        assertThat(nodes)
+                .as("plan nodes of %s", plan)
+                .extracting(node -> node.get("Node Type").asText())
+                .contains("Index Only Scan")
+                .doesNotContain("Seq Scan", "Index Scan", "Bitmap Heap Scan");
+
+        assertThat(nodes)
+                .filteredOn(node -> "Index Only Scan".equals(node.get("Node Type").asText()))
+                .allSatisfy(scan -> {
+                    assertThat(scan.get("Index Name").asText()).matches(indexNamePattern);
+                    assertThat(scan.get("Heap Fetches").asLong()).as("heap fetches of %s", plan).isZero();
+                });
+    }
+
+    private void collectNodes(JsonNode node, List<JsonNode> nodes) {
+        nodes.add(node);
+        JsonNode children = node.get("Plans");
+        if (children != null) {
+            children.forEach(child -> collectNodes(child, nodes));
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.noom.interview.fullstack.sleep.integration;
+
+import com.noom.interview.fullstack.sleep.config.CacheConfig;
+import com.noom.interview.fullstack.sleep.domain.dto.*;
+import com.noom.interview.fullstack.sleep.domain.entity.Feeling;
+import com.noom.interview.fullstack.sleep.service.SleepLogService;
+import com.noom.interview.fullstack.sleep.test.AbstractIntegrationTest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.*;
+
+import java.io.*;
+import java.time.*;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SleepStatisticsCacheIntegrationTest extends AbstractIntegrationTest {
+
+    @Autowired
+    private SleepLogService sleepLogService;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private UUID userId;
+    private Cache cache;
+
+    @BeforeEach
+    void setUp() {
+        userId = UUID.randomUUID();
+        cache = cacheManager.getCache(CacheConfig.SLEEP_STATISTICS_CACHE);
+    }
+
+    @Test
+    void getSleepStatistics_RepeatedCalls_ServedFromCache() {
+        // Arrange
+        double hitsBefore = cacheGets("hit");
+
+        // Act
+        SleepStatisticsResponse first = sleepLogService.getSleepStatistics(userId);
+        SleepStatisticsResponse second = sleepLogService.getSleepStatistics(userId);
+
+        // Assert
+        assertThat(second).isSameAs(first);
+        assertThat(cache.get(userId)).isNotNull();
+        assertThat(cacheGets("hit")).isGreaterThan(hitsBefore);
+    }
+
+    @Test
+    void getSerializedSleepStatistics_RepeatedCalls_ServesSameBytesOfStatistics() throws IOException {
+        // Arrange
+        sleepLogService.createSleepLog(request(LocalDate.now().minusDays(1)));
+
+        // Act
+        SerializedJson first = sleepLogService.getSerializedSleepStatistics(userId);
+        SerializedJson second = sleepLogService.getSerializedSleepStatistics(userId);
+
+        // Assert
+        assertThat(second).isSameAs(first);
+        assertThat(objectMapper.readValue(first.getJson(), SleepStatisticsResponse.class))
+                .isEqualTo(sleepLogService.getSleepStatistics(userId));
+        try (InputStream gzipped = new GZIPInputStream(new ByteArrayInputStream(first.getGzippedJson()))) {
+            assertThat(gzipped.readAllBytes()).isEqualTo(first.getJson());
+        }
+    }
+
+    @Test
+    void getSerializedSleepStatistics_CacheMiss_SerializesStatisticsCachedForUser() throws IOException {
+        // Arrange
+        sleepLogService.createSleepLog(request(LocalDate.now().minusDays(1)));
+
+        // Act
+        SerializedJson serialized = sleepLogService.getSerializedSleepStatistics(userId);
+
+        // Assert - the statistics were calculated once, into the statistics cache, and serialized from there
+        Cache.ValueWrapper cached = cache.get(userId);
+        assertThat(cached).isNotNull();
+        assertThat(sleepLogService.getSleepStatistics(userId)).isSameAs(cached.get());
+        assertThat(objectMapper.readValue(serialized.getJson(), SleepStatisticsResponse.class))
+                .isEqualTo(cached.get());
+    }
+
+    @Test
+    void createSleepLog_CommittedWrite_EvictsSerializedStatistics() {
+        // Arrange
+        SerializedJson before = sleepLogService.getSerializedSleepStatistics(userId);
+
+        // Act
+        sleepLogService.createSleepLog(request(LocalDate.now().minusDays(1)));
+
+        // Assert
+        assertThat(cacheManager.getCache(CacheConfig.SLEEP_STATISTICS_JSON_CACHE).get(userId)).isNull();
+        assertThat(sleepLogService.getSerializedSleepStatistics(userId).getJson()).isNotEqualTo(before.getJson());
+    }
+
+    @Test
+    void createSleepLog_CommittedWrite_EvictsUserStatistics() {
+        // Arrange
+        UUID otherUserId = UUID.randomUUID();
+        sleepLogService.getSleepStatistics(userId);
+        sleepLogService.getSleepStatistics(otherUserId);
+
+        // Act
+        sleepLogService.createSleepLog(request(LocalDate.now().minusDays(1)));
+
+        // Assert
+        assertThat(cache.get(userId)).isNull();
+        assertThat(cache.get(otherUserId)).isNotNull();
+        assertThat(sleepLogService.getSleepStatistics(userId).getFeelingCounts()).containsEntry(Feeling.GOOD, 1);
+    }
+
+    @Test
+    void createSleepLog_RolledBackWrite_KeepsUserStatistics() {
+        // Arrange
+        LocalDate sleepDate = LocalDate.now().minusDays(1);
+        sleepLogService.createSleepLog(request(sleepDate));
+        SleepStatisticsResponse cached = sleepLogService.getSleepStatistics(userId);
+
+        // Act
+        assertThrows(IllegalStateException.class, () -> sleepLogService.createSleepLog(request(sleepDate)));
+
+        // Assert
+        assertThat(sleepLogService.getSleepStatistics(userId)).isSameAs(cached);
+    }
+
+    private SleepLogRequest request(LocalDate sleepDate) {
+        Instant wakeTime = sleepDate.atTime(7, 0).atZone(ZoneId.systemDefault()).toInstant();
+        return SleepLogRequest.builder()
+                .userId(userId)
+                .sleepDate(sleepDate)
+                .bedTime(wakeTime.minus(8, ChronoUnit.HOURS))
+                .wakeTime(wakeTime)
+                .feeling(Feeling.GOOD)
+                .build();
+    }
+
+    private double cacheGets(String result) {
+        return meterRegistry.get("cache.gets")
+                .tag("cache", CacheConfig.SLEEP_STATISTICS_CACHE)
+                .tag("result", result)
+                .functionCounter()
+                .count();
+    }
+}
@@ -0,0 +1,82 @@
+package com.noom.interview.fullstack.sleep.integration;
+
+import com.noom.interview.fullstack.sleep.domain.dto.SleepLogRequest;
+import com.noom.interview.fullstack.sleep.domain.entity.Feeling;
+import com.noom.interview.fullstack.sleep.service.SleepLogService;
+import com.noom.interview.fullstack.sleep.test.AbstractIntegrationTest;
+import jdk.jfr.consumer.*;
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.time.*;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks with JFR that creating sleep logs and loading statistics on virtual threads never blocks while pinned to
+ * a carrier thread.
+ */
+class VirtualThreadPinningIntegrationTest extends AbstractIntegrationTest {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final int USERS = 50;
+
+    @Autowired
+    private SleepLogService sleepLogService;
+
+    @Test
+    void createSleepLogAndGetSleepStatistics_OnVirtualThreads_NeverPinCarrier() throws Exception {
+        // Arrange
+        List<String> pinnedStacks = new CopyOnWriteArrayList<>();
+        List<Future<?>> futures = new ArrayList<>();
+
+        try (RecordingStream recording = new RecordingStream()) {
+            recording.enable(PINNED_EVENT).withThreshold(Duration.ZERO).withStackTrace();
+            // JFR cuts stacks at 64 frames, so the service frames may be missing: the only virtual threads are ours
+            recording.onEvent(PINNED_EVENT, event -> pinnedStacks.add(stack(event)));
+            recording.startAsync();
+
+            // Act: cache misses of the same user coalesce while a create of that user evicts them
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < USERS; i++) {
+                    UUID userId = UUID.randomUUID();
+                    futures.add(executor.submit(() -> sleepLogService.getSleepStatistics(userId)));
+                    futures.add(executor.submit(() -> sleepLogService.createSleepLog(request(userId))));
+                    futures.add(executor.submit(() -> sleepLogService.getSleepStatistics(userId)));
+                    futures.add(executor.submit(() -> sleepLogService.getSerializedSleepStatistics(userId)));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            }
+            recording.stop();
+        }
+
+        // Assert
+        assertThat(pinnedStacks).isEmpty();
+    }
+
+    private static SleepLogRequest request(UUID userId) {
+        Instant wakeTime = Instant.now().truncatedTo(ChronoUnit.MINUTES);
+        return SleepLogRequest.builder()
+                .userId(userId)
+                .sleepDate(LocalDate.now())
+                .bedTime(wakeTime.minus(8, ChronoUnit.HOURS))
+                .wakeTime(wakeTime)
+                .feeling(Feeling.GOOD)
+                .build();
+    }
+
+    private static String stack(RecordedEvent event) {
+        if (event.getStackTrace() == null) {
+            return "";
+        }
+        return event.getStackTrace().getFrames().stream()
+                .map(frame -> frame.getMethod().getType().getName() + "." + frame.getMethod().getName())
+                .collect(Collectors.joining(System.lineSeparator()));
+    }
+}
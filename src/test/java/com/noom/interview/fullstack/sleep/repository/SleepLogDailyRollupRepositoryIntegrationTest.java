@@ -0,0 +1,117 @@
+package com.noom.interview.fullstack.sleep.repository;
+
+import com.noom.interview.fullstack.sleep.domain.entity.*;
+import com.noom.interview.fullstack.sleep.test.AbstractIntegrationTest;
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.*;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Transactional
+class SleepLogDailyRollupRepositoryIntegrationTest extends AbstractIntegrationTest {
+
+    @Autowired
+    private SleepLogRepository sleepLogRepository;
+
+    @Autowired
+    private SleepLogDailyRollupRepository sleepLogDailyRollupRepository;
+
+    private UUID userId;
+    private LocalDate today;
+
+    @BeforeEach
+    void setUp() {
+        // Clean up the database before each test
+        sleepLogRepository.deleteAll();
+        sleepLogDailyRollupRepository.deleteAllInBatch();
+
+        userId = UUID.randomUUID();
+        today = LocalDate.of(2024, 3, 10);
+
+        sleepLogRepository.saveAll(List.of(
+                createSleepLog(today, "2024-03-09T22:00:00Z", "2024-03-10T06:00:00Z", Feeling.GOOD),
+                createSleepLog(today.minusDays(1), "2024-03-08T23:00:00Z", "2024-03-09T07:00:00Z", Feeling.OK),
+                createSleepLog(today.minusDays(2), "2024-03-08T00:30:00Z", "2024-03-08T06:30:00Z", Feeling.BAD)));
+        sleepLogRepository.flush();
+        sleepLogRepository.fillMissingTimesOfDay("UTC");
+    }
+
+    @Test
+    void insertFromSleepLogs_shouldCreateOneRollupPerUserAndDate() {
+        // When
+        int rows = sleepLogDailyRollupRepository.insertFromSleepLogs();
+
+        // Then
+        assertThat(rows).isEqualTo(3);
+        assertThat(sleepLogDailyRollupRepository.findById(new SleepLogDailyRollupId(userId, today)))
+                .get()
+                .satisfies(rollup -> {
+                    assertThat(rollup.getLogCount()).isEqualTo(1);
+                    assertThat(rollup.getBedTimeSeconds()).isEqualTo(LocalTime.of(22, 0).toSecondOfDay());
+                    assertThat(rollup.getWakeTimeSeconds()).isEqualTo(LocalTime.of(6, 0).toSecondOfDay());
+                    assertThat(rollup.getGoodCount()).isEqualTo(1);
+                });
+    }
+
+    @Test
+    void insertFromSleepLogs_shouldComputeRunningTotalsPerUser() {
+        // Given
+        sleepLogDailyRollupRepository.insertFromSleepLogs();
+
+        // When
+        SleepLogDailyRollup first = sleepLogDailyRollupRepository
+                .findById(new SleepLogDailyRollupId(userId, today.minusDays(2))).orElseThrow();
+        SleepLogDailyRollup last = sleepLogDailyRollupRepository
+                .findById(new SleepLogDailyRollupId(userId, today)).orElseThrow();
+
+        // Then
+        assertThat(first.getCumLogCount()).isEqualTo(1);
+        assertThat(first.getCumBadCount()).isEqualTo(1);
+        assertThat(last.getCumLogCount()).isEqualTo(3);
+        assertThat(last.getCumTotalTimeInBedMinutes()).isEqualTo(3 * 480);
+        assertThat(last.getCumBedTimeSeconds()).isEqualTo(LocalTime.of(22, 0).toSecondOfDay()
+                + LocalTime.of(23, 0).toSecondOfDay() + LocalTime.of(0, 30).toSecondOfDay());
+        assertThat(last.getCumBadCount()).isEqualTo(1);
+        assertThat(last.getCumOkCount()).isEqualTo(1);
+        assertThat(last.getCumGoodCount()).isEqualTo(1);
+    }
+
+    @Test
+    void insertFromSleepLogs_shouldComputeRunningHistogramsPerUser() {
+        // Given
+        sleepLogDailyRollupRepository.insertFromSleepLogs();
+
+        // When
+        SleepLogDailyRollup first = sleepLogDailyRollupRepository
+                .findById(new SleepLogDailyRollupId(userId, today.minusDays(2))).orElseThrow();
+        SleepLogDailyRollup last = sleepLogDailyRollupRepository
+                .findById(new SleepLogDailyRollupId(userId, today)).orElseThrow();
+
+        // Then
+        // 480 minutes fall into the 15-minute bucket 32; 00:30, 22:00 and 23:00 into the 900-second buckets 2, 88, 92
+        assertThat(first.getCumTimeInBedHistogram()).hasSize(96);
+        assertThat(first.getCumTimeInBedHistogram()[32]).isEqualTo(1);
+        assertThat(Arrays.stream(first.getCumBedTimeHistogram()).sum()).isEqualTo(1);
+        assertThat(first.getCumBedTimeHistogram()[2]).isEqualTo(1);
+        assertThat(last.getCumTimeInBedHistogram()[32]).isEqualTo(3);
+        assertThat(last.getCumBedTimeHistogram()[2]).isEqualTo(1);
+        assertThat(last.getCumBedTimeHistogram()[88]).isEqualTo(1);
+        assertThat(last.getCumBedTimeHistogram()[92]).isEqualTo(1);
+        assertThat(Arrays.stream(last.getCumWakeTimeHistogram()).sum()).isEqualTo(3);
+    }
+
+    private SleepLog createSleepLog(LocalDate sleepDate, String bedTime, String wakeTime, Feeling feeling) {
+        return SleepLog.builder()
+                .userId(userId)
+                .sleepDate(sleepDate)
+                .bedTime(Instant.parse(bedTime))
+                .wakeTime(Instant.parse(wakeTime))
+                .totalTimeInBedMinutes(480)
+                .feeling(feeling)
+                .build();
+    }
+}
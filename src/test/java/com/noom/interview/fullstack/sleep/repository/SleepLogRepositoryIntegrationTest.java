@@ -1,14 +1,18 @@
 package com.noom.interview.fullstack.sleep.repository;
 
+import com.noom.interview.fullstack.sleep.domain.dto.SleepLogResponse;
 import com.noom.interview.fullstack.sleep.domain.entity.*;
 import com.noom.interview.fullstack.sleep.test.AbstractIntegrationTest;
 import org.junit.jupiter.api.*;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.*;
 import java.util.*;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 
 class SleepLogRepositoryIntegrationTest extends AbstractIntegrationTest {
 
@@ -85,6 +89,47 @@ class SleepLogRepositoryIntegrationTest extends AbstractIntegrationTest {
         assertThat(result).isEmpty();
     }
 
+    @Test
+    void findLatestResponseByUserId_shouldReturnMostRecentSleepLogAsResponse() {
+        // When
+        Optional<SleepLogResponse> result = sleepLogRepository.findLatestResponseByUserId(userId);
+
+        // Then
+        assertThat(result).isPresent();
+        assertThat(result.get().getSleepDate()).isEqualTo(today);
+        assertThat(result.get().getFeeling()).isEqualTo(Feeling.GOOD);
+        assertThat(result.get().getTotalTimeInBedMinutes()).isEqualTo(8 * 60);
+    }
+
+    @Test
+    void findLatestResponseByUserId_shouldReturnEmptyForNonExistentUser() {
+        // When
+        Optional<SleepLogResponse> result = sleepLogRepository.findLatestResponseByUserId(UUID.randomUUID());
+
+        // Then
+        assertThat(result).isEmpty();
+    }
+
+    @Test
+    void findResponsesByUserIdAndSleepDateBetween_shouldReturnResponsesInDateRangeOrderedByDate() {
+        // When
+        List<SleepLogResponse> result =
+                sleepLogRepository.findResponsesByUserIdAndSleepDateBetween(userId, yesterday, today);
+
+        // Then
+        assertThat(result).extracting(SleepLogResponse::getSleepDate).containsExactly(yesterday, today);
+    }
+
+    @Test
+    void findResponsesByUserIdAndSleepDateBefore_shouldSeekPastDateMostRecentFirst() {
+        // When
+        List<SleepLogResponse> result = sleepLogRepository.findResponsesByUserIdAndSleepDateBeforeOrderBySleepDateDesc(
+                userId, today, PageRequest.ofSize(1));
+
+        // Then
+        assertThat(result).extracting(SleepLogResponse::getSleepDate).containsExactly(yesterday);
+    }
+
     @Test
     void existsByUserIdAndSleepDate_shouldReturnTrueForExistingSleepLog() {
         // When
@@ -109,6 +154,29 @@ class SleepLogRepositoryIntegrationTest extends AbstractIntegrationTest {
         assertThat(existsForNonExistentDate).isFalse();
     }
 
+    @Test
+    @Transactional
+    void fillMissingTimesOfDay_shouldOnlyFillSleepLogsWithoutTimesOfDay() {
+        // Given
+        SleepLog derived = createSleepLog(userId, today.minusDays(3), Feeling.OK);
+        derived.setBedTimeOfDaySeconds(100);
+        derived.setWakeTimeOfDaySeconds(200);
+        sleepLogRepository.saveAndFlush(derived);
+
+        // When
+        int updated = sleepLogRepository.fillMissingTimesOfDay(ZoneId.systemDefault().getId());
+
+        // Then
+        assertThat(updated).isEqualTo(3);
+        assertThat(sleepLogRepository.findByUserIdAndSleepDateBetween(userId, today.minusDays(3), today))
+                .extracting(SleepLog::getSleepDate, SleepLog::getBedTimeOfDaySeconds)
+                .containsExactlyInAnyOrder(
+                        tuple(today.minusDays(3), 100),
+                        tuple(today.minusDays(2), 16 * 3600),
+                        tuple(yesterday, 16 * 3600),
+                        tuple(today, 16 * 3600));
+    }
+
     private SleepLog createSleepLog(UUID userId, LocalDate sleepDate, Feeling feeling) {
         Instant bedTime = sleepDate.atTime(LocalTime.of(16, 0)).atZone(ZoneId.systemDefault()).toInstant();
         Instant wakeTime = sleepDate.atStartOfDay(ZoneId.systemDefault()).toInstant();
@@ -1,18 +1,22 @@
 package com.noom.interview.fullstack.sleep.service;
 
+import com.noom.interview.fullstack.sleep.archive.SleepLogArchive;
+import com.noom.interview.fullstack.sleep.config.ShardRouter;
 import com.noom.interview.fullstack.sleep.domain.dto.*;
 import com.noom.interview.fullstack.sleep.domain.entity.*;
 import com.noom.interview.fullstack.sleep.mapper.SleepLogMapper;
-import com.noom.interview.fullstack.sleep.repository.SleepLogRepository;
-import com.noom.interview.fullstack.sleep.service.impl.SleepLogServiceImpl;
+import com.noom.interview.fullstack.sleep.repository.*;
+import com.noom.interview.fullstack.sleep.service.impl.*;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
 
 import java.time.*;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -27,6 +31,21 @@ class SleepLogServiceTest {
     @Mock
     private SleepLogMapper sleepLogMapper;
 
+    @Mock
+    private SleepLogRollupService sleepLogRollupService;
+
+    @Mock
+    private SleepLogUserVersionRepository sleepLogUserVersionRepository;
+
+    @Mock
+    private SleepLogShardMigrationService sleepLogShardMigrationService;
+
+    @Mock
+    private SleepLogArchive sleepLogArchive;
+
+    @Spy
+    private ShardRouter shardRouter = new ShardRouter(List.of(), 0, 256);
+
     @InjectMocks
     private SleepLogServiceImpl sleepLogService;
 
@@ -75,9 +94,8 @@ class SleepLogServiceTest {
     @Test
     void createSleepLog_ValidRequest_ReturnsSleepLogResponse() {
         // Arrange
-        when(sleepLogRepository.existsByUserIdAndSleepDate(userId, sleepDate)).thenReturn(false);
         when(sleepLogMapper.toEntity(validRequest)).thenReturn(sleepLog);
-        when(sleepLogRepository.save(any(SleepLog.class))).thenReturn(sleepLog);
+        when(sleepLogRepository.insertIfAbsent(sleepLog)).thenReturn(1);
         when(sleepLogMapper.toResponse(sleepLog)).thenReturn(expectedResponse);
 
         // Act
@@ -86,9 +104,18 @@ class SleepLogServiceTest {
         // Assert
         assertNotNull(response);
         assertEquals(expectedResponse, response);
-        verify(sleepLogRepository).existsByUserIdAndSleepDate(userId, sleepDate);
         verify(sleepLogMapper).toEntity(validRequest);
-        verify(sleepLogRepository).save(any(SleepLog.class));
+        verify(sleepLogRepository).insertIfAbsent(sleepLog);
+        assertEquals(480, sleepLog.getTotalTimeInBedMinutes());
+        assertEquals(LocalTime.from(bedTime.atZone(ZoneId.systemDefault())).toSecondOfDay(),
+                sleepLog.getBedTimeOfDaySeconds());
+        assertEquals(LocalTime.from(wakeTime.atZone(ZoneId.systemDefault())).toSecondOfDay(),
+                sleepLog.getWakeTimeOfDaySeconds());
+        assertNotNull(sleepLog.getCreatedAt());
+        verify(sleepLogRepository, never()).existsByUserIdAndSleepDate(any(), any());
+        verify(sleepLogRepository, never()).save(any());
+        verify(sleepLogRollupService).recordSleepLogs(List.of(sleepLog));
+        verify(sleepLogUserVersionRepository).incrementVersion(userId);
         verify(sleepLogMapper).toResponse(sleepLog);
     }
 
@@ -136,68 +163,277 @@ class SleepLogServiceTest {
     @Test
     void createSleepLog_ExistingSleepLog_ThrowsIllegalStateException() {
         // Arrange
-        when(sleepLogRepository.existsByUserIdAndSleepDate(userId, sleepDate)).thenReturn(true);
+        when(sleepLogMapper.toEntity(validRequest)).thenReturn(sleepLog);
+        when(sleepLogRepository.insertIfAbsent(sleepLog)).thenReturn(0);
 
         // Act & Assert
         IllegalStateException exception = assertThrows(IllegalStateException.class,
                 () -> sleepLogService.createSleepLog(validRequest));
         assertTrue(exception.getMessage().contains("Sleep log already exists"));
-        verify(sleepLogRepository).existsByUserIdAndSleepDate(userId, sleepDate);
-        verify(sleepLogMapper, never()).toEntity(any());
-        verify(sleepLogRepository, never()).save(any());
+        verify(sleepLogRepository, never()).existsByUserIdAndSleepDate(any(), any());
+        verify(sleepLogRollupService, never()).recordSleepLogs(any());
+        verify(sleepLogMapper, never()).toResponse(any());
     }
 
     @Test
-    void getLatestSleepLog_SleepLogExists_ReturnsOptionalWithSleepLogResponse() {
+    void createSleepLogs_MixedBatch_ReportsResultPerItem() {
         // Arrange
-        when(sleepLogRepository.findFirstByUserIdOrderBySleepDateDesc(userId)).thenReturn(Optional.of(sleepLog));
+        SleepLogRequest newRequest = SleepLogRequest.builder()
+                .sleepDate(sleepDate)
+                .bedTime(bedTime)
+                .wakeTime(wakeTime)
+                .feeling(Feeling.GOOD)
+                .build();
+        SleepLogRequest existingRequest = SleepLogRequest.builder()
+                .sleepDate(sleepDate.minusDays(1))
+                .bedTime(bedTime.minus(1, ChronoUnit.DAYS))
+                .wakeTime(wakeTime.minus(1, ChronoUnit.DAYS))
+                .feeling(Feeling.OK)
+                .build();
+        SleepLogRequest invalidRequest = SleepLogRequest.builder()
+                .sleepDate(sleepDate.minusDays(2))
+                .bedTime(bedTime)
+                .wakeTime(bedTime.minus(1, ChronoUnit.HOURS))
+                .feeling(Feeling.BAD)
+                .build();
+        SleepLogRequest repeatedRequest = SleepLogRequest.builder()
+                .sleepDate(sleepDate)
+                .bedTime(bedTime)
+                .wakeTime(wakeTime)
+                .feeling(Feeling.OK)
+                .build();
+
+        when(sleepLogRepository.findSleepDatesByUserIdAndSleepDateIn(eq(userId), anyCollection()))
+                .thenReturn(Set.of(sleepDate.minusDays(1)));
+        when(sleepLogMapper.toEntity(newRequest)).thenReturn(sleepLog);
+        when(sleepLogRepository.insertAllIfAbsent(List.of(sleepLog))).thenReturn(Set.of(sleepDate));
         when(sleepLogMapper.toResponse(sleepLog)).thenReturn(expectedResponse);
 
+        // Act
+        SleepLogBatchResponse response = sleepLogService.createSleepLogs(userId,
+                List.of(newRequest, existingRequest, invalidRequest, repeatedRequest));
+
+        // Assert
+        assertEquals(1, response.getCreated());
+        assertEquals(2, response.getDuplicates());
+        assertEquals(1, response.getInvalid());
+        assertEquals(SleepLogBatchItemResult.Status.CREATED, response.getResults().get(0).getStatus());
+        assertEquals(expectedResponse, response.getResults().get(0).getSleepLog());
+        assertEquals(SleepLogBatchItemResult.Status.DUPLICATE, response.getResults().get(1).getStatus());
+        assertEquals(SleepLogBatchItemResult.Status.INVALID, response.getResults().get(2).getStatus());
+        assertEquals("Wake time must be after bed time", response.getResults().get(2).getMessage());
+        assertEquals(SleepLogBatchItemResult.Status.DUPLICATE, response.getResults().get(3).getStatus());
+        assertEquals(userId, newRequest.getUserId());
+        verify(sleepLogRepository).findSleepDatesByUserIdAndSleepDateIn(eq(userId), anyCollection());
+        verify(sleepLogRepository, never()).existsByUserIdAndSleepDate(any(), any());
+        verify(sleepLogRollupService).recordSleepLogs(List.of(sleepLog));
+    }
+
+    @Test
+    void createSleepLogs_EmptyBatch_ThrowsIllegalArgumentException() {
+        // Act & Assert
+        List<SleepLogRequest> emptyBatch = List.of();
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> sleepLogService.createSleepLogs(userId, emptyBatch));
+        assertEquals("Batch must contain at least one sleep log", exception.getMessage());
+        verify(sleepLogRepository, never()).insertAllIfAbsent(any());
+    }
+
+    @Test
+    void createSleepLogs_DateTakenConcurrently_ReportsItemAsDuplicate() {
+        // Arrange
+        SleepLogRequest request = SleepLogRequest.builder()
+                .sleepDate(sleepDate)
+                .bedTime(bedTime)
+                .wakeTime(wakeTime)
+                .feeling(Feeling.GOOD)
+                .build();
+
+        when(sleepLogRepository.findSleepDatesByUserIdAndSleepDateIn(eq(userId), anyCollection()))
+                .thenReturn(Set.of());
+        when(sleepLogMapper.toEntity(request)).thenReturn(sleepLog);
+        when(sleepLogRepository.insertAllIfAbsent(List.of(sleepLog))).thenReturn(Set.of());
+
+        // Act
+        SleepLogBatchResponse response = sleepLogService.createSleepLogs(userId, List.of(request));
+
+        // Assert
+        assertEquals(0, response.getCreated());
+        assertEquals(1, response.getDuplicates());
+        assertEquals(SleepLogBatchItemResult.Status.DUPLICATE, response.getResults().get(0).getStatus());
+        assertEquals(String.format("Sleep log already exists for user %s on date %s", userId, sleepDate),
+                response.getResults().get(0).getMessage());
+        verify(sleepLogRollupService).recordSleepLogs(List.of());
+        verify(sleepLogUserVersionRepository, never()).incrementVersion(any());
+        verify(sleepLogMapper, never()).toResponse(any());
+    }
+
+    @Test
+    void getSleepLogVersion_NoSleepLogs_ReturnsVersionZero() {
+        // Arrange
+        when(sleepLogUserVersionRepository.findVersionByUserId(userId)).thenReturn(Optional.empty());
+
+        // Act
+        SleepLogVersion version = sleepLogService.getSleepLogVersion(userId);
+
+        // Assert
+        assertEquals(0L, version.getVersion());
+        assertNull(version.getModifiedAt());
+        verifyNoInteractions(sleepLogRepository, sleepLogRollupService);
+    }
+
+    @Test
+    void createSleepLog_ArchivedMonth_ThrowsIllegalArgumentException() {
+        // Arrange
+        doThrow(new IllegalArgumentException("archived")).when(sleepLogArchive).checkNotArchived(sleepDate);
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> sleepLogService.createSleepLog(validRequest));
+        verifyNoInteractions(sleepLogRepository, sleepLogRollupService);
+    }
+
+    @Test
+    void getLatestSleepLog_SleepLogExists_ReturnsOptionalWithSleepLogResponse() {
+        // Arrange
+        when(sleepLogRepository.findLatestResponseByUserId(userId)).thenReturn(Optional.of(expectedResponse));
+
         // Act
         Optional<SleepLogResponse> result = sleepLogService.getLatestSleepLog(userId);
 
         // Assert
         assertTrue(result.isPresent());
         assertEquals(expectedResponse, result.get());
-        verify(sleepLogRepository).findFirstByUserIdOrderBySleepDateDesc(userId);
-        verify(sleepLogMapper).toResponse(sleepLog);
+        verify(sleepLogRepository).findLatestResponseByUserId(userId);
+        verify(sleepLogRepository, never()).findFirstByUserIdOrderBySleepDateDesc(any());
+        verify(sleepLogMapper, never()).toResponse(any());
     }
 
     @Test
     void getLatestSleepLog_NoSleepLogExists_ReturnsEmptyOptional() {
         // Arrange
-        when(sleepLogRepository.findFirstByUserIdOrderBySleepDateDesc(userId)).thenReturn(Optional.empty());
+        when(sleepLogRepository.findLatestResponseByUserId(userId)).thenReturn(Optional.empty());
 
         // Act
         Optional<SleepLogResponse> result = sleepLogService.getLatestSleepLog(userId);
 
         // Assert
         assertFalse(result.isPresent());
-        verify(sleepLogRepository).findFirstByUserIdOrderBySleepDateDesc(userId);
+        verify(sleepLogRepository).findLatestResponseByUserId(userId);
         verify(sleepLogMapper, never()).toResponse(any());
     }
 
+    @Test
+    void getLatestSleepLog_OnlyArchivedSleepLogs_ReturnsLatestArchivedSleepLog() {
+        // Arrange
+        when(sleepLogRepository.findLatestResponseByUserId(userId)).thenReturn(Optional.empty());
+        when(sleepLogArchive.findLatestByUserId(userId)).thenReturn(Optional.of(sleepLog));
+        when(sleepLogMapper.toResponse(sleepLog)).thenReturn(expectedResponse);
+
+        // Act
+        Optional<SleepLogResponse> result = sleepLogService.getLatestSleepLog(userId);
+
+        // Assert
+        assertEquals(Optional.of(expectedResponse), result);
+    }
+
+    @Test
+    void getSleepLogs_MoreThanLimit_ReturnsPageWithCursorOfLastItem() {
+        // Arrange
+        List<SleepLogResponse> sleepLogs = List.of(
+                SleepLogResponse.builder().sleepDate(sleepDate).build(),
+                SleepLogResponse.builder().sleepDate(sleepDate.minusDays(1)).build(),
+                SleepLogResponse.builder().sleepDate(sleepDate.minusDays(3)).build());
+        when(sleepLogRepository.findResponsesByUserIdOrderBySleepDateDesc(userId, PageRequest.ofSize(3)))
+                .thenReturn(sleepLogs);
+
+        // Act
+        SleepLogPageResponse page = sleepLogService.getSleepLogs(userId, null, null, 2);
+
+        // Assert
+        assertEquals(sleepLogs.subList(0, 2), page.getItems());
+        assertEquals(sleepDate.minusDays(1), SleepLogCursor.decode(page.getNextCursor()));
+    }
+
+    @Test
+    void getSleepLogs_Cursor_SeeksPastCursorDateAndEndsOnLastPage() {
+        // Arrange
+        String cursor = SleepLogCursor.encode(sleepDate.minusDays(1));
+        when(sleepLogRepository.findResponsesByUserIdAndSleepDateBeforeOrderBySleepDateDesc(
+                userId, sleepDate.minusDays(1), PageRequest.ofSize(3)))
+                .thenReturn(List.of(expectedResponse));
+
+        // Act
+        SleepLogPageResponse page = sleepLogService.getSleepLogs(userId, null, cursor, 2);
+
+        // Assert
+        assertEquals(List.of(expectedResponse), page.getItems());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void getSleepLogs_DatabaseExhausted_ContinuesPageWithArchivedSleepLogs() {
+        // Arrange
+        SleepLog archived = SleepLog.builder().userId(userId).sleepDate(sleepDate.minusYears(2)).build();
+        SleepLogResponse archivedResponse = SleepLogResponse.builder().sleepDate(archived.getSleepDate()).build();
+        SleepLogResponse olderArchivedResponse = SleepLogResponse.builder()
+                .sleepDate(archived.getSleepDate().minusDays(1)).build();
+        SleepLog olderArchived = SleepLog.builder().userId(userId).sleepDate(olderArchivedResponse.getSleepDate())
+                .build();
+        when(sleepLogRepository.findResponsesByUserIdOrderBySleepDateDesc(userId, PageRequest.ofSize(3)))
+                .thenReturn(List.of(expectedResponse));
+        when(sleepLogArchive.findByUserIdAndSleepDateBefore(userId, null, 3))
+                .thenReturn(List.of(archived, olderArchived));
+        when(sleepLogMapper.toResponse(archived)).thenReturn(archivedResponse);
+        when(sleepLogMapper.toResponse(olderArchived)).thenReturn(olderArchivedResponse);
+
+        // Act
+        SleepLogPageResponse page = sleepLogService.getSleepLogs(userId, null, null, 2);
+
+        // Assert
+        assertEquals(List.of(expectedResponse, archivedResponse), page.getItems());
+        assertEquals(archived.getSleepDate(), SleepLogCursor.decode(page.getNextCursor()));
+    }
+
+    @Test
+    void getSleepLogs_InvalidCursor_ThrowsIllegalArgumentException() {
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class,
+                () -> sleepLogService.getSleepLogs(userId, null, "not-a-cursor", 20));
+        assertThrows(IllegalArgumentException.class,
+                () -> sleepLogService.getSleepLogs(userId, sleepDate, SleepLogCursor.encode(sleepDate), 20));
+        assertThrows(IllegalArgumentException.class,
+                () -> sleepLogService.getSleepLogs(userId, null, null, 101));
+        verifyNoInteractions(sleepLogRepository);
+    }
+
     @Test
     void getSleepStatistics_WithSleepLogs_ReturnsCorrectStatistics() {
         // Arrange
         LocalDate endDate = LocalDate.now();
         LocalDate startDate = endDate.minusDays(29); // 30 days including today
 
-        // Create test sleep logs
-        List<SleepLog> sleepLogs = createTestSleepLogs();
+        // Three logs from 22:00 to 06:00 with different feelings
+        SleepStatisticsAggregate aggregate = SleepStatisticsAggregate.builder()
+                .logCount(3)
+                .totalTimeInBedMinutes(3 * 480)
+                .bedTimeSeconds(3L * LocalTime.of(22, 0).toSecondOfDay())
+                .wakeTimeSeconds(3L * LocalTime.of(6, 0).toSecondOfDay())
+                .badCount(1)
+                .okCount(1)
+                .goodCount(1)
+                .build();
 
-        // Mock repository to return test sleep logs
-        when(sleepLogRepository.findByUserIdAndSleepDateBetween(userId, startDate, endDate))
-                .thenReturn(sleepLogs);
+        when(sleepLogRollupService.aggregate(userId, startDate, endDate)).thenReturn(aggregate);
 
         // Act
         SleepStatisticsResponse response = sleepLogService.getSleepStatistics(userId);
 
         // Assert
         assertNotNull(response);
+        assertEquals(new DateRange(startDate, endDate), response.getDateRange());
         assertEquals(480.0, response.getAverageTotalTimeInBedMinutes());
-        assertNotNull(response.getAverageBedTime());
-        assertNotNull(response.getAverageWakeTime());
+        assertEquals(LocalTime.of(22, 0), response.getAverageBedTime());
+        assertEquals(LocalTime.of(6, 0), response.getAverageWakeTime());
         assertNotNull(response.getFeelingCounts());
 
         // Verify feeling counts
@@ -206,8 +442,9 @@ class SleepLogServiceTest {
         assertEquals(1, feelingCounts.get(Feeling.OK));
         assertEquals(1, feelingCounts.get(Feeling.BAD));
 
-        // Verify repository was called with correct parameters
-        verify(sleepLogRepository).findByUserIdAndSleepDateBetween(userId, startDate, endDate);
+        // Verify rollups were read and no sleep logs were loaded
+        verify(sleepLogRollupService).aggregate(userId, startDate, endDate);
+        verify(sleepLogRepository, never()).findByUserIdAndSleepDateBetween(any(), any(), any());
     }
 
     @Test
@@ -216,9 +453,9 @@ class SleepLogServiceTest {
         LocalDate endDate = LocalDate.now();
         LocalDate startDate = endDate.minusDays(29); // 30 days including today
 
-        // Mock repository to return empty list
-        when(sleepLogRepository.findByUserIdAndSleepDateBetween(userId, startDate, endDate))
-                .thenReturn(Collections.emptyList());
+        // Mock rollups to return no logs
+        when(sleepLogRollupService.aggregate(userId, startDate, endDate))
+                .thenReturn(new SleepStatisticsAggregate());
 
         // Act
         SleepStatisticsResponse response = sleepLogService.getSleepStatistics(userId);
@@ -236,54 +473,181 @@ class SleepLogServiceTest {
         assertEquals(0, feelingCounts.get(Feeling.OK));
         assertEquals(0, feelingCounts.get(Feeling.BAD));
 
-        // Verify repository was called with correct parameters
-        verify(sleepLogRepository).findByUserIdAndSleepDateBetween(userId, startDate, endDate);
+        // Verify rollups were read with correct parameters
+        verify(sleepLogRollupService).aggregate(userId, startDate, endDate);
     }
 
-    /**
-     * Helper method to create test sleep logs with different feelings
-     */
-    private List<SleepLog> createTestSleepLogs() {
-        LocalDate today = LocalDate.now();
-        ZoneId zoneId = ZoneId.systemDefault();
+    @Test
+    void getSleepStatistics_DateRange_UsesRequestedRange() {
+        // Arrange
+        LocalDate from = LocalDate.of(2024, 1, 1);
+        LocalDate to = LocalDate.of(2024, 12, 31);
+        SleepStatisticsAggregate aggregate = SleepStatisticsAggregate.builder()
+                .logCount(2)
+                .totalTimeInBedMinutes(900)
+                .bedTimeSeconds(LocalTime.of(23, 0).toSecondOfDay() + LocalTime.of(23, 30).toSecondOfDay())
+                .wakeTimeSeconds(LocalTime.of(7, 0).toSecondOfDay() + LocalTime.of(7, 30).toSecondOfDay())
+                .okCount(2)
+                .build();
 
-        // Create three sleep logs with different feelings
-        SleepLog log1 = SleepLog.builder()
-                .id(1L)
-                .userId(userId)
-                .sleepDate(today.minusDays(1))
-                .bedTime(LocalDateTime.of(today.minusDays(1), LocalTime.of(22, 0))
-                        .atZone(zoneId).toInstant())
-                .wakeTime(LocalDateTime.of(today, LocalTime.of(6, 0))
-                        .atZone(zoneId).toInstant())
+        when(sleepLogRollupService.aggregate(userId, from, to)).thenReturn(aggregate);
+
+        // Act
+        SleepStatisticsResponse response = sleepLogService.getSleepStatistics(userId, from, to);
+
+        // Assert
+        assertEquals(new DateRange(from, to), response.getDateRange());
+        assertEquals(450.0, response.getAverageTotalTimeInBedMinutes());
+        assertEquals(LocalTime.of(23, 15), response.getAverageBedTime());
+        assertEquals(LocalTime.of(7, 15), response.getAverageWakeTime());
+        assertEquals(2, response.getFeelingCounts().get(Feeling.OK));
+        verify(sleepLogRollupService).aggregate(userId, from, to);
+    }
+
+    @Test
+    void getSleepStatistics_FromAfterTo_ThrowsIllegalArgumentException() {
+        // Arrange
+        LocalDate from = LocalDate.of(2024, 2, 1);
+        LocalDate to = LocalDate.of(2024, 1, 1);
+
+        // Act & Assert
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> sleepLogService.getSleepStatistics(userId, from, to));
+        assertEquals("From date must not be after to date", exception.getMessage());
+        verify(sleepLogRollupService, never()).aggregate(any(), any(), any());
+    }
+
+    @Test
+    void getSleepStatistics_MissingToDate_ThrowsIllegalArgumentException() {
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class,
+                () -> sleepLogService.getSleepStatistics(userId, LocalDate.of(2024, 1, 1), null));
+        verify(sleepLogRollupService, never()).aggregate(any(), any(), any());
+    }
+
+    @Test
+    void getSleepTrends_WeeklyBuckets_ReturnsOnePointPerBucket() {
+        // Arrange
+        LocalDate from = LocalDate.of(2024, 1, 1);
+        LocalDate to = LocalDate.of(2024, 1, 14);
+        SleepStatisticsAggregate firstWeek = SleepStatisticsAggregate.builder()
+                .dateRange(new DateRange(from, LocalDate.of(2024, 1, 7)))
+                .logCount(1)
                 .totalTimeInBedMinutes(480)
-                .feeling(Feeling.GOOD)
+                .bedTimeSeconds(LocalTime.of(22, 0).toSecondOfDay())
+                .wakeTimeSeconds(LocalTime.of(6, 0).toSecondOfDay())
+                .goodCount(1)
+                .build();
+        SleepStatisticsAggregate secondWeek = SleepStatisticsAggregate.builder()
+                .dateRange(new DateRange(LocalDate.of(2024, 1, 8), to))
                 .build();
 
-        SleepLog log2 = SleepLog.builder()
-                .id(2L)
-                .userId(userId)
-                .sleepDate(today.minusDays(2))
-                .bedTime(LocalDateTime.of(today.minusDays(2), LocalTime.of(22, 0))
-                        .atZone(zoneId).toInstant())
-                .wakeTime(LocalDateTime.of(today.minusDays(1), LocalTime.of(6, 0))
-                        .atZone(zoneId).toInstant())
-                .totalTimeInBedMinutes(480)
-                .feeling(Feeling.OK)
+        when(sleepLogRollupService.aggregateByBucket(userId, TrendBucket.WEEK, from, to))
+                .thenReturn(List.of(firstWeek, secondWeek));
+
+        // Act
+        SleepTrendResponse response = sleepLogService.getSleepTrends(userId, TrendBucket.WEEK, from, to);
+
+        // Assert
+        assertEquals(TrendBucket.WEEK, response.getBucket());
+        assertEquals(new DateRange(from, to), response.getDateRange());
+        assertEquals(2, response.getPoints().size());
+        assertEquals(firstWeek.getDateRange(), response.getPoints().get(0).getDateRange());
+        assertEquals(480.0, response.getPoints().get(0).getAverageTotalTimeInBedMinutes());
+        assertEquals(1, response.getPoints().get(0).getFeelingCounts().get(Feeling.GOOD));
+        assertEquals(0.0, response.getPoints().get(1).getAverageTotalTimeInBedMinutes());
+        assertNull(response.getPoints().get(1).getAverageBedTime());
+    }
+
+    @Test
+    void getSleepTrends_NoDates_DefaultsToLast52WeeksFromMonday() {
+        // Arrange
+        LocalDate today = LocalDate.now();
+        LocalDate expectedFrom = today.minusWeeks(51).with(DayOfWeek.MONDAY);
+        when(sleepLogRollupService.aggregateByBucket(userId, TrendBucket.WEEK, expectedFrom, today))
+                .thenReturn(List.of());
+
+        // Act
+        SleepTrendResponse response = sleepLogService.getSleepTrends(userId, TrendBucket.WEEK, null, null);
+
+        // Assert
+        assertEquals(new DateRange(expectedFrom, today), response.getDateRange());
+        verify(sleepLogRollupService).aggregateByBucket(userId, TrendBucket.WEEK, expectedFrom, today);
+    }
+
+    @Test
+    void getSleepTrends_TooManyBuckets_ThrowsIllegalArgumentException() {
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> sleepLogService.getSleepTrends(
+                userId, TrendBucket.WEEK, LocalDate.of(2000, 1, 1), LocalDate.of(2024, 1, 1)));
+        verify(sleepLogRollupService, never()).aggregateByBucket(any(), any(), any(), any());
+    }
+
+    @Test
+    void getCohortStatistics_TwoUsers_HandsOverEachUserAndMergesCohort() {
+        // Arrange
+        UUID otherUserId = UUID.randomUUID();
+        LocalDate from = LocalDate.of(2024, 1, 1);
+        LocalDate to = LocalDate.of(2024, 1, 31);
+        CohortStatisticsRequest request = CohortStatisticsRequest.builder()
+                .userIds(List.of(userId, otherUserId, userId))
+                .from(from)
+                .to(to)
                 .build();
 
-        SleepLog log3 = SleepLog.builder()
-                .id(3L)
-                .userId(userId)
-                .sleepDate(today.minusDays(3))
-                .bedTime(LocalDateTime.of(today.minusDays(3), LocalTime.of(22, 0))
-                        .atZone(zoneId).toInstant())
-                .wakeTime(LocalDateTime.of(today.minusDays(2), LocalTime.of(6, 0))
-                        .atZone(zoneId).toInstant())
-                .totalTimeInBedMinutes(480)
-                .feeling(Feeling.BAD)
+        doAnswer(invocation -> {
+            Consumer<SleepStatisticsAggregate> consumer = invocation.getArgument(3);
+            consumer.accept(SleepStatisticsAggregate.builder()
+                    .userId(userId).logCount(2).totalTimeInBedMinutes(960).goodCount(2).build());
+            consumer.accept(SleepStatisticsAggregate.builder()
+                    .userId(otherUserId).logCount(1).totalTimeInBedMinutes(360).badCount(1).build());
+            return null;
+        }).when(sleepLogRollupService).aggregateEach(any(), eq(from), eq(to), any());
+
+        List<UserSleepStatistics> users = new ArrayList<>();
+
+        // Act
+        SleepStatisticsResponse cohort = sleepLogService.getCohortStatistics(request, users::add);
+
+        // Assert
+        assertEquals(2, users.size());
+        assertEquals(userId, users.get(0).getUserId());
+        assertEquals(480.0, users.get(0).getStatistics().getAverageTotalTimeInBedMinutes());
+        assertEquals(new DateRange(from, to), users.get(1).getStatistics().getDateRange());
+        assertEquals(440.0, cohort.getAverageTotalTimeInBedMinutes());
+        assertEquals(2, cohort.getFeelingCounts().get(Feeling.GOOD));
+        assertEquals(1, cohort.getFeelingCounts().get(Feeling.BAD));
+        verify(sleepLogRollupService).aggregateEach(eq(List.of(userId, otherUserId)),
+                eq(from), eq(to), any());
+    }
+
+    @Test
+    void getCohortStatistics_NoUsers_ThrowsIllegalArgumentException() {
+        // Arrange
+        CohortStatisticsRequest request = CohortStatisticsRequest.builder()
+                .userIds(List.of())
+                .from(LocalDate.of(2024, 1, 1))
+                .to(LocalDate.of(2024, 1, 31))
+                .build();
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class,
+                () -> sleepLogService.getCohortStatistics(request, users -> { }));
+        verify(sleepLogRollupService, never()).aggregateEach(any(), any(), any(), any());
+    }
+
+    @Test
+    void getCohortStatistics_FromAfterTo_ThrowsIllegalArgumentException() {
+        // Arrange
+        CohortStatisticsRequest request = CohortStatisticsRequest.builder()
+                .userIds(List.of(userId))
+                .from(LocalDate.of(2024, 2, 1))
+                .to(LocalDate.of(2024, 1, 1))
                 .build();
 
-        return Arrays.asList(log1, log2, log3);
+        // Act & Assert
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> sleepLogService.getCohortStatistics(request, users -> { }));
+        assertEquals("From date must not be after to date", exception.getMessage());
     }
 }
@@ -0,0 +1,186 @@
+package com.noom.interview.fullstack.sleep.service;
+
+import com.noom.interview.fullstack.sleep.domain.dto.*;
+import com.noom.interview.fullstack.sleep.domain.entity.*;
+import com.noom.interview.fullstack.sleep.service.impl.SleepStatisticsAccumulator;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.time.*;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class SleepStatisticsAccumulatorTest {
+
+    private static final LocalDate START_DATE = LocalDate.of(2024, 1, 1);
+    private static final DateRange DATE_RANGE = new DateRange(START_DATE, START_DATE.plusDays(29));
+    private static final int WARMUP_ROUNDS = 20;
+
+    @Test
+    void toResponse_FoldedLogs_ReturnsAveragesAndFeelingCounts() {
+        // Arrange
+        SleepStatisticsAccumulator accumulator = new SleepStatisticsAccumulator();
+        accumulator.add(sleepLog(0, 480, LocalTime.of(22, 0), LocalTime.of(6, 0), Feeling.GOOD));
+        accumulator.add(sleepLog(1, 420, LocalTime.of(23, 0), LocalTime.of(6, 0), Feeling.OK));
+        accumulator.add(sleepLog(2, 510, LocalTime.of(22, 30), LocalTime.of(7, 0), Feeling.GOOD));
+
+        // Act
+        SleepStatisticsResponse response = accumulator.toResponse(DATE_RANGE);
+
+        // Assert
+        assertThat(response.getDateRange()).isEqualTo(DATE_RANGE);
+        assertThat(response.getAverageTotalTimeInBedMinutes()).isEqualTo(470.0);
+        assertThat(response.getAverageBedTime()).isEqualTo(LocalTime.of(22, 30));
+        assertThat(response.getAverageWakeTime()).isEqualTo(LocalTime.of(6, 20));
+        assertThat(response.getFeelingCounts())
+                .containsEntry(Feeling.BAD, 0)
+                .containsEntry(Feeling.OK, 1)
+                .containsEntry(Feeling.GOOD, 2);
+    }
+
+    @Test
+    void toResponse_FoldedLogs_ReturnsPercentilesInterpolatedWithinBuckets() {
+        // Arrange
+        SleepStatisticsAccumulator accumulator = new SleepStatisticsAccumulator();
+        accumulator.add(sleepLog(0, 480, LocalTime.of(22, 0), LocalTime.of(6, 0), Feeling.GOOD));
+        accumulator.add(sleepLog(1, 420, LocalTime.of(23, 0), LocalTime.of(6, 0), Feeling.OK));
+        accumulator.add(sleepLog(2, 510, LocalTime.of(22, 30), LocalTime.of(7, 0), Feeling.GOOD));
+
+        // Act
+        SleepStatisticsResponse response = accumulator.toResponse(DATE_RANGE);
+
+        // Assert - 420, 480 and 510 minutes fall into the 15-minute buckets 28, 32 and 34
+        DurationPercentiles timeInBed = response.getTotalTimeInBedMinutesPercentiles();
+        assertThat(timeInBed.getP10()).isCloseTo(424.5, within(1e-9));
+        assertThat(timeInBed.getMedian()).isCloseTo(487.5, within(1e-9));
+        assertThat(timeInBed.getP90()).isCloseTo(520.5, within(1e-9));
+        assertThat(response.getBedTimePercentiles()).isEqualTo(new TimeOfDayPercentiles(
+                LocalTime.of(22, 4, 30), LocalTime.of(22, 37, 30), LocalTime.of(23, 10, 30)));
+        assertThat(response.getWakeTimePercentiles().getMedian()).isEqualTo(LocalTime.of(6, 11, 15));
+    }
+
+    @Test
+    void toResponse_NoLogs_ReturnsEmptyStatistics() {
+        // Arrange
+        SleepStatisticsAccumulator accumulator = new SleepStatisticsAccumulator();
+
+        // Act
+        SleepStatisticsResponse response = accumulator.toResponse(DATE_RANGE);
+
+        // Assert
+        assertThat(response.getAverageTotalTimeInBedMinutes()).isEqualTo(0.0);
+        assertThat(response.getAverageBedTime()).isNull();
+        assertThat(response.getAverageWakeTime()).isNull();
+        assertThat(response.getTotalTimeInBedMinutesPercentiles()).isNull();
+        assertThat(response.getBedTimePercentiles()).isNull();
+        assertThat(response.getFeelingCounts())
+                .containsEntry(Feeling.BAD, 0)
+                .containsEntry(Feeling.OK, 0)
+                .containsEntry(Feeling.GOOD, 0);
+    }
+
+    @Test
+    void merge_PartitionedLogs_EqualsSinglePassFold() {
+        // Arrange
+        List<SleepLog> sleepLogs = sleepLogs(365);
+        SleepStatisticsAccumulator singlePass = new SleepStatisticsAccumulator();
+        sleepLogs.forEach(singlePass::add);
+
+        SleepStatisticsAccumulator first = new SleepStatisticsAccumulator();
+        SleepStatisticsAccumulator second = new SleepStatisticsAccumulator();
+        sleepLogs.subList(0, 100).forEach(first::add);
+        sleepLogs.subList(100, sleepLogs.size()).forEach(second::add);
+
+        // Act
+        SleepStatisticsAccumulator merged = first.merge(second);
+
+        // Assert
+        assertThat(merged.toAggregate()).isEqualTo(singlePass.toAggregate());
+    }
+
+    @Test
+    void collector_ParallelStream_EqualsSinglePassFold() {
+        // Arrange
+        List<SleepLog> sleepLogs = sleepLogs(3650);
+        SleepStatisticsAccumulator singlePass = new SleepStatisticsAccumulator();
+        sleepLogs.forEach(singlePass::add);
+
+        // Act
+        SleepStatisticsAccumulator collected = sleepLogs.parallelStream()
+                .collect(SleepStatisticsAccumulator.collector());
+
+        // Assert
+        assertThat(collected.toAggregate()).isEqualTo(singlePass.toAggregate());
+        assertThat(collected.getLogCount()).isEqualTo(3650);
+    }
+
+    @Test
+    void add_Aggregate_MatchesFoldedLogs() {
+        // Arrange
+        SleepStatisticsAccumulator folded = new SleepStatisticsAccumulator();
+        sleepLogs(30).forEach(folded::add);
+        SleepStatisticsAccumulator accumulator = new SleepStatisticsAccumulator();
+
+        // Act
+        accumulator.add(folded.toAggregate());
+
+        // Assert
+        assertThat(accumulator.toResponse(DATE_RANGE)).isEqualTo(folded.toResponse(DATE_RANGE));
+    }
+
+    @Test
+    void add_ThousandsOfLogs_AllocatesNothingPerLog() {
+        // Arrange
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        SleepLog[] sleepLogs = sleepLogs(3650).toArray(new SleepLog[0]);
+        SleepStatisticsAccumulator accumulator = new SleepStatisticsAccumulator();
+        long threadId = Thread.currentThread().getId();
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            fold(accumulator, sleepLogs);
+        }
+
+        // Act
+        long before = threads.getThreadAllocatedBytes(threadId);
+        fold(accumulator, sleepLogs);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        // Assert
+        // Less than one byte per log: no boxing, iterators, map entries or intermediate lists per log
+        assertThat(allocated).isLessThan(sleepLogs.length);
+    }
+
+    private static void fold(SleepStatisticsAccumulator accumulator, SleepLog[] sleepLogs) {
+        for (SleepLog sleepLog : sleepLogs) {
+            accumulator.add(sleepLog);
+        }
+    }
+
+    private static List<SleepLog> sleepLogs(int count) {
+        Feeling[] feelings = Feeling.values();
+        List<SleepLog> sleepLogs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            sleepLogs.add(sleepLog(i, 420 + i % 90, LocalTime.of(22, i % 60), LocalTime.of(6, i % 60),
+                    feelings[i % feelings.length]));
+        }
+        return sleepLogs;
+    }
+
+    private static SleepLog sleepLog(int day, int minutes, LocalTime bedTime, LocalTime wakeTime, Feeling feeling) {
+        LocalDate sleepDate = START_DATE.plusDays(day);
+        return SleepLog.builder()
+                .userId(UUID.randomUUID())
+                .sleepDate(sleepDate)
+                .bedTime(sleepDate.minusDays(1).atTime(bedTime).toInstant(ZoneOffset.UTC))
+                .wakeTime(sleepDate.atTime(wakeTime).toInstant(ZoneOffset.UTC))
+                .totalTimeInBedMinutes(minutes)
+                .bedTimeOfDaySeconds(bedTime.toSecondOfDay())
+                .wakeTimeOfDaySeconds(wakeTime.toSecondOfDay())
+                .feeling(feeling)
+                .build();
+    }
+}